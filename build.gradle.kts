@@ -5,6 +5,13 @@ plugins {
     id("com.github.ben-manes.versions") version "0.47.0"
 }
 
+// Production build with Spring AOT processing: ./gradlew productionApp -Pproduction
+val production = providers.gradleProperty("production").isPresent
+if (production) {
+    // Generates the bean definitions at build time; run with -Dspring.aot.enabled=true to use them
+    apply(plugin = "org.springframework.boot.aot")
+}
+
 group = "org.example"
 version = "0.0.1-SNAPSHOT"
 
@@ -36,6 +43,7 @@ dependencies {
     implementation("io.awspring.cloud:spring-cloud-aws-starter")
     implementation("io.awspring.cloud:spring-cloud-aws-starter-s3")
     implementation("software.amazon.awssdk:s3:2.31.54")
+    implementation("software.amazon.awssdk:apache-client:2.31.54")
 
     // Testing
     testImplementation("org.springframework.boot:spring-boot-starter-test")
@@ -52,3 +60,84 @@ tasks.jar {
         attributes["Main-Class"] = "org.example.filemanager.FileManagerApplication"
     }
 }
+
+// Runs a benchmark main class from the test sources, e.g. ./gradlew benchmark -Pbenchmark=ListingSerializationBenchmark
+tasks.register<JavaExec>("benchmark") {
+    group = "verification"
+    description = "Runs a micro-benchmark from the test sources"
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass = providers.gradleProperty("benchmark")
+        .map { if (it.contains('.')) it else "org.example.filemanager.controller.$it" }
+        .orElse("org.example.filemanager.controller.ListingSerializationBenchmark")
+}
+
+// Arguments of startup runs outside a deployment: no AWS calls or background jobs, placeholder OAuth2 client
+val startupRunArgs = listOf(
+    "--file-catalog.preload=false",
+    "--reconciliation.enabled=false",
+    "--retention.enabled=false",
+    "--tiering.enabled=false",
+    "--spring.security.oauth2.client.registration.google.client-id=startup-run",
+    "--spring.security.oauth2.client.registration.google.client-secret=startup-run"
+)
+
+// The application jar with its dependencies in lib/, listed in the manifest. Unlike the nested
+// jars of bootJar, these are loaded by the application class loader, so they can be archived by CDS.
+val productionJar by tasks.registering(Jar::class) {
+    group = "build"
+    description = "Assembles the application classes, including AOT output with -Pproduction"
+    archiveClassifier = "production"
+    from(sourceSets.main.get().output)
+    if (production) {
+        from(sourceSets["aot"].output)
+    }
+    manifest {
+        attributes["Main-Class"] = "org.example.filemanager.FileManagerApplication"
+    }
+    doFirst {
+        manifest.attributes["Class-Path"] = configurations.runtimeClasspath.get().joinToString(" ") { "lib/${it.name}" }
+    }
+}
+
+val productionApp by tasks.registering(Sync::class) {
+    group = "build"
+    description = "Lays out build/production: file-manager.jar and its dependencies in lib/"
+    into(layout.buildDirectory.dir("production"))
+    from(productionJar) {
+        rename { "file-manager.jar" }
+    }
+    into("lib") {
+        from(configurations.runtimeClasspath)
+    }
+}
+
+// Records the classes loaded during a full startup into build/production/app.jsa; start the
+// application with -XX:SharedArchiveFile=app.jsa from the same JDK to load them from the archive
+val cdsArchive by tasks.registering(Exec::class) {
+    group = "build"
+    description = "Generates an AppCDS archive with a training run of the production layout"
+    dependsOn(productionApp)
+    val appDir = layout.buildDirectory.dir("production")
+    val launcher = javaToolchains.launcherFor(java.toolchain)
+    workingDir(appDir)
+    outputs.file(appDir.map { it.file("app.jsa") })
+    doFirst {
+        val jvmArgs = listOf("-XX:ArchiveClassesAtExit=app.jsa") +
+            (if (production) listOf("-Dspring.aot.enabled=true") else emptyList())
+        commandLine(listOf(launcher.get().executablePath.asFile.absolutePath) + jvmArgs +
+            listOf("-jar", "file-manager.jar", "--startup.training-run=true", "--server.port=0") + startupRunArgs)
+    }
+}
+
+// Time to first request and RSS of the production layout, with and without the CDS archive:
+// ./gradlew cdsArchive startupBenchmark -Pproduction
+tasks.register<JavaExec>("startupBenchmark") {
+    group = "verification"
+    description = "Measures startup of the production layout in fresh JVMs"
+    dependsOn(productionApp)
+    mustRunAfter(cdsArchive)
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass = "org.example.filemanager.StartupBenchmark"
+    systemProperty("startup.aot", production)
+    args(listOf(layout.buildDirectory.dir("production").get().asFile.absolutePath) + startupRunArgs)
+}
@@ -4,8 +4,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class FileManagerApplication {
     private static final Logger logger = LoggerFactory.getLogger(FileManagerApplication.class);
 
@@ -19,6 +22,12 @@ public class FileManagerApplication {
                    System.getenv("GOOGLE_CLIENT_SECRET") != null ? System.getenv("GOOGLE_CLIENT_SECRET").length() : 0);
         logger.info("=== End Environment Variables Debug ===");
 
-        SpringApplication.run(FileManagerApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(FileManagerApplication.class, args);
+
+        // Training run for the class data sharing archive: start completely, then exit
+        if (context.getEnvironment().getProperty("startup.training-run", Boolean.class, false)) {
+            logger.info("Training run finished, exiting");
+            System.exit(SpringApplication.exit(context));
+        }
     }
 }
\ No newline at end of file
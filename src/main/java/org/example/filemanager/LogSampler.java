@@ -0,0 +1,28 @@
+package org.example.filemanager;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides which occurrences of a per-file debug message are logged.
+ * Hot paths log one summary per request; the per-file detail is only kept for a random
+ * sample of files, so debug logging stays usable under load without flooding the appender.
+ */
+@Component
+public class LogSampler {
+
+    // Fraction of per-file debug messages that are logged, between 0 and 1
+    @Value("${logging.sample-rate:0.01}")
+    private double sampleRate;
+
+    /**
+     * True if the logger has debug enabled and this occurrence falls into the sample
+     */
+    public boolean sample(Logger logger) {
+        return logger.isDebugEnabled() && sampleRate > 0
+                && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.filemanager;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Count-based circuit breaker over the outcomes of recent S3 calls.
+ * When the failure rate in the window crosses the threshold the breaker opens and calls fail
+ * fast for the open period; afterwards a single trial call decides whether it closes again.
+ * Only server errors, timeouts and connection failures count as failures: missing keys and
+ * other client errors prove S3 is answering, and throttling is handled by the concurrency limit.
+ */
+final class S3CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(S3CircuitBreaker.class);
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+
+    private int next;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    S3CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openMillis) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Returns false if the call must not be sent; every permitted call must be followed by record,
+     * or by release if it failed before reaching S3
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    synchronized void record(boolean failed) {
+        switch (state) {
+            case OPEN -> {
+                // Outcome of a call sent before the breaker opened
+            }
+            case HALF_OPEN -> {
+                if (failed) {
+                    open();
+                } else {
+                    close();
+                }
+            }
+            case CLOSED -> {
+                if (recorded == window.length) {
+                    failures -= window[next] ? 1 : 0;
+                } else {
+                    recorded++;
+                }
+                window[next] = failed;
+                failures += failed ? 1 : 0;
+                next = (next + 1) % window.length;
+
+                if (recorded >= minimumCalls && failures >= recorded * failureRateThreshold) {
+                    open();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends a permitted call without an outcome; a trial call leaves the next one to decide
+     */
+    synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    synchronized long retryAfterSeconds() {
+        long remaining = openNanos - (System.nanoTime() - openedAt);
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining) + 1);
+    }
+
+    private void open() {
+        logger.warn("S3 circuit breaker opened after {} failures in {} calls", failures, recorded);
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        trialInFlight = false;
+    }
+
+    private void close() {
+        logger.info("S3 circuit breaker closed");
+        state = State.CLOSED;
+        trialInFlight = false;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,705 @@
+package org.example.filemanager;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.awscore.AwsRequest;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+/**
+ * Adaptive concurrency limiter in front of every S3 call.
+ * Reads, streaming downloads, writes and listings each get their own AIMD limit, so long
+ * transfers cannot take the slots that HEADs and listings need. A limit grows by roughly one slot per
+ * round of successful calls and halves when S3 answers with throttling, so the application
+ * settles on the concurrency S3 currently accepts instead of piling retries on top of it.
+ * Calls beyond the limit wait in a queue where interactive requests are served before
+ * background work; when the queue is full or the wait runs out the call is shed with
+ * {@link S3ThrottledException}, which the API reports as 429 with Retry-After. A streaming
+ * GetObject holds its slot until the returned stream is closed or aborted. The HTTP connection
+ * pools are sized for every limit at its maximum, so calls wait here, where priorities apply,
+ * and not for a pooled connection.
+ * <p>
+ * Every call also gets a deadline per operation class, and a circuit breaker fails calls fast
+ * while S3 is unhealthy. Small idempotent reads are hedged: if the first attempt has not
+ * answered within the observed p95 latency a second one is sent and the first answer wins.
+ */
+@Component
+public class S3RequestGate {
+    private static final Logger logger = LoggerFactory.getLogger(S3RequestGate.class);
+
+    public enum Operation {
+        // Metadata and small reads; STREAM is a download of a whole object
+        READ, STREAM, WRITE, LIST
+    }
+
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    // Priority of S3 calls made by the current thread; request threads are interactive
+    private static final ThreadLocal<Priority> currentPriority = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+    @Value("${s3.limiter.initial-limit:32}")
+    private int initialLimit;
+
+    @Value("${s3.limiter.min-limit:2}")
+    private int minLimit;
+
+    @Value("${s3.limiter.max-limit:256}")
+    private int maxLimit;
+
+    // Calls waiting per operation before new ones are shed
+    @Value("${s3.limiter.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${s3.limiter.max-wait-millis:5000}")
+    private long maxWaitMillis;
+
+    // Share of the limit background work may occupy, so interactive calls always find a free slot
+    @Value("${s3.limiter.background-share:0.5}")
+    private double backgroundShare;
+
+    // Several throttled responses usually belong to the same overload, so the limit is
+    // halved at most once per interval
+    @Value("${s3.limiter.decrease-interval-millis:1000}")
+    private long decreaseIntervalMillis;
+
+    // Deadlines for a whole call including retries, and for a single attempt (0 = none).
+    // Writes carry request bodies and server-side copies, so they only get an overall deadline.
+    @Value("${s3.timeouts.read-millis:10000}")
+    private long readTimeoutMillis;
+
+    @Value("${s3.timeouts.read-attempt-millis:3000}")
+    private long readAttemptTimeoutMillis;
+
+    @Value("${s3.timeouts.list-millis:30000}")
+    private long listTimeoutMillis;
+
+    @Value("${s3.timeouts.list-attempt-millis:10000}")
+    private long listAttemptTimeoutMillis;
+
+    @Value("${s3.timeouts.write-millis:300000}")
+    private long writeTimeoutMillis;
+
+    @Value("${s3.circuit-breaker.window:50}")
+    private int breakerWindow;
+
+    @Value("${s3.circuit-breaker.minimum-calls:20}")
+    private int breakerMinimumCalls;
+
+    @Value("${s3.circuit-breaker.failure-rate:0.5}")
+    private double breakerFailureRate;
+
+    @Value("${s3.circuit-breaker.open-millis:30000}")
+    private long breakerOpenMillis;
+
+    @Value("${s3.hedging.enabled:true}")
+    private boolean hedgingEnabled;
+
+    // Hedges sent may not exceed this share of hedgeable calls
+    @Value("${s3.hedging.budget:0.1}")
+    private double hedgingBudget;
+
+    // Lower bound for the hedge delay, and the delay used until enough latencies are known
+    @Value("${s3.hedging.min-delay-millis:20}")
+    private long hedgingMinDelayMillis;
+
+    @Value("${s3.hedging.initial-delay-millis:200}")
+    private long hedgingInitialDelayMillis;
+
+    @Value("${s3.hedging.threads:64}")
+    private int hedgingThreads;
+
+    private final Map<Operation, Limiter> limiters = new EnumMap<>(Operation.class);
+    private S3CircuitBreaker circuitBreaker;
+
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong hedgeableCalls = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private ThreadPoolExecutor hedgeExecutor;
+
+    @PostConstruct
+    public void init() {
+        for (Operation operation : Operation.values()) {
+            limiters.put(operation, new Limiter(operation));
+        }
+        circuitBreaker = new S3CircuitBreaker(breakerWindow, breakerMinimumCalls, breakerFailureRate, breakerOpenMillis);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        hedgeExecutor = new ThreadPoolExecutor(0, hedgingThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "s3-hedged-read-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs the action with the given priority for every S3 call it makes on this thread
+     */
+    public static void runWithPriority(Priority priority, Runnable action) {
+        Priority previous = currentPriority.get();
+        currentPriority.set(priority);
+        try {
+            action.run();
+        } finally {
+            currentPriority.set(previous);
+        }
+    }
+
+    /**
+     * Wraps a client so that every call on it passes through the gate
+     */
+    public S3Client wrap(S3Client client) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Operation operation = classify(method, args);
+            if (operation == null) {
+                return invoke(client, method, args);
+            }
+            Object[] callArgs = withTimeouts(operation, args);
+            Supplier<Object> call = () -> invoke(client, method, callArgs);
+            if (hedgingEnabled && isHedgeable(method, callArgs)) {
+                return hedged(method.getName(), operation, call);
+            }
+            return execute(operation, call);
+        };
+        return (S3Client) Proxy.newProxyInstance(S3Client.class.getClassLoader(), new Class<?>[] {S3Client.class}, handler);
+    }
+
+    public <T> T execute(Operation operation, Supplier<T> call) {
+        Limiter limiter = limiters.get(operation);
+        Priority priority = currentPriority.get();
+        limiter.acquire(priority);
+        if (!circuitBreaker.tryAcquire()) {
+            limiter.cancel(priority);
+            throw new S3UnavailableException("S3 is unavailable, circuit breaker is open",
+                    circuitBreaker.retryAfterSeconds());
+        }
+
+        long start = System.nanoTime();
+        boolean throttled = false;
+        boolean failed = false;
+        boolean answered = true;
+        boolean streaming = false;
+        try {
+            T result = call.get();
+            if (result instanceof ResponseInputStream<?> stream) {
+                streaming = true;
+                @SuppressWarnings("unchecked")
+                T held = (T) holdUntilClosed(stream, limiter, priority);
+                return held;
+            }
+            return result;
+        } catch (AwsServiceException e) {
+            if (!isThrottling(e)) {
+                failed = e.statusCode() >= 500;
+                throw e;
+            }
+            throttled = true;
+            throw new S3ThrottledException("S3 is throttling " + operation.name().toLowerCase() + " requests",
+                    limiter.retryAfterSeconds(), e);
+        } catch (SdkClientException e) {
+            // Timeouts and connection failures; a local shortage of pooled connections says nothing about S3
+            failed = isNetworkFailure(e);
+            answered = failed;
+            throw e;
+        } finally {
+            if (answered) {
+                circuitBreaker.record(failed);
+            } else {
+                circuitBreaker.release();
+            }
+            limiter.release(priority, throttled, System.nanoTime() - start, streaming);
+        }
+    }
+
+    /**
+     * A streaming response keeps its slot until the caller closes or aborts the stream, so the
+     * limit counts the connections that are actually busy transferring a body, not just the
+     * calls waiting for response headers
+     */
+    private static <R> ResponseInputStream<R> holdUntilClosed(ResponseInputStream<R> stream, Limiter limiter,
+                                                              Priority priority) {
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                limiter.cancel(priority);
+            }
+        };
+        InputStream body = new FilterInputStream(stream) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    release.run();
+                }
+            }
+        };
+        return new ResponseInputStream<>(stream.response(), AbortableInputStream.create(body, () -> {
+            try {
+                stream.abort();
+            } finally {
+                release.run();
+            }
+        }));
+    }
+
+    /**
+     * True while the circuit breaker is not closed and callers should prefer cached data
+     */
+    public boolean isDegraded() {
+        return circuitBreaker.state() != S3CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * Current limit, in-flight and queued calls per operation
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        limiters.forEach((operation, limiter) -> stats.put(operation.name().toLowerCase(), limiter.stats()));
+        stats.put("circuitBreaker", circuitBreaker.state().name().toLowerCase());
+        stats.put("hedgeableCalls", hedgeableCalls.get());
+        stats.put("hedgesSent", hedgesSent.get());
+        return stats;
+    }
+
+    /**
+     * Runs the call and, if it has not answered within the p95 latency of its kind, sends a second
+     * attempt; the first successful answer is returned and a losing stream is aborted
+     */
+    private Object hedged(String name, Operation operation, Supplier<Object> call) {
+        LatencyTracker tracker = latencies.computeIfAbsent(name, n -> new LatencyTracker());
+        Priority priority = currentPriority.get();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Runnable attempt = () -> runWithPriority(priority, () -> {
+            long start = System.nanoTime();
+            try {
+                Object value = execute(operation, call);
+                tracker.record(System.nanoTime() - start);
+                if (!result.complete(value)) {
+                    discard(value);
+                }
+            } catch (RuntimeException | Error e) {
+                failure.set(e);
+                if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+
+        hedgeableCalls.incrementAndGet();
+        try {
+            hedgeExecutor.execute(attempt);
+        } catch (RejectedExecutionException e) {
+            // No spare threads, so no hedging either
+            return execute(operation, call);
+        }
+
+        try {
+            try {
+                return result.get(tracker.hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (mayHedge(operation)) {
+                    outstanding.incrementAndGet();
+                    hedgesSent.incrementAndGet();
+                    try {
+                        hedgeExecutor.execute(attempt);
+                    } catch (RejectedExecutionException rejected) {
+                        if (outstanding.decrementAndGet() == 0) {
+                            result.completeExceptionally(failure.get());
+                        }
+                    }
+                }
+                return result.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for S3", e);
+        }
+    }
+
+    /**
+     * Hedges only use spare capacity: never while calls are queueing or S3 is unhealthy
+     */
+    private boolean mayHedge(Operation operation) {
+        return hedgesSent.get() < hedgeableCalls.get() * hedgingBudget
+                && !limiters.get(operation).hasQueue()
+                && !isDegraded();
+    }
+
+    private static void discard(Object value) {
+        if (value instanceof ResponseInputStream<?> stream) {
+            stream.abort();
+        }
+    }
+
+    /**
+     * HeadObject, buffered GetObject, and streaming GetObject of ranges or internal objects
+     * (derivatives), which are known to be small
+     */
+    private static boolean isHedgeable(Method method, Object[] args) {
+        if (args == null || args.length != 1) {
+            return false;
+        }
+        return switch (method.getName()) {
+            case "headObject", "getObjectAsBytes" -> args[0] instanceof AwsRequest;
+            case "getObject" -> args[0] instanceof GetObjectRequest request
+                    && (request.range() != null || request.key().startsWith(S3Service.INTERNAL_PREFIX));
+            default -> false;
+        };
+    }
+
+    /**
+     * Adds the operation's deadlines to a request that does not carry its own
+     */
+    private Object[] withTimeouts(Operation operation, Object[] args) {
+        if (args == null || args.length == 0 || !(args[0] instanceof AwsRequest request)
+                || request.overrideConfiguration().isPresent()) {
+            return args;
+        }
+        long callTimeout = switch (operation) {
+            case READ, STREAM -> readTimeoutMillis;
+            case LIST -> listTimeoutMillis;
+            case WRITE -> writeTimeoutMillis;
+        };
+        long attemptTimeout = switch (operation) {
+            case READ, STREAM -> readAttemptTimeoutMillis;
+            case LIST -> listAttemptTimeoutMillis;
+            case WRITE -> 0;
+        };
+
+        Object[] callArgs = args.clone();
+        callArgs[0] = request.toBuilder()
+                .overrideConfiguration(config -> {
+                    config.apiCallTimeout(Duration.ofMillis(callTimeout));
+                    if (attemptTimeout > 0) {
+                        config.apiCallAttemptTimeout(Duration.ofMillis(attemptTimeout));
+                    }
+                })
+                .build();
+        return callArgs;
+    }
+
+    private static Operation classify(Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            return null;
+        }
+        String name = method.getName();
+        if (name.equals("close") || name.equals("serviceName") || name.equals("serviceClientConfiguration")
+                || name.equals("utilities") || name.equals("waiter")) {
+            return null;
+        }
+        if (name.startsWith("list")) {
+            return Operation.LIST;
+        }
+        if (method.getReturnType() == ResponseInputStream.class && !isHedgeable(method, args)) {
+            return Operation.STREAM;
+        }
+        if (name.startsWith("get") || name.startsWith("head")) {
+            return Operation.READ;
+        }
+        return Operation.WRITE;
+    }
+
+    private static Object invoke(S3Client client, Method method, Object[] args) {
+        try {
+            return method.invoke(client, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot invoke S3 client method " + method.getName(), e);
+        }
+    }
+
+    private static boolean isThrottling(AwsServiceException e) {
+        return e.isThrottlingException() || e.statusCode() == 503 || e.statusCode() == 429;
+    }
+
+    /**
+     * Whether a client-side failure was S3 or the network failing the call: call timeouts and
+     * I/O errors. Failures before the request was sent, such as waiting too long for a pooled
+     * connection or missing credentials, are not.
+     */
+    static boolean isNetworkFailure(SdkClientException e) {
+        if (e instanceof ApiCallTimeoutException || e instanceof ApiCallAttemptTimeoutException) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectionPoolTimeoutException) {
+                return false;
+            }
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class Limiter {
+        private final Operation operation;
+        private final Deque<Waiter> interactiveQueue = new ArrayDeque<>();
+        private final Deque<Waiter> backgroundQueue = new ArrayDeque<>();
+
+        private double limit;
+        private int inFlight;
+        private int backgroundInFlight;
+        private long lastDecrease;
+        // Smoothed call latency in nanoseconds, used to estimate Retry-After
+        private double averageLatency = TimeUnit.MILLISECONDS.toNanos(100);
+
+        Limiter(Operation operation) {
+            this.operation = operation;
+            this.limit = initialLimit;
+        }
+
+        synchronized void acquire(Priority priority) {
+            boolean queueAhead = !interactiveQueue.isEmpty()
+                    || (priority == Priority.BACKGROUND && !backgroundQueue.isEmpty());
+            if (!queueAhead && canStart(priority)) {
+                start(priority);
+                return;
+            }
+            if (interactiveQueue.size() + backgroundQueue.size() >= queueCapacity) {
+                throw shed("queue is full");
+            }
+
+            Waiter waiter = new Waiter(priority);
+            Deque<Waiter> queue = priority == Priority.INTERACTIVE ? interactiveQueue : backgroundQueue;
+            queue.addLast(waiter);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            try {
+                while (!waiter.granted) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.remove(waiter);
+                        throw shed("timed out waiting for capacity");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.granted) {
+                    finish(priority);
+                    dispatch();
+                } else {
+                    queue.remove(waiter);
+                }
+                throw new RuntimeException("Interrupted while waiting for S3 capacity", e);
+            }
+        }
+
+        /**
+         * Returns a slot that was acquired but never used, or that a closed stream held on to
+         */
+        synchronized void cancel(Priority priority) {
+            finish(priority);
+            dispatch();
+        }
+
+        synchronized boolean hasQueue() {
+            return !interactiveQueue.isEmpty() || !backgroundQueue.isEmpty();
+        }
+
+        /**
+         * Records the outcome of a call; a call that returned a stream keeps its slot until
+         * {@link #cancel} is called for it
+         */
+        synchronized void release(Priority priority, boolean throttled, long latencyNanos, boolean keepSlot) {
+            boolean saturated = inFlight >= (int) limit;
+            if (!keepSlot) {
+                finish(priority);
+            }
+            averageLatency = averageLatency * 0.9 + latencyNanos * 0.1;
+
+            long now = System.nanoTime();
+            if (throttled) {
+                if (now - lastDecrease >= TimeUnit.MILLISECONDS.toNanos(decreaseIntervalMillis)) {
+                    lastDecrease = now;
+                    limit = Math.max(minLimit, limit / 2);
+                    logger.warn("S3 throttled {} requests, concurrency limit lowered to {}", operation, (int) limit);
+                }
+            } else if (saturated && limit < maxLimit) {
+                // Only grow while the limit is actually the bottleneck, so idle periods do not inflate it
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            dispatch();
+        }
+
+        /**
+         * Seconds until a queued call could be expected to run at the current limit and latency
+         */
+        synchronized long retryAfterSeconds() {
+            double rounds = (interactiveQueue.size() + backgroundQueue.size()) / Math.max(1, limit) + 1;
+            return Math.max(1, (long) Math.ceil(rounds * averageLatency / TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        synchronized Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("queuedInteractive", interactiveQueue.size());
+            stats.put("queuedBackground", backgroundQueue.size());
+            stats.put("averageLatencyMillis", Math.round(averageLatency / 1_000_000));
+            return stats;
+        }
+
+        private boolean canStart(Priority priority) {
+            int slots = Math.max(1, (int) limit);
+            if (inFlight >= slots) {
+                return false;
+            }
+            return priority == Priority.INTERACTIVE
+                    || backgroundInFlight < Math.max(1, (int) (slots * backgroundShare));
+        }
+
+        private void start(Priority priority) {
+            inFlight++;
+            if (priority == Priority.BACKGROUND) {
+                backgroundInFlight++;
+            }
+        }
+
+        private void finish(Priority priority) {
+            inFlight--;
+            if (priority == Priority.BACKGROUND) {
+                backgroundInFlight--;
+            }
+        }
+
+        /**
+         * Hands free slots to waiting calls, interactive ones first
+         */
+        private void dispatch() {
+            boolean granted = false;
+            while (true) {
+                Waiter next = null;
+                if (!interactiveQueue.isEmpty()) {
+                    if (canStart(Priority.INTERACTIVE)) {
+                        next = interactiveQueue.poll();
+                    }
+                } else if (!backgroundQueue.isEmpty() && canStart(Priority.BACKGROUND)) {
+                    next = backgroundQueue.poll();
+                }
+                if (next == null) {
+                    break;
+                }
+                start(next.priority);
+                next.granted = true;
+                granted = true;
+            }
+            if (granted) {
+                notifyAll();
+            }
+        }
+
+        private S3ThrottledException shed(String reason) {
+            logger.debug("Shedding {} request: {}", operation, reason);
+            return new S3ThrottledException("Too many concurrent " + operation.name().toLowerCase()
+                    + " requests: " + reason, retryAfterSeconds());
+        }
+    }
+
+    /**
+     * Recent latencies of one kind of call, for the p95 hedge delay
+     */
+    private final class LatencyTracker {
+        private static final int SAMPLES = 256;
+        // The percentile is recomputed every this many samples rather than on each call
+        private static final int RECOMPUTE_INTERVAL = 32;
+
+        private final long[] samples = new long[SAMPLES];
+        private int next;
+        private int count;
+        private long p95Nanos = -1;
+
+        synchronized void record(long latencyNanos) {
+            samples[next] = latencyNanos;
+            next = (next + 1) % SAMPLES;
+            count = Math.min(count + 1, SAMPLES);
+            if (next % RECOMPUTE_INTERVAL == 0 && count >= RECOMPUTE_INTERVAL) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                p95Nanos = sorted[(int) Math.ceil(count * 0.95) - 1];
+            }
+        }
+
+        synchronized long hedgeDelayMillis() {
+            if (p95Nanos < 0) {
+                return hedgingInitialDelayMillis;
+            }
+            return Math.max(hedgingMinDelayMillis, TimeUnit.NANOSECONDS.toMillis(p95Nanos));
+        }
+    }
+
+    private static final class Waiter {
+        private final Priority priority;
+        private boolean granted;
+
+        Waiter(Priority priority) {
+            this.priority = priority;
+        }
+    }
+}
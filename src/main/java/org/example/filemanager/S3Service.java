@@ -1,30 +1,74 @@
 package org.example.filemanager;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Collections;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.example.filemanager.model.FileChangeEvent;
+import org.example.filemanager.model.FileEntry;
+import org.example.filemanager.model.FileVersion;
+import org.example.filemanager.model.StoredObject;
+import org.example.filemanager.service.CompressionService;
+import org.example.filemanager.service.FileCatalogService;
+import org.example.filemanager.storage.ObjectContent;
+import org.example.filemanager.storage.ObjectNotFoundException;
+import org.example.filemanager.storage.PackingStorageBackend;
+import org.example.filemanager.storage.StorageBackend;
+import org.example.filemanager.storage.StorageOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.util.UriUtils;
 
-import software.amazon.awssdk.core.sync.RequestBody;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.AbortIncompleteMultipartUpload;
+import software.amazon.awssdk.services.s3.model.BucketLifecycleConfiguration;
+import software.amazon.awssdk.services.s3.model.BucketVersioningStatus;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteMarkerEntry;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ExpirationStatus;
+import software.amazon.awssdk.services.s3.model.GetBucketLifecycleConfigurationRequest;
+import software.amazon.awssdk.services.s3.model.GetBucketVersioningRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
-import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.LifecycleRule;
+import software.amazon.awssdk.services.s3.model.LifecycleRuleFilter;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoncurrentVersionExpiration;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.ObjectVersion;
+import software.amazon.awssdk.services.s3.model.PutBucketLifecycleConfigurationRequest;
+import software.amazon.awssdk.services.s3.model.PutBucketVersioningRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
-import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.VersioningConfiguration;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
@@ -34,12 +78,56 @@ public class S3Service {
 
     private static final Logger logger = LoggerFactory.getLogger(S3Service.class);
 
+    // Objects the application keeps for itself (derivatives etc.); never listed as user files
+    public static final String INTERNAL_PREFIX = "~internal/";
+    // Longest key S3 accepts
+    private static final int MAX_KEY_BYTES = 1024;
+    // Files added to or read into the catalog per step of a bulk load, the size of a listing page
+    private static final int CATALOG_LOAD_PAGE_SIZE = 1000;
+
+    // DeleteObjects accepts at most this many keys per call
+    public static final int MAX_DELETE_BATCH = 1000;
+
+    // Served by the application when the storage backend cannot presign URLs
+    private static final String DOWNLOAD_PATH = "/api/files/download/";
+
+    private static final String VERSION_LIFECYCLE_RULE_ID = "file-manager-noncurrent-versions";
+
+    @Autowired
+    private StorageBackend storage;
+
+    // Used directly only for S3 features without a storage-neutral equivalent: versions,
+    // bucket configuration and presigned URLs
     @Autowired
     private S3Client s3Client;
 
+    @Autowired
+    private CompressionService compressionService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private FileCatalogService fileCatalog;
+
+    @Autowired
+    private LogSampler logSampler;
+
+    @Autowired
+    private StorageRouter storageRouter;
+
+    // Last timestamp used in a generated key
+    private final AtomicLong keyTimestamp = new AtomicLong();
+
+    // One presigner per region, created when the first URL for it is signed
+    private final Map<String, S3Presigner> presigners = new ConcurrentHashMap<>();
+
     @Value("${aws.bucket.name}")
     private String bucketName;
 
+    @Value("${file-catalog.preload:true}")
+    private boolean preloadCatalog;
+
     /**
      * Uploads a MultipartFile directly to S3 without creating temporary files
      */
@@ -49,26 +137,14 @@ public class S3Service {
         }
 
         String originalFilename = file.getOriginalFilename();
-        logger.info("Original filename: {}", originalFilename);
 
         // Generate unique key name to avoid conflicts
         String keyName = generateUniqueKeyName(originalFilename);
-        logger.info("Generated key name: {}", keyName);
+        logger.debug("Uploading {} as {}", originalFilename, keyName);
 
         try {
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(keyName)
-                    .contentType(file.getContentType())
-                    .contentLength(file.getSize())
-                    .metadata(Collections.singletonMap("original-filename", originalFilename))
-                    .build();
-
-            logger.info("Uploading file with metadata: {}", putObjectRequest.metadata());
-
-            s3Client.putObject(putObjectRequest,
-                    RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
-
+            String versionId = storeFile(keyName, file, originalFilename);
+            publishChange(FileChangeEvent.Type.ADDED, keyName, file, originalFilename, versionId);
             return keyName;
         } catch (S3Exception e) {
             logger.error("Failed to upload file to S3", e);
@@ -81,25 +157,30 @@ public class S3Service {
      */
     public String generateDownloadUrl(String keyName) {
         try {
-            // First check if file exists
-            headObject(keyName);
+            // First check if file exists; falls back to the catalog while S3 is unhealthy
+            getFileMetadata(keyName);
 
-            try (S3Presigner presigner = S3Presigner.create()) {
-                GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                        .bucket(bucketName)
-                        .key(keyName)
-                        .build();
+            if (storage.unwrap(S3StorageBackend.class) == null || isPacked(keyName)) {
+                // Other backends, and files kept inside packs, are only reachable through the application
+                return DOWNLOAD_PATH + UriUtils.encodePathSegment(keyName, StandardCharsets.UTF_8);
+            }
 
-                GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
-                        .signatureDuration(Duration.ofHours(1)) // URL expires in 1 hour
-                        .getObjectRequest(getObjectRequest)
-                        .build();
+            // Clients download straight from the nearest healthy copy of the file
+            StorageRouter.Location location = storageRouter.locate(keyName);
+            S3Presigner presigner = presigners.computeIfAbsent(location.region(),
+                    region -> S3Presigner.builder().region(Region.of(region)).build());
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(location.bucket())
+                    .key(keyName)
+                    .build();
 
-                PresignedGetObjectRequest presignedRequest = presigner.presignGetObject(presignRequest);
-                return presignedRequest.url().toString();
-            }
-        } catch (NoSuchKeyException e) {
-            throw new RuntimeException("File not found: " + keyName, e);
+            GetObjectPresignRequest presignRequest = GetObjectPresignRequest.builder()
+                    .signatureDuration(Duration.ofHours(1)) // URL expires in 1 hour
+                    .getObjectRequest(getObjectRequest)
+                    .build();
+
+            PresignedGetObjectRequest presignedRequest = presigner.presignGetObject(presignRequest);
+            return presignedRequest.url().toString();
         } catch (S3Exception e) {
             throw new RuntimeException("Failed to generate download URL: " + e.getMessage(), e);
         }
@@ -109,14 +190,28 @@ public class S3Service {
      * Downloads file content as byte array (for direct streaming to client)
      */
     public byte[] downloadFileContent(String keyName) {
-        try {
-            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(keyName)
-                    .build();
+        try (ObjectContent object = storage.readFully(keyName)) {
+            // Stored compressed, callers always get the original content
+            String codec = object.object().metadata().get(CompressionService.METADATA_CODEC);
+            try (InputStream in = compressionService.decode(object, codec)) {
+                return in.readAllBytes();
+            }
+        } catch (ObjectNotFoundException e) {
+            throw new RuntimeException("File not found: " + keyName, e);
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to download file: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to decompress file: " + e.getMessage(), e);
+        }
+    }
 
-            return s3Client.getObjectAsBytes(getObjectRequest).asByteArray();
-        } catch (NoSuchKeyException e) {
+    /**
+     * Opens a streaming read of the file content as stored; the caller must close the returned stream
+     */
+    public ObjectContent openFileStream(String keyName) {
+        try {
+            return storage.open(keyName);
+        } catch (ObjectNotFoundException e) {
             throw new RuntimeException("File not found: " + keyName, e);
         } catch (S3Exception e) {
             throw new RuntimeException("Failed to download file: " + e.getMessage(), e);
@@ -124,16 +219,34 @@ public class S3Service {
     }
 
     /**
-     * Deletes a file from S3
+     * Stores an internal object such as a derivative; no change event is published
      */
-    public boolean deleteFile(String keyName) {
+    public void putInternalObject(String keyName, byte[] content, String contentType) {
         try {
-            DeleteObjectRequest deleteRequest = DeleteObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(keyName)
-                    .build();
+            storage.put(keyName, new ByteArrayInputStream(content), content.length, contentType, Map.of());
+        } catch (S3Exception | IOException e) {
+            throw new RuntimeException("Failed to store internal object: " + e.getMessage(), e);
+        }
+    }
 
-            s3Client.deleteObject(deleteRequest);
+    /**
+     * Deletes an internal object; no change event is published
+     */
+    public void deleteInternalObject(String keyName) {
+        try {
+            storage.delete(keyName);
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to delete internal object: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes a file from storage
+     */
+    public boolean deleteFile(String keyName) {
+        try {
+            storage.delete(keyName);
+            eventPublisher.publishEvent(FileChangeEvent.deleted(keyName));
             return true;
         } catch (S3Exception e) {
             throw new RuntimeException("Failed to delete file: " + e.getMessage(), e);
@@ -145,16 +258,12 @@ public class S3Service {
      */
     public String findExistingFileByOriginalName(String originalFilename) {
         try {
-            List<S3Object> allFiles = listFiles();
-
-            for (S3Object file : allFiles) {
-                HeadObjectResponse metadata = getFileMetadata(file.key());
-                String existingOriginalName = metadata.metadata().get("original-filename");
+            ensureCatalogLoaded();
+            List<String> keys = fileCatalog.findKeysByOriginalName(originalFilename);
 
-                if (originalFilename.equals(existingOriginalName)) {
-                    logger.info("Found existing file with same original name: {} -> {}", originalFilename, file.key());
-                    return file.key();
-                }
+            if (!keys.isEmpty()) {
+                logger.info("Found existing file with same original name: {} -> {}", originalFilename, keys.get(0));
+                return keys.get(0);
             }
 
             logger.info("No existing file found with original name: {}", originalFilename);
@@ -165,6 +274,77 @@ public class S3Service {
         }
     }
 
+    /**
+     * Existing files for many original filenames at once, as name to key; names without a file
+     * are absent. One catalog lookup per distinct name instead of one request per file.
+     */
+    public Map<String, String> findExistingFilesByOriginalNames(Collection<String> originalFilenames) {
+        ensureCatalogLoaded();
+        return fileCatalog.findFirstKeysByOriginalNames(originalFilenames);
+    }
+
+    /**
+     * Copies a file server-side without transferring its content through the application.
+     * The copy gets a generated key unless targetKey is given, and keeps the original filename
+     * unless newOriginalName is given.
+     */
+    public String copyFile(String sourceKey, String targetKey, String newOriginalName) {
+        StoredObject source = getFileMetadata(sourceKey);
+        String originalName = newOriginalName != null ? newOriginalName : source.metadata().get("original-filename");
+        String destinationKey = targetKey != null ? validateTargetKey(targetKey) : generateUniqueKeyName(originalName);
+        requireAbsent(destinationKey);
+
+        String versionId;
+        try {
+            versionId = copyObject(sourceKey, destinationKey, source, originalName);
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to copy file: " + e.getMessage(), e);
+        }
+        publishCopy(FileChangeEvent.Type.ADDED, destinationKey, null, source, originalName, versionId);
+        return destinationKey;
+    }
+
+    /**
+     * Changes the original filename of a file; the content is copied onto itself inside the storage backend
+     */
+    public String renameFile(String keyName, String newOriginalName) {
+        StoredObject source = getFileMetadata(keyName);
+
+        String versionId;
+        try {
+            versionId = copyObject(keyName, keyName, source, newOriginalName);
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to rename file: " + e.getMessage(), e);
+        }
+        publishCopy(FileChangeEvent.Type.REPLACED, keyName, null, source, newOriginalName, versionId);
+        return keyName;
+    }
+
+    /**
+     * Moves a file to a new key server-side, optionally renaming it at the same time
+     */
+    public String moveFile(String sourceKey, String targetKey, String newOriginalName) {
+        if (targetKey == null || targetKey.equals(sourceKey)) {
+            return renameFile(sourceKey, newOriginalName);
+        }
+        validateTargetKey(targetKey);
+
+        StoredObject source = getFileMetadata(sourceKey);
+        String originalName = newOriginalName != null ? newOriginalName : source.metadata().get("original-filename");
+        requireAbsent(targetKey);
+
+        String versionId;
+        try {
+            versionId = copyObject(sourceKey, targetKey, source, originalName);
+            storage.delete(sourceKey);
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to move file: " + e.getMessage(), e);
+        }
+        // One event, so listeners update both keys in a single step
+        publishCopy(FileChangeEvent.Type.MOVED, targetKey, sourceKey, source, originalName, versionId);
+        return targetKey;
+    }
+
     /**
      * Uploads file with option to replace existing file
      */
@@ -177,19 +357,9 @@ public class S3Service {
         logger.info("Replacing existing file: {} with new content", existingKey);
 
         try {
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(existingKey)
-                    .contentType(file.getContentType())
-                    .contentLength(file.getSize())
-                    .metadata(Collections.singletonMap("original-filename", originalFilename))
-                    .build();
-
-            logger.info("Replacing file with metadata: {}", putObjectRequest.metadata());
-
-            s3Client.putObject(putObjectRequest,
-                    RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
-
+            // With bucket versioning the previous content stays available as a noncurrent version
+            String versionId = storeFile(existingKey, file, originalFilename);
+            publishChange(FileChangeEvent.Type.REPLACED, existingKey, file, originalFilename, versionId);
             return existingKey;
         } catch (S3Exception e) {
             logger.error("Failed to replace file in S3", e);
@@ -200,46 +370,607 @@ public class S3Service {
     /**
      * Gets file metadata
      */
-    public HeadObjectResponse getFileMetadata(String keyName) {
+    public StoredObject getFileMetadata(String keyName) {
         try {
-            HeadObjectResponse response = headObject(keyName);
-            logger.info("Retrieved metadata for key {}: {}", keyName, response.metadata());
-            return response;
-        } catch (NoSuchKeyException e) {
+            StoredObject object = storage.head(keyName);
+            if (logSampler.sample(logger)) {
+                logger.debug("Retrieved metadata for key {}: {}", keyName, object.metadata());
+            }
+            return object;
+        } catch (ObjectNotFoundException e) {
             logger.error("File not found: {}", keyName, e);
             throw new RuntimeException("File not found: " + keyName, e);
+        } catch (S3ThrottledException | SdkClientException e) {
+            FileEntry cached = fileCatalog.get(keyName);
+            if (cached == null) {
+                throw e;
+            }
+            logger.warn("S3 unavailable ({}), serving metadata for {} from the catalog", e.getMessage(), keyName);
+            // Files uploaded without a name have no original-filename entry, as in a HEAD response
+            Map<String, String> metadata = cached.originalName() != null
+                    ? Map.of("original-filename", cached.originalName()) : Map.of();
+            return new StoredObject(keyName, cached.size(), cached.lastModified(), cached.eTag(),
+                    cached.contentType(), null, metadata, null, null);
         }
     }
 
     /**
-     * Lists all files in the S3 bucket
+     * Lists all files in storage
      */
-    public List<S3Object> listFiles() {
+    public List<StoredObject> listFiles() {
+        return listFiles("");
+    }
+
+    /**
+     * Lists all files whose key starts with the given prefix, following pagination
+     */
+    public List<StoredObject> listFiles(String prefix) {
         try {
-            ListObjectsV2Request request = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .build();
+            List<StoredObject> files = new ArrayList<>();
+            storage.list(prefix, null, file -> {
+                if (!file.key().startsWith(INTERNAL_PREFIX)) {
+                    files.add(file);
+                }
+                return true;
+            });
+            return files;
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to list files: " + e.getMessage(), e);
+        } catch (S3ThrottledException | SdkClientException e) {
+            if (!fileCatalog.isLoaded()) {
+                throw e;
+            }
+            logger.warn("S3 unavailable ({}), serving listing of '{}' from the catalog", e.getMessage(), prefix);
+            return fileCatalog.getAll().stream()
+                    .filter(entry -> entry.key().startsWith(prefix))
+                    .map(entry -> StoredObject.listed(entry.key(), entry.size(), entry.lastModified(), entry.eTag(),
+                            null))
+                    .toList();
+        }
+    }
 
-            ListObjectsV2Response response = s3Client.listObjectsV2(request);
-            return response.contents();
+    /**
+     * Visits files in key order starting after the given key (null for the beginning) until
+     * the visitor returns false. Only the current listing page is held in memory.
+     */
+    public void scanFiles(String startAfter, Predicate<StoredObject> visitor) {
+        try {
+            storage.list("", startAfter, file -> file.key().startsWith(INTERNAL_PREFIX) || visitor.test(file));
         } catch (S3Exception e) {
             throw new RuntimeException("Failed to list files: " + e.getMessage(), e);
         }
     }
 
-    private HeadObjectResponse headObject(String keyName) {
-        HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
-                .bucket(bucketName)
-                .key(keyName)
-                .build();
+    /**
+     * Reads a file's catalog entry straight from storage, or null if it does not exist
+     */
+    public FileEntry describeFile(String keyName) {
+        try {
+            return toFileEntry(keyName, storage.head(keyName));
+        } catch (ObjectNotFoundException e) {
+            return null;
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to read file metadata: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lists every version and delete marker of one key, newest first. The listing is scoped to
+     * the key with a prefix and stops at the first other key, so its cost does not grow with the bucket.
+     */
+    public List<FileVersion> listVersions(String keyName) {
+        requireVersioning();
+        try {
+            List<FileVersion> versions = new ArrayList<>();
+            String keyMarker = null;
+            String versionIdMarker = null;
+
+            while (true) {
+                ListObjectVersionsResponse page = s3Client.listObjectVersions(ListObjectVersionsRequest.builder()
+                        .bucket(bucketName)
+                        .prefix(keyName)
+                        .keyMarker(keyMarker)
+                        .versionIdMarker(versionIdMarker)
+                        .build());
+
+                // Other keys sharing the prefix sort after this one, so seeing one ends the scan
+                boolean pastKey = false;
+                for (ObjectVersion version : page.versions()) {
+                    if (version.key().equals(keyName)) {
+                        versions.add(new FileVersion(keyName, version.versionId(), version.size(),
+                                version.lastModified(), Boolean.TRUE.equals(version.isLatest()), false));
+                    } else {
+                        pastKey = true;
+                    }
+                }
+                for (DeleteMarkerEntry marker : page.deleteMarkers()) {
+                    if (marker.key().equals(keyName)) {
+                        versions.add(new FileVersion(keyName, marker.versionId(), 0, marker.lastModified(),
+                                Boolean.TRUE.equals(marker.isLatest()), true));
+                    } else {
+                        pastKey = true;
+                    }
+                }
+
+                if (pastKey || !Boolean.TRUE.equals(page.isTruncated())) {
+                    break;
+                }
+                keyMarker = page.nextKeyMarker();
+                versionIdMarker = page.nextVersionIdMarker();
+            }
+
+            versions.sort(Comparator.comparing(FileVersion::lastModified).reversed());
+            return versions;
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to list versions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Makes an earlier version current again by copying it over the key inside S3
+     */
+    public String restoreVersion(String keyName, String versionId) {
+        requireVersioning();
+        StoredObject source;
+        try {
+            source = S3StorageBackend.toStoredObject(keyName, s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(keyName)
+                    .versionId(versionId)
+                    .build()));
+        } catch (NoSuchKeyException e) {
+            throw new RuntimeException("Version not found: " + keyName + " " + versionId, e);
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to restore version: " + e.getMessage(), e);
+        }
+
+        String restoredVersionId;
+        try {
+            restoredVersionId = storage.unwrap(S3StorageBackend.class).copyVersion(keyName, versionId, keyName,
+                    source, source.metadata());
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to restore version: " + e.getMessage(), e);
+        }
+        // A packed copy written since that version would otherwise keep shadowing it
+        PackingStorageBackend packing = storage.unwrap(PackingStorageBackend.class);
+        if (packing != null) {
+            packing.removePacked(keyName);
+        }
+        logger.info("Restored {} to version {} as {}", keyName, versionId, restoredVersionId);
+        publishCopy(FileChangeEvent.Type.REPLACED, keyName, null, source, null, restoredVersionId);
+        return restoredVersionId;
+    }
+
+    /**
+     * Permanently deletes specific versions of a key with batched DeleteObjects calls.
+     * Returns the number of versions deleted.
+     */
+    public int deleteVersions(String keyName, List<String> versionIds) {
+        return deleteVersions(versionIds.stream()
+                .map(versionId -> new FileVersion(keyName, versionId, 0, null, false, false))
+                .toList());
+    }
+
+    /**
+     * Permanently deletes the given versions, of any keys, with batched DeleteObjects calls.
+     * Returns the number of versions deleted.
+     */
+    public int deleteVersions(List<FileVersion> versions) {
+        requireVersioning();
+        int deleted = 0;
+        try {
+            for (int start = 0; start < versions.size(); start += MAX_DELETE_BATCH) {
+                List<ObjectIdentifier> batch = versions.subList(start, Math.min(start + MAX_DELETE_BATCH, versions.size()))
+                        .stream()
+                        .map(version -> ObjectIdentifier.builder().key(version.key()).versionId(version.versionId()).build())
+                        .toList();
+
+                DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(bucketName)
+                        .delete(Delete.builder().objects(batch).quiet(true).build())
+                        .build());
+                response.errors().forEach(error -> logger.warn("Failed to delete version {} of {}: {}",
+                        error.versionId(), error.key(), error.message()));
+                deleted += batch.size() - response.errors().size();
+            }
+            return deleted;
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to delete versions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes up to MAX_DELETE_BATCH files with one DeleteObjects call and publishes a change
+     * event for each. Returns the keys that were deleted.
+     */
+    public List<String> deleteFiles(List<String> keyNames) {
+        if (keyNames.size() > MAX_DELETE_BATCH) {
+            throw new IllegalArgumentException("At most " + MAX_DELETE_BATCH + " files can be deleted at once");
+        }
+        if (keyNames.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<String> deleted = storage.delete(keyNames);
+            deleted.forEach(keyName -> eventPublisher.publishEvent(FileChangeEvent.deleted(keyName)));
+            return deleted;
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to delete files: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streams every version and delete marker under a prefix to the visitor in key order, one
+     * listing page at a time. Entries of one key arrive together but not sorted by age.
+     */
+    public void scanVersions(String prefix, Consumer<FileVersion> visitor) {
+        requireVersioning();
+        try {
+            String keyMarker = null;
+            String versionIdMarker = null;
+            while (true) {
+                ListObjectVersionsResponse page = s3Client.listObjectVersions(ListObjectVersionsRequest.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix)
+                        .keyMarker(keyMarker)
+                        .versionIdMarker(versionIdMarker)
+                        .build());
+
+                // Versions and delete markers come as two key-ordered lists; merge them so keys stay grouped
+                List<ObjectVersion> versions = page.versions();
+                List<DeleteMarkerEntry> markers = page.deleteMarkers();
+                int v = 0;
+                int m = 0;
+                while (v < versions.size() || m < markers.size()) {
+                    if (m == markers.size() || (v < versions.size()
+                            && FileCatalogService.KEY_ORDER.compare(versions.get(v).key(), markers.get(m).key()) <= 0)) {
+                        ObjectVersion version = versions.get(v++);
+                        if (!version.key().startsWith(INTERNAL_PREFIX)) {
+                            visitor.accept(new FileVersion(version.key(), version.versionId(), version.size(),
+                                    version.lastModified(), Boolean.TRUE.equals(version.isLatest()), false));
+                        }
+                    } else {
+                        DeleteMarkerEntry marker = markers.get(m++);
+                        if (!marker.key().startsWith(INTERNAL_PREFIX)) {
+                            visitor.accept(new FileVersion(marker.key(), marker.versionId(), 0, marker.lastModified(),
+                                    Boolean.TRUE.equals(marker.isLatest()), true));
+                        }
+                    }
+                }
+
+                if (!Boolean.TRUE.equals(page.isTruncated())) {
+                    return;
+                }
+                keyMarker = page.nextKeyMarker();
+                versionIdMarker = page.nextVersionIdMarker();
+            }
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to list versions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether the storage backend keeps file versions; only S3 buckets do
+     */
+    public boolean supportsVersioning() {
+        return storage.unwrap(S3StorageBackend.class) != null;
+    }
+
+    /**
+     * Whether the file's content is kept inside a pack of small files rather than as an object
+     */
+    private boolean isPacked(String keyName) {
+        PackingStorageBackend packing = storage.unwrap(PackingStorageBackend.class);
+        return packing != null && packing.isPacked(keyName);
+    }
+
+    /**
+     * Type of the configured storage backend, e.g. "s3" or "local"
+     */
+    public String storageType() {
+        return storage.type();
+    }
+
+    /**
+     * Whether files can be moved between storage classes; only S3 buckets have them
+     */
+    public boolean supportsStorageClasses() {
+        return storage.unwrap(S3StorageBackend.class) != null;
+    }
 
-        return s3Client.headObject(headObjectRequest);
+    /**
+     * Moves a file to another storage class in place if it still has the given ETag, and returns
+     * whether it was moved. Content and metadata are unchanged, so no change event is published;
+     * the catalog entry keeps its modification time and takes the copy's ETag.
+     */
+    public boolean transitionStorageClass(String keyName, String eTag, String storageClass) {
+        if (!supportsStorageClasses()) {
+            throw new UnsupportedOperationException("Storage classes require the S3 storage backend, not "
+                    + storage.type());
+        }
+        try {
+            if (storage.unwrap(S3StorageBackend.class).transition(keyName, eTag, storageClass) == null) {
+                return false;
+            }
+            FileEntry entry = fileCatalog.get(keyName);
+            if (entry != null) {
+                StoredObject copied = storage.head(keyName);
+                fileCatalog.put(new FileEntry(keyName, entry.originalName(), entry.size(), entry.lastModified(),
+                        entry.contentType(), copied.eTag()));
+            }
+            fileCatalog.invalidateVersions(keyName);
+            logger.info("Moved {} to storage class {}", keyName, storageClass);
+            return true;
+        } catch (ObjectNotFoundException e) {
+            return false;
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to change storage class of " + keyName + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether deleting a file leaves its content behind as a noncurrent version, which is the case
+     * once versioning has been enabled on the bucket, even if it was suspended since
+     */
+    public boolean keepsDeletedVersions() {
+        if (!supportsVersioning()) {
+            return false;
+        }
+        try {
+            BucketVersioningStatus status = s3Client.getBucketVersioning(GetBucketVersioningRequest.builder()
+                    .bucket(bucketName)
+                    .build()).status();
+            return status == BucketVersioningStatus.ENABLED || status == BucketVersioningStatus.SUSPENDED;
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to read bucket versioning: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Turns on bucket versioning so replaced and deleted files keep their previous content
+     */
+    public void enableVersioning() {
+        requireVersioning();
+        try {
+            s3Client.putBucketVersioning(PutBucketVersioningRequest.builder()
+                    .bucket(bucketName)
+                    .versioningConfiguration(VersioningConfiguration.builder()
+                            .status(BucketVersioningStatus.ENABLED)
+                            .build())
+                    .build());
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to enable versioning: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Installs (or updates) the lifecycle rule that lets S3 expire old noncurrent versions on its own.
+     * Other lifecycle rules on the bucket are preserved.
+     */
+    public void applyNoncurrentVersionLifecycle(int noncurrentDays, int newerNoncurrentVersions) {
+        requireVersioning();
+        try {
+            List<LifecycleRule> rules = new ArrayList<>();
+            try {
+                s3Client.getBucketLifecycleConfiguration(GetBucketLifecycleConfigurationRequest.builder()
+                                .bucket(bucketName)
+                                .build())
+                        .rules().stream()
+                        .filter(rule -> !VERSION_LIFECYCLE_RULE_ID.equals(rule.id()))
+                        .forEach(rules::add);
+            } catch (S3Exception e) {
+                if (e.statusCode() != 404) {
+                    throw e;
+                }
+                // No lifecycle configuration yet
+            }
+
+            rules.add(LifecycleRule.builder()
+                    .id(VERSION_LIFECYCLE_RULE_ID)
+                    .status(ExpirationStatus.ENABLED)
+                    .filter(LifecycleRuleFilter.builder().prefix("").build())
+                    .noncurrentVersionExpiration(NoncurrentVersionExpiration.builder()
+                            .noncurrentDays(noncurrentDays)
+                            .newerNoncurrentVersions(newerNoncurrentVersions)
+                            .build())
+                    .abortIncompleteMultipartUpload(AbortIncompleteMultipartUpload.builder()
+                            .daysAfterInitiation(7)
+                            .build())
+                    .build());
+
+            s3Client.putBucketLifecycleConfiguration(PutBucketLifecycleConfigurationRequest.builder()
+                    .bucket(bucketName)
+                    .lifecycleConfiguration(BucketLifecycleConfiguration.builder().rules(rules).build())
+                    .build());
+        } catch (S3Exception e) {
+            throw new RuntimeException("Failed to apply version lifecycle: " + e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void closePresigners() {
+        presigners.values().forEach(S3Presigner::close);
+    }
+
+    /**
+     * Loads the catalog in the background at startup, so listings and metadata can be served
+     * from it while S3 is unhealthy
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadCatalog() {
+        if (!preloadCatalog) {
+            return;
+        }
+        Thread loader = new Thread(() -> S3RequestGate.runWithPriority(S3RequestGate.Priority.BACKGROUND, () -> {
+            try {
+                ensureCatalogLoaded();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to preload file catalog, it will be loaded on first use", e);
+            }
+        }), "file-catalog-preload");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Loads the catalog from a full bucket scan the first time it is needed. The listing goes into
+     * the catalog page by page, so reconciliation can start once it is done; the metadata reads
+     * that fill in original filenames follow, walking the catalog a page at a time.
+     */
+    private synchronized void ensureCatalogLoaded() {
+        if (!fileCatalog.beginLoad()) {
+            return;
+        }
+        try {
+            if (!fileCatalog.isListed()) {
+                List<FileEntry> batch = new ArrayList<>();
+                scanFiles(null, file -> {
+                    batch.add(new FileEntry(file.key(), null, file.size(), file.lastModified(), null, file.eTag()));
+                    if (batch.size() == CATALOG_LOAD_PAGE_SIZE) {
+                        fileCatalog.addListed(batch);
+                        batch.clear();
+                    }
+                    return true;
+                });
+                fileCatalog.addListed(batch);
+                fileCatalog.completeListing();
+            }
+
+            List<FileEntry> page;
+            String startAfter = null;
+            do {
+                page = fileCatalog.getRange(null, null, startAfter, CATALOG_LOAD_PAGE_SIZE);
+                for (FileEntry listed : page) {
+                    // Entries from events already carry their metadata; a miss means the file was deleted since
+                    if (listed.originalName() == null) {
+                        FileEntry described = describeFile(listed.key());
+                        if (described != null) {
+                            fileCatalog.replace(listed, described);
+                        }
+                    }
+                    startAfter = listed.key();
+                }
+            } while (page.size() == CATALOG_LOAD_PAGE_SIZE);
+            fileCatalog.completeLoad();
+        } catch (RuntimeException e) {
+            fileCatalog.abortLoad();
+            throw e;
+        }
+    }
+
+    private FileEntry toFileEntry(String keyName, StoredObject metadata) {
+        String originalName = metadata.metadata().get("original-filename");
+        String originalSize = metadata.metadata().get(CompressionService.METADATA_ORIGINAL_SIZE);
+        long size = originalSize != null ? Long.parseLong(originalSize) : metadata.size();
+        return new FileEntry(keyName, originalName != null ? originalName : keyName, size,
+                metadata.contentLastModified(), metadata.contentType(), metadata.eTag());
+    }
+
+    /**
+     * Server-side copy with the original filename rewritten; all other metadata is carried over.
+     * Returns the version id of the copy.
+     */
+    private String copyObject(String sourceKey, String targetKey, StoredObject source, String originalName) {
+        Map<String, String> metadata = new HashMap<>(source.metadata());
+        if (originalName != null) {
+            metadata.put("original-filename", originalName);
+        }
+        return storage.copy(sourceKey, targetKey, source, metadata);
+    }
+
+    /**
+     * Checks a caller-chosen key: it must not reach into the application's internal objects and
+     * must be something generateUniqueKeyName could have produced from a filename. Keys are a
+     * single path segment in the file routes, and an encoded slash is rejected by the server,
+     * so a key with a slash could be created but never addressed again.
+     */
+    static String validateTargetKey(String keyName) {
+        if (keyName.isBlank()) {
+            throw new IllegalArgumentException("Target key must not be blank");
+        }
+        if (keyName.startsWith(INTERNAL_PREFIX)) {
+            throw new IllegalArgumentException("Target key must not start with " + INTERNAL_PREFIX);
+        }
+        if (keyName.contains("/") || keyName.contains("\\")) {
+            throw new IllegalArgumentException("Target key must not contain a slash or backslash");
+        }
+        if (keyName.equals(".") || keyName.equals("..")) {
+            throw new IllegalArgumentException("Target key contains an invalid path");
+        }
+        if (keyName.chars().anyMatch(Character::isISOControl)) {
+            throw new IllegalArgumentException("Target key must not contain control characters");
+        }
+        if (keyName.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Target key is longer than " + MAX_KEY_BYTES + " bytes");
+        }
+        return keyName;
+    }
+
+    private void requireAbsent(String keyName) {
+        try {
+            storage.head(keyName);
+        } catch (ObjectNotFoundException e) {
+            return;
+        }
+        throw new IllegalArgumentException("A file with key " + keyName + " already exists");
+    }
+
+    private void publishCopy(FileChangeEvent.Type type, String keyName, String previousKey,
+                             StoredObject source, String originalName, String versionId) {
+        FileEntry entry = toFileEntry(keyName, source);
+        eventPublisher.publishEvent(new FileChangeEvent(type, keyName, previousKey,
+                originalName != null ? originalName : entry.originalName(), entry.size(),
+                entry.contentType(), Instant.now(), versionId));
+    }
+
+    /**
+     * Writes the file to storage, compressing it on the fly when the compression stage selects a codec
+     */
+    private String storeFile(String keyName, MultipartFile file, String originalFilename) throws IOException {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("original-filename", originalFilename);
+
+        String codec = compressionService.selectCodec(file);
+        if (codec == null) {
+            logger.debug("Uploading file with metadata: {}", metadata);
+            try (InputStream in = file.getInputStream()) {
+                return storage.put(keyName, in, file.getSize(), file.getContentType(), metadata);
+            }
+        }
+
+        metadata.put(CompressionService.METADATA_CODEC, codec);
+        metadata.put(CompressionService.METADATA_ORIGINAL_SIZE, String.valueOf(file.getSize()));
+        logger.debug("Uploading {}-compressed file with metadata: {}", codec, metadata);
+
+        // Compressed length is unknown until the end
+        StorageOutputStream upload = storage.create(keyName, file.getContentType(), codec, metadata);
+        try (InputStream in = file.getInputStream()) {
+            OutputStream compressed = compressionService.encode(upload, codec);
+            in.transferTo(compressed);
+            compressed.close();
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+        return upload.versionId();
+    }
+
+    private void publishChange(FileChangeEvent.Type type, String keyName, MultipartFile file, String originalFilename,
+                               String versionId) {
+        eventPublisher.publishEvent(new FileChangeEvent(type, keyName, null, originalFilename, file.getSize(),
+                file.getContentType(), Instant.now(), versionId));
+    }
+
+    private void requireVersioning() {
+        if (!supportsVersioning()) {
+            throw new UnsupportedOperationException("Versions require the S3 storage backend, not "
+                    + storage.type());
+        }
     }
 
     private String generateUniqueKeyName(String originalFilename) {
         if (originalFilename == null || originalFilename.isEmpty()) {
             String uuid = UUID.randomUUID().toString();
-            logger.info("Generated UUID for empty filename: {}", uuid);
             return uuid;
         }
 
@@ -253,10 +984,11 @@ public class S3Service {
             extension = originalFilename.substring(lastDotIndex);
         }
 
-        // Add a timestamp to ensure uniqueness while preserving the original name
-        String timestamp = String.valueOf(System.currentTimeMillis());
+        // Add a timestamp to ensure uniqueness while preserving the original name; concurrent
+        // uploads of the same name within one millisecond get consecutive values
+        String timestamp = String.valueOf(keyTimestamp.accumulateAndGet(System.currentTimeMillis(),
+                (previous, now) -> Math.max(previous + 1, now)));
         String finalName = fileName + "_" + timestamp + extension;
-        logger.info("Generated unique name: {} from original: {}", finalName, originalFilename);
         return finalName;
     }
 }
\ No newline at end of file
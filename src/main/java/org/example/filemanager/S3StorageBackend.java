@@ -0,0 +1,422 @@
+package org.example.filemanager;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+import org.example.filemanager.model.StoredObject;
+import org.example.filemanager.storage.ObjectContent;
+import org.example.filemanager.storage.ObjectNotFoundException;
+import org.example.filemanager.storage.StorageBackend;
+import org.example.filemanager.storage.StorageOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.ChecksumMode;
+import software.amazon.awssdk.services.s3.model.ChecksumType;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+
+/**
+ * Storage backend on an S3 bucket. Calls go through the application's S3 client, so they pass
+ * the request gate and are routed across the configured storage backends.
+ * Full-object CRC32C checksums are sent with every write and verified by the SDK on reads.
+ */
+public class S3StorageBackend implements StorageBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3StorageBackend.class);
+
+    // CopyObject handles up to 5GB; larger objects are copied part by part with UploadPartCopy
+    private static final long MAX_SINGLE_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final long COPY_PART_SIZE = 512L * 1024 * 1024;
+
+    private final ExecutorService partCopyExecutor = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "s3-part-copy");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    // Part size used when the final object length is unknown (compressed uploads)
+    private final int uploadPartSize;
+
+    public S3StorageBackend(S3Client s3Client, String bucketName, int uploadPartSize) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.uploadPartSize = uploadPartSize;
+    }
+
+    @Override
+    public String type() {
+        return "s3";
+    }
+
+    @Override
+    public StoredObject head(String key) {
+        try {
+            return toStoredObject(key, s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .checksumMode(ChecksumMode.ENABLED)
+                    .build()));
+        } catch (NoSuchKeyException e) {
+            throw new ObjectNotFoundException(key, e);
+        }
+    }
+
+    /**
+     * The SDK checks the stored full-object checksum as the content is read, and fails the
+     * read at the end of the stream if the bytes do not match
+     */
+    @Override
+    public ObjectContent open(String key) {
+        try {
+            ResponseInputStream<GetObjectResponse> stream = s3Client.getObject(getRequest(key));
+            return new ObjectContent(stream, toStoredObject(key, stream.response()), stream::abort);
+        } catch (NoSuchKeyException e) {
+            throw new ObjectNotFoundException(key, e);
+        }
+    }
+
+    /**
+     * Buffered GetObject, which the request gate may hedge
+     */
+    @Override
+    public ObjectContent readFully(String key) {
+        try {
+            ResponseBytes<GetObjectResponse> bytes = s3Client.getObjectAsBytes(getRequest(key));
+            return new ObjectContent(bytes.asInputStream(), toStoredObject(key, bytes.response()), () -> {
+            });
+        } catch (NoSuchKeyException e) {
+            throw new ObjectNotFoundException(key, e);
+        }
+    }
+
+    /**
+     * Ranged GetObject, buffered so the request gate may hedge it. A range covers only part of
+     * the object's checksum, so integrity of the range is left to the caller.
+     */
+    @Override
+    public byte[] readRange(String key, long offset, int length) {
+        if (length == 0) {
+            return new byte[0];
+        }
+        try {
+            byte[] bytes = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .range("bytes=" + offset + "-" + (offset + length - 1))
+                    .build()).asByteArray();
+            if (bytes.length != length) {
+                throw new IllegalStateException("Range " + offset + "+" + length + " is beyond the end of " + key);
+            }
+            return bytes;
+        } catch (NoSuchKeyException e) {
+            throw new ObjectNotFoundException(key, e);
+        }
+    }
+
+    @Override
+    public String put(String key, InputStream content, long length, String contentType, Map<String, String> metadata) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(length)
+                .metadata(metadata)
+                // Computed by the SDK while the body streams and sent as a trailer
+                .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                .build();
+
+        return s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(content, length)).versionId();
+    }
+
+    @Override
+    public StorageOutputStream create(String key, String contentType, String contentEncoding,
+                                      Map<String, String> metadata) {
+        // The upload stream cuts the content into parts, so memory use is bounded by the part size
+        return new S3UploadOutputStream(s3Client, bucketName, key, contentType, contentEncoding, metadata,
+                uploadPartSize);
+    }
+
+    @Override
+    public String copy(String sourceKey, String targetKey, StoredObject source, Map<String, String> metadata) {
+        return copyVersion(sourceKey, null, targetKey, source, metadata);
+    }
+
+    /**
+     * Server-side copy of a specific version; a null sourceVersionId copies the current version.
+     * The copy keeps the source's storage class and counts as a new write. Returns the version id
+     * of the copy.
+     */
+    public String copyVersion(String sourceKey, String sourceVersionId, String targetKey, StoredObject source,
+                              Map<String, String> metadata) {
+        Map<String, String> written = new HashMap<>(metadata);
+        written.remove(StoredObject.CONTENT_MODIFIED);
+        return copy(sourceKey, sourceVersionId, targetKey, source, written, source.storageClass(), null);
+    }
+
+    /**
+     * Moves an object to another storage class by copying it onto itself, provided it still has
+     * the expected ETag; returns the object as it was before, or null if it changed or is gone.
+     * In a versioned bucket the version that was copied is deleted afterwards, so the content is
+     * not stored twice and the file's history does not gain a duplicate.
+     * The copy resets S3's LastModified, so the previous modification time is kept in the
+     * {@link StoredObject#CONTENT_MODIFIED} metadata entry. Objects above the single-copy limit are
+     * copied in parts, which gives them a new ETag.
+     */
+    public StoredObject transition(String key, String expectedETag, String storageClass) {
+        HeadObjectResponse current;
+        try {
+            current = s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return null;
+        }
+        if (!current.eTag().equals(expectedETag)) {
+            return null;
+        }
+
+        StoredObject source = toStoredObject(key, current);
+        Map<String, String> metadata = new HashMap<>(source.metadata());
+        if (source.contentLastModified() != null) {
+            metadata.put(StoredObject.CONTENT_MODIFIED, source.contentLastModified().toString());
+        }
+        try {
+            copy(key, null, key, source, metadata, storageClass, expectedETag);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 412) {
+                // Replaced between the lookup and the copy
+                return null;
+            }
+            throw e;
+        }
+
+        String previousVersion = current.versionId();
+        if (previousVersion != null && !"null".equals(previousVersion)) {
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .versionId(previousVersion)
+                    .build());
+        }
+        return source;
+    }
+
+    private String copy(String sourceKey, String sourceVersionId, String targetKey, StoredObject source,
+                        Map<String, String> metadata, String storageClass, String ifMatch) {
+        if (source.size() > MAX_SINGLE_COPY_SIZE) {
+            return multipartCopy(sourceKey, sourceVersionId, targetKey, source, metadata, storageClass, ifMatch);
+        }
+
+        String versionId = s3Client.copyObject(CopyObjectRequest.builder()
+                .sourceBucket(bucketName)
+                .sourceKey(sourceKey)
+                .sourceVersionId(sourceVersionId)
+                .copySourceIfMatch(ifMatch)
+                .destinationBucket(bucketName)
+                .destinationKey(targetKey)
+                .metadataDirective(MetadataDirective.REPLACE)
+                .metadata(metadata)
+                .contentType(source.contentType())
+                .contentEncoding(source.contentEncoding())
+                // Without an explicit class the copy would land in STANDARD
+                .storageClass(storageClass)
+                .build()).versionId();
+        logger.info("Copied {} to {}", sourceKey, targetKey);
+        return versionId;
+    }
+
+    @Override
+    public void delete(String key) {
+        s3Client.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+    }
+
+    /**
+     * One DeleteObjects call; callers keep batches within its limit of 1000 keys
+     */
+    @Override
+    public List<String> delete(List<String> keys) {
+        DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(bucketName)
+                .delete(Delete.builder()
+                        .objects(keys.stream().map(key -> ObjectIdentifier.builder().key(key).build()).toList())
+                        .quiet(true)
+                        .build())
+                .build());
+
+        Set<String> failed = new HashSet<>();
+        response.errors().forEach(error -> {
+            logger.warn("Failed to delete {}: {}", error.key(), error.message());
+            failed.add(error.key());
+        });
+        return keys.stream().filter(key -> !failed.contains(key)).toList();
+    }
+
+    /**
+     * Pages are requested one by one rather than through a paginator, so each page passes the
+     * request gate on its own and only the current page is held in memory
+     */
+    @Override
+    public void list(String prefix, String startAfter, Predicate<StoredObject> visitor) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .startAfter(startAfter)
+                .build();
+
+        ListObjectsV2Response page;
+        do {
+            page = s3Client.listObjectsV2(request);
+            for (S3Object object : page.contents()) {
+                if (!visitor.test(StoredObject.listed(object.key(), object.size(), object.lastModified(),
+                        object.eTag(), object.storageClassAsString()))) {
+                    return;
+                }
+            }
+            request = request.toBuilder().continuationToken(page.nextContinuationToken()).build();
+        } while (Boolean.TRUE.equals(page.isTruncated()));
+    }
+
+    public static StoredObject toStoredObject(String key, HeadObjectResponse response) {
+        return new StoredObject(key, response.contentLength(), response.lastModified(), response.eTag(),
+                response.contentType(), response.contentEncoding(), response.metadata(),
+                digest(response.checksumType(), response.checksumCRC32C(), response.checksumSHA256()),
+                response.storageClassAsString());
+    }
+
+    private static StoredObject toStoredObject(String key, GetObjectResponse response) {
+        return new StoredObject(key, response.contentLength(), response.lastModified(), response.eTag(),
+                response.contentType(), response.contentEncoding(), response.metadata(),
+                digest(response.checksumType(), response.checksumCRC32C(), response.checksumSHA256()),
+                response.storageClassAsString());
+    }
+
+    /**
+     * RFC 3230 Digest value for the stored object's full-object checksum, or null if it has none.
+     * Composite checksums of multipart uploads cover the parts, not the content, and are skipped.
+     */
+    private static String digest(ChecksumType type, String crc32c, String sha256) {
+        if (type == ChecksumType.COMPOSITE) {
+            return null;
+        }
+        if (crc32c != null) {
+            return "crc32c=" + crc32c;
+        }
+        if (sha256 != null) {
+            return "sha-256=" + sha256;
+        }
+        return null;
+    }
+
+    private GetObjectRequest getRequest(String key) {
+        return GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .checksumMode(ChecksumMode.ENABLED)
+                .build();
+    }
+
+    /**
+     * Copies an object larger than the CopyObject limit with parallel UploadPartCopy calls
+     */
+    private String multipartCopy(String sourceKey, String sourceVersionId, String targetKey,
+                                 StoredObject source, Map<String, String> metadata, String storageClass,
+                                 String ifMatch) {
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(targetKey)
+                .contentType(source.contentType())
+                .contentEncoding(source.contentEncoding())
+                .metadata(metadata)
+                .storageClass(storageClass)
+                .build()).uploadId();
+
+        try {
+            List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+            long size = source.size();
+            long offset = 0;
+            int partNumber = 1;
+            while (offset < size) {
+                String range = "bytes=" + offset + "-" + (Math.min(offset + COPY_PART_SIZE, size) - 1);
+                int currentPart = partNumber;
+                parts.add(CompletableFuture.supplyAsync(() -> CompletedPart.builder()
+                        .partNumber(currentPart)
+                        .eTag(s3Client.uploadPartCopy(UploadPartCopyRequest.builder()
+                                .sourceBucket(bucketName)
+                                .sourceKey(sourceKey)
+                                .sourceVersionId(sourceVersionId)
+                                .copySourceIfMatch(ifMatch)
+                                .destinationBucket(bucketName)
+                                .destinationKey(targetKey)
+                                .uploadId(uploadId)
+                                .partNumber(currentPart)
+                                .copySourceRange(range)
+                                .build()).copyPartResult().eTag())
+                        .build(), partCopyExecutor));
+                offset += COPY_PART_SIZE;
+                partNumber++;
+            }
+
+            List<CompletedPart> completedParts = parts.stream().map(CompletableFuture::join).toList();
+            String versionId = s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(targetKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build()).versionId();
+            logger.info("Copied {} to {} in {} parts", sourceKey, targetKey, completedParts.size());
+            return versionId;
+        } catch (RuntimeException e) {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(targetKey)
+                    .uploadId(uploadId)
+                    .build());
+            if (e.getCause() instanceof S3Exception s3Exception) {
+                throw s3Exception;
+            }
+            throw e;
+        }
+    }
+}
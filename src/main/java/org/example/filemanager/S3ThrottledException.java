@@ -0,0 +1,24 @@
+package org.example.filemanager;
+
+/**
+ * Thrown when an S3 call is shed because S3 is throttling or the local concurrency limit
+ * is exhausted. Callers should retry after the suggested delay instead of immediately.
+ */
+public class S3ThrottledException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public S3ThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public S3ThrottledException(String message, long retryAfterSeconds, Throwable cause) {
+        super(message, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,11 @@
+package org.example.filemanager;
+
+/**
+ * Thrown without contacting S3 while the circuit breaker considers it unhealthy
+ */
+public class S3UnavailableException extends S3ThrottledException {
+
+    public S3UnavailableException(String message, long retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
@@ -0,0 +1,224 @@
+package org.example.filemanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import org.example.filemanager.storage.StorageOutputStream;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.ChecksumType;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+/**
+ * Output stream that uploads everything written to it as one S3 object when the final
+ * length is not known up front (e.g. compressed content). Data is buffered one part at a time:
+ * content that fits in a single part becomes a plain PutObject, anything larger is sent as a
+ * multipart upload, so memory use is bounded by the part size.
+ * A CRC32C of the whole object is computed as data is written and sent with the final
+ * request, so S3 verifies the object it assembled without a second pass over the data.
+ */
+class S3UploadOutputStream extends StorageOutputStream {
+
+    // S3 requires every part except the last to be at least 5MB
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String keyName;
+    private final String contentType;
+    private final String contentEncoding;
+    private final Map<String, String> metadata;
+
+    private final int partSize;
+    private byte[] buffer;
+    private int buffered;
+    private String uploadId;
+    private final List<CompletedPart> completedParts = new ArrayList<>();
+    private boolean closed;
+    private String versionId;
+    private final CRC32C checksum = new CRC32C();
+    private long written;
+
+    S3UploadOutputStream(S3Client s3Client, String bucketName, String keyName, String contentType,
+                         String contentEncoding, Map<String, String> metadata, int partSize) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.keyName = keyName;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.metadata = metadata;
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+        // Start small so that small objects do not pay for a whole part buffer
+        this.buffer = new byte[64 * 1024];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity();
+        buffer[buffered++] = (byte) b;
+        checksum.update(b);
+        written++;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        checksum.update(data, offset, length);
+        written += length;
+        while (length > 0) {
+            ensureCapacity();
+            int chunk = Math.min(length, buffer.length - buffered);
+            System.arraycopy(data, offset, buffer, buffered, chunk);
+            buffered += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Uploads the remaining buffered data and completes the object
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (uploadId == null) {
+                versionId = s3Client.putObject(PutObjectRequest.builder()
+                                .bucket(bucketName)
+                                .key(keyName)
+                                .contentType(contentType)
+                                .contentEncoding(contentEncoding)
+                                .contentLength((long) buffered)
+                                .metadata(metadata)
+                                .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                                .checksumCRC32C(checksumValue())
+                                .build(),
+                        bufferedBody()).versionId();
+                return;
+            }
+
+            if (buffered > 0) {
+                uploadPart();
+            }
+            versionId = s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(keyName)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .checksumType(ChecksumType.FULL_OBJECT)
+                    .checksumCRC32C(checksumValue())
+                    .mpuObjectSize(written)
+                    .build()).versionId();
+        } catch (RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Version created by the upload once closed, or null when the bucket is not versioned
+     */
+    @Override
+    public String versionId() {
+        return versionId;
+    }
+
+    /**
+     * Base64 encoded CRC32C of everything written so far, in the form S3 expects
+     */
+    String checksumValue() {
+        long value = checksum.getValue();
+        byte[] bytes = {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * Abandons the upload; parts already sent are discarded by S3
+     */
+    @Override
+    public void abort() {
+        closed = true;
+        if (uploadId != null) {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(keyName)
+                    .uploadId(uploadId)
+                    .build());
+            uploadId = null;
+        }
+    }
+
+    private void ensureCapacity() {
+        if (buffered < buffer.length) {
+            return;
+        }
+        if (buffer.length < partSize) {
+            buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, partSize));
+        } else {
+            flushPart();
+        }
+    }
+
+    private RequestBody bufferedBody() {
+        // Wrapping the buffer avoids another copy; the stream is resettable for SDK retries
+        return RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, buffered), buffered);
+    }
+
+    private void flushPart() {
+        if (uploadId == null) {
+            uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(keyName)
+                    .contentType(contentType)
+                    .contentEncoding(contentEncoding)
+                    .metadata(metadata)
+                    .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                    .checksumType(ChecksumType.FULL_OBJECT)
+                    .build()).uploadId();
+        }
+        try {
+            uploadPart();
+        } catch (RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private void uploadPart() {
+        int partNumber = completedParts.size() + 1;
+        UploadPartResponse response = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(keyName)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) buffered)
+                        .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                        .build(),
+                bufferedBody());
+
+        completedParts.add(CompletedPart.builder()
+                .partNumber(partNumber)
+                .eTag(response.eTag())
+                .checksumCRC32C(response.checksumCRC32C())
+                .build());
+        buffered = 0;
+    }
+}
@@ -0,0 +1,612 @@
+package org.example.filemanager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.example.filemanager.config.AwsConfig;
+import org.example.filemanager.service.FileCatalogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.DeleteMarkerEntry;
+import software.amazon.awssdk.services.s3.model.DeletedObject;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.ObjectVersion;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Routes S3 calls made against the logical bucket to named storage backends, each a bucket in
+ * a region with its own client and connection pool.
+ * Placement rules map key prefixes to a home backend, which receives all writes and listings
+ * for those keys. A home backend can have read replicas kept in sync by S3 replication; reads
+ * go to the healthy copy with the lowest measured round trip and fall back to the next copy
+ * when a backend fails. Listings that span several home backends are merged in key order.
+ * <p>
+ * With a single backend, which is the default, every call passes straight through.
+ */
+@Component
+public class StorageRouter {
+    private static final Logger logger = LoggerFactory.getLogger(StorageRouter.class);
+
+    /**
+     * Where a key is best read from, e.g. for presigning a download URL
+     */
+    public record Location(String backend, String region, String bucket) {
+    }
+
+    private static final class Backend {
+        final String name;
+        final String region;
+        final String bucket;
+        final String replicaOf;
+        // Created on first use, which keeps SDK client setup out of application startup
+        private final Supplier<S3Client> clientFactory;
+        private volatile S3Client client;
+        final List<Backend> replicas = new ArrayList<>();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        volatile long unhealthyUntil;
+        // Smoothed HeadBucket round trip in milliseconds, NaN until first measured
+        volatile double latencyMillis = Double.NaN;
+
+        Backend(String name, String region, String bucket, String replicaOf, Supplier<S3Client> clientFactory) {
+            this.name = name;
+            this.region = region;
+            this.bucket = bucket;
+            this.replicaOf = replicaOf;
+            this.clientFactory = clientFactory;
+        }
+
+        S3Client client() {
+            S3Client current = client;
+            if (current == null) {
+                synchronized (this) {
+                    current = client;
+                    if (current == null) {
+                        current = clientFactory.get();
+                        client = current;
+                    }
+                }
+            }
+            return current;
+        }
+
+        synchronized void close() {
+            if (client != null) {
+                client.close();
+                client = null;
+            }
+        }
+
+        boolean isHealthy() {
+            return System.currentTimeMillis() >= unhealthyUntil;
+        }
+    }
+
+    private record Placement(String prefix, Backend backend) {
+    }
+
+    @Autowired
+    private AwsConfig awsConfig;
+
+    // Bucket name S3Service addresses; requests are rewritten to the backend's bucket
+    @Value("${aws.bucket.name}")
+    private String logicalBucket;
+
+    @Value("${aws.region:ap-southeast-1}")
+    private String defaultRegion;
+
+    // Backends as "name|region|bucket" or "name|region|bucket|replica-of=name"; the first one
+    // receives keys without a placement rule. Empty means one backend for aws.bucket.name.
+    @Value("${storage.backends:}")
+    private String[] backendSpecs;
+
+    // Placement rules as "prefix|backend"; the longest matching prefix wins
+    @Value("${storage.placement:}")
+    private String[] placementSpecs;
+
+    // Consecutive failures after which a backend is skipped for reads
+    @Value("${storage.unhealthy-after-failures:3}")
+    private int unhealthyAfterFailures;
+
+    @Value("${storage.unhealthy-period:30000}")
+    private long unhealthyPeriodMillis;
+
+    private final Map<String, Backend> backends = new LinkedHashMap<>();
+    private final List<Backend> homes = new ArrayList<>();
+    private final List<Placement> placements = new ArrayList<>();
+    private Backend defaultBackend;
+    private S3Client client;
+
+    private final Map<Class<?>, Map<String, Method>> builderSetters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        List<String[]> specs = new ArrayList<>();
+        for (String spec : backendSpecs) {
+            if (!spec.isBlank()) {
+                specs.add(spec.trim().split("\\|"));
+            }
+        }
+        if (specs.isEmpty()) {
+            specs.add(new String[] {"primary", defaultRegion, logicalBucket});
+        }
+
+        for (String[] spec : specs) {
+            if (spec.length < 3 || spec.length > 4 || (spec.length == 4 && !spec[3].startsWith("replica-of="))) {
+                throw new IllegalArgumentException("Invalid storage backend '" + String.join("|", spec)
+                        + "', expected name|region|bucket[|replica-of=name]");
+            }
+            String replicaOf = spec.length == 4 ? spec[3].substring("replica-of=".length()) : null;
+            Region region = Region.of(spec[1]);
+            Backend backend = new Backend(spec[0], spec[1], spec[2], replicaOf, () -> awsConfig.createClient(region));
+            backends.put(backend.name, backend);
+        }
+        for (Backend backend : backends.values()) {
+            if (backend.replicaOf == null) {
+                homes.add(backend);
+                continue;
+            }
+            Backend home = backends.get(backend.replicaOf);
+            if (home == null || home.replicaOf != null) {
+                throw new IllegalArgumentException("Storage backend " + backend.name
+                        + " must be a replica of a backend that is not itself a replica");
+            }
+            home.replicas.add(backend);
+        }
+        if (homes.isEmpty()) {
+            throw new IllegalArgumentException("At least one storage backend must not be a replica");
+        }
+        defaultBackend = homes.get(0);
+
+        for (String spec : placementSpecs) {
+            if (spec.isBlank()) {
+                continue;
+            }
+            String[] parts = spec.trim().split("\\|");
+            Backend backend = parts.length == 2 ? backends.get(parts[1]) : null;
+            if (backend == null || backend.replicaOf != null) {
+                throw new IllegalArgumentException("Invalid storage placement '" + spec
+                        + "', expected prefix|backend naming a backend that is not a replica");
+            }
+            placements.add(new Placement(parts[0], backend));
+        }
+        placements.sort(Comparator.comparingInt((Placement placement) -> placement.prefix().length()).reversed());
+
+        client = (S3Client) Proxy.newProxyInstance(S3Client.class.getClassLoader(), new Class<?>[] {S3Client.class},
+                backends.size() == 1 ? passThroughHandler() : routingHandler());
+        if (backends.size() > 1) {
+            logger.info("Routing storage across {} backends ({} home, {} placement rules)", backends.size(),
+                    homes.size(), placements.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backends.values().forEach(Backend::close);
+    }
+
+    /**
+     * Client that routes every call, or passes it to the only backend's client
+     */
+    public S3Client client() {
+        return client;
+    }
+
+    /**
+     * Nearest healthy copy of the key
+     */
+    public Location locate(String key) {
+        Backend backend = readOrder(home(key)).get(0);
+        return new Location(backend.name, backend.region, backend.bucket);
+    }
+
+    /**
+     * Measures the round trip to every backend, which decides where reads go
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${storage.probe-interval:30000}")
+    public void probe() {
+        if (backends.size() < 2) {
+            return;
+        }
+        for (Backend backend : backends.values()) {
+            long start = System.nanoTime();
+            try {
+                backend.client().headBucket(HeadBucketRequest.builder().bucket(backend.bucket).build());
+                double sample = (System.nanoTime() - start) / 1e6;
+                backend.latencyMillis = Double.isNaN(backend.latencyMillis) ? sample
+                        : 0.7 * backend.latencyMillis + 0.3 * sample;
+                recordSuccess(backend);
+            } catch (RuntimeException e) {
+                logger.warn("Storage backend {} failed its health probe: {}", backend.name, e.getMessage());
+                recordFailure(backend);
+            }
+        }
+    }
+
+    public List<Map<String, Object>> getStatus() {
+        List<Map<String, Object>> status = new ArrayList<>();
+        for (Backend backend : backends.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", backend.name);
+            entry.put("region", backend.region);
+            entry.put("bucket", backend.bucket);
+            entry.put("replicaOf", backend.replicaOf);
+            entry.put("healthy", backend.isHealthy());
+            entry.put("consecutiveFailures", backend.consecutiveFailures.get());
+            entry.put("latencyMillis", Double.isNaN(backend.latencyMillis) ? null : Math.round(backend.latencyMillis));
+            status.add(entry);
+        }
+        return status;
+    }
+
+    private InvocationHandler passThroughHandler() {
+        return (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                // Answered by the proxy, so they do not create the client
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "S3Client[" + defaultBackend.name + "]";
+                };
+            }
+            if (method.getName().equals("close")) {
+                shutdown();
+                return null;
+            }
+            return invoke(defaultBackend, method, args);
+        };
+    }
+
+    private InvocationHandler routingHandler() {
+        return (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(defaultBackend.client(), args);
+            }
+            if (method.getName().equals("close")) {
+                shutdown();
+                return null;
+            }
+            if (args == null || args.length == 0 || !(args[0] instanceof SdkRequest request)) {
+                return invoke(defaultBackend, method, args);
+            }
+
+            switch (method.getName()) {
+                case "copyObject", "uploadPartCopy" -> {
+                    Backend target = home(field(request, "DestinationKey"));
+                    Backend source = home(field(request, "SourceKey"));
+                    SdkRequest routed = withField(withField(request, "destinationBucket", target.bucket),
+                            "sourceBucket", source.bucket);
+                    return execute(target, method, args, routed);
+                }
+                case "deleteObjects" -> {
+                    return deleteObjects(method, args, (DeleteObjectsRequest) request);
+                }
+                case "listObjectsV2" -> {
+                    return homes.size() == 1
+                            ? execute(defaultBackend, method, args, withField(request, "bucket", defaultBackend.bucket))
+                            : listObjects((ListObjectsV2Request) request);
+                }
+                case "listObjectVersions" -> {
+                    return homes.size() == 1
+                            ? execute(defaultBackend, method, args, withField(request, "bucket", defaultBackend.bucket))
+                            : listObjectVersions((ListObjectVersionsRequest) request);
+                }
+                default -> {
+                    String key = field(request, "Key");
+                    if (key != null) {
+                        Backend home = home(key);
+                        return isRead(method) ? read(home, method, args, request) : execute(home, method, args,
+                                withField(request, "bucket", home.bucket));
+                    }
+                    return bucketOperation(method, args, request);
+                }
+            }
+        };
+    }
+
+    private Backend home(String key) {
+        if (key != null) {
+            for (Placement placement : placements) {
+                if (key.startsWith(placement.prefix())) {
+                    return placement.backend();
+                }
+            }
+        }
+        return defaultBackend;
+    }
+
+    /**
+     * The home backend and its replicas, healthy ones first, nearest first
+     */
+    private List<Backend> readOrder(Backend home) {
+        List<Backend> candidates = new ArrayList<>();
+        candidates.add(home);
+        candidates.addAll(home.replicas);
+        if (candidates.size() > 1) {
+            candidates.sort(Comparator.comparing((Backend backend) -> !backend.isHealthy())
+                    .thenComparingDouble(backend -> Double.isNaN(backend.latencyMillis)
+                            ? Double.MAX_VALUE : backend.latencyMillis)
+                    .thenComparing(backend -> backend != home));
+        }
+        return candidates;
+    }
+
+    private static boolean isRead(Method method) {
+        return method.getName().startsWith("getObject") || method.getName().startsWith("headObject");
+    }
+
+    private Object read(Backend home, Method method, Object[] args, SdkRequest request) throws Throwable {
+        Throwable failure = null;
+        for (Backend backend : readOrder(home)) {
+            try {
+                Object result = call(backend, method, args, withField(request, "bucket", backend.bucket));
+                recordSuccess(backend);
+                return result;
+            } catch (SdkClientException | AwsServiceException e) {
+                if (isBackendFailure(e)) {
+                    recordFailure(backend);
+                    logger.warn("Read of {} from storage backend {} failed, trying the next copy: {}",
+                            field(request, "Key"), backend.name, e.getMessage());
+                } else if (backend == home || !isNotFound(e)) {
+                    throw e;
+                }
+                // A replica that does not have the key yet may just be lagging behind
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private Object execute(Backend backend, Method method, Object[] args, SdkRequest routed) throws Throwable {
+        try {
+            Object result = call(backend, method, args, routed);
+            recordSuccess(backend);
+            return result;
+        } catch (SdkClientException | AwsServiceException e) {
+            if (isBackendFailure(e)) {
+                recordFailure(backend);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Bucket settings are changed on every backend so replicas match; reads come from the default
+     */
+    private Object bucketOperation(Method method, Object[] args, SdkRequest request) throws Throwable {
+        String name = method.getName();
+        if (name.startsWith("get") || name.startsWith("head") || name.startsWith("list")) {
+            return execute(defaultBackend, method, args, withField(request, "bucket", defaultBackend.bucket));
+        }
+        Object result = null;
+        for (Backend backend : backends.values()) {
+            Object backendResult = execute(backend, method, args, withField(request, "bucket", backend.bucket));
+            if (backend == defaultBackend) {
+                result = backendResult;
+            }
+        }
+        return result;
+    }
+
+    private DeleteObjectsResponse deleteObjects(Method method, Object[] args, DeleteObjectsRequest request)
+            throws Throwable {
+        Map<Backend, List<ObjectIdentifier>> byBackend = new LinkedHashMap<>();
+        for (ObjectIdentifier object : request.delete().objects()) {
+            byBackend.computeIfAbsent(home(object.key()), backend -> new ArrayList<>()).add(object);
+        }
+        List<DeletedObject> deleted = new ArrayList<>();
+        List<S3Error> errors = new ArrayList<>();
+        for (Map.Entry<Backend, List<ObjectIdentifier>> group : byBackend.entrySet()) {
+            DeleteObjectsRequest routed = request.toBuilder()
+                    .bucket(group.getKey().bucket)
+                    .delete(request.delete().toBuilder().objects(group.getValue()).build())
+                    .build();
+            DeleteObjectsResponse response = (DeleteObjectsResponse) execute(group.getKey(), method, args, routed);
+            deleted.addAll(response.deleted());
+            errors.addAll(response.errors());
+        }
+        return DeleteObjectsResponse.builder().deleted(deleted).errors(errors).build();
+    }
+
+    /**
+     * Merges one page from every home backend. A backend whose page was cut short bounds what can
+     * be returned, since its next keys are unknown; the last returned key becomes the continuation.
+     */
+    private ListObjectsV2Response listObjects(ListObjectsV2Request request) {
+        if (request.delimiter() != null) {
+            throw new IllegalArgumentException("Delimited listings are not supported across storage backends");
+        }
+        String startAfter = request.continuationToken() != null ? request.continuationToken() : request.startAfter();
+        int maxKeys = request.maxKeys() != null ? request.maxKeys() : 1000;
+
+        List<S3Object> merged = new ArrayList<>();
+        String bound = null;
+        for (Backend home : homes) {
+            ListObjectsV2Response page = home.client().listObjectsV2(request.toBuilder()
+                    .bucket(home.bucket)
+                    .continuationToken(null)
+                    .startAfter(startAfter)
+                    .build());
+            merged.addAll(page.contents());
+            if (Boolean.TRUE.equals(page.isTruncated()) && !page.contents().isEmpty()) {
+                String last = page.contents().get(page.contents().size() - 1).key();
+                bound = bound == null || FileCatalogService.KEY_ORDER.compare(last, bound) < 0 ? last : bound;
+            }
+        }
+        merged.sort(Comparator.comparing(S3Object::key, FileCatalogService.KEY_ORDER));
+
+        List<S3Object> contents = new ArrayList<>();
+        for (S3Object object : merged) {
+            if (contents.size() == maxKeys || (bound != null && FileCatalogService.KEY_ORDER.compare(object.key(), bound) > 0)) {
+                break;
+            }
+            contents.add(object);
+        }
+        boolean truncated = contents.size() < merged.size() || bound != null;
+        return ListObjectsV2Response.builder()
+                .name(request.bucket())
+                .prefix(request.prefix())
+                .contents(contents)
+                .keyCount(contents.size())
+                .maxKeys(maxKeys)
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated && !contents.isEmpty() ? contents.get(contents.size() - 1).key() : null)
+                .build();
+    }
+
+    /**
+     * Merges version listings like {@link #listObjects}. A key lives on exactly one home backend,
+     * so the version id marker is only passed to the backend that owns the key marker.
+     */
+    private ListObjectVersionsResponse listObjectVersions(ListObjectVersionsRequest request) {
+        if (request.delimiter() != null) {
+            throw new IllegalArgumentException("Delimited listings are not supported across storage backends");
+        }
+        Backend markerOwner = request.keyMarker() != null ? home(request.keyMarker()) : null;
+
+        List<ObjectVersion> versions = new ArrayList<>();
+        List<DeleteMarkerEntry> markers = new ArrayList<>();
+        String boundKey = null;
+        String boundVersionId = null;
+        for (Backend home : homes) {
+            ListObjectVersionsResponse page = home.client().listObjectVersions(request.toBuilder()
+                    .bucket(home.bucket)
+                    .versionIdMarker(home == markerOwner ? request.versionIdMarker() : null)
+                    .build());
+            versions.addAll(page.versions());
+            markers.addAll(page.deleteMarkers());
+            if (Boolean.TRUE.equals(page.isTruncated())) {
+                if (boundKey == null || FileCatalogService.KEY_ORDER.compare(page.nextKeyMarker(), boundKey) < 0) {
+                    boundKey = page.nextKeyMarker();
+                    boundVersionId = page.nextVersionIdMarker();
+                }
+            }
+        }
+        String bound = boundKey;
+        if (bound != null) {
+            versions.removeIf(version -> FileCatalogService.KEY_ORDER.compare(version.key(), bound) > 0);
+            markers.removeIf(marker -> FileCatalogService.KEY_ORDER.compare(marker.key(), bound) > 0);
+        }
+        // Stable sorts keep each key's entries newest first
+        versions.sort(Comparator.comparing(ObjectVersion::key, FileCatalogService.KEY_ORDER));
+        markers.sort(Comparator.comparing(DeleteMarkerEntry::key, FileCatalogService.KEY_ORDER));
+
+        return ListObjectVersionsResponse.builder()
+                .name(request.bucket())
+                .prefix(request.prefix())
+                .versions(versions)
+                .deleteMarkers(markers)
+                .isTruncated(bound != null)
+                .nextKeyMarker(bound)
+                .nextVersionIdMarker(boundVersionId)
+                .build();
+    }
+
+    private void recordSuccess(Backend backend) {
+        if (backend.consecutiveFailures.getAndSet(0) >= unhealthyAfterFailures) {
+            logger.info("Storage backend {} is healthy again", backend.name);
+        }
+        backend.unhealthyUntil = 0;
+    }
+
+    private void recordFailure(Backend backend) {
+        if (backend.consecutiveFailures.incrementAndGet() >= unhealthyAfterFailures) {
+            if (backend.isHealthy()) {
+                logger.warn("Storage backend {} marked unhealthy for {} ms", backend.name, unhealthyPeriodMillis);
+            }
+            backend.unhealthyUntil = System.currentTimeMillis() + unhealthyPeriodMillis;
+        }
+    }
+
+    /**
+     * Network errors, timeouts and server errors; client errors such as a missing key are answers
+     */
+    private static boolean isBackendFailure(RuntimeException e) {
+        if (e instanceof AwsServiceException serviceException) {
+            return serviceException.statusCode() >= 500;
+        }
+        return e instanceof SdkClientException;
+    }
+
+    private static boolean isNotFound(RuntimeException e) {
+        return e instanceof AwsServiceException serviceException && serviceException.statusCode() == 404;
+    }
+
+    private static String field(SdkRequest request, String name) {
+        return request.getValueForField(name, String.class).orElse(null);
+    }
+
+    /**
+     * Copy of the request with one string member replaced, through the request's public builder interface
+     */
+    private SdkRequest withField(SdkRequest request, String setter, String value) {
+        Method method = builderSetters
+                .computeIfAbsent(request.getClass(), type -> new ConcurrentHashMap<>())
+                .computeIfAbsent(setter, name -> {
+                    try {
+                        Class<?> builderType = Class.forName(request.getClass().getName() + "$Builder");
+                        return builderType.getMethod(name, String.class);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException("Cannot route " + request.getClass().getSimpleName(), e);
+                    }
+                });
+        try {
+            SdkRequest.Builder builder = request.toBuilder();
+            method.invoke(builder, value);
+            return builder.build();
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot route " + request.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static Object call(Backend backend, Method method, Object[] args, SdkRequest routed) {
+        Object[] routedArgs = args.clone();
+        routedArgs[0] = routed;
+        return invoke(backend, method, routedArgs);
+    }
+
+    private static Object invoke(Backend backend, Method method, Object[] args) {
+        try {
+            return method.invoke(backend.client(), args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot invoke S3 client method " + method.getName(), e);
+        }
+    }
+}
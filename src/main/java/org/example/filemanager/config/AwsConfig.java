@@ -2,12 +2,20 @@
 
 package org.example.filemanager.config;
 
+import org.example.filemanager.S3RequestGate;
+import org.example.filemanager.StorageRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import software.amazon.awssdk.auth.credentials.*;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
@@ -23,20 +31,46 @@ import software.amazon.awssdk.services.s3.S3Configuration;
 public class AwsConfig {
     private static final Logger logger = LoggerFactory.getLogger(AwsConfig.class);
 
+    // Initialized for clients created outside the application context, such as benchmarks
+    @Value("${s3.limiter.max-limit:256}")
+    private int maxLimit = 256;
+
+    @Value("${s3.hedging.threads:64}")
+    private int hedgingThreads = 64;
+
     @Bean
-    public S3Client s3Client() {
-        logger.info("Initializing S3Client with ProfileCredentialsProvider");
+    public S3Client s3Client(S3RequestGate requestGate, StorageRouter storageRouter) {
+        // Every S3 call goes through the adaptive concurrency limit, then to its storage backend
+        return requestGate.wrap(storageRouter.client());
+    }
+
+    /**
+     * Client for one storage backend; each has its own connection pool
+     */
+    public S3Client createClient(Region region) {
+        logger.info("Initializing S3Client for {} with ProfileCredentialsProvider", region);
 
         // Use the "default" profile from the AWS credentials file
         // This reads from ~/.aws/credentials (or C:\Users\USERNAME\.aws\credentials on Windows)
         ProfileCredentialsProvider credentialsProvider = ProfileCredentialsProvider.create("default");
 
+        // Room for every limit of the request gate at its maximum, so calls queue in the gate and not for a connection
+        int maxConnections = maxLimit * S3RequestGate.Operation.values().length + hedgingThreads;
+
         return S3Client.builder()
-                .region(Region.AP_SOUTHEAST_1) // Replace with your region if needed
+                .region(region)
                 .credentialsProvider(credentialsProvider)
+                .httpClientBuilder(ApacheHttpClient.builder().maxConnections(maxConnections))
                 .serviceConfiguration(S3Configuration.builder()
                         .pathStyleAccessEnabled(true)
                         .build())
+                // Uploads carry a checksum S3 verifies, downloads are verified against the stored one
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_SUPPORTED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_SUPPORTED)
+                // Standard retries draw from a shared retry quota, so retrying stops when most calls fail
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .retryStrategy(RetryMode.STANDARD)
+                        .build())
                 .build();
     }
 }
@@ -0,0 +1,104 @@
+package org.example.filemanager.config;
+
+import java.io.IOException;
+
+import org.example.filemanager.model.User;
+import org.example.filemanager.service.RateLimitExceededException;
+import org.example.filemanager.service.TransferLimitService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Applies the per-user limits to API requests. It runs after Spring Security, so requests
+ * reaching it belong to a signed-in user. Uploads are admitted by their declared length and
+ * hold an upload slot while the servlet container receives the body and the file is stored.
+ * Uploads without a declared length (chunked) are refused, as they could not be charged up
+ * front. A refused upload is answered before its body is read, with the connection closed:
+ * otherwise the container would read and discard the rest of the body to reuse the connection.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    // Request attribute under which the user the limits apply to is passed to controllers
+    public static final String USER_ATTRIBUTE = RateLimitFilter.class.getName() + ".user";
+
+    @Autowired
+    private TransferLimitService transferLimitService;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !transferLimitService.isEnabled() || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String user = currentUser(request);
+        if (user == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        request.setAttribute(USER_ATTRIBUTE, user);
+
+        try {
+            transferLimitService.checkRequest(user);
+            if (!isUpload(request)) {
+                chain.doFilter(request, response);
+                return;
+            }
+            if (request.getContentLengthLong() < 0) {
+                logger.debug("Rejecting upload of " + user + " without a declared length");
+                response.setHeader(HttpHeaders.CONNECTION, "close");
+                writeError(response, HttpStatus.LENGTH_REQUIRED, "Uploads must declare their length");
+                return;
+            }
+            transferLimitService.admitUpload(user, request.getContentLengthLong());
+            try (TransferLimitService.Slot slot = transferLimitService.acquireSlot(user,
+                    TransferLimitService.Direction.UPLOAD)) {
+                chain.doFilter(request, response);
+            }
+        } catch (RateLimitExceededException e) {
+            if (response.isCommitted()) {
+                throw e;
+            }
+            logger.debug("Rejecting request of " + user + ": " + e.getMessage());
+            if (isUpload(request)) {
+                response.setHeader(HttpHeaders.CONNECTION, "close");
+            }
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            writeError(response, HttpStatus.TOO_MANY_REQUESTS, e.getMessage() + ", please retry later");
+        }
+    }
+
+    private static void writeError(HttpServletResponse response, HttpStatus status, String message)
+            throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    /**
+     * The signed-in user's email, as stored in the session at login, or the principal's name
+     */
+    private static String currentUser(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session != null && session.getAttribute("user") instanceof User user && user.getEmail() != null) {
+            return user.getEmail();
+        }
+        return request.getUserPrincipal() != null ? request.getUserPrincipal().getName() : null;
+    }
+
+    private static boolean isUpload(HttpServletRequest request) {
+        return "POST".equals(request.getMethod()) && request.getRequestURI().startsWith("/api/files/upload");
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.core.Authentication;
@@ -23,6 +24,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Spring Security configuration for Google OAuth2 authentication
@@ -41,6 +43,10 @@ public class SecurityConfig {
     @Value("${spring.security.oauth2.client.registration.google.client-secret}")
     private String googleClientSecret;
 
+    // Google accounts allowed to use the /api/admin endpoints; nobody when empty
+    @Value("${admin.emails:}")
+    private List<String> adminEmails;
+
     @PostConstruct
     public void logOAuth2Configuration() {
         logger.info("=== OAuth2 Configuration Debug ===");
@@ -61,6 +67,9 @@ public class SecurityConfig {
             .authorizeHttpRequests(authz -> authz
                 // Public endpoints
                 .requestMatchers("/login", "/error", "/webjars/**", "/css/**", "/js/**", "/images/**").permitAll()
+                // Maintenance and statistics endpoints are limited to the configured administrators
+                .requestMatchers("/api/admin/**").access((authentication, context) ->
+                    new AuthorizationDecision(isAdmin(authentication.get())))
                 // All other endpoints require authentication
                 .anyRequest().authenticated()
             )
@@ -85,6 +94,15 @@ public class SecurityConfig {
         return http.build();
     }
 
+    private boolean isAdmin(Authentication authentication) {
+        if (authentication == null || !(authentication.getPrincipal() instanceof OAuth2User oauth2User)) {
+            return false;
+        }
+        String email = oauth2User.getAttribute("email");
+        return email != null && adminEmails.stream()
+            .anyMatch(admin -> admin.trim().equalsIgnoreCase(email));
+    }
+
     @Bean
     public AuthenticationSuccessHandler oauth2AuthenticationSuccessHandler() {
         return new AuthenticationSuccessHandler() {
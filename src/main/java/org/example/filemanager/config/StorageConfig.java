@@ -0,0 +1,70 @@
+package org.example.filemanager.config;
+
+import java.nio.file.Path;
+
+import org.example.filemanager.S3Service;
+import org.example.filemanager.S3StorageBackend;
+import org.example.filemanager.storage.LocalStorageBackend;
+import org.example.filemanager.storage.PackingStorageBackend;
+import org.example.filemanager.storage.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import software.amazon.awssdk.services.s3.S3Client;
+
+/**
+ * Selects where file content is stored: the S3 buckets behind the routed S3 client, or a
+ * directory on local disk for edge nodes and on-premises deployments. Either can keep small files
+ * inside larger pack objects.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Value("${storage.type:s3}")
+    private String storageType;
+
+    @Value("${aws.bucket.name}")
+    private String bucketName;
+
+    // Part size used when the final object length is unknown (compressed uploads)
+    @Value("${storage.upload.part-size:8388608}")
+    private int uploadPartSize;
+
+    @Value("${storage.local.root:./data}")
+    private String localRoot;
+
+    // Local objects up to this size are read through a memory mapping
+    @Value("${storage.local.mmap-threshold:1048576}")
+    private long mmapThreshold;
+
+    // Packs index in memory: only enable with a single application node writing to the storage
+    @Value("${storage.packing.enabled:false}")
+    private boolean packingEnabled;
+
+    // Files up to this size are packed
+    @Value("${storage.packing.threshold:65536}")
+    private int packingThreshold;
+
+    @Value("${storage.packing.pack-size:16777216}")
+    private long packSize;
+
+    // How long a small write waits for others to share its pack
+    @Value("${storage.packing.commit-delay:20}")
+    private long packCommitDelay;
+
+    @Bean
+    public StorageBackend storageBackend(S3Client s3Client) {
+        StorageBackend backend = switch (storageType) {
+            case "s3" -> new S3StorageBackend(s3Client, bucketName, uploadPartSize);
+            case "local" -> new LocalStorageBackend(Path.of(localRoot), mmapThreshold);
+            default -> throw new IllegalArgumentException("Unknown storage.type: " + storageType
+                    + " (expected s3 or local)");
+        };
+        if (packingEnabled) {
+            backend = new PackingStorageBackend(backend, S3Service.INTERNAL_PREFIX + "packs/", packingThreshold,
+                    packSize, packCommitDelay);
+        }
+        return backend;
+    }
+}
@@ -0,0 +1,140 @@
+package org.example.filemanager.controller;
+
+import java.util.Map;
+
+import org.example.filemanager.S3RequestGate;
+import org.example.filemanager.StorageRouter;
+import org.example.filemanager.service.ContentIndexService;
+import org.example.filemanager.service.PackCompactionService;
+import org.example.filemanager.service.ReconciliationService;
+import org.example.filemanager.service.RetentionService;
+import org.example.filemanager.service.TieringService;
+import org.example.filemanager.service.TransferLimitService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Operational endpoints: background job status and S3 client health
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private RetentionService retentionService;
+
+    @Autowired
+    private TieringService tieringService;
+
+    @Autowired
+    private PackCompactionService packCompactionService;
+
+    @Autowired
+    private TransferLimitService transferLimitService;
+
+    @Autowired
+    private ContentIndexService contentIndexService;
+
+    @Autowired
+    private S3RequestGate requestGate;
+
+    @Autowired
+    private StorageRouter storageRouter;
+
+    @GetMapping("/reconciliation")
+    public ResponseEntity<?> getReconciliationStatus() {
+        return ResponseEntity.ok(reconciliationService.getStatus());
+    }
+
+    @PostMapping("/reconciliation")
+    public ResponseEntity<?> startReconciliation() {
+        if (!reconciliationService.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                Map.of("error", "Reconciliation is already running")
+            );
+        }
+        return ResponseEntity.accepted().body(Map.of("message", "Reconciliation started"));
+    }
+
+    @GetMapping("/retention")
+    public ResponseEntity<?> getRetentionStatus() {
+        return ResponseEntity.ok(retentionService.getStatus());
+    }
+
+    /**
+     * Starts a retention run; without the parameter the configured dry-run setting applies
+     */
+    @PostMapping("/retention")
+    public ResponseEntity<?> startRetention(@RequestParam(required = false) Boolean dryRun) {
+        boolean dryRunMode = dryRun != null ? dryRun : retentionService.isDryRunByDefault();
+        if (!retentionService.start(dryRunMode)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                Map.of("error", "Retention is already running")
+            );
+        }
+        return ResponseEntity.accepted().body(Map.of("message", "Retention started", "dryRun", dryRunMode));
+    }
+
+    @GetMapping("/tiering")
+    public ResponseEntity<?> getTieringStatus() {
+        return ResponseEntity.ok(tieringService.getStatus());
+    }
+
+    @PostMapping("/tiering")
+    public ResponseEntity<?> startTiering() {
+        if (!tieringService.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                Map.of("error", "Tiering is already running")
+            );
+        }
+        return ResponseEntity.accepted().body(Map.of("message", "Tiering started"));
+    }
+
+    @GetMapping("/packing")
+    public ResponseEntity<?> getPackingStatus() {
+        return ResponseEntity.ok(packCompactionService.getStatus());
+    }
+
+    @PostMapping("/packing")
+    public ResponseEntity<?> startPackCompaction() {
+        try {
+            if (!packCompactionService.start()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                    Map.of("error", "Pack compaction is already running")
+                );
+            }
+        } catch (UnsupportedOperationException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.accepted().body(Map.of("message", "Pack compaction started"));
+    }
+
+    @GetMapping("/limits")
+    public ResponseEntity<?> getLimits() {
+        return ResponseEntity.ok(transferLimitService.getStatus());
+    }
+
+    @GetMapping("/content-index")
+    public ResponseEntity<?> getContentIndexStatus() {
+        return ResponseEntity.ok(contentIndexService.getStatus());
+    }
+
+    @GetMapping("/s3")
+    public ResponseEntity<?> getS3Stats() {
+        return ResponseEntity.ok(requestGate.getStats());
+    }
+
+    @GetMapping("/storage")
+    public ResponseEntity<?> getStorageBackends() {
+        return ResponseEntity.ok(storageRouter.getStatus());
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.filemanager.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.example.filemanager.model.StoredObject;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Validator generation and If-None-Match / If-Modified-Since evaluation for the file API
+ */
+final class ConditionalRequests {
+
+    // Listings are private to the user and must be revalidated, which is cheap thanks to the ETag
+    static final CacheControl LISTING_CACHE = CacheControl.noCache().cachePrivate();
+
+    // Objects can be replaced in place under the same key, so they are revalidated as well
+    static final CacheControl OBJECT_CACHE = CacheControl.noCache().cachePrivate();
+
+    // Derivatives are regenerated on replace; clients add the file's modification time to the URL
+    static final CacheControl DERIVATIVE_CACHE = CacheControl.maxAge(Duration.ofDays(30)).cachePrivate();
+
+    // Listings embed presigned URLs valid for an hour; rotating the ETag every half hour
+    // guarantees a cached listing is never reused with URLs that are about to expire
+    private static final long PRESIGN_EPOCH_MILLIS = Duration.ofMinutes(30).toMillis();
+
+    // Listings carry only an ETag. Their newest modification time does not change when a file is
+    // deleted, and answering If-Modified-Since would bypass the ETag rotation above.
+    static final long LISTING_LAST_MODIFIED = -1;
+
+    private ConditionalRequests() {
+    }
+
+    /**
+     * Weak ETag for a listing, derived from every object's key, ETag, size and modification time
+     */
+    static String listingETag(List<StoredObject> files, String query) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(System.currentTimeMillis() / PRESIGN_EPOCH_MILLIS).getBytes(StandardCharsets.UTF_8));
+            if (query != null) {
+                digest.update(("q=" + query).getBytes(StandardCharsets.UTF_8));
+            }
+            files.stream()
+                .sorted(Comparator.comparing(StoredObject::key))
+                .forEach(file -> digest.update((file.key() + '\u0000' + file.eTag() + '\u0000' + file.size()
+                        + '\u0000' + file.lastModified() + '\n').getBytes(StandardCharsets.UTF_8)));
+            return "W/\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Evaluates the request's preconditions; If-None-Match takes precedence over If-Modified-Since
+     */
+    static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return eTag != null && matchesAny(ifNoneMatch, eTag);
+        }
+
+        if (lastModified >= 0) {
+            try {
+                long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+                // HTTP dates have second precision
+                return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    static ResponseEntity.BodyBuilder notModified(String eTag, long lastModified, CacheControl cacheControl) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(eTag)
+                .cacheControl(cacheControl);
+        if (lastModified >= 0) {
+            builder.lastModified(lastModified);
+        }
+        return builder;
+    }
+
+    private static boolean matchesAny(String ifNoneMatch, String eTag) {
+        String opaqueTag = stripWeak(eTag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // If-None-Match uses weak comparison
+            if (tag.equals("*") || stripWeak(tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
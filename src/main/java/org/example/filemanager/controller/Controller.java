@@ -1,28 +1,63 @@
 package org.example.filemanager.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import org.example.filemanager.LogSampler;
 import org.example.filemanager.S3Service;
+import org.example.filemanager.S3ThrottledException;
+import org.example.filemanager.S3UnavailableException;
+import org.example.filemanager.config.RateLimitFilter;
+import org.example.filemanager.model.ArchiveRequest;
+import org.example.filemanager.model.FileOperationRequest;
+import org.example.filemanager.model.FileOperationResult;
+import org.example.filemanager.model.FileRow;
+import org.example.filemanager.model.StoredObject;
+import org.example.filemanager.model.UploadResult;
+import org.example.filemanager.service.ArchiveService;
+import org.example.filemanager.service.BatchUploadService;
+import org.example.filemanager.service.CompressionService;
+import org.example.filemanager.service.ContentIndex;
+import org.example.filemanager.service.ContentIndexService;
+import org.example.filemanager.service.FileEventService;
+import org.example.filemanager.service.FileOperationService;
+import org.example.filemanager.service.RateLimitExceededException;
+import org.example.filemanager.service.ThumbnailService;
+import org.example.filemanager.service.TieringService;
+import org.example.filemanager.service.TransferLimitService;
+import org.example.filemanager.service.VersioningService;
+import org.example.filemanager.storage.ObjectContent;
+import org.example.filemanager.storage.ObjectNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
-import software.amazon.awssdk.services.s3.model.S3Object;
+import jakarta.servlet.http.HttpServletRequest;
+import software.amazon.awssdk.core.exception.SdkClientException;
 
 @RestController
 @RequestMapping("/api")
@@ -32,48 +67,86 @@ public class Controller {
     @Autowired
     private S3Service s3Service;
 
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private CompressionService compressionService;
+
+    @Autowired
+    private FileEventService fileEventService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private FileOperationService fileOperationService;
+
+    @Autowired
+    private BatchUploadService batchUploadService;
+
+    @Autowired
+    private VersioningService versioningService;
+
+    @Autowired
+    private TieringService tieringService;
+
+    @Autowired
+    private TransferLimitService transferLimitService;
+
+    @Autowired
+    private ContentIndexService contentIndexService;
+
+    @Autowired
+    private LogSampler logSampler;
+
+    // Event id of the change stream the listing is consistent with; clients resume events from it
+    static final String EVENTS_VERSION_HEADER = "X-File-Events-Version";
+
+    static final String DIGEST_HEADER = "Digest";
+
     // Map to store upload status
     private final ConcurrentHashMap<String, Boolean> uploadStatus = new ConcurrentHashMap<>();
 
     @GetMapping("/files")
-    public ResponseEntity<?> listFiles() {
+    public ResponseEntity<?> listFiles(HttpServletRequest request) {
+        long start = System.nanoTime();
         try {
-            List<S3Object> files = s3Service.listFiles();
-            logger.info("Retrieved {} files from S3", files.size());
-
-            List<Map<String, Object>> fileList = files.stream()
-                .map(file -> {
-                    Map<String, Object> fileInfo = new HashMap<>();
-                    String key = file.key();
-                    logger.info("Processing file with key: {}", key);
-
-                    // Get file metadata to retrieve original filename
-                    HeadObjectResponse metadata = s3Service.getFileMetadata(key);
-                    String originalName = metadata.metadata().get("original-filename");
-                    logger.info("Retrieved original name from metadata: {}", originalName);
-
-                    if (originalName == null) {
-                        // Fallback to extracting from key if metadata is not available
-                        int lastUnderscoreIndex = key.lastIndexOf("_");
-                        if (lastUnderscoreIndex > 0) {
-                            originalName = key.substring(0, lastUnderscoreIndex);
-                        } else {
-                            originalName = key;
-                        }
-                        logger.info("Using fallback original name: {}", originalName);
-                    }
+            // Read before listing, so replaying events after this version cannot miss a change
+            String eventsVersion = fileEventService.getCurrentEventId();
+            List<StoredObject> files = s3Service.listFiles();
+
+            // The listing itself is one LIST call; skip the per-file metadata work if nothing changed
+            String eTag = ConditionalRequests.listingETag(files, null);
+            long lastModified = ConditionalRequests.LISTING_LAST_MODIFIED;
+            if (ConditionalRequests.isNotModified(request, eTag, lastModified)) {
+                logger.info("Listed {} files in {} ms, not modified", files.size(), elapsedMillis(start));
+                return ConditionalRequests.notModified(eTag, lastModified, ConditionalRequests.LISTING_CACHE)
+                    .header(EVENTS_VERSION_HEADER, eventsVersion)
+                    .build();
+            }
 
-                    fileInfo.put("key", key);
-                    fileInfo.put("originalName", originalName);
-                    fileInfo.put("size", file.size());
-                    fileInfo.put("lastModified", file.lastModified());
-                    fileInfo.put("downloadUrl", s3Service.generateDownloadUrl(key));
-
-                    logger.info("File info: {}", fileInfo);
-                    return fileInfo;
-                })
-                .collect(Collectors.toList());
-            return ResponseEntity.ok(fileList);
+            List<FileRow> fileList = new ArrayList<>(files.size());
+            for (StoredObject file : files) {
+                String key = file.key();
+
+                // Get file metadata to retrieve original filename
+                StoredObject metadata = s3Service.getFileMetadata(key);
+                FileRow row = new FileRow(key, originalName(key, metadata), originalSize(metadata, file),
+                        metadata.contentLastModified(), s3Service.generateDownloadUrl(key),
+                        tieringService.tierOf(file));
+                if (logSampler.sample(logger)) {
+                    logger.debug("File info: {}", row);
+                }
+                fileList.add(row);
+            }
+            logger.info("Listed {} files in {} ms", fileList.size(), elapsedMillis(start));
+            return withValidators(ResponseEntity.ok(), eTag, lastModified, ConditionalRequests.LISTING_CACHE)
+                .header(EVENTS_VERSION_HEADER, eventsVersion)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(jsonRows(fileList));
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
         } catch (Exception e) {
             logger.error("Failed to list files", e);
             return ResponseEntity.internalServerError().body(
@@ -129,6 +202,40 @@ public class Controller {
         }
     }
 
+    /**
+     * Uploads many files in one request. Conflicts with existing files are skipped and reported
+     * unless onConflict is "replace" or "keepBoth"; the results follow the order of the parts.
+     */
+    @PostMapping("/files/upload/batch")
+    public ResponseEntity<?> uploadFiles(@RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "onConflict", defaultValue = "skip") String onConflict) {
+        BatchUploadService.ConflictAction action;
+        try {
+            action = BatchUploadService.ConflictAction.parse(onConflict);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                Map.of("error", "Invalid onConflict. Must be 'skip', 'replace' or 'keepBoth'")
+            );
+        }
+
+        try {
+            List<UploadResult> results = batchUploadService.upload(files, action);
+            results.stream().filter(UploadResult::stored).forEach(result -> uploadStatus.put(result.key(), true));
+            return ResponseEntity.ok(Map.of(
+                "results", results,
+                "stored", results.stream().filter(UploadResult::stored).count(),
+                "conflicts", results.stream().filter(result -> "conflict".equals(result.status())).count()
+            ));
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
+        } catch (Exception e) {
+            logger.error("Batch upload of {} files failed", files.size(), e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "Failed to upload files: " + e.getMessage())
+            );
+        }
+    }
+
     @PostMapping("/files/upload/resolve-conflict")
     public ResponseEntity<?> resolveUploadConflict(
             @RequestParam("file") MultipartFile file,
@@ -191,19 +298,454 @@ public class Controller {
     }
 
     @GetMapping("/files/download/{key}")
-    public ResponseEntity<?> downloadFile(@PathVariable String key) {
+    public ResponseEntity<?> downloadFile(@PathVariable String key,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletRequest request) {
+        String user = (String) request.getAttribute(RateLimitFilter.USER_ATTRIBUTE);
+        // Held until the body is written; released here on every path that sends no body
+        TransferLimitService.Slot slot = transferLimitService.acquireSlot(user,
+                TransferLimitService.Direction.DOWNLOAD);
+        boolean streaming = false;
+        ObjectContent object = null;
         try {
-            byte[] fileContent = s3Service.downloadFileContent(key);
-            return ResponseEntity.ok()
+            tieringService.recordAccess(key);
+            object = tieringService.openCached(key);
+            if (object == null) {
+                object = s3Service.openFileStream(key);
+            }
+            StoredObject response = object.object();
+            String codec = response.metadata().get(CompressionService.METADATA_CODEC);
+
+            // Compressed objects are passed through as-is when the client can decode them
+            boolean passThrough = codec == null || compressionService.isAcceptedEncoding(acceptEncoding, codec);
+
+            // The storage ETag identifies the stored bytes; the encoded representation gets its own tag
+            String eTag = response.eTag();
+            if (eTag != null && eTag.endsWith("\"") && codec != null && passThrough) {
+                eTag = eTag.substring(0, eTag.length() - 1) + "-" + codec + "\"";
+            }
+            long lastModified = response.lastModified() != null ? response.lastModified().toEpochMilli() : -1;
+            if (ConditionalRequests.isNotModified(request, eTag, lastModified)) {
+                // The read is aborted below, so the rest of the body is not drained from storage
+                return ConditionalRequests.notModified(eTag, lastModified, ConditionalRequests.OBJECT_CACHE).build();
+            }
+
+            InputStream content = passThrough ? object : compressionService.decode(object, codec);
+
+            ResponseEntity.BodyBuilder builder = withValidators(ResponseEntity.ok(), eTag, lastModified,
+                    ConditionalRequests.OBJECT_CACHE)
                     .header("Content-Disposition", "attachment; filename=\"" + key + "\"")
-                    .body(fileContent);
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (response.contentType() != null) {
+                builder.contentType(MediaType.parseMediaType(response.contentType()));
+            }
+            if (passThrough) {
+                builder.contentLength(response.size());
+                if (codec != null) {
+                    builder.header(HttpHeaders.CONTENT_ENCODING, codec);
+                }
+                // Lets clients verify what they received; it covers the stored bytes, so only pass-through
+                if (response.digest() != null) {
+                    builder.header(DIGEST_HEADER, response.digest());
+                }
+            }
+
+            ObjectContent source = object;
+            StreamingResponseBody body = outputStream -> {
+                try (slot; content) {
+                    try {
+                        content.transferTo(transferLimitService.throttle(user, outputStream));
+                    } catch (IOException | RuntimeException e) {
+                        // Abort before the stream is closed, so a failed or abandoned transfer does not
+                        // drain the rest of the object from storage
+                        source.abort();
+                        if (e instanceof SdkClientException) {
+                            // Raised at the end of the stream when the content does not match the stored checksum
+                            logger.error("Integrity check failed while downloading {}", key, e);
+                        }
+                        throw e;
+                    }
+                }
+            };
+            streaming = true;
+            return builder.body(body);
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
         } catch (Exception e) {
+            if (e instanceof ObjectNotFoundException || e.getCause() instanceof ObjectNotFoundException) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "File not found: " + key));
+            }
             return ResponseEntity.internalServerError().body(
                 Map.of("error", "Failed to download file: " + e.getMessage())
             );
+        } finally {
+            if (!streaming) {
+                slot.close();
+                if (object != null) {
+                    // No body is sent, so release the read without draining the object
+                    object.abort();
+                    closeQuietly(object);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fresh download URL for one file. Unlike the URLs in listings, which are signed for every row
+     * whether or not it is clicked, handing out this URL counts as an access for tiering.
+     */
+    @GetMapping("/files/{key}/download-url")
+    public ResponseEntity<?> getDownloadUrl(@PathVariable String key) {
+        try {
+            String url = s3Service.generateDownloadUrl(key);
+            tieringService.recordAccess(key);
+            return ResponseEntity.ok(Map.of("downloadUrl", url));
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "Failed to generate download URL: " + e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * Server-sent event stream of file changes. Clients pass the event id from the listing's
+     * X-File-Events-Version header; browsers resume automatically through Last-Event-ID.
+     */
+    @GetMapping(value = "/files/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamFileEvents(
+            @RequestParam(value = "since", required = false) String since,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return fileEventService.subscribe(lastEventId != null ? lastEventId : since);
+    }
+
+    @GetMapping("/files/archive")
+    public ResponseEntity<?> downloadArchive(
+            @RequestParam(value = "keys", required = false) List<String> keys,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            HttpServletRequest request) {
+        return streamArchive(keys, prefix, request);
+    }
+
+    @PostMapping("/files/archive")
+    public ResponseEntity<?> downloadArchive(@RequestBody ArchiveRequest archiveRequest, HttpServletRequest request) {
+        return streamArchive(archiveRequest.keys(), archiveRequest.prefix(), request);
+    }
+
+    private ResponseEntity<?> streamArchive(List<String> keys, String prefix, HttpServletRequest request) {
+        List<String> archiveKeys;
+        try {
+            if (keys != null && !keys.isEmpty()) {
+                archiveKeys = keys;
+            } else if (prefix != null) {
+                archiveKeys = s3Service.listFiles(prefix).stream()
+                    .map(StoredObject::key)
+                    .collect(Collectors.toList());
+            } else {
+                return ResponseEntity.badRequest().body(
+                    Map.of("error", "Either keys or prefix is required")
+                );
+            }
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
+        } catch (Exception e) {
+            logger.error("Failed to resolve archive contents", e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "Failed to create archive: " + e.getMessage())
+            );
+        }
+
+        if (archiveKeys.isEmpty()) {
+            return ResponseEntity.status(404).body(Map.of("error", "No files to archive"));
+        }
+
+        String user = (String) request.getAttribute(RateLimitFilter.USER_ATTRIBUTE);
+        TransferLimitService.Slot slot = transferLimitService.acquireSlot(user,
+                TransferLimitService.Direction.DOWNLOAD);
+        StreamingResponseBody body = outputStream -> {
+            try (slot) {
+                archiveService.writeArchive(archiveKeys, transferLimitService.throttle(user, outputStream));
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header("Content-Disposition", "attachment; filename=\"files.zip\"")
+                .body(body);
+    }
+
+    /**
+     * S3 calls that were shed, throttled or refused by the open circuit breaker;
+     * Retry-After tells clients when capacity is expected back
+     */
+    @ExceptionHandler(S3ThrottledException.class)
+    public ResponseEntity<?> storageOverloaded(S3ThrottledException e) {
+        logger.warn("Rejecting request, S3 is overloaded: {}", e.getMessage());
+        HttpStatus status = e instanceof S3UnavailableException
+            ? HttpStatus.SERVICE_UNAVAILABLE
+            : HttpStatus.TOO_MANY_REQUESTS;
+        return ResponseEntity.status(status)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(Map.of("error", "Storage is busy, please retry later"));
+    }
+
+    /**
+     * Features the configured storage backend does not have, such as versions on local storage
+     */
+    @ExceptionHandler(UnsupportedOperationException.class)
+    public ResponseEntity<?> notImplemented(UnsupportedOperationException e) {
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).body(Map.of("error", e.getMessage()));
+    }
+
+    /**
+     * Requests beyond the user's rate or transfer limits
+     */
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<?> rateLimited(RateLimitExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(Map.of("error", e.getMessage() + ", please retry later"));
+    }
+
+    /**
+     * The signed-in user's limits and how much of them is in use
+     */
+    @GetMapping("/limits")
+    public ResponseEntity<?> getLimits(HttpServletRequest request) {
+        String user = (String) request.getAttribute(RateLimitFilter.USER_ATTRIBUTE);
+        if (user == null) {
+            return ResponseEntity.ok(Map.of("enabled", false));
+        }
+        return ResponseEntity.ok(transferLimitService.getUsage(user));
+    }
+
+    private ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder builder, String eTag,
+                                                      long lastModified, CacheControl cacheControl) {
+        builder.cacheControl(cacheControl);
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        if (lastModified >= 0) {
+            builder.lastModified(lastModified);
+        }
+        return builder;
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            logger.debug("Ignoring failure to close an aborted download", e);
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private String originalName(String key, StoredObject metadata) {
+        String originalName = metadata.metadata().get("original-filename");
+        if (originalName == null) {
+            // Fallback to extracting from key if metadata is not available
+            int lastUnderscoreIndex = key.lastIndexOf("_");
+            originalName = lastUnderscoreIndex > 0 ? key.substring(0, lastUnderscoreIndex) : key;
+        }
+        return originalName;
+    }
+
+    /**
+     * Rows are serialized straight to the response stream instead of through per-row maps
+     */
+    private StreamingResponseBody jsonRows(List<FileRow> rows) {
+        return out -> FileRowJsonWriter.write(rows, out);
+    }
+
+    /**
+     * Size of the file as uploaded, which differs from the stored size for compressed objects
+     */
+    private long originalSize(StoredObject metadata, StoredObject file) {
+        String originalSize = metadata.metadata().get(CompressionService.METADATA_ORIGINAL_SIZE);
+        return originalSize != null ? Long.parseLong(originalSize) : file.size();
+    }
+
+    @PostMapping("/files/{key}/copy")
+    public ResponseEntity<?> copyFile(@PathVariable String key, @RequestBody(required = false) FileOperationRequest request) {
+        return runFileOperation(FileOperationService.Operation.COPY, key, request);
+    }
+
+    @PostMapping("/files/{key}/rename")
+    public ResponseEntity<?> renameFile(@PathVariable String key, @RequestBody FileOperationRequest request) {
+        return runFileOperation(FileOperationService.Operation.RENAME, key, request);
+    }
+
+    @PostMapping("/files/{key}/move")
+    public ResponseEntity<?> moveFile(@PathVariable String key, @RequestBody FileOperationRequest request) {
+        return runFileOperation(FileOperationService.Operation.MOVE, key, request);
+    }
+
+    @PostMapping("/files/batch/{operation}")
+    public ResponseEntity<?> batchFileOperation(@PathVariable String operation,
+                                                @RequestBody List<FileOperationRequest> requests) {
+        FileOperationService.Operation parsed;
+        try {
+            parsed = FileOperationService.Operation.parse(operation);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                Map.of("error", "Invalid operation. Must be 'copy', 'rename' or 'move'")
+            );
+        }
+
+        List<FileOperationResult> results = fileOperationService.executeBatch(parsed, requests);
+        return ResponseEntity.ok(Map.of(
+            "operation", parsed.name().toLowerCase(),
+            "results", results
+        ));
+    }
+
+    private ResponseEntity<?> runFileOperation(FileOperationService.Operation operation, String key,
+                                               FileOperationRequest request) {
+        FileOperationRequest operationRequest = request == null
+            ? new FileOperationRequest(key, null, null)
+            : new FileOperationRequest(key, request.targetKey(), request.originalName());
+
+        FileOperationResult result = fileOperationService.execute(operation, operationRequest);
+        if (!result.success()) {
+            return ResponseEntity.badRequest().body(Map.of("error", result.error()));
+        }
+        return ResponseEntity.ok(Map.of(
+            "message", "File " + operation.name().toLowerCase() + " completed",
+            "key", result.targetKey()
+        ));
+    }
+
+    @GetMapping("/files/{key}/versions")
+    public ResponseEntity<?> listVersions(@PathVariable String key,
+                                          @RequestParam(value = "marker", required = false) String marker,
+                                          @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(versioningService.getHistory(key, marker, Math.max(1, Math.min(limit, 1000))));
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
+        } catch (UnsupportedOperationException e) {
+            return notImplemented(e);
+        } catch (Exception e) {
+            logger.error("Failed to list versions of {}", key, e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "Failed to list versions: " + e.getMessage())
+            );
+        }
+    }
+
+    @PostMapping("/files/{key}/versions/{versionId}/restore")
+    public ResponseEntity<?> restoreVersion(@PathVariable String key, @PathVariable String versionId) {
+        try {
+            String restoredVersionId = versioningService.restore(key, versionId);
+            Map<String, Object> body = new HashMap<>();
+            body.put("message", "Version restored successfully");
+            body.put("key", key);
+            body.put("versionId", restoredVersionId);
+            return ResponseEntity.ok(body);
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
+        } catch (UnsupportedOperationException e) {
+            return notImplemented(e);
+        } catch (Exception e) {
+            logger.error("Failed to restore version {} of {}", versionId, key, e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "Failed to restore version: " + e.getMessage())
+            );
         }
     }
 
+    @DeleteMapping("/files/{key}/versions")
+    public ResponseEntity<?> pruneVersions(@PathVariable String key,
+                                           @RequestParam(value = "keep", required = false) Integer keep,
+                                           @RequestParam(value = "olderThanDays", required = false) Integer olderThanDays,
+                                           @RequestParam(value = "dryRun", defaultValue = "false") boolean dryRun) {
+        try {
+            var expired = versioningService.prune(key, keep, olderThanDays, dryRun);
+            return ResponseEntity.ok(Map.of(
+                "key", key,
+                "dryRun", dryRun,
+                "pruned", expired
+            ));
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
+        } catch (UnsupportedOperationException e) {
+            return notImplemented(e);
+        } catch (Exception e) {
+            logger.error("Failed to prune versions of {}", key, e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "Failed to prune versions: " + e.getMessage())
+            );
+        }
+    }
+
+    @GetMapping("/files/{key}/thumbnail")
+    public ResponseEntity<?> getThumbnail(@PathVariable String key, HttpServletRequest request) {
+        return serveDerivative(key, ThumbnailService.thumbnailKey(key), request);
+    }
+
+    @GetMapping("/files/{key}/preview")
+    public ResponseEntity<?> getPreview(@PathVariable String key, HttpServletRequest request) {
+        return serveDerivative(key, ThumbnailService.previewKey(key), request);
+    }
+
+    private ResponseEntity<?> serveDerivative(String key, String derivativeKey, HttpServletRequest request) {
+        ObjectContent derivative;
+        try {
+            derivative = s3Service.openFileStream(derivativeKey);
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
+        } catch (RuntimeException e) {
+            if (!(e.getCause() instanceof ObjectNotFoundException)) {
+                logger.error("Failed to load derivative {}", derivativeKey, e);
+                return ResponseEntity.internalServerError().body(
+                    Map.of("error", "Failed to load preview: " + e.getMessage())
+                );
+            }
+            return derivativeNotFound(key);
+        }
+
+        StoredObject response = derivative.object();
+        long lastModified = response.lastModified() != null ? response.lastModified().toEpochMilli() : -1;
+        if (ConditionalRequests.isNotModified(request, response.eTag(), lastModified)) {
+            derivative.abort();
+            return ConditionalRequests.notModified(response.eTag(), lastModified, ConditionalRequests.DERIVATIVE_CACHE)
+                .build();
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try (derivative) {
+                derivative.transferTo(outputStream);
+            }
+        };
+        return withValidators(ResponseEntity.ok(), response.eTag(), lastModified, ConditionalRequests.DERIVATIVE_CACHE)
+                .contentType(MediaType.parseMediaType(response.contentType()))
+                .contentLength(response.size())
+                .body(body);
+    }
+
+    /**
+     * Derivative is missing (not generated yet, or its job was dropped): queue it again and report 404.
+     * Files whose derivative failed recently are not queued again, so they get a plain 404.
+     */
+    private ResponseEntity<?> derivativeNotFound(String key) {
+        try {
+            StoredObject metadata = s3Service.getFileMetadata(key);
+            boolean queued = thumbnailService.requestDerivatives(key, metadata.contentType(),
+                metadata.metadata().get("original-filename"));
+            if (queued) {
+                return ResponseEntity.status(404)
+                    .header(HttpHeaders.RETRY_AFTER, "2")
+                    .body(Map.of("error", "Preview is being generated"));
+            }
+        } catch (RuntimeException e) {
+            logger.debug("No original for derivative of {}", key, e);
+        }
+        return ResponseEntity.notFound().build();
+    }
+
     @DeleteMapping("/files/{key}")
     public ResponseEntity<?> deleteFile(@PathVariable String key) {
         try {
@@ -213,6 +755,8 @@ public class Controller {
             } else {
                 return ResponseEntity.notFound().build();
             }
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(
                 Map.of("error", "Failed to delete file: " + e.getMessage())
@@ -232,63 +776,53 @@ public class Controller {
         return ResponseEntity.ok(Map.of("completed", completed));
     }
 
+    /**
+     * Searches file names and keys with q, or file contents with content
+     */
     @GetMapping("/files/search")
-    public ResponseEntity<?> searchFiles(@RequestParam("q") String query) {
+    public ResponseEntity<?> searchFiles(@RequestParam(value = "q", required = false) String query,
+                                         @RequestParam(value = "content", required = false) String content,
+                                         @RequestParam(value = "limit", defaultValue = "50") int limit,
+                                         HttpServletRequest request) {
+        if (content != null && !content.isBlank()) {
+            return searchContent(content, limit);
+        }
+        if (query == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Either q or content is required"));
+        }
+        long start = System.nanoTime();
         try {
-            List<S3Object> allFiles = s3Service.listFiles();
-            logger.info("Searching for '{}' in {} files from S3", query, allFiles.size());
-
-            List<Map<String, Object>> matchingFiles = allFiles.stream()
-                .filter(file -> {
-                    String key = file.key();
-                    // Get file metadata to retrieve original filename
-                    HeadObjectResponse metadata = s3Service.getFileMetadata(key);
-                    String originalName = metadata.metadata().get("original-filename");
-
-                    if (originalName == null) {
-                        // Fallback to extracting from key if metadata is not available
-                        int lastUnderscoreIndex = key.lastIndexOf("_");
-                        if (lastUnderscoreIndex > 0) {
-                            originalName = key.substring(0, lastUnderscoreIndex);
-                        } else {
-                            originalName = key;
-                        }
-                    }
-
-                    // Search in both original filename and S3 key (case-insensitive)
-                    return originalName.toLowerCase().contains(query.toLowerCase()) ||
-                           key.toLowerCase().contains(query.toLowerCase());
-                })
-                .map(file -> {
-                    Map<String, Object> fileInfo = new HashMap<>();
-                    String key = file.key();
-
-                    // Get file metadata to retrieve original filename
-                    HeadObjectResponse metadata = s3Service.getFileMetadata(key);
-                    String originalName = metadata.metadata().get("original-filename");
-
-                    if (originalName == null) {
-                        // Fallback to extracting from key if metadata is not available
-                        int lastUnderscoreIndex = key.lastIndexOf("_");
-                        if (lastUnderscoreIndex > 0) {
-                            originalName = key.substring(0, lastUnderscoreIndex);
-                        } else {
-                            originalName = key;
-                        }
-                    }
+            List<StoredObject> allFiles = s3Service.listFiles();
 
-                    fileInfo.put("key", key);
-                    fileInfo.put("originalName", originalName);
-                    fileInfo.put("size", file.size());
-                    fileInfo.put("lastModified", file.lastModified());
-                    fileInfo.put("downloadUrl", s3Service.generateDownloadUrl(key));
+            String eTag = ConditionalRequests.listingETag(allFiles, query);
+            long lastModified = ConditionalRequests.LISTING_LAST_MODIFIED;
+            if (ConditionalRequests.isNotModified(request, eTag, lastModified)) {
+                return ConditionalRequests.notModified(eTag, lastModified, ConditionalRequests.LISTING_CACHE).build();
+            }
 
-                    return fileInfo;
-                })
-                .collect(Collectors.toList());
+            String needle = query.toLowerCase();
+            List<FileRow> matchingFiles = new ArrayList<>();
+            for (StoredObject file : allFiles) {
+                String key = file.key();
+                // Get file metadata to retrieve original filename
+                StoredObject metadata = s3Service.getFileMetadata(key);
+                String originalName = originalName(key, metadata);
+
+                // Search in both original filename and S3 key (case-insensitive)
+                if (originalName.toLowerCase().contains(needle) || key.toLowerCase().contains(needle)) {
+                    matchingFiles.add(new FileRow(key, originalName, originalSize(metadata, file),
+                            metadata.contentLastModified(), s3Service.generateDownloadUrl(key),
+                            tieringService.tierOf(file)));
+                }
+            }
 
-            logger.info("Found {} matching files for query '{}'", matchingFiles.size(), query);
-            return ResponseEntity.ok(matchingFiles);
+            logger.info("Found {} of {} files matching '{}' in {} ms", matchingFiles.size(), allFiles.size(), query,
+                    elapsedMillis(start));
+            return withValidators(ResponseEntity.ok(), eTag, lastModified, ConditionalRequests.LISTING_CACHE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(jsonRows(matchingFiles));
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
         } catch (Exception e) {
             logger.error("Failed to search files for query '{}'", query, e);
             return ResponseEntity.internalServerError().body(
@@ -296,4 +830,48 @@ public class Controller {
             );
         }
     }
+
+    /**
+     * Files whose content matches the query, best match first
+     */
+    private ResponseEntity<?> searchContent(String query, int limit) {
+        if (!contentIndexService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                Map.of("error", "Content search is disabled")
+            );
+        }
+        long start = System.nanoTime();
+        try {
+            List<ContentIndex.Hit> hits = contentIndexService.search(query, Math.max(1, Math.min(limit, 500)));
+            List<FileRow> matchingFiles = new ArrayList<>();
+            for (ContentIndex.Hit hit : hits) {
+                StoredObject metadata;
+                try {
+                    metadata = s3Service.getFileMetadata(hit.key());
+                } catch (RuntimeException e) {
+                    if (e.getCause() instanceof ObjectNotFoundException) {
+                        // Deleted after it was indexed; the index catches up in the background
+                        continue;
+                    }
+                    throw e;
+                }
+                matchingFiles.add(new FileRow(hit.key(), originalName(hit.key(), metadata),
+                        originalSize(metadata, metadata), metadata.contentLastModified(),
+                        s3Service.generateDownloadUrl(hit.key()), tieringService.tierOf(metadata)));
+            }
+
+            logger.info("Found {} files with content matching '{}' in {} ms", matchingFiles.size(), query,
+                    elapsedMillis(start));
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(jsonRows(matchingFiles));
+        } catch (S3ThrottledException e) {
+            return storageOverloaded(e);
+        } catch (Exception e) {
+            logger.error("Failed to search file contents for query '{}'", query, e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "Failed to search file contents: " + e.getMessage())
+            );
+        }
+    }
 }
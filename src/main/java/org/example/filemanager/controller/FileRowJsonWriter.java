@@ -0,0 +1,136 @@
+package org.example.filemanager.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+
+import org.example.filemanager.model.FileRow;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Streams file rows as a JSON array straight to a response body.
+ * Produces the same document Jackson's data binding would for the equivalent maps, but with
+ * field names encoded once up front and timestamps formatted into a reused buffer, so the
+ * per-row cost is the bytes written and nothing else.
+ */
+final class FileRowJsonWriter {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            // The servlet container owns the response stream
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private static final SerializableString KEY = new SerializedString("key");
+    private static final SerializableString ORIGINAL_NAME = new SerializedString("originalName");
+    private static final SerializableString SIZE = new SerializedString("size");
+    private static final SerializableString LAST_MODIFIED = new SerializedString("lastModified");
+    private static final SerializableString DOWNLOAD_URL = new SerializedString("downloadUrl");
+    private static final SerializableString TIER = new SerializedString("tier");
+
+    // Longest ISO-8601 instant for years up to 9999, with nanoseconds
+    private static final int MAX_TIMESTAMP_LENGTH = 30;
+
+    private FileRowJsonWriter() {
+    }
+
+    static void write(List<FileRow> rows, OutputStream out) throws IOException {
+        char[] timestamp = new char[MAX_TIMESTAMP_LENGTH];
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (FileRow row : rows) {
+                generator.writeStartObject();
+                generator.writeFieldName(KEY);
+                generator.writeString(row.key());
+                generator.writeFieldName(ORIGINAL_NAME);
+                generator.writeString(row.originalName());
+                generator.writeFieldName(SIZE);
+                generator.writeNumber(row.size());
+                generator.writeFieldName(LAST_MODIFIED);
+                writeInstant(generator, row.lastModified(), timestamp);
+                generator.writeFieldName(DOWNLOAD_URL);
+                generator.writeString(row.downloadUrl());
+                generator.writeFieldName(TIER);
+                generator.writeString(row.tier());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static void writeInstant(JsonGenerator generator, Instant instant, char[] buffer) throws IOException {
+        if (instant == null) {
+            generator.writeNull();
+            return;
+        }
+        int length = formatInstant(instant.getEpochSecond(), instant.getNano(), buffer);
+        if (length < 0) {
+            generator.writeString(instant.toString());
+        } else {
+            generator.writeString(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Formats like DateTimeFormatter.ISO_INSTANT, which is what Jackson uses for Instant values;
+     * returns -1 for years outside 0000-9999, which that format writes differently
+     */
+    static int formatInstant(long epochSecond, int nano, char[] buffer) {
+        long epochDay = Math.floorDiv(epochSecond, 86400);
+        int secondOfDay = (int) Math.floorMod(epochSecond, 86400);
+
+        // Civil date from days since 1970-01-01, in 400-year eras starting on March 1st
+        long days = epochDay + 719468;
+        long era = Math.floorDiv(days, 146097);
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+
+        int pos = 0;
+        pos = writeDigits(buffer, pos, (int) year, 4);
+        buffer[pos++] = '-';
+        pos = writeDigits(buffer, pos, month, 2);
+        buffer[pos++] = '-';
+        pos = writeDigits(buffer, pos, day, 2);
+        buffer[pos++] = 'T';
+        pos = writeDigits(buffer, pos, secondOfDay / 3600, 2);
+        buffer[pos++] = ':';
+        pos = writeDigits(buffer, pos, secondOfDay / 60 % 60, 2);
+        buffer[pos++] = ':';
+        pos = writeDigits(buffer, pos, secondOfDay % 60, 2);
+        if (nano != 0) {
+            // Fractions are written in groups of three digits, as many as needed
+            buffer[pos++] = '.';
+            if (nano % 1_000_000 == 0) {
+                pos = writeDigits(buffer, pos, nano / 1_000_000, 3);
+            } else if (nano % 1000 == 0) {
+                pos = writeDigits(buffer, pos, nano / 1000, 6);
+            } else {
+                pos = writeDigits(buffer, pos, nano, 9);
+            }
+        }
+        buffer[pos++] = 'Z';
+        return pos;
+    }
+
+    private static int writeDigits(char[] buffer, int pos, int value, int width) {
+        for (int i = pos + width - 1; i >= pos; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + width;
+    }
+}
@@ -0,0 +1,9 @@
+package org.example.filemanager.model;
+
+import java.util.List;
+
+/**
+ * Request body for archive downloads: either an explicit list of keys or a key prefix
+ */
+public record ArchiveRequest(List<String> keys, String prefix) {
+}
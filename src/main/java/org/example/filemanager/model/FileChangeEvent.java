@@ -0,0 +1,32 @@
+package org.example.filemanager.model;
+
+import java.time.Instant;
+
+/**
+ * Application event published by the storage layer after a file was added, replaced, moved or deleted.
+ * For moves, previousKey is the key the file had before. versionId is the S3 version created by
+ * the change when bucket versioning is enabled, otherwise null.
+ */
+public record FileChangeEvent(Type type, String key, String previousKey, String originalName, long size,
+                              String contentType, Instant lastModified, String versionId) {
+
+    public enum Type {
+        ADDED,
+        REPLACED,
+        MOVED,
+        DELETED
+    }
+
+    public FileChangeEvent(Type type, String key, String originalName, long size, String contentType,
+                           Instant lastModified) {
+        this(type, key, null, originalName, size, contentType, lastModified, null);
+    }
+
+    public static FileChangeEvent deleted(String key) {
+        return new FileChangeEvent(Type.DELETED, key, null, 0, null, Instant.now());
+    }
+
+    public FileEntry toEntry() {
+        return new FileEntry(key, originalName, size, lastModified, contentType, null);
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.filemanager.model;
+
+import java.time.Instant;
+
+/**
+ * Change event as pushed to clients, numbered with a monotonically increasing version
+ * so that a reconnecting client can resume from the last version it applied
+ */
+public record FileChangeNotification(long version, FileChangeEvent.Type type, String key, String previousKey,
+                                     String originalName, long size, Instant lastModified) {
+
+    public static FileChangeNotification of(long version, FileChangeEvent event) {
+        return new FileChangeNotification(version, event.type(), event.key(), event.previousKey(),
+                event.originalName(), event.size(), event.lastModified());
+    }
+}
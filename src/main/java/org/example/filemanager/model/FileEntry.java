@@ -0,0 +1,14 @@
+package org.example.filemanager.model;
+
+import java.time.Instant;
+
+/**
+ * Catalog row for a stored file; size is the size as uploaded, before any compression
+ */
+public record FileEntry(String key, String originalName, long size, Instant lastModified,
+                        String contentType, String eTag) {
+
+    public FileEntry withKey(String newKey) {
+        return new FileEntry(newKey, originalName, size, lastModified, contentType, eTag);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.filemanager.model;
+
+/**
+ * One copy, rename or move; targetKey and originalName are optional depending on the operation
+ */
+public record FileOperationRequest(String sourceKey, String targetKey, String originalName) {
+}
@@ -0,0 +1,15 @@
+package org.example.filemanager.model;
+
+/**
+ * Outcome of one operation in a batch; error is set when success is false
+ */
+public record FileOperationResult(String sourceKey, String targetKey, boolean success, String error) {
+
+    public static FileOperationResult succeeded(String sourceKey, String targetKey) {
+        return new FileOperationResult(sourceKey, targetKey, true, null);
+    }
+
+    public static FileOperationResult failed(String sourceKey, String error) {
+        return new FileOperationResult(sourceKey, null, false, error);
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.filemanager.model;
+
+import java.time.Instant;
+
+/**
+ * One file as returned by the listing and search endpoints; tier is "hot", "warm" or "cold"
+ */
+public record FileRow(String key, String originalName, long size, Instant lastModified, String downloadUrl,
+                      String tier) {
+}
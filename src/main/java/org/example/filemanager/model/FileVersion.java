@@ -0,0 +1,14 @@
+package org.example.filemanager.model;
+
+import java.time.Instant;
+
+/**
+ * One entry of a file's version history; delete markers have no size
+ */
+public record FileVersion(String key, String versionId, long size, Instant lastModified,
+                          boolean latest, boolean deleteMarker) {
+
+    public FileVersion asNoncurrent() {
+        return new FileVersion(key, versionId, size, lastModified, false, deleteMarker);
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.filemanager.model;
+
+import java.time.Duration;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Retention rules for the files under a key prefix; null limits are not enforced.
+ * maxVersions counts the current version, so 1 keeps no noncurrent versions.
+ */
+public record RetentionPolicy(String prefix, Duration maxAge, Integer maxVersions, Long maxBytes) {
+
+    /**
+     * Parses "prefix|max-age=30d|max-versions=5|max-bytes=10GB"; an empty prefix covers every file
+     */
+    public static RetentionPolicy parse(String spec) {
+        String[] parts = spec.trim().split("\\|");
+        Duration maxAge = null;
+        Integer maxVersions = null;
+        Long maxBytes = null;
+        for (int i = 1; i < parts.length; i++) {
+            String[] setting = parts[i].split("=", 2);
+            if (setting.length != 2) {
+                throw new IllegalArgumentException("Invalid retention setting '" + parts[i] + "' in " + spec);
+            }
+            String value = setting[1].trim();
+            switch (setting[0].trim()) {
+                case "max-age" -> maxAge = DurationStyle.detectAndParse(value);
+                case "max-versions" -> maxVersions = Integer.parseInt(value);
+                case "max-bytes" -> maxBytes = DataSize.parse(value).toBytes();
+                default -> throw new IllegalArgumentException("Unknown retention setting '" + setting[0] + "' in " + spec);
+            }
+        }
+        if (maxVersions != null && maxVersions < 1) {
+            throw new IllegalArgumentException("max-versions must be at least 1 in " + spec);
+        }
+        return new RetentionPolicy(parts.length > 0 ? parts[0].trim() : "", maxAge, maxVersions, maxBytes);
+    }
+
+    public boolean covers(String key) {
+        return key != null && key.startsWith(prefix);
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.filemanager.model;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * Storage-neutral description of a stored object. Listings only fill in key, size, modification
+ * time and ETag; the other fields come from a metadata lookup or read. The digest is the RFC 3230
+ * form of the full-object checksum (e.g. "crc32c=..."), or null when there is none. The storage
+ * class is null when the backend has none or the object is in its default class.
+ */
+public record StoredObject(String key, long size, Instant lastModified, String eTag, String contentType,
+                           String contentEncoding, Map<String, String> metadata, String digest,
+                           String storageClass) {
+
+    // Set when the object is copied onto itself without changing its content, e.g. to move it to
+    // another storage class, which resets the storage's modification time
+    public static final String CONTENT_MODIFIED = "content-modified";
+
+    public StoredObject {
+        metadata = metadata == null ? Map.of() : metadata;
+    }
+
+    /**
+     * When the content was last written: the modification time recorded before a storage class
+     * change if there was one, otherwise the storage's own
+     */
+    public Instant contentLastModified() {
+        String recorded = metadata.get(CONTENT_MODIFIED);
+        if (recorded != null) {
+            try {
+                return Instant.parse(recorded);
+            } catch (DateTimeParseException e) {
+                // Not written by this application
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * Entry as returned by a listing, without per-object metadata
+     */
+    public static StoredObject listed(String key, long size, Instant lastModified, String eTag,
+                                      String storageClass) {
+        return new StoredObject(key, size, lastModified, eTag, null, null, Map.of(), null, storageClass);
+    }
+}
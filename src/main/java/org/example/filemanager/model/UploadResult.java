@@ -0,0 +1,28 @@
+package org.example.filemanager.model;
+
+/**
+ * Outcome of one file in a batch upload. status is "uploaded", "replaced", "conflict" or "failed";
+ * existingKey is the file a conflict is with, error is set for failures
+ */
+public record UploadResult(String originalFilename, String key, String status, String existingKey, String error) {
+
+    public static UploadResult uploaded(String originalFilename, String key) {
+        return new UploadResult(originalFilename, key, "uploaded", null, null);
+    }
+
+    public static UploadResult replaced(String originalFilename, String key) {
+        return new UploadResult(originalFilename, key, "replaced", null, null);
+    }
+
+    public static UploadResult conflict(String originalFilename, String existingKey) {
+        return new UploadResult(originalFilename, null, "conflict", existingKey, null);
+    }
+
+    public static UploadResult failed(String originalFilename, String error) {
+        return new UploadResult(originalFilename, null, "failed", null, error);
+    }
+
+    public boolean stored() {
+        return key != null;
+    }
+}
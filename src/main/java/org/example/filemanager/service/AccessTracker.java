@@ -0,0 +1,163 @@
+package org.example.filemanager.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Access frequency per key as an exponentially decayed counter: every access adds one and the
+ * score halves with each half-life without access, so a key read ten times an hour ago and one
+ * read five times just now compare sensibly without keeping any access history.
+ * Only keys that were accessed take memory; entries whose last access is older than the
+ * caller's horizon are pruned. The counters can be saved to and loaded from a file so a restart
+ * does not make every object look cold.
+ */
+public class AccessTracker {
+
+    private static final int FILE_MAGIC = 0x41434354;
+    private static final int FILE_VERSION = 1;
+
+    private final long halfLifeMillis;
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    // Accesses before this time were not observed, so a missing counter only means "not accessed since"
+    private volatile long trackedSinceMillis;
+
+    private record Counter(double score, long lastAccessMillis) {
+
+        double decayedTo(long nowMillis, long halfLifeMillis) {
+            long elapsed = Math.max(0, nowMillis - lastAccessMillis);
+            return score * Math.pow(0.5, (double) elapsed / halfLifeMillis);
+        }
+    }
+
+    public AccessTracker(long halfLifeMillis, long trackedSinceMillis) {
+        if (halfLifeMillis <= 0) {
+            throw new IllegalArgumentException("Half-life must be positive: " + halfLifeMillis);
+        }
+        this.halfLifeMillis = halfLifeMillis;
+        this.trackedSinceMillis = trackedSinceMillis;
+    }
+
+    /**
+     * Counts one access and returns the key's new score
+     */
+    public double recordAccess(String key, long nowMillis) {
+        return counters.compute(key, (k, counter) -> new Counter(
+                (counter != null ? counter.decayedTo(nowMillis, halfLifeMillis) : 0) + 1, nowMillis)).score();
+    }
+
+    public double score(String key, long nowMillis) {
+        Counter counter = counters.get(key);
+        return counter != null ? counter.decayedTo(nowMillis, halfLifeMillis) : 0;
+    }
+
+    /**
+     * Time of the key's last access, or Long.MIN_VALUE if none was seen since tracking started
+     */
+    public long lastAccessMillis(String key) {
+        Counter counter = counters.get(key);
+        return counter != null ? counter.lastAccessMillis() : Long.MIN_VALUE;
+    }
+
+    public long trackedSinceMillis() {
+        return trackedSinceMillis;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Scores of all keys at or above the given score
+     */
+    public Map<String, Double> scoresAtLeast(double minScore, long nowMillis) {
+        Map<String, Double> scores = new HashMap<>();
+        counters.forEach((key, counter) -> {
+            double score = counter.decayedTo(nowMillis, halfLifeMillis);
+            if (score >= minScore) {
+                scores.put(key, score);
+            }
+        });
+        return scores;
+    }
+
+    public void remove(String key) {
+        counters.remove(key);
+    }
+
+    /**
+     * Carries the counter over to the key's new name
+     */
+    public void move(String previousKey, String key) {
+        Counter counter = counters.remove(previousKey);
+        if (counter != null) {
+            counters.put(key, counter);
+        }
+    }
+
+    /**
+     * Drops counters whose last access is before the given time and returns how many were dropped.
+     * Callers pick a horizon beyond which an access no longer matters to them.
+     */
+    public int prune(long lastAccessBeforeMillis) {
+        int before = counters.size();
+        counters.values().removeIf(counter -> counter.lastAccessMillis() < lastAccessBeforeMillis);
+        return before - counters.size();
+    }
+
+    /**
+     * Writes the counters to a temporary file that replaces the target atomically
+     */
+    public void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeLong(trackedSinceMillis);
+                // Snapshot first, the count must match the entries that follow
+                Map<String, Counter> snapshot = new HashMap<>(counters);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Counter> entry : snapshot.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeDouble(entry.getValue().score());
+                    out.writeLong(entry.getValue().lastAccessMillis());
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Loads counters saved by {@link #save}; without a file, tracking starts at the given time
+     */
+    public static AccessTracker load(Path file, long halfLifeMillis, long nowMillis) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unrecognized access counter file " + file);
+            }
+            AccessTracker tracker = new AccessTracker(halfLifeMillis, in.readLong());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                tracker.counters.put(in.readUTF(), new Counter(in.readDouble(), in.readLong()));
+            }
+            return tracker;
+        } catch (NoSuchFileException e) {
+            return new AccessTracker(halfLifeMillis, nowMillis);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.example.filemanager.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.StoredObject;
+import org.example.filemanager.storage.ObjectContent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Streams many S3 objects as a single ZIP archive built on the fly.
+ * Upcoming objects are fetched concurrently with a bounded read-ahead window while entries
+ * are written strictly in request order. Small objects are buffered by the prefetcher,
+ * larger ones are kept as open streams, so memory stays bounded by
+ * read-ahead * prefetch buffer limit and no temporary files are created.
+ */
+@Service
+public class ArchiveService {
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveService.class);
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private CompressionService compressionService;
+
+    // Number of objects fetched ahead of the entry currently being written
+    @Value("${archive.read-ahead:4}")
+    private int readAhead;
+
+    // Objects up to this size are fully buffered by the prefetcher, larger ones are streamed
+    @Value("${archive.prefetch-buffer-limit:4194304}")
+    private long prefetchBufferLimit;
+
+    @Value("${archive.prefetch-threads:8}")
+    private int prefetchThreads;
+
+    private ExecutorService prefetchExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "archive-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Writes the given keys as ZIP entries to the output stream, in order.
+     * Keys that no longer exist are skipped; any other failure aborts the archive.
+     */
+    public void writeArchive(List<String> keys, OutputStream outputStream) throws IOException {
+        Deque<Prefetch> window = new ArrayDeque<>();
+        Iterator<String> pending = keys.iterator();
+        Set<String> entryNames = new HashSet<>();
+        int written = 0;
+
+        try {
+            ZipOutputStream zip = new ZipOutputStream(outputStream);
+            zip.setLevel(Deflater.BEST_SPEED);
+
+            while (window.size() < readAhead && pending.hasNext()) {
+                window.add(prefetch(pending.next()));
+            }
+
+            while (!window.isEmpty()) {
+                PrefetchedEntry entry = await(window.poll());
+                if (pending.hasNext()) {
+                    window.add(prefetch(pending.next()));
+                }
+                if (entry == null) {
+                    continue;
+                }
+
+                try (InputStream content = entry.content()) {
+                    try {
+                        zip.putNextEntry(new ZipEntry(uniqueEntryName(entry, entryNames)));
+                        content.transferTo(zip);
+                        zip.closeEntry();
+                    } catch (IOException | RuntimeException e) {
+                        // Abort before the stream is closed, so it does not drain the rest of the object
+                        entry.abort();
+                        throw e;
+                    }
+                }
+                written++;
+            }
+
+            zip.finish();
+            zip.flush();
+            logger.info("Streamed archive with {} of {} requested files", written, keys.size());
+        } finally {
+            window.forEach(this::discard);
+        }
+    }
+
+    private Prefetch prefetch(String key) {
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<PrefetchedEntry> future = prefetchExecutor.submit(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                // Discarded before it started
+                return null;
+            }
+            ObjectContent stream;
+            try {
+                stream = s3Service.openFileStream(key);
+            } catch (RuntimeException e) {
+                logger.warn("Skipping {} in archive: {}", key, e.getMessage());
+                return null;
+            }
+
+            StoredObject object = stream.object();
+            String originalName = object.metadata().get("original-filename");
+            String codec = object.metadata().get(CompressionService.METADATA_CODEC);
+
+            // Compressed objects are buffered compressed and only inflated while being written
+            if (object.size() <= prefetchBufferLimit) {
+                try (stream) {
+                    InputStream buffered = new ByteArrayInputStream(stream.readAllBytes());
+                    return new PrefetchedEntry(key, originalName, compressionService.decode(buffered, codec), null);
+                }
+            }
+            return new PrefetchedEntry(key, originalName, compressionService.decode(stream, codec), stream);
+        });
+        return new Prefetch(future, claimed);
+    }
+
+    private PrefetchedEntry await(Prefetch prefetch) throws IOException {
+        try {
+            return prefetch.future().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for archive entry");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to fetch archive entry: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Releases a prefetched entry that will never be written. A task that has not started is
+     * claimed so it never opens its stream; a started one is awaited and its stream aborted,
+     * since closing would drain the rest of the object from storage.
+     */
+    private void discard(Prefetch prefetch) {
+        if (prefetch.claimed().compareAndSet(false, true)) {
+            prefetch.future().cancel(false);
+            return;
+        }
+        try {
+            PrefetchedEntry entry = prefetch.future().get();
+            if (entry != null) {
+                entry.abort();
+                entry.content().close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.debug("Ignoring failure while discarding archive entry", e);
+        }
+    }
+
+    private String uniqueEntryName(PrefetchedEntry entry, Set<String> entryNames) {
+        String name = safeEntryName(entry.originalName());
+        if (name.isEmpty() || entryNames.contains(name)) {
+            // Keys are unique, so they are a safe fallback for missing or duplicate names
+            name = safeEntryName(entry.key().replace('/', '_'));
+        }
+        if (name.isEmpty()) {
+            name = "file";
+        }
+        String unique = name;
+        for (int copy = 2; !entryNames.add(unique); copy++) {
+            unique = copy + "_" + name;
+        }
+        return unique;
+    }
+
+    /**
+     * The last path component of a name, so an entry cannot point outside the directory the
+     * archive is extracted to; names come from upload metadata and are not trusted
+     */
+    static String safeEntryName(String name) {
+        if (name == null) {
+            return "";
+        }
+        String normalized = name.replace('\\', '/');
+        String fileName = normalized.substring(normalized.lastIndexOf('/') + 1).strip();
+        if (fileName.matches("[A-Za-z]:.*")) {
+            fileName = fileName.substring(2);
+        }
+        return fileName.equals(".") || fileName.equals("..") ? "" : fileName;
+    }
+
+    private record Prefetch(Future<PrefetchedEntry> future, AtomicBoolean claimed) {
+    }
+
+    /**
+     * An entry ready to be written; source is the open storage stream for streamed entries
+     */
+    private record PrefetchedEntry(String key, String originalName, InputStream content, ObjectContent source) {
+
+        void abort() {
+            if (source != null) {
+                source.abort();
+            }
+        }
+    }
+}
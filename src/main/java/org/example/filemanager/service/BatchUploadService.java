@@ -0,0 +1,166 @@
+package org.example.filemanager.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.UploadResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Uploads the files of one multi-file request. Name conflicts for the whole batch are resolved
+ * with a single lookup in the catalog's filename index, then the files are stored concurrently
+ * with bounded parallelism, each streaming from the part the servlet container received.
+ * The upload threads are shared by all requests; one request uses at most a few of them at a
+ * time, so a large drop of files cannot hold up everyone else's uploads.
+ */
+@Service
+public class BatchUploadService {
+    private static final Logger logger = LoggerFactory.getLogger(BatchUploadService.class);
+
+    /**
+     * What to do with a file whose original filename is already taken
+     */
+    public enum ConflictAction {
+        // Report the conflict and upload nothing, like the single-file endpoint's 409
+        SKIP,
+        REPLACE,
+        KEEP_BOTH;
+
+        public static ConflictAction parse(String value) {
+            return switch (value.toLowerCase(Locale.ROOT)) {
+                case "skip", "cancel" -> SKIP;
+                case "replace" -> REPLACE;
+                case "keepboth", "keep_both" -> KEEP_BOTH;
+                default -> throw new IllegalArgumentException("Unknown conflict action: " + value);
+            };
+        }
+    }
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Value("${file-uploads.parallelism:8}")
+    private int parallelism;
+
+    @Value("${file-uploads.per-request-parallelism:4}")
+    private int perRequestParallelism;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "file-uploads-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Uploads the files and returns one result per file, in request order. A filename repeated
+     * within the batch is stored once; the repeats conflict with that upload unless conflicts
+     * keep both.
+     */
+    public List<UploadResult> upload(List<MultipartFile> files, ConflictAction onConflict) {
+        long start = System.nanoTime();
+        List<String> names = files.stream().map(MultipartFile::getOriginalFilename).toList();
+        Map<String, String> existing = s3Service.findExistingFilesByOriginalNames(names);
+
+        Map<String, Integer> firstIndexByName = new HashMap<>();
+        List<CompletableFuture<UploadResult>> results = new ArrayList<>(files.size());
+        Queue<Runnable> uploads = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String name = names.get(i);
+            String existingKey = existing.get(name);
+            Integer firstIndex = name != null ? firstIndexByName.putIfAbsent(name, i) : null;
+
+            if (firstIndex != null && onConflict != ConflictAction.KEEP_BOTH) {
+                // Resolved against the first upload's key once it is known
+                results.add(null);
+            } else if (existingKey != null && onConflict == ConflictAction.SKIP) {
+                results.add(CompletableFuture.completedFuture(UploadResult.conflict(name, existingKey)));
+            } else {
+                String replaceKey = onConflict == ConflictAction.REPLACE ? existingKey : null;
+                CompletableFuture<UploadResult> result = new CompletableFuture<>();
+                uploads.add(() -> {
+                    try {
+                        result.complete(store(file, name, replaceKey));
+                    } catch (Error e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+                results.add(result);
+            }
+        }
+
+        // Each lane stores this request's files one after another until none are left
+        int lanes = Math.min(uploads.size(), Math.max(1, perRequestParallelism));
+        for (int lane = 0; lane < lanes; lane++) {
+            executor.execute(() -> {
+                Runnable upload;
+                while ((upload = uploads.poll()) != null) {
+                    upload.run();
+                }
+            });
+        }
+
+        List<UploadResult> completed = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            CompletableFuture<UploadResult> result = results.get(i);
+            if (result != null) {
+                completed.add(result.join());
+            } else {
+                String name = names.get(i);
+                UploadResult first = completed.get(firstIndexByName.get(name));
+                String conflictKey = first.stored() ? first.key() : existing.get(name);
+                completed.add(conflictKey != null ? UploadResult.conflict(name, conflictKey)
+                        : UploadResult.failed(name, "Not uploaded, an earlier file with the same name failed"));
+            }
+        }
+
+        logger.info("Batch upload of {} files finished in {} ms: {} stored, {} conflicts, {} failed", files.size(),
+                (System.nanoTime() - start) / 1_000_000,
+                completed.stream().filter(UploadResult::stored).count(),
+                completed.stream().filter(result -> "conflict".equals(result.status())).count(),
+                completed.stream().filter(result -> "failed".equals(result.status())).count());
+        return completed;
+    }
+
+    private UploadResult store(MultipartFile file, String name, String replaceKey) {
+        try {
+            if (replaceKey != null) {
+                return UploadResult.replaced(name, s3Service.uploadFileWithReplace(file, replaceKey));
+            }
+            return UploadResult.uploaded(name, s3Service.uploadFile(file));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Upload of {} failed: {}", name, e.getMessage());
+            return UploadResult.failed(name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,657 @@
+package org.example.filemanager.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.example.filemanager.model.FileEntry;
+
+/**
+ * Compact store of file entries without per-entry objects.
+ * Numeric fields live in primitive arrays indexed by slot. Keys, original filenames and ETags are
+ * UTF-8 encoded into an append-only arena of buffer chunks, optionally allocated off-heap, while
+ * the directory part of keys and content types are dictionary-encoded. Lookups by key and by
+ * original filename follow hash chains threaded through int arrays, and an array of slots sorted
+ * by key serves ranges in S3 listing order. Space of removed records is reclaimed by compacting
+ * the arena once it is mostly garbage.
+ * <p>
+ * Not thread-safe; callers synchronize.
+ */
+public final class CompactFileStore {
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int NONE = -1;
+    private static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    private final boolean offHeap;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private int chunkPosition = CHUNK_SIZE;
+    private long liveBytes;
+    private long garbageBytes;
+
+    // Columns indexed by slot; a free slot has record offset NONE
+    private long[] recordOffsets = new long[0];
+    private long[] sizes = new long[0];
+    private long[] lastModified = new long[0];
+    private int[] prefixIds = new int[0];
+    private int[] contentTypeIds = new int[0];
+    private int[] nextByKey = new int[0];
+    private int[] nextByName = new int[0];
+    private int[] previousByName = new int[0];
+    // Live slots in UTF-8 byte order of their keys, which is S3 listing order; the first count are used
+    private int[] keyOrder = new int[0];
+    private int slotLimit;
+    private int count;
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+
+    private int[] keyBuckets = newBuckets(16);
+    private int[] nameBuckets = newBuckets(16);
+
+    private final Dictionary prefixes = new Dictionary();
+    private final Dictionary contentTypes = new Dictionary();
+
+    public CompactFileStore(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Bytes held by the arena, live and garbage
+     */
+    public long arenaBytes() {
+        return (long) chunks.size() * CHUNK_SIZE;
+    }
+
+    public boolean contains(String key) {
+        return find(key) != NONE;
+    }
+
+    public FileEntry get(String key) {
+        int slot = find(key);
+        return slot == NONE ? null : toEntry(slot);
+    }
+
+    /**
+     * Adds the entry, replacing any entry with the same key
+     */
+    public void put(FileEntry entry) {
+        remove(entry.key());
+
+        int split = entry.key().lastIndexOf('/') + 1;
+        byte[] suffix = entry.key().substring(split).getBytes(StandardCharsets.UTF_8);
+        byte[] name = entry.originalName() == null ? null : entry.originalName().getBytes(StandardCharsets.UTF_8);
+        byte[] eTag = entry.eTag() == null ? null : entry.eTag().getBytes(StandardCharsets.UTF_8);
+
+        int slot = allocateSlot();
+        recordOffsets[slot] = appendRecord(suffix, name, eTag);
+        sizes[slot] = entry.size();
+        lastModified[slot] = entry.lastModified() == null ? UNKNOWN_TIME : entry.lastModified().toEpochMilli();
+        prefixIds[slot] = prefixes.idOf(entry.key().substring(0, split));
+        contentTypeIds[slot] = entry.contentType() == null ? NONE : contentTypes.idOf(entry.contentType());
+        // The key was removed above, so the search yields the insertion point; listing order
+        // inserts mostly append, which keeps the shift short
+        int position = -orderIndex(entry.key().getBytes(StandardCharsets.UTF_8)) - 1;
+        System.arraycopy(keyOrder, position, keyOrder, position + 1, count - position);
+        keyOrder[position] = slot;
+        count++;
+
+        if (count > keyBuckets.length * 3 / 4) {
+            rehash(keyBuckets.length * 2);
+        } else {
+            link(slot, suffix, name);
+        }
+    }
+
+    public boolean remove(String key) {
+        int slot = find(key);
+        if (slot == NONE) {
+            return false;
+        }
+        unlink(slot);
+        int position = orderIndex(key.getBytes(StandardCharsets.UTF_8));
+        System.arraycopy(keyOrder, position + 1, keyOrder, position, count - position - 1);
+        long offset = recordOffsets[slot];
+        long recordLength = skipRecord(offset) - offset;
+        liveBytes -= recordLength;
+        garbageBytes += recordLength;
+
+        recordOffsets[slot] = NONE;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeSlots.length * 2));
+        }
+        freeSlots[freeCount++] = slot;
+        count--;
+
+        if (garbageBytes > CHUNK_SIZE && garbageBytes > liveBytes) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Keys of all entries with the given original filename, in insertion order
+     */
+    public List<String> findKeysByOriginalName(String originalName) {
+        List<String> keys = new ArrayList<>();
+        byte[] name = originalName.getBytes(StandardCharsets.UTF_8);
+        for (int slot = nameBuckets[bucket(hash(name), nameBuckets)]; slot != NONE; slot = nextByName[slot]) {
+            long nameOffset = skipField(recordOffsets[slot]);
+            if (fieldEquals(nameOffset, name)) {
+                keys.add(keyOf(slot));
+            }
+        }
+        // Chains run newest first
+        Collections.reverse(keys);
+        return keys;
+    }
+
+    /**
+     * Up to limit entries in key order, starting at the given key (inclusive or not) or at the
+     * first key when it is null, and stopping below upper unless that is null
+     */
+    public List<FileEntry> range(String from, boolean inclusive, String upper, int limit) {
+        int position = 0;
+        if (from != null) {
+            position = orderIndex(from.getBytes(StandardCharsets.UTF_8));
+            position = position >= 0 ? (inclusive ? position : position + 1) : -position - 1;
+        }
+        byte[] upperKey = upper == null ? null : upper.getBytes(StandardCharsets.UTF_8);
+        List<FileEntry> entries = new ArrayList<>(Math.min(limit, count - position));
+        for (; position < count && entries.size() < limit; position++) {
+            int slot = keyOrder[position];
+            if (upperKey != null && compareKey(slot, upperKey) >= 0) {
+                break;
+            }
+            entries.add(toEntry(slot));
+        }
+        return entries;
+    }
+
+    public List<FileEntry> toList() {
+        List<FileEntry> entries = new ArrayList<>(count);
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            entries.add(toEntry(cursor.slot));
+        }
+        return entries;
+    }
+
+    /**
+     * Cursor over all entries in slot order. Moving it and reading fields allocates nothing;
+     * the store must not be modified while a cursor is in use.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public final class Cursor {
+        private int slot = NONE;
+        private long suffixOffset;
+        private long nameOffset;
+        private long eTagOffset;
+
+        public boolean next() {
+            while (++slot < slotLimit) {
+                if (recordOffsets[slot] != NONE) {
+                    suffixOffset = recordOffsets[slot];
+                    nameOffset = skipField(suffixOffset);
+                    eTagOffset = skipField(nameOffset);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Full key; unlike the other accessors this allocates a string
+         */
+        public String key() {
+            return keyOf(slot);
+        }
+
+        /**
+         * Directory part of the key, up to and including the last slash; shared between entries
+         */
+        public String keyPrefix() {
+            return prefixes.valueOf(prefixIds[slot]);
+        }
+
+        public int keySuffixLength() {
+            return fieldLength(suffixOffset);
+        }
+
+        /**
+         * Copies the UTF-8 bytes of the key after its prefix; returns the position after them
+         */
+        public int copyKeySuffix(byte[] target, int position) {
+            return copyField(suffixOffset, target, position);
+        }
+
+        /**
+         * Length of the UTF-8 encoded original filename, or -1 if it is not known
+         */
+        public int originalNameLength() {
+            return fieldLength(nameOffset);
+        }
+
+        public int copyOriginalName(byte[] target, int position) {
+            return copyField(nameOffset, target, position);
+        }
+
+        public int eTagLength() {
+            return fieldLength(eTagOffset);
+        }
+
+        public int copyETag(byte[] target, int position) {
+            return copyField(eTagOffset, target, position);
+        }
+
+        public long size() {
+            return sizes[slot];
+        }
+
+        /**
+         * Modification time in epoch milliseconds, or Long.MIN_VALUE if it is not known
+         */
+        public long lastModifiedMillis() {
+            return lastModified[slot];
+        }
+
+        public String contentType() {
+            int id = contentTypeIds[slot];
+            return id == NONE ? null : contentTypes.valueOf(id);
+        }
+
+        public FileEntry toEntry() {
+            return CompactFileStore.this.toEntry(slot);
+        }
+    }
+
+    private int find(String key) {
+        int split = key.lastIndexOf('/') + 1;
+        int prefixId = prefixes.find(key.substring(0, split));
+        if (prefixId == NONE) {
+            return NONE;
+        }
+        byte[] suffix = key.substring(split).getBytes(StandardCharsets.UTF_8);
+        for (int slot = keyBuckets[bucket(keyHash(prefixId, suffix), keyBuckets)]; slot != NONE; slot = nextByKey[slot]) {
+            if (prefixIds[slot] == prefixId && fieldEquals(recordOffsets[slot], suffix)) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    private FileEntry toEntry(int slot) {
+        long suffixOffset = recordOffsets[slot];
+        long nameOffset = skipField(suffixOffset);
+        long eTagOffset = skipField(nameOffset);
+        int contentType = contentTypeIds[slot];
+        return new FileEntry(
+                prefixes.valueOf(prefixIds[slot]) + readString(suffixOffset),
+                readString(nameOffset),
+                sizes[slot],
+                lastModified[slot] == UNKNOWN_TIME ? null : Instant.ofEpochMilli(lastModified[slot]),
+                contentType == NONE ? null : contentTypes.valueOf(contentType),
+                readString(eTagOffset));
+    }
+
+    private String keyOf(int slot) {
+        return prefixes.valueOf(prefixIds[slot]) + readString(recordOffsets[slot]);
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotLimit == recordOffsets.length) {
+            int capacity = Math.max(16, slotLimit + (slotLimit >> 1));
+            recordOffsets = Arrays.copyOf(recordOffsets, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            lastModified = Arrays.copyOf(lastModified, capacity);
+            prefixIds = Arrays.copyOf(prefixIds, capacity);
+            contentTypeIds = Arrays.copyOf(contentTypeIds, capacity);
+            nextByKey = Arrays.copyOf(nextByKey, capacity);
+            nextByName = Arrays.copyOf(nextByName, capacity);
+            previousByName = Arrays.copyOf(previousByName, capacity);
+            keyOrder = Arrays.copyOf(keyOrder, capacity);
+        }
+        return slotLimit++;
+    }
+
+    // Key order. UTF-8 preserves code point order, so comparing encoded keys as unsigned bytes
+    // gives the order S3 lists them in.
+
+    /**
+     * Position of the key in keyOrder, or -(insertion point) - 1 if no live slot has it
+     */
+    private int orderIndex(byte[] key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareKey(keyOrder[middle], key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    /**
+     * Compares the key of the slot with a UTF-8 encoded key without materializing it
+     */
+    private int compareKey(int slot, byte[] key) {
+        byte[] prefix = prefixes.bytesOf(prefixIds[slot]);
+        long offset = recordOffsets[slot];
+        ByteBuffer chunk = chunk(chunks, offset);
+        int encoded = readVarInt(chunk, position(offset));
+        int suffixPosition = position(offset) + varIntSize(encoded) - prefix.length;
+        int length = prefix.length + encoded - 1;
+        for (int i = 0; i < length && i < key.length; i++) {
+            byte b = i < prefix.length ? prefix[i] : chunk.get(suffixPosition + i);
+            if (b != key[i]) {
+                return Integer.compare(b & 0xFF, key[i] & 0xFF);
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    // Hash chains. New slots are prepended, so chains run newest first and inserting costs the
+    // same however many files share a name. Name chains are also linked backwards, so a slot is
+    // unlinked without walking a chain that many files with the same name have made long; key
+    // chains stay short and are walked.
+
+    private void link(int slot, byte[] suffix, byte[] name) {
+        int keyBucket = bucket(keyHash(prefixIds[slot], suffix), keyBuckets);
+        nextByKey[slot] = keyBuckets[keyBucket];
+        keyBuckets[keyBucket] = slot;
+        nextByName[slot] = NONE;
+        previousByName[slot] = NONE;
+        if (name != null) {
+            int nameBucket = bucket(hash(name), nameBuckets);
+            int head = nameBuckets[nameBucket];
+            nextByName[slot] = head;
+            if (head != NONE) {
+                previousByName[head] = slot;
+            }
+            nameBuckets[nameBucket] = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        long suffixOffset = recordOffsets[slot];
+        int keyBucket = bucket(keyHash(prefixIds[slot], readBytes(suffixOffset)), keyBuckets);
+        if (keyBuckets[keyBucket] == slot) {
+            keyBuckets[keyBucket] = nextByKey[slot];
+        } else {
+            for (int previous = keyBuckets[keyBucket]; previous != NONE; previous = nextByKey[previous]) {
+                if (nextByKey[previous] == slot) {
+                    nextByKey[previous] = nextByKey[slot];
+                    break;
+                }
+            }
+        }
+        byte[] name = readBytes(skipField(suffixOffset));
+        if (name == null) {
+            return;
+        }
+        int previous = previousByName[slot];
+        int next = nextByName[slot];
+        if (previous == NONE) {
+            nameBuckets[bucket(hash(name), nameBuckets)] = next;
+        } else {
+            nextByName[previous] = next;
+        }
+        if (next != NONE) {
+            previousByName[next] = previous;
+        }
+    }
+
+    private void rehash(int bucketCount) {
+        keyBuckets = newBuckets(bucketCount);
+        nameBuckets = newBuckets(bucketCount);
+        // Slot order is not insertion order once slots are reused, so relink by arena position,
+        // which is (after compaction too) the order records were written in
+        Integer[] live = new Integer[count];
+        int n = 0;
+        for (int slot = 0; slot < slotLimit; slot++) {
+            if (recordOffsets[slot] != NONE) {
+                live[n++] = slot;
+            }
+        }
+        Arrays.sort(live, 0, n, (a, b) -> Long.compare(recordOffsets[a], recordOffsets[b]));
+        for (int i = 0; i < n; i++) {
+            int slot = live[i];
+            long suffixOffset = recordOffsets[slot];
+            link(slot, readBytes(suffixOffset), readBytes(skipField(suffixOffset)));
+        }
+    }
+
+    private static int[] newBuckets(int bucketCount) {
+        int[] buckets = new int[bucketCount];
+        Arrays.fill(buckets, NONE);
+        return buckets;
+    }
+
+    private static int bucket(int hash, int[] buckets) {
+        return (hash ^ (hash >>> 16)) & (buckets.length - 1);
+    }
+
+    private static int keyHash(int prefixId, byte[] suffix) {
+        return 31 * prefixId + hash(suffix);
+    }
+
+    private static int hash(byte[] bytes) {
+        return Arrays.hashCode(bytes);
+    }
+
+    // Arena. A record is three fields, each a varint of (length + 1, 0 for null) followed by
+    // the UTF-8 bytes: key suffix, original filename, ETag. Records never span chunks.
+
+    private long appendRecord(byte[] suffix, byte[] name, byte[] eTag) {
+        int recordLength = fieldSize(suffix) + fieldSize(name) + fieldSize(eTag);
+        if (chunkPosition + recordLength > CHUNK_SIZE) {
+            chunks.add(offHeap ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE));
+            chunkPosition = 0;
+        }
+        long offset = (long) (chunks.size() - 1) * CHUNK_SIZE + chunkPosition;
+        ByteBuffer chunk = chunks.get(chunks.size() - 1);
+        chunkPosition = writeField(chunk, chunkPosition, suffix);
+        chunkPosition = writeField(chunk, chunkPosition, name);
+        chunkPosition = writeField(chunk, chunkPosition, eTag);
+        liveBytes += recordLength;
+        return offset;
+    }
+
+    /**
+     * Rewrites all live records into fresh chunks, dropping the space of removed ones
+     */
+    private void compact() {
+        List<ByteBuffer> oldChunks = new ArrayList<>(chunks);
+        long[] oldOffsets = recordOffsets.clone();
+        Integer[] live = new Integer[count];
+        int n = 0;
+        for (int slot = 0; slot < slotLimit; slot++) {
+            if (recordOffsets[slot] != NONE) {
+                live[n++] = slot;
+            }
+        }
+        // Keep the write order, which the name chains rely on after a rehash
+        Arrays.sort(live, 0, n, (a, b) -> Long.compare(oldOffsets[a], oldOffsets[b]));
+
+        chunks.clear();
+        chunkPosition = CHUNK_SIZE;
+        liveBytes = 0;
+        garbageBytes = 0;
+        for (int i = 0; i < n; i++) {
+            int slot = live[i];
+            long offset = oldOffsets[slot];
+            byte[] suffix = readBytes(oldChunks, offset);
+            long nameOffset = skipField(oldChunks, offset);
+            byte[] name = readBytes(oldChunks, nameOffset);
+            byte[] eTag = readBytes(oldChunks, skipField(oldChunks, nameOffset));
+            recordOffsets[slot] = appendRecord(suffix, name, eTag);
+        }
+    }
+
+    private static int fieldSize(byte[] value) {
+        int length = value == null ? 0 : value.length + 1;
+        return varIntSize(length) + (value == null ? 0 : value.length);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeField(ByteBuffer chunk, int position, byte[] value) {
+        int length = value == null ? 0 : value.length + 1;
+        while ((length & ~0x7F) != 0) {
+            chunk.put(position++, (byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        chunk.put(position++, (byte) length);
+        if (value != null) {
+            chunk.put(position, value);
+            position += value.length;
+        }
+        return position;
+    }
+
+    /**
+     * Encoded length of the field at the offset: its byte length plus one, or 0 for null
+     */
+    private static int readVarInt(ByteBuffer chunk, int position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = chunk.get(position++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private int fieldLength(long offset) {
+        return readVarInt(chunk(chunks, offset), position(offset)) - 1;
+    }
+
+    private long skipField(long offset) {
+        return skipField(chunks, offset);
+    }
+
+    private long skipRecord(long offset) {
+        return skipField(skipField(skipField(offset)));
+    }
+
+    private static long skipField(List<ByteBuffer> chunks, long offset) {
+        int encoded = readVarInt(chunk(chunks, offset), position(offset));
+        int length = Math.max(0, encoded - 1);
+        return offset + varIntSize(encoded) + length;
+    }
+
+    private boolean fieldEquals(long offset, byte[] value) {
+        ByteBuffer chunk = chunk(chunks, offset);
+        int position = position(offset);
+        int encoded = readVarInt(chunk, position);
+        if (encoded != value.length + 1) {
+            return false;
+        }
+        position += varIntSize(encoded);
+        for (byte b : value) {
+            if (chunk.get(position++) != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int copyField(long offset, byte[] target, int targetPosition) {
+        ByteBuffer chunk = chunk(chunks, offset);
+        int position = position(offset);
+        int encoded = readVarInt(chunk, position);
+        if (encoded == 0) {
+            return targetPosition;
+        }
+        chunk.get(position + varIntSize(encoded), target, targetPosition, encoded - 1);
+        return targetPosition + encoded - 1;
+    }
+
+    private byte[] readBytes(long offset) {
+        return readBytes(chunks, offset);
+    }
+
+    private static byte[] readBytes(List<ByteBuffer> chunks, long offset) {
+        ByteBuffer chunk = chunk(chunks, offset);
+        int position = position(offset);
+        int encoded = readVarInt(chunk, position);
+        if (encoded == 0) {
+            return null;
+        }
+        byte[] value = new byte[encoded - 1];
+        chunk.get(position + varIntSize(encoded), value);
+        return value;
+    }
+
+    private String readString(long offset) {
+        byte[] bytes = readBytes(offset);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer chunk(List<ByteBuffer> chunks, long offset) {
+        return chunks.get((int) (offset / CHUNK_SIZE));
+    }
+
+    private static int position(long offset) {
+        return (int) (offset % CHUNK_SIZE);
+    }
+
+    /**
+     * Small string dictionary; values are never removed, so ids stay stable
+     */
+    private static final class Dictionary {
+        private final List<String> values = new ArrayList<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        int idOf(String value) {
+            return ids.computeIfAbsent(value, v -> {
+                values.add(v);
+                encoded.add(v.getBytes(StandardCharsets.UTF_8));
+                return values.size() - 1;
+            });
+        }
+
+        int find(String value) {
+            Integer id = ids.get(value);
+            return id == null ? NONE : id;
+        }
+
+        String valueOf(int id) {
+            return values.get(id);
+        }
+
+        byte[] bytesOf(int id) {
+            return encoded.get(id);
+        }
+    }
+}
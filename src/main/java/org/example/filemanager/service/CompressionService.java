@@ -0,0 +1,141 @@
+package org.example.filemanager.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Decides whether uploads are worth compressing and provides the streaming codecs.
+ * The codec used for an object is recorded in its metadata so downloads can either
+ * decompress transparently or pass the compressed bytes through to the client.
+ */
+@Service
+public class CompressionService {
+    private static final Logger logger = LoggerFactory.getLogger(CompressionService.class);
+
+    public static final String METADATA_CODEC = "content-codec";
+    public static final String METADATA_ORIGINAL_SIZE = "original-size";
+    public static final String CODEC_GZIP = "gzip";
+
+    // Content types that are already compressed and never worth sampling
+    private static final Set<String> INCOMPRESSIBLE_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-7z-compressed",
+            "application/x-rar-compressed", "application/x-bzip2", "application/x-xz", "application/zstd",
+            "application/pdf", "application/x-zip-compressed");
+
+    @Value("${storage.compression.enabled:true}")
+    private boolean enabled;
+
+    // Files smaller than this are stored as-is, the gzip header would eat most of the gain
+    @Value("${storage.compression.min-size:1024}")
+    private long minSize;
+
+    // Number of leading bytes compressed to estimate the ratio of the whole file
+    @Value("${storage.compression.sample-size:65536}")
+    private int sampleSize;
+
+    // Minimum fraction of the sample that compression has to save
+    @Value("${storage.compression.min-savings:0.1}")
+    private double minSavings;
+
+    /**
+     * Returns the codec to store the file with, or null to store it uncompressed
+     */
+    public String selectCodec(MultipartFile file) {
+        if (!enabled || file.getSize() < minSize || !isCandidateType(file.getContentType())) {
+            return null;
+        }
+
+        try (InputStream in = file.getInputStream()) {
+            byte[] sample = in.readNBytes(sampleSize);
+            double savings = 1.0 - (double) compressedSize(sample) / sample.length;
+            logger.debug("Sampled compressibility of {}: {} savings", file.getOriginalFilename(), savings);
+            return savings >= minSavings ? CODEC_GZIP : null;
+        } catch (IOException e) {
+            logger.warn("Could not sample {} for compression, storing uncompressed", file.getOriginalFilename(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Wraps the stream so that everything written to it is compressed with the codec
+     */
+    public OutputStream encode(OutputStream out, String codec) throws IOException {
+        if (CODEC_GZIP.equals(codec)) {
+            return new GZIPOutputStream(out, 64 * 1024);
+        }
+        throw new IllegalArgumentException("Unsupported codec: " + codec);
+    }
+
+    /**
+     * Wraps the stream so that reading from it yields the decompressed content
+     */
+    public InputStream decode(InputStream in, String codec) throws IOException {
+        if (codec == null) {
+            return in;
+        }
+        if (CODEC_GZIP.equals(codec)) {
+            return new GZIPInputStream(in, 64 * 1024);
+        }
+        throw new IllegalArgumentException("Unsupported codec: " + codec);
+    }
+
+    /**
+     * Checks whether the client's Accept-Encoding header allows the codec to be passed through
+     */
+    public boolean isAcceptedEncoding(String acceptEncoding, String codec) {
+        if (acceptEncoding == null || codec == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            boolean refused = tokens.length > 1 && tokens[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            if ((coding.equals(codec) || coding.equals("*")) && !refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isCandidateType(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int parameters = type.indexOf(';');
+        if (parameters >= 0) {
+            type = type.substring(0, parameters).trim();
+        }
+        boolean rasterImage = type.startsWith("image/") && !type.equals("image/svg+xml");
+        return !(rasterImage || type.startsWith("video/") || type.startsWith("audio/")
+                || INCOMPRESSIBLE_TYPES.contains(type));
+    }
+
+    private int compressedSize(byte[] sample) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            int total = 0;
+            while (!deflater.finished()) {
+                total += deflater.deflate(buffer);
+            }
+            return total;
+        } finally {
+            deflater.end();
+        }
+    }
+}
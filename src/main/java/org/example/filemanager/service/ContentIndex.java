@@ -0,0 +1,594 @@
+package org.example.filemanager.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inverted index of file contents kept in a local directory.
+ * Added documents collect in an in-memory buffer that {@link #flush} writes out as an immutable
+ * segment: a sorted term dictionary plus, per term, the ids of the documents containing it with
+ * the term's frequency, delta- and varint-encoded. Segments are memory-mapped for searching.
+ * A manifest, replaced atomically on every flush and merge, lists the segments and the live
+ * documents; removing or re-indexing a document only drops it from that table, and its stale
+ * postings are skipped by searches until {@link #maybeMerge} rewrites the smallest segments
+ * into one without them. Searches rank documents matching any query term by BM25.
+ * <p>
+ * All changes must come from one thread; searches may run concurrently with them.
+ */
+public class ContentIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ContentIndex.class);
+
+    private static final int MANIFEST_MAGIC = 0x43494458;
+    private static final int SEGMENT_MAGIC = 0x43534547;
+    private static final int FILE_VERSION = 1;
+    private static final String MANIFEST = "index.manifest";
+    // Segments are mapped as a single buffer
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    // BM25 parameters: term frequency saturation and document length normalization
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    public record Hit(String key, double score) {
+    }
+
+    private record Document(int id, String key, int length, long version) {
+    }
+
+    private final Path directory;
+    private final int mergeFactor;
+
+    private final Map<String, Document> documentsByKey = new HashMap<>();
+    private final Map<Integer, Document> documentsById = new HashMap<>();
+    private long totalLength;
+    private int nextDocumentId;
+    private long nextSegmentNumber;
+    private volatile List<Segment> segments = List.of();
+
+    // Documents from this id on are only in the buffer, not yet in a segment
+    private int bufferStartId;
+    private final Map<String, Postings> buffer = new HashMap<>();
+    private boolean dirty;
+    private long merges;
+
+    private ContentIndex(Path directory, int mergeFactor) {
+        if (mergeFactor < 2) {
+            throw new IllegalArgumentException("Merge factor must be at least 2: " + mergeFactor);
+        }
+        this.directory = directory;
+        this.mergeFactor = mergeFactor;
+    }
+
+    /**
+     * Opens the index in the directory, creating an empty one if there is none. Segment files
+     * not listed in the manifest are left over from an interrupted flush or merge and deleted.
+     */
+    public static ContentIndex open(Path directory, int mergeFactor) throws IOException {
+        Files.createDirectories(directory);
+        ContentIndex index = new ContentIndex(directory, mergeFactor);
+        Set<String> listed = index.loadManifest();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if ((name.endsWith(".seg") && !listed.contains(name)) || name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        return index;
+    }
+
+    public synchronized int size() {
+        return documentsById.size();
+    }
+
+    public synchronized boolean contains(String key) {
+        return documentsByKey.containsKey(key);
+    }
+
+    /**
+     * Version the key was indexed at, or null if it is not indexed
+     */
+    public synchronized Long version(String key) {
+        Document document = documentsByKey.get(key);
+        return document != null ? document.version() : null;
+    }
+
+    public synchronized Set<String> keys() {
+        return new HashSet<>(documentsByKey.keySet());
+    }
+
+    /**
+     * Whether there are changes that {@link #flush} has not saved yet
+     */
+    public synchronized boolean hasUnsavedChanges() {
+        return dirty;
+    }
+
+    public synchronized int bufferedDocuments() {
+        return nextDocumentId - bufferStartId;
+    }
+
+    /**
+     * Indexes a document under the key, replacing what was indexed for it before
+     */
+    public synchronized void add(String key, long version, Map<String, Integer> frequencies, int length) {
+        remove(key);
+        Document document = new Document(nextDocumentId++, key, length, version);
+        documentsByKey.put(key, document);
+        documentsById.put(document.id(), document);
+        totalLength += length;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            buffer.computeIfAbsent(entry.getKey(), term -> new Postings()).add(document.id(), entry.getValue());
+        }
+        dirty = true;
+    }
+
+    public synchronized boolean remove(String key) {
+        Document document = documentsByKey.remove(key);
+        if (document == null) {
+            return false;
+        }
+        documentsById.remove(document.id());
+        totalLength -= document.length();
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * Moves the indexed document to a new key and version; its postings stay where they are
+     */
+    public synchronized boolean rename(String from, String to, long version) {
+        Document document = documentsByKey.get(from);
+        if (document == null) {
+            return false;
+        }
+        remove(to);
+        documentsByKey.remove(from);
+        Document renamed = new Document(document.id(), to, document.length(), version);
+        documentsByKey.put(to, renamed);
+        documentsById.put(renamed.id(), renamed);
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * Writes buffered documents to a new segment and saves the manifest; returns false if there
+     * was nothing to save
+     */
+    public synchronized boolean flush() throws IOException {
+        if (!dirty) {
+            return false;
+        }
+        if (!buffer.isEmpty()) {
+            long number = nextSegmentNumber++;
+            try (SegmentWriter writer = new SegmentWriter(directory, number)) {
+                for (Map.Entry<String, Postings> entry : new TreeMap<>(buffer).entrySet()) {
+                    // Documents removed while still buffered need not reach the segment
+                    writer.add(entry.getKey(), entry.getValue().live(documentsById.keySet()));
+                }
+                List<Segment> updated = new ArrayList<>(segments);
+                updated.add(writer.finish());
+                segments = List.copyOf(updated);
+            }
+            buffer.clear();
+        }
+        bufferStartId = nextDocumentId;
+        saveManifest();
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * Merges the smallest segments into one when there are more than the merge factor,
+     * dropping postings of documents that are no longer indexed. The merge is written outside
+     * the lock, so searches continue on the old segments until the new one replaces them.
+     */
+    public boolean maybeMerge() throws IOException {
+        List<Segment> merging;
+        Set<Integer> live;
+        long number;
+        synchronized (this) {
+            if (segments.size() <= mergeFactor) {
+                return false;
+            }
+            merging = new ArrayList<>();
+            long bytes = 0;
+            for (Segment segment : segments.stream().sorted(Comparator.comparingLong(Segment::bytes)).toList()) {
+                if (merging.size() == mergeFactor || bytes + segment.bytes() > MAX_SEGMENT_BYTES) {
+                    break;
+                }
+                merging.add(segment);
+                bytes += segment.bytes();
+            }
+            if (merging.size() < 2) {
+                return false;
+            }
+            live = new HashSet<>(documentsById.keySet());
+            number = nextSegmentNumber++;
+        }
+
+        Segment merged;
+        TreeSet<String> terms = new TreeSet<>();
+        for (Segment segment : merging) {
+            terms.addAll(Arrays.asList(segment.terms));
+        }
+        try (SegmentWriter writer = new SegmentWriter(directory, number)) {
+            for (String term : terms) {
+                Postings postings = new Postings();
+                for (Segment segment : merging) {
+                    segment.read(term, postings);
+                }
+                writer.add(term, postings.live(live).sorted());
+            }
+            merged = writer.finish();
+        }
+
+        synchronized (this) {
+            List<Segment> updated = new ArrayList<>(segments);
+            updated.removeAll(merging);
+            updated.add(merged);
+            segments = List.copyOf(updated);
+            merges++;
+            // The manifest must not list buffered documents, and the merge does not change those
+            saveManifest();
+        }
+        for (Segment segment : merging) {
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                // Still mapped on some platforms; it is deleted when the index is next opened
+                logger.debug("Could not delete merged segment {}: {}", segment.path, e.getMessage());
+            }
+        }
+        logger.debug("Merged {} segments into {} ({} bytes)", merging.size(), merged.path.getFileName(),
+                merged.bytes());
+        return true;
+    }
+
+    /**
+     * Documents matching any term of the query, best first
+     */
+    public synchronized List<Hit> search(String query, int limit) {
+        List<String> terms = ContentTokenizer.terms(query);
+        if (terms.isEmpty() || documentsById.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        int count = documentsById.size();
+        double averageLength = Math.max(1.0, (double) totalLength / count);
+        Map<Integer, Double> scores = new HashMap<>();
+        for (String term : terms) {
+            Postings postings = new Postings();
+            for (Segment segment : segments) {
+                segment.read(term, postings);
+            }
+            Postings buffered = buffer.get(term);
+            if (buffered != null) {
+                postings.addAll(buffered);
+            }
+            postings = postings.live(documentsById.keySet());
+            if (postings.size == 0) {
+                continue;
+            }
+
+            double idf = Math.log(1 + (count - postings.size + 0.5) / (postings.size + 0.5));
+            for (int i = 0; i < postings.size; i++) {
+                int frequency = postings.frequencies[i];
+                int length = documentsById.get(postings.documents[i]).length();
+                double score = idf * frequency * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * length / averageLength));
+                scores.merge(postings.documents[i], score, Double::sum);
+            }
+        }
+
+        return scores.entrySet().stream()
+                .map(entry -> new Hit(documentsById.get(entry.getKey()).key(), entry.getValue()))
+                .sorted(Comparator.comparingDouble(Hit::score).reversed().thenComparing(Hit::key))
+                .limit(limit)
+                .toList();
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("documents", documentsById.size());
+        stats.put("bufferedDocuments", bufferedDocuments());
+        stats.put("bufferedTerms", buffer.size());
+        stats.put("segments", segments.size());
+        stats.put("segmentTerms", segments.stream().mapToLong(segment -> segment.terms.length).sum());
+        stats.put("segmentBytes", segments.stream().mapToLong(Segment::bytes).sum());
+        stats.put("merges", merges);
+        return stats;
+    }
+
+    private Set<String> loadManifest() throws IOException {
+        Path file = directory.resolve(MANIFEST);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MANIFEST_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unrecognized content index manifest " + file);
+            }
+            nextDocumentId = in.readInt();
+            bufferStartId = nextDocumentId;
+            nextSegmentNumber = in.readLong();
+            int segmentCount = in.readInt();
+            Set<String> names = new HashSet<>();
+            List<Segment> loaded = new ArrayList<>();
+            for (int i = 0; i < segmentCount; i++) {
+                String name = in.readUTF();
+                names.add(name);
+                loaded.add(Segment.open(directory.resolve(name)));
+            }
+            segments = List.copyOf(loaded);
+            int documentCount = in.readInt();
+            for (int i = 0; i < documentCount; i++) {
+                Document document = new Document(in.readInt(), in.readUTF(), in.readInt(), in.readLong());
+                documentsByKey.put(document.key(), document);
+                documentsById.put(document.id(), document);
+                totalLength += document.length();
+            }
+            return names;
+        } catch (NoSuchFileException e) {
+            return Set.of();
+        }
+    }
+
+    /**
+     * Writes the manifest to a temporary file that replaces the current one atomically
+     */
+    private void saveManifest() throws IOException {
+        Path file = directory.resolve(MANIFEST);
+        Path temp = Files.createTempFile(directory, MANIFEST, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(nextDocumentId);
+                out.writeLong(nextSegmentNumber);
+                out.writeInt(segments.size());
+                for (Segment segment : segments) {
+                    out.writeUTF(segment.path.getFileName().toString());
+                }
+                // Buffered documents are re-indexed after a restart, their postings are not saved yet
+                List<Document> saved = documentsById.values().stream()
+                        .filter(document -> document.id() < bufferStartId)
+                        .toList();
+                out.writeInt(saved.size());
+                for (Document document : saved) {
+                    out.writeInt(document.id());
+                    out.writeUTF(document.key());
+                    out.writeInt(document.length());
+                    out.writeLong(document.version());
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Growable list of (document id, term frequency) pairs
+     */
+    private static final class Postings {
+        int[] documents = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void add(int document, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        void addAll(Postings other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.documents[i], other.frequencies[i]);
+            }
+        }
+
+        Postings live(Set<Integer> live) {
+            Postings result = new Postings();
+            for (int i = 0; i < size; i++) {
+                if (live.contains(documents[i])) {
+                    result.add(documents[i], frequencies[i]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Sorted by document id; merged segments may interleave ids
+         */
+        Postings sorted() {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) documents[i] << 32) | (frequencies[i] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed);
+            Postings result = new Postings();
+            for (long pair : packed) {
+                result.add((int) (pair >>> 32), (int) pair);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Writes a segment: a header, the postings of each term, the term dictionary with each
+     * term's postings offset and count, and a footer pointing at the dictionary
+     */
+    private static final class SegmentWriter implements AutoCloseable {
+        private final Path path;
+        private final Path temp;
+        private final DataOutputStream out;
+        private final List<String> terms = new ArrayList<>();
+        private final List<int[]> entries = new ArrayList<>();
+        private boolean finished;
+
+        SegmentWriter(Path directory, long number) throws IOException {
+            path = directory.resolve(String.format("segment-%010d.seg", number));
+            temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 65536));
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(FILE_VERSION);
+        }
+
+        void add(String term, Postings postings) throws IOException {
+            if (postings.size == 0) {
+                return;
+            }
+            terms.add(term);
+            entries.add(new int[] {out.size(), postings.size});
+            int previous = 0;
+            for (int i = 0; i < postings.size; i++) {
+                writeVarInt(postings.documents[i] - previous);
+                writeVarInt(postings.frequencies[i]);
+                previous = postings.documents[i];
+            }
+        }
+
+        Segment finish() throws IOException {
+            int dictionaryOffset = out.size();
+            out.writeInt(terms.size());
+            for (int i = 0; i < terms.size(); i++) {
+                out.writeUTF(terms.get(i));
+                out.writeInt(entries.get(i)[0]);
+                out.writeInt(entries.get(i)[1]);
+            }
+            out.writeInt(dictionaryOffset);
+            out.writeInt(SEGMENT_MAGIC);
+            out.close();
+            if (Files.size(temp) > MAX_SEGMENT_BYTES) {
+                throw new IOException("Segment " + path + " exceeds " + MAX_SEGMENT_BYTES + " bytes");
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return Segment.open(path);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * A memory-mapped segment; the term dictionary is held on the heap
+     */
+    private static final class Segment {
+        final Path path;
+        final String[] terms;
+        final int[] offsets;
+        final int[] counts;
+        private final MappedByteBuffer data;
+
+        private Segment(Path path, MappedByteBuffer data, String[] terms, int[] offsets, int[] counts) {
+            this.path = path;
+            this.data = data;
+            this.terms = terms;
+            this.offsets = offsets;
+            this.counts = counts;
+        }
+
+        static Segment open(Path path) throws IOException {
+            MappedByteBuffer data;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int size = data.capacity();
+            if (size < 16 || data.getInt(0) != SEGMENT_MAGIC || data.getInt(4) != FILE_VERSION
+                    || data.getInt(size - 4) != SEGMENT_MAGIC) {
+                throw new IOException("Unrecognized content index segment " + path);
+            }
+            int dictionaryOffset = data.getInt(size - 8);
+            byte[] dictionary = new byte[size - 8 - dictionaryOffset];
+            data.get(dictionaryOffset, dictionary);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(dictionary))) {
+                int count = in.readInt();
+                String[] terms = new String[count];
+                int[] offsets = new int[count];
+                int[] counts = new int[count];
+                for (int i = 0; i < count; i++) {
+                    terms[i] = in.readUTF();
+                    offsets[i] = in.readInt();
+                    counts[i] = in.readInt();
+                }
+                return new Segment(path, data, terms, offsets, counts);
+            }
+        }
+
+        long bytes() {
+            return data.capacity();
+        }
+
+        /**
+         * Appends the postings of the term, if the segment has it
+         */
+        void read(String term, Postings into) {
+            int index = Arrays.binarySearch(terms, term);
+            if (index < 0) {
+                return;
+            }
+            // Positioned reads on a private view, so concurrent readers do not interfere
+            ByteBuffer view = data.duplicate().position(offsets[index]);
+            int document = 0;
+            for (int i = 0; i < counts[index]; i++) {
+                document += readVarInt(view);
+                into.add(document, readVarInt(view));
+            }
+        }
+
+        private static int readVarInt(ByteBuffer buffer) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
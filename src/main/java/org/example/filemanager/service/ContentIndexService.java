@@ -0,0 +1,415 @@
+package org.example.filemanager.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.example.filemanager.S3RequestGate;
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.FileChangeEvent;
+import org.example.filemanager.model.FileEntry;
+import org.example.filemanager.storage.ObjectContent;
+import org.example.filemanager.storage.ObjectNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Keeps a full-text index of text files, and optionally PDFs, for searching by content.
+ * Changed files are indexed by a single low-priority thread whose storage reads are background
+ * requests and are paced to a file and byte rate, so indexing yields to interactive traffic and
+ * a bulk upload only makes it fall behind. Each file's version is derived from the ETag of the
+ * object read, which stays the same across restarts; a periodic catch-up against the catalog
+ * queues files whose catalog ETag differs, that is files that changed while events were missed
+ * or the queue was full, and drops files that no longer exist. Catalog entries made from change
+ * events carry no ETag until the catalog is reloaded or reconciled; the catch-up only queues
+ * those when they are missing from the index, as the event already queued their content.
+ */
+@Service
+public class ContentIndexService {
+    private static final Logger logger = LoggerFactory.getLogger(ContentIndexService.class);
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private CompressionService compressionService;
+
+    @Autowired
+    private FileCatalogService fileCatalog;
+
+    @Value("${content-index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${content-index.directory:./data/content-index}")
+    private String directory;
+
+    // Only the first bytes of larger files are indexed
+    @Value("${content-index.max-bytes:10485760}")
+    private long maxBytes;
+
+    @Value("${content-index.pdf:true}")
+    private boolean pdfEnabled;
+
+    @Value("${content-index.bytes-per-second:4194304}")
+    private double bytesPerSecond;
+
+    @Value("${content-index.files-per-second:20}")
+    private double filesPerSecond;
+
+    // Buffered documents are written to a new segment at this count, or every flush-interval
+    @Value("${content-index.flush-documents:1000}")
+    private int flushDocuments;
+
+    @Value("${content-index.merge-factor:10}")
+    private int mergeFactor;
+
+    @Value("${content-index.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private ContentIndex index;
+    private ThreadPoolExecutor executor;
+    private TokenBucket byteRate;
+    private TokenBucket fileRate;
+
+    // Files waiting to be indexed; a change to a file that is already waiting updates its entry
+    private final ConcurrentHashMap<String, FileEntry> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private volatile Instant lastCatchUp;
+    private volatile String lastError;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        Path path = Path.of(directory);
+        try {
+            index = ContentIndex.open(path, mergeFactor);
+        } catch (IOException | RuntimeException e) {
+            // The index is derived data; start over and let the catch-up rebuild it
+            logger.warn("Failed to open the content index in {}, rebuilding it", directory, e);
+            try {
+                Files.deleteIfExists(path.resolve("index.manifest"));
+                index = ContentIndex.open(path, mergeFactor);
+            } catch (IOException retry) {
+                throw new RuntimeException("Failed to create a content index in " + directory, retry);
+            }
+        }
+        logger.info("Content index holds {} files", index.size());
+
+        long now = System.nanoTime();
+        byteRate = new TokenBucket(bytesPerSecond, bytesPerSecond, now);
+        fileRate = new TokenBucket(filesPerSecond, filesPerSecond, now);
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "content-index");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        if (executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            commit();
+        }
+    }
+
+    public boolean isEnabled() {
+        return index != null;
+    }
+
+    /**
+     * Keys of the files whose content best matches the query, best first
+     */
+    public List<ContentIndex.Hit> search(String query, int limit) {
+        if (index == null) {
+            throw new IllegalStateException("Content indexing is disabled");
+        }
+        return index.search(query, limit);
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        if (index == null) {
+            return;
+        }
+        switch (event.type()) {
+            case DELETED -> {
+                pending.remove(event.key());
+                submit(() -> index.remove(event.key()));
+            }
+            case MOVED -> {
+                FileEntry waiting = pending.remove(event.previousKey());
+                submit(() -> {
+                    // Content is unchanged by a move; only a file not indexed yet needs reading
+                    Long version = index.version(event.previousKey());
+                    boolean renamed = version != null && index.rename(event.previousKey(), event.key(), version);
+                    if (waiting != null || !renamed) {
+                        queue(event.toEntry());
+                    }
+                });
+            }
+            default -> queue(event.toEntry());
+        }
+    }
+
+    /**
+     * Saves buffered documents and removals, so they survive a restart
+     */
+    @Scheduled(initialDelayString = "${content-index.flush-interval:30000}",
+            fixedDelayString = "${content-index.flush-interval:30000}")
+    public void scheduledCommit() {
+        if (index != null && index.hasUnsavedChanges()) {
+            submit(this::commit);
+        }
+    }
+
+    /**
+     * Queues files the index has not seen at their current version and removes files that are
+     * gone, as far as the queue has room
+     */
+    @Scheduled(initialDelayString = "${content-index.catch-up-delay:60000}",
+            fixedDelayString = "${content-index.catch-up-interval:3600000}")
+    public void catchUp() {
+        if (index == null || !fileCatalog.isLoaded()) {
+            return;
+        }
+        List<FileEntry> files = fileCatalog.getAll();
+        int queued = 0;
+        for (FileEntry file : files) {
+            Long version = index.version(file.key());
+            // Without a catalog ETag only a file missing from the index is known to need reading
+            boolean stale = version == null || (file.eTag() != null && version != version(file.eTag()));
+            if (stale && !pending.containsKey(file.key())) {
+                if (!queue(file)) {
+                    break;
+                }
+                queued++;
+            }
+        }
+        Set<String> existing = files.stream().map(FileEntry::key).collect(Collectors.toSet());
+        int removed = 0;
+        for (String key : index.keys()) {
+            if (!existing.contains(key) && submit(() -> index.remove(key))) {
+                removed++;
+            }
+        }
+        lastCatchUp = Instant.now();
+        if (queued > 0 || removed > 0) {
+            logger.info("Content index catch-up queued {} files and {} removals", queued, removed);
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", index != null);
+        if (index == null) {
+            return status;
+        }
+        status.put("pending", pending.size());
+        status.put("queued", executor.getQueue().size());
+        status.put("indexed", indexed.get());
+        status.put("skipped", skipped.get());
+        status.put("failed", failed.get());
+        status.put("bytesRead", bytesRead.get());
+        status.put("bytesPerSecond", bytesPerSecond);
+        status.put("filesPerSecond", filesPerSecond);
+        status.put("lastCatchUp", lastCatchUp);
+        status.put("lastError", lastError);
+        status.putAll(index.getStats());
+        return status;
+    }
+
+    private boolean queue(FileEntry file) {
+        if (pending.put(file.key(), file) != null) {
+            return true;
+        }
+        if (!submit(() -> index(file.key()))) {
+            pending.remove(file.key());
+            return false;
+        }
+        return true;
+    }
+
+    private boolean submit(Runnable task) {
+        try {
+            executor.execute(() -> S3RequestGate.runWithPriority(S3RequestGate.Priority.BACKGROUND, task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            // The catch-up picks up whatever was dropped
+            logger.debug("Content index queue is full, skipping task");
+            return false;
+        }
+    }
+
+    private void index(String key) {
+        FileEntry file = pending.remove(key);
+        if (file == null) {
+            return;
+        }
+        boolean pdf = pdfEnabled && isPdf(file.contentType(), file.originalName());
+        if (!pdf && !ThumbnailService.isText(file.contentType(), file.originalName())) {
+            // Recorded without terms, so the catch-up does not queue it again once the catalog's ETag is known
+            index.add(key, version(file.eTag()), Map.of(), 0);
+            skipped.incrementAndGet();
+            maybeCommit();
+            return;
+        }
+
+        pace(fileRate, 1);
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length;
+        long version;
+        try (ObjectContent object = s3Service.openFileStream(key)) {
+            // Change events carry no ETag; the one read belongs to the content indexed
+            version = version(object.object().eTag());
+            String codec = object.object().metadata().get(CompressionService.METADATA_CODEC);
+            PacedInputStream in = new PacedInputStream(compressionService.decode(object, codec));
+            if (pdf) {
+                int maxChars = (int) Math.min(Integer.MAX_VALUE, maxBytes);
+                String text = PdfTextExtractor.extract(in.readAllBytes(), maxChars);
+                length = ContentTokenizer.tokenize(new StringReader(text), frequencies);
+            } else {
+                length = ContentTokenizer.tokenize(new InputStreamReader(in, StandardCharsets.UTF_8), frequencies);
+            }
+            if (in.remaining == 0) {
+                // Only the head is indexed, so abort instead of draining the rest of the object on close
+                object.abort();
+            }
+        } catch (Exception e) {
+            if (e.getCause() instanceof ObjectNotFoundException) {
+                index.remove(key);
+                return;
+            }
+            failed.incrementAndGet();
+            lastError = key + ": " + e.getMessage();
+            logger.warn("Failed to index content of {}", key, e);
+            return;
+        }
+
+        index.add(key, version, frequencies, length);
+        indexed.incrementAndGet();
+        maybeCommit();
+    }
+
+    private void maybeCommit() {
+        if (index.bufferedDocuments() >= flushDocuments) {
+            commit();
+        }
+    }
+
+    private void commit() {
+        try {
+            index.flush();
+            while (index.maybeMerge()) {
+                logger.debug("Merged content index segments");
+            }
+        } catch (IOException e) {
+            lastError = e.getMessage();
+            logger.error("Failed to write the content index", e);
+        }
+    }
+
+    /**
+     * 64-bit hash of the ETag. Not the modification time: events are stamped when they are
+     * published, while the catalog lists the time S3 stored the object.
+     */
+    private static long version(String eTag) {
+        if (eTag == null) {
+            return 0;
+        }
+        long hash = 1125899906842597L;
+        for (int i = 0; i < eTag.length(); i++) {
+            hash = 31 * hash + eTag.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean isPdf(String contentType, String originalName) {
+        return "application/pdf".equals(contentType)
+                || (originalName != null && originalName.toLowerCase(Locale.ROOT).endsWith(".pdf"));
+    }
+
+    private static void pace(TokenBucket bucket, long amount) {
+        long pauseNanos = bucket.reserve(amount, System.nanoTime());
+        if (pauseNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(pauseNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads at most max-bytes, pausing to keep reads at the configured byte rate
+     */
+    private class PacedInputStream extends FilterInputStream {
+        long remaining = maxBytes;
+
+        PacedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+                bytesRead.addAndGet(read);
+                pace(byteRate, read);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while indexing");
+                }
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example.filemanager.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits text into index terms: runs of letters and digits, lower-cased. Runs shorter than two
+ * or longer than 64 characters are dropped; the long ones are mostly encoded binary data that
+ * would only bloat the term dictionary. Documents and queries go through the same rules.
+ */
+public final class ContentTokenizer {
+
+    public static final int MIN_TERM_LENGTH = 2;
+    public static final int MAX_TERM_LENGTH = 64;
+
+    private ContentTokenizer() {
+    }
+
+    /**
+     * Adds the frequency of every term read from the reader to the map and returns the number
+     * of terms read, the document length used for ranking
+     */
+    public static int tokenize(Reader reader, Map<String, Integer> frequencies) throws IOException {
+        char[] buffer = new char[8192];
+        StringBuilder term = new StringBuilder(MAX_TERM_LENGTH);
+        boolean overlong = false;
+        int count = 0;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (Character.isLetterOrDigit(c)) {
+                    if (term.length() < MAX_TERM_LENGTH) {
+                        term.append(Character.toLowerCase(c));
+                    } else {
+                        overlong = true;
+                    }
+                    continue;
+                }
+                count += emit(term, overlong, frequencies);
+                term.setLength(0);
+                overlong = false;
+            }
+        }
+        return count + emit(term, overlong, frequencies);
+    }
+
+    /**
+     * Distinct terms of a query, in order of appearance
+     */
+    public static List<String> terms(String text) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        try {
+            tokenize(new StringReader(text), frequencies);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ArrayList<>(frequencies.keySet());
+    }
+
+    private static int emit(StringBuilder term, boolean overlong, Map<String, Integer> frequencies) {
+        if (overlong || term.length() < MIN_TERM_LENGTH) {
+            return 0;
+        }
+        frequencies.merge(term.toString(), 1, Integer::sum);
+        return 1;
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.filemanager.service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out a fixed number of slots to users in weighted fair order. Each user has a virtual
+ * time that advances by 1/weight per slot granted; a freed slot goes to the waiting user with
+ * the lowest virtual time, so a user with weight 2 gets twice the grants of a user with weight 1
+ * while both are waiting, and a user with a long queue cannot starve one who just arrived.
+ * A user who was idle resumes at the current virtual time instead of spending credit saved up
+ * while away. No user holds or waits for more than maxPerUser slots at once; beyond that,
+ * acquire fails immediately rather than tying up another request thread.
+ */
+public class FairScheduler {
+
+    private final int slots;
+    private final int maxPerUser;
+    private final Map<String, UserState> users = new HashMap<>();
+    private int inUse;
+    private double virtualTime;
+
+    private static final class UserState {
+        double weight;
+        double virtualTime;
+        int running;
+        final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+    }
+
+    private static final class Waiter {
+        boolean granted;
+    }
+
+    /**
+     * A granted slot; closing it frees the slot for the next user
+     */
+    public final class Permit implements AutoCloseable {
+        private final String user;
+        private boolean released;
+
+        private Permit(String user) {
+            this.user = user;
+        }
+
+        @Override
+        public void close() {
+            synchronized (FairScheduler.this) {
+                if (!released) {
+                    released = true;
+                    release(user);
+                }
+            }
+        }
+    }
+
+    public FairScheduler(int slots, int maxPerUser) {
+        this.slots = slots;
+        this.maxPerUser = maxPerUser;
+    }
+
+    /**
+     * Waits up to timeoutMillis for a slot; returns null if the user already holds or waits for
+     * maxPerUser slots, or when the time runs out
+     */
+    public synchronized Permit acquire(String user, double weight, long timeoutMillis) throws InterruptedException {
+        UserState state = users.computeIfAbsent(user, key -> new UserState());
+        state.weight = weight;
+        if (state.running + state.waiting.size() >= maxPerUser) {
+            return null;
+        }
+        if (state.running == 0 && state.waiting.isEmpty()) {
+            state.virtualTime = Math.max(state.virtualTime, virtualTime);
+        }
+
+        Waiter waiter = new Waiter();
+        state.waiting.add(waiter);
+        dispatch();
+
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        try {
+            while (!waiter.granted) {
+                long remaining = (deadline - System.nanoTime()) / 1_000_000;
+                if (remaining <= 0) {
+                    state.waiting.remove(waiter);
+                    forgetIfIdle(user, state);
+                    return null;
+                }
+                wait(remaining);
+            }
+        } catch (InterruptedException e) {
+            if (waiter.granted) {
+                release(user);
+            } else {
+                state.waiting.remove(waiter);
+                forgetIfIdle(user, state);
+            }
+            throw e;
+        }
+        return new Permit(user);
+    }
+
+    public synchronized int inUse() {
+        return inUse;
+    }
+
+    public synchronized int waiting() {
+        return users.values().stream().mapToInt(state -> state.waiting.size()).sum();
+    }
+
+    /**
+     * Slots held and awaited by one user
+     */
+    public synchronized Map<String, Object> usage(String user) {
+        UserState state = users.get(user);
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("running", state != null ? state.running : 0);
+        usage.put("waiting", state != null ? state.waiting.size() : 0);
+        return usage;
+    }
+
+    public int slots() {
+        return slots;
+    }
+
+    public int maxPerUser() {
+        return maxPerUser;
+    }
+
+    private void release(String user) {
+        UserState state = users.get(user);
+        inUse--;
+        state.running--;
+        forgetIfIdle(user, state);
+        dispatch();
+    }
+
+    private void dispatch() {
+        boolean granted = false;
+        while (inUse < slots) {
+            UserState next = null;
+            for (UserState state : users.values()) {
+                if (!state.waiting.isEmpty() && (next == null || state.virtualTime < next.virtualTime)) {
+                    next = state;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            next.waiting.poll().granted = true;
+            virtualTime = next.virtualTime;
+            next.virtualTime += 1 / next.weight;
+            next.running++;
+            inUse++;
+            granted = true;
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    private void forgetIfIdle(String user, UserState state) {
+        // An idle user's virtual time is caught up on return anyway, unless it is ahead
+        if (state.running == 0 && state.waiting.isEmpty() && state.virtualTime <= virtualTime) {
+            users.remove(user);
+        }
+    }
+}
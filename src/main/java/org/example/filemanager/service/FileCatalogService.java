@@ -0,0 +1,288 @@
+package org.example.filemanager.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.example.filemanager.model.FileChangeEvent;
+import org.example.filemanager.model.FileEntry;
+import org.example.filemanager.model.FileVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * In-memory metadata catalog of stored files with a filename index.
+ * The catalog is kept current from the storage layer's change events; every mutation,
+ * including a move that touches two keys, is applied under one lock so readers never
+ * see the file index and the catalog disagree.
+ * Entries live in a {@link CompactFileStore}, which costs a small fraction of the heap that
+ * entry objects in a map would.
+ * Version histories are cached per key once loaded and extended from change events,
+ * so repeated history lookups do not go back to S3.
+ * <p>
+ * A bulk load has two phases. The listing phase adds every file with the fields a listing
+ * returns, page by page, after which the catalog is listed: keys and ETags are complete, which is
+ * all reconciliation compares. The second phase reads the metadata of those entries and fills in
+ * original filenames, after which the catalog is loaded.
+ */
+@Service
+public class FileCatalogService {
+    private static final Logger logger = LoggerFactory.getLogger(FileCatalogService.class);
+
+    /**
+     * Order in which S3 lists keys: UTF-8 byte order, which is code point order and differs
+     * from String.compareTo for characters outside the basic multilingual plane
+     */
+    public static final Comparator<String> KEY_ORDER = (a, b) -> {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int codePointA = a.codePointAt(i);
+            int codePointB = b.codePointAt(j);
+            if (codePointA != codePointB) {
+                return Integer.compare(codePointA, codePointB);
+            }
+            i += Character.charCount(codePointA);
+            j += Character.charCount(codePointB);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    };
+
+    // Entries are kept in a compact columnar store rather than as objects, so catalogs of
+    // millions of files stay small and cheap for the garbage collector
+    @Value("${file-catalog.off-heap:false}")
+    private boolean offHeap;
+
+    private CompactFileStore entries;
+
+    @Value("${file-catalog.version-histories:1000}")
+    private int maxVersionHistories;
+
+    // Cached version histories, newest first, evicted in least recently used order
+    private final Map<String, List<FileVersion>> versionsByKey = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<FileVersion>> eldest) {
+            return size() > maxVersionHistories;
+        }
+    };
+
+    private volatile boolean listed;
+    private volatile boolean loaded;
+    private boolean loading;
+    // Keys deleted while the listing phase is in progress, which the load must not bring back
+    private final Set<String> deletedDuringLoad = new HashSet<>();
+
+    @PostConstruct
+    public void init() {
+        entries = new CompactFileStore(offHeap);
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        switch (event.type()) {
+            case ADDED, REPLACED -> {
+                put(event.toEntry());
+                recordVersion(event);
+            }
+            case MOVED -> {
+                move(event.previousKey(), event.toEntry());
+                invalidateVersions(event.previousKey());
+                invalidateVersions(event.key());
+            }
+            case DELETED -> {
+                remove(event.key());
+                // Deleting adds a delete marker, the history is reloaded on next use
+                invalidateVersions(event.key());
+            }
+        }
+    }
+
+    /**
+     * Cached version history of a key, newest first, or null if it has not been loaded
+     */
+    public synchronized List<FileVersion> getVersions(String key) {
+        List<FileVersion> versions = versionsByKey.get(key);
+        return versions == null ? null : new ArrayList<>(versions);
+    }
+
+    public synchronized void putVersions(String key, List<FileVersion> versions) {
+        versionsByKey.put(key, new ArrayList<>(versions));
+    }
+
+    public synchronized void invalidateVersions(String key) {
+        versionsByKey.remove(key);
+    }
+
+    private synchronized void recordVersion(FileChangeEvent event) {
+        List<FileVersion> versions = versionsByKey.get(event.key());
+        if (versions == null) {
+            return;
+        }
+        if (event.versionId() == null) {
+            // Bucket is not versioned, the cached history no longer describes it
+            versionsByKey.remove(event.key());
+            return;
+        }
+        versions.replaceAll(FileVersion::asNoncurrent);
+        versions.add(0, new FileVersion(event.key(), event.versionId(), event.size(), event.lastModified(),
+                true, false));
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Whether every file is in the catalog, possibly still without its original filename
+     */
+    public boolean isListed() {
+        return listed;
+    }
+
+    /**
+     * Marks the start of a bulk load; returns false if another load is already running
+     */
+    public synchronized boolean beginLoad() {
+        if (loaded || loading) {
+            return false;
+        }
+        loading = true;
+        deletedDuringLoad.clear();
+        return true;
+    }
+
+    /**
+     * Adds one page of listed files. Entries changed by events since the load began take precedence.
+     */
+    public synchronized void addListed(Collection<FileEntry> page) {
+        for (FileEntry entry : page) {
+            if (!entries.contains(entry.key()) && !deletedDuringLoad.contains(entry.key())) {
+                entries.put(entry);
+            }
+        }
+    }
+
+    public synchronized void completeListing() {
+        deletedDuringLoad.clear();
+        listed = true;
+        logger.info("File catalog listed with {} entries ({} KB arena)", entries.size(), entries.arenaBytes() / 1024);
+    }
+
+    public synchronized void completeLoad() {
+        loading = false;
+        loaded = true;
+        logger.info("File catalog loaded with {} entries", entries.size());
+    }
+
+    /**
+     * Ends a failed load; a listing that completed is kept, so only the metadata phase is repeated
+     */
+    public synchronized void abortLoad() {
+        deletedDuringLoad.clear();
+        loading = false;
+    }
+
+    public synchronized void put(FileEntry entry) {
+        entries.put(entry);
+    }
+
+    /**
+     * Replaces the entry only if it still equals the expected one; returns whether it did
+     */
+    public synchronized boolean replace(FileEntry expected, FileEntry entry) {
+        if (!expected.equals(entries.get(expected.key()))) {
+            return false;
+        }
+        entries.put(entry);
+        return true;
+    }
+
+    public synchronized void remove(String key) {
+        entries.remove(key);
+        if (loading && !listed) {
+            deletedDuringLoad.add(key);
+        }
+    }
+
+    /**
+     * Atomically replaces the entry under the previous key with one under the new key
+     */
+    public synchronized void move(String previousKey, FileEntry entry) {
+        entries.remove(previousKey);
+        if (loading && !listed) {
+            deletedDuringLoad.add(previousKey);
+        }
+        entries.put(entry);
+    }
+
+    public synchronized FileEntry get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized List<FileEntry> getAll() {
+        return entries.toList();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Runs the visitor over every entry under the catalog lock. The cursor reads fields straight
+     * from the compact store, so a scan over all entries allocates nothing per entry. The file
+     * listing does not use it: it lists S3 itself and needs the storage class for the tier, which
+     * the catalog does not keep.
+     */
+    public synchronized void visit(Consumer<CompactFileStore.Cursor> visitor) {
+        CompactFileStore.Cursor cursor = entries.cursor();
+        while (cursor.next()) {
+            visitor.accept(cursor);
+        }
+    }
+
+    /**
+     * One page of the entries with lower <= key < upper in S3 listing order, starting after
+     * startAfter unless that is null; null bounds are open. The page is found through the
+     * store's key order, so a range is walked page by page with the lock held for one page at a time.
+     */
+    public synchronized List<FileEntry> getRange(String lower, String upper, String startAfter, int limit) {
+        return startAfter != null
+                ? entries.range(startAfter, false, upper, limit)
+                : entries.range(lower, true, upper, limit);
+    }
+
+    /**
+     * Keys of all files uploaded under the given original filename, oldest first
+     */
+    public synchronized List<String> findKeysByOriginalName(String originalName) {
+        return entries.findKeysByOriginalName(originalName);
+    }
+
+    /**
+     * Oldest key per original filename for the names that have files, in one pass under the lock
+     */
+    public synchronized Map<String, String> findFirstKeysByOriginalNames(Collection<String> originalNames) {
+        Map<String, String> keys = new HashMap<>();
+        for (String originalName : originalNames) {
+            if (originalName != null && !keys.containsKey(originalName)) {
+                List<String> found = entries.findKeysByOriginalName(originalName);
+                if (!found.isEmpty()) {
+                    keys.put(originalName, found.get(0));
+                }
+            }
+        }
+        return keys;
+    }
+}
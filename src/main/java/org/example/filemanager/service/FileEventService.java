@@ -0,0 +1,255 @@
+package org.example.filemanager.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.example.filemanager.model.FileChangeEvent;
+import org.example.filemanager.model.FileChangeNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Pushes incremental file changes to connected clients over server-sent events.
+ * Every change gets a version number and the most recent changes are kept in a
+ * bounded history, so a client that reconnects with the last version it applied
+ * receives only what it missed instead of reloading the whole listing. Versions restart
+ * with the server, so event ids are "epoch-version" with an epoch per server run; a client
+ * resuming from another run, or from a version this run has not reached, is sent a reset.
+ * <p>
+ * Each subscriber has a bounded queue drained by its own sender task, so a slow or half-open
+ * client only delays itself. A client whose queue fills up is disconnected; it reconnects
+ * with the last version it applied and catches up from the history.
+ */
+@Service
+public class FileEventService {
+    private static final Logger logger = LoggerFactory.getLogger(FileEventService.class);
+
+    static final String CHANGE_EVENT = "file-change";
+    // Sent when a client is too far behind the history and has to reload the listing
+    static final String RESET_EVENT = "reset";
+
+    @Value("${file-events.history-size:1000}")
+    private int historySize;
+
+    @Value("${file-events.emitter-timeout:1800000}")
+    private long emitterTimeout;
+
+    // Events a subscriber may have outstanding before it is disconnected
+    @Value("${file-events.subscriber-queue:256}")
+    private int subscriberQueue;
+
+    private final Deque<FileChangeNotification> history = new ArrayDeque<>();
+    private long currentVersion;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Orders history, replay and fan-out; it only enqueues, so it never waits for a client
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "file-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Runs the per-subscriber sends; a client blocked in a write holds at most one thread
+    private final AtomicInteger senderCount = new AtomicInteger();
+    private final ExecutorService senders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "file-events-send-" + senderCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.close(null));
+    }
+
+    /**
+     * Event id of the most recent change; a listing taken now is consistent with this id
+     */
+    public synchronized String getCurrentEventId() {
+        return eventId(currentVersion);
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        FileChangeNotification notification;
+        synchronized (this) {
+            notification = FileChangeNotification.of(++currentVersion, event);
+            history.addLast(notification);
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+        }
+        logger.debug("Publishing file change {} for {}", notification.version(), notification.key());
+        dispatcher.execute(() -> subscribers.forEach(subscriber -> subscriber.offer(() -> changeEvent(notification))));
+    }
+
+    /**
+     * Opens an event stream, replaying every change after the given event id first
+     */
+    public SseEmitter subscribe(String sinceEventId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeout);
+        Subscriber subscriber = new Subscriber(emitter, subscriberQueue);
+        emitter.onCompletion(subscriber::detach);
+        emitter.onTimeout(subscriber::detach);
+        emitter.onError(e -> subscriber.detach());
+
+        // Replay and registration happen on the dispatcher so no change is sent twice or skipped
+        dispatcher.execute(() -> {
+            if (sinceEventId != null) {
+                long sinceVersion = versionOf(sinceEventId);
+                List<FileChangeNotification> missed = new ArrayList<>();
+                boolean complete;
+                long version;
+                synchronized (this) {
+                    version = currentVersion;
+                    FileChangeNotification oldest = history.peekFirst();
+                    // A version from another server run, or one this run has not reached, means nothing here
+                    complete = sinceVersion >= 0 && sinceVersion <= currentVersion
+                            && (sinceVersion == currentVersion
+                                || (oldest != null && oldest.version() <= sinceVersion + 1));
+                    if (complete) {
+                        history.stream().filter(n -> n.version() > sinceVersion).forEach(missed::add);
+                    }
+                }
+                // A replay that does not fit the queue is replaced by a reset as well
+                if (!complete || missed.size() >= subscriberQueue) {
+                    subscriber.offer(() -> SseEmitter.event()
+                            .id(eventId(version))
+                            .name(RESET_EVENT)
+                            .data(version));
+                } else {
+                    for (FileChangeNotification notification : missed) {
+                        subscriber.offer(() -> changeEvent(notification));
+                    }
+                }
+            }
+            if (subscriber.isOpen()) {
+                subscribers.add(subscriber);
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Keeps idle connections open through proxies and detects clients that went away
+     */
+    @Scheduled(fixedDelayString = "${file-events.heartbeat-interval:25000}")
+    public void heartbeat() {
+        dispatcher.execute(() -> subscribers.forEach(subscriber ->
+                subscriber.offer(() -> SseEmitter.event().comment("heartbeat"))));
+    }
+
+    private String eventId(long version) {
+        return epoch + "-" + version;
+    }
+
+    /**
+     * Version within this server run, or -1 for an id of another run or one that does not parse
+     */
+    long versionOf(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !eventId.substring(0, separator).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private SseEmitter.SseEventBuilder changeEvent(FileChangeNotification notification) {
+        return SseEmitter.event()
+                .id(eventId(notification.version()))
+                .name(CHANGE_EVENT)
+                .data(notification);
+    }
+
+    /**
+     * A connected client with its outstanding events. Events are queued as factories because an
+     * event builder cannot be sent to more than one emitter.
+     */
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Supplier<SseEmitter.SseEventBuilder>> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean open = true;
+
+        Subscriber(SseEmitter emitter, int capacity) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        boolean isOpen() {
+            return open;
+        }
+
+        void offer(Supplier<SseEmitter.SseEventBuilder> event) {
+            if (!open) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                logger.info("Disconnecting event subscriber that fell {} events behind", queue.size());
+                close(null);
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                Supplier<SseEmitter.SseEventBuilder> event;
+                while (open && (event = queue.poll()) != null) {
+                    try {
+                        emitter.send(event.get());
+                    } catch (IOException | IllegalStateException e) {
+                        logger.debug("Dropping disconnected event subscriber", e);
+                        close(e);
+                        return;
+                    }
+                }
+                draining.set(false);
+                // An event offered after the queue was seen empty would otherwise wait for the next one
+            } while (open && !queue.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        void close(Throwable error) {
+            detach();
+            if (error != null) {
+                emitter.completeWithError(error);
+            } else {
+                emitter.complete();
+            }
+        }
+
+        void detach() {
+            open = false;
+            subscribers.remove(this);
+            queue.clear();
+        }
+    }
+}
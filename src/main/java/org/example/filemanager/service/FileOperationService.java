@@ -0,0 +1,100 @@
+package org.example.filemanager.service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.FileOperationRequest;
+import org.example.filemanager.model.FileOperationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs batches of server-side copy, rename and move operations in parallel.
+ * Every operation is a CopyObject inside S3, so no file content passes through the application.
+ */
+@Service
+public class FileOperationService {
+    private static final Logger logger = LoggerFactory.getLogger(FileOperationService.class);
+
+    public enum Operation {
+        COPY,
+        RENAME,
+        MOVE;
+
+        public static Operation parse(String value) {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Value("${file-operations.parallelism:8}")
+    private int parallelism;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "file-operations-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Applies the operation to every request concurrently; results are returned in request order
+     */
+    public List<FileOperationResult> executeBatch(Operation operation, List<FileOperationRequest> requests) {
+        List<CompletableFuture<FileOperationResult>> results = requests.stream()
+            .map(request -> CompletableFuture.supplyAsync(() -> execute(operation, request), executor))
+            .toList();
+
+        List<FileOperationResult> completed = results.stream().map(CompletableFuture::join).toList();
+        logger.info("Batch {} of {} files finished, {} failed", operation, requests.size(),
+            completed.stream().filter(result -> !result.success()).count());
+        return completed;
+    }
+
+    public FileOperationResult execute(Operation operation, FileOperationRequest request) {
+        try {
+            String targetKey = switch (operation) {
+                case COPY -> s3Service.copyFile(request.sourceKey(), request.targetKey(), request.originalName());
+                case RENAME -> {
+                    if (request.originalName() == null || request.originalName().isBlank()) {
+                        throw new IllegalArgumentException("originalName is required for rename");
+                    }
+                    yield s3Service.renameFile(request.sourceKey(), request.originalName());
+                }
+                case MOVE -> {
+                    if (request.targetKey() == null || request.targetKey().isBlank()) {
+                        throw new IllegalArgumentException("targetKey is required for move");
+                    }
+                    yield s3Service.moveFile(request.sourceKey(), request.targetKey(), request.originalName());
+                }
+            };
+            return FileOperationResult.succeeded(request.sourceKey(), targetKey);
+        } catch (RuntimeException e) {
+            logger.warn("{} of {} failed: {}", operation, request.sourceKey(), e.getMessage());
+            return FileOperationResult.failed(request.sourceKey(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.example.filemanager.service;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.example.filemanager.S3RequestGate;
+import org.example.filemanager.storage.PackingStorageBackend;
+import org.example.filemanager.storage.StorageBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Periodically rewrites packs of small files that are mostly deleted or overwritten content, or
+ * too small to be worth a request each, when the storage backend packs small files
+ */
+@Service
+public class PackCompactionService {
+    private static final Logger logger = LoggerFactory.getLogger(PackCompactionService.class);
+
+    @Autowired
+    private StorageBackend storage;
+
+    // Packs whose live content falls below this share of their size are rewritten
+    @Value("${storage.packing.min-live-ratio:0.5}")
+    private double minLiveRatio;
+
+    // Upper bound on pack bytes read per run
+    @Value("${storage.packing.compaction-max-bytes:1073741824}")
+    private long maxBytes;
+
+    private PackingStorageBackend packing;
+    private ExecutorService runner;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String lastError;
+    private volatile PackingStorageBackend.CompactionResult lastResult;
+
+    @PostConstruct
+    public void init() {
+        packing = storage.unwrap(PackingStorageBackend.class);
+        runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pack-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${storage.packing.compaction-interval:3600000}",
+            fixedDelayString = "${storage.packing.compaction-interval:3600000}")
+    public void scheduledRun() {
+        if (packing != null) {
+            start();
+        }
+    }
+
+    /**
+     * Starts a compaction in the background; returns false if one is already in progress
+     */
+    public boolean start() {
+        if (packing == null) {
+            throw new UnsupportedOperationException("The storage backend does not pack small files");
+        }
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        runner.execute(() -> {
+            try {
+                S3RequestGate.runWithPriority(S3RequestGate.Priority.BACKGROUND, this::run);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", packing != null);
+        status.put("running", running.get());
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        status.put("lastError", lastError);
+        status.put("lastResult", lastResult);
+        if (packing != null) {
+            status.putAll(packing.getStats());
+        }
+        return status;
+    }
+
+    private void run() {
+        startedAt = Instant.now();
+        finishedAt = null;
+        lastError = null;
+        try {
+            lastResult = packing.compact(minLiveRatio, maxBytes);
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            logger.error("Pack compaction failed", e);
+        }
+        finishedAt = Instant.now();
+    }
+}
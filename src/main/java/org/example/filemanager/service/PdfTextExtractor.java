@@ -0,0 +1,261 @@
+package org.example.filemanager.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Best-effort text extraction from PDF files, enough to make them findable by their words.
+ * Content streams stored plain or with FlateDecode are scanned for the strings shown between BT
+ * and ET; other filters, images and fonts are skipped without being inflated. Inflating stops
+ * once the document has produced eight bytes per character asked for, so a small file that
+ * inflates to gigabytes costs no more than a large one. Text in fonts with custom encodings
+ * comes out as noise that mostly does not tokenize into terms, and words split by positioning
+ * operators may be joined or broken up.
+ */
+final class PdfTextExtractor {
+
+    private static final byte[] STREAM = "stream".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_STREAM = "endstream".getBytes(StandardCharsets.US_ASCII);
+    // Kerning in a TJ array beyond this many thousandths of an em is taken as a word break
+    private static final int WORD_GAP = -200;
+
+    private PdfTextExtractor() {
+    }
+
+    /**
+     * Text of the document, up to about maxChars characters
+     */
+    static String extract(byte[] pdf, int maxChars) {
+        StringBuilder text = new StringBuilder();
+        long inflateBudget = 8L * maxChars;
+        int position = 0;
+        while (text.length() < maxChars) {
+            int keyword = indexOf(pdf, STREAM, position);
+            if (keyword < 0) {
+                break;
+            }
+            int start = keyword + STREAM.length;
+            if (start < pdf.length && pdf[start] == '\r') {
+                start++;
+            }
+            if (start >= pdf.length || pdf[start] != '\n' || (keyword > 0 && pdf[keyword - 1] == 'd')) {
+                // "endstream" or a word that merely contains "stream"
+                position = start;
+                continue;
+            }
+            start++;
+            int end = indexOf(pdf, END_STREAM, start);
+            if (end < 0) {
+                break;
+            }
+            position = end + END_STREAM.length;
+            String dictionary = dictionaryBefore(pdf, keyword);
+            if (dictionary.contains("/Image") || dictionary.contains("/FontFile") || dictionary.contains("/Length1")) {
+                continue;
+            }
+            byte[] content = null;
+            if (dictionary.contains("/FlateDecode")) {
+                if (inflateBudget <= 0) {
+                    break;
+                }
+                content = inflate(pdf, start, end - start, (int) Math.min(inflateBudget, Integer.MAX_VALUE - 16));
+                inflateBudget -= content != null ? content.length : 0;
+            } else if (!dictionary.contains("/Filter")) {
+                content = Arrays.copyOfRange(pdf, start, end);
+            }
+            if (content != null) {
+                showText(content, text, maxChars);
+            }
+        }
+        return text.length() > maxChars ? text.substring(0, maxChars) : text.toString();
+    }
+
+    /**
+     * Appends the strings shown by the text operators of a content stream
+     */
+    private static void showText(byte[] content, StringBuilder text, int maxChars) {
+        boolean inText = false;
+        boolean inArray = false;
+        int i = 0;
+        while (i < content.length && text.length() < maxChars) {
+            int c = content[i] & 0xFF;
+            if (c == '(') {
+                ByteArrayOutputStream string = new ByteArrayOutputStream();
+                i = readLiteral(content, i + 1, string);
+                if (inText) {
+                    text.append(decode(string.toByteArray()));
+                }
+            } else if (c == '<' && i + 1 < content.length && content[i + 1] == '<') {
+                i += 2;
+            } else if (c == '<') {
+                ByteArrayOutputStream string = new ByteArrayOutputStream();
+                i = readHex(content, i + 1, string);
+                if (inText) {
+                    text.append(decode(string.toByteArray()));
+                }
+            } else if (c == '[') {
+                inArray = true;
+                i++;
+            } else if (c == ']') {
+                inArray = false;
+                i++;
+            } else if (c == '-' || c == '+' || c == '.' || Character.isDigit(c)) {
+                int start = i;
+                do {
+                    i++;
+                } while (i < content.length && (content[i] == '.' || Character.isDigit(content[i])));
+                if (inText && inArray && c == '-' && parse(content, start, i) <= WORD_GAP) {
+                    text.append(' ');
+                }
+            } else if (Character.isLetter(c) || c == '\'' || c == '"' || c == '*') {
+                int start = i;
+                do {
+                    i++;
+                } while (i < content.length && (Character.isLetter(content[i]) || content[i] == '*'));
+                String operator = new String(content, start, i - start, StandardCharsets.US_ASCII);
+                switch (operator) {
+                    case "BT" -> inText = true;
+                    case "ET" -> {
+                        inText = false;
+                        text.append('\n');
+                    }
+                    case "Td", "TD", "T*", "Tm", "'", "\"" -> text.append(' ');
+                    default -> {
+                    }
+                }
+            } else if (c == '%') {
+                while (i < content.length && content[i] != '\n' && content[i] != '\r') {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Reads a literal string after its opening parenthesis; returns the index after the closing one
+     */
+    private static int readLiteral(byte[] content, int i, ByteArrayOutputStream string) {
+        int depth = 1;
+        while (i < content.length) {
+            int c = content[i++] & 0xFF;
+            if (c == '\\' && i < content.length) {
+                int escaped = content[i++] & 0xFF;
+                switch (escaped) {
+                    case 'n', 'r', 't', 'f' -> string.write(' ');
+                    case 'b' -> {
+                    }
+                    case '\r', '\n' -> {
+                        // Line continuation
+                    }
+                    default -> {
+                        if (escaped >= '0' && escaped <= '7') {
+                            int value = escaped - '0';
+                            for (int digits = 1; digits < 3 && i < content.length
+                                    && content[i] >= '0' && content[i] <= '7'; digits++) {
+                                value = value * 8 + content[i++] - '0';
+                            }
+                            string.write(value);
+                        } else {
+                            string.write(escaped);
+                        }
+                    }
+                }
+            } else if (c == '(') {
+                depth++;
+                string.write(c);
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    break;
+                }
+                string.write(c);
+            } else {
+                string.write(c);
+            }
+        }
+        return i;
+    }
+
+    private static int readHex(byte[] content, int i, ByteArrayOutputStream string) {
+        int high = -1;
+        while (i < content.length && content[i] != '>') {
+            int digit = Character.digit(content[i++], 16);
+            if (digit < 0) {
+                continue;
+            }
+            if (high < 0) {
+                high = digit;
+            } else {
+                string.write(high * 16 + digit);
+                high = -1;
+            }
+        }
+        if (high >= 0) {
+            string.write(high * 16);
+        }
+        return i + 1;
+    }
+
+    private static String decode(byte[] bytes) {
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+            return new String(bytes, 2, bytes.length - 2, StandardCharsets.UTF_16BE);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static double parse(byte[] content, int start, int end) {
+        try {
+            return Double.parseDouble(new String(content, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The stream's dictionary: the text between the start of its object and the stream keyword
+     */
+    private static String dictionaryBefore(byte[] pdf, int keyword) {
+        int start = Math.max(0, keyword - 1024);
+        String before = new String(pdf, start, keyword - start, StandardCharsets.ISO_8859_1);
+        int object = before.lastIndexOf(" obj");
+        return object >= 0 ? before.substring(object) : before;
+    }
+
+    private static byte[] inflate(byte[] pdf, int offset, int length, int maxBytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(pdf, offset, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16384];
+            while (!inflater.finished() && out.size() < maxBytes) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = Math.max(0, from); i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
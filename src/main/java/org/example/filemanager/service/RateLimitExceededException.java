@@ -0,0 +1,19 @@
+package org.example.filemanager.service;
+
+/**
+ * Thrown when a user exceeded their request or transfer limits. Callers should retry after the
+ * suggested delay; the API reports it as 429 with Retry-After.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
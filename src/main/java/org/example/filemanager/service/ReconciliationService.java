@@ -0,0 +1,363 @@
+package org.example.filemanager.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.example.filemanager.S3RequestGate;
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.FileChangeEvent;
+import org.example.filemanager.model.FileEntry;
+import org.example.filemanager.model.StoredObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Periodically walks the bucket and repairs drift between S3 and the file catalog caused by
+ * changes made outside the application.
+ * The key space is split into ranges that are listed in parallel; each range is merge-joined
+ * page by page against the catalog's entries for the same range, read in key order one page at a
+ * time, so nothing beyond one listing page and one catalog page per worker is held in addition
+ * to the catalog itself, and the catalog lock is only held while a page is copied. A run needs
+ * the catalog's listing phase to have completed, not the metadata reads that follow it. Every repair is
+ * confirmed with a HeadObject and published as a regular change event, so connected clients,
+ * derivatives and the catalog all pick it up.
+ */
+@Service
+public class ReconciliationService {
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliationService.class);
+
+    // Highest code point; appended to a start key so the listing skips everything below a boundary
+    private static final String MAX_CODE_POINT = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    // Catalog entries read per step of a partition, the size of a listing page
+    private static final int CATALOG_PAGE_SIZE = 1000;
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private FileCatalogService fileCatalog;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${reconciliation.enabled:true}")
+    private boolean enabled;
+
+    // Listing ranges start at these characters; keys below the first one form their own range
+    @Value("${reconciliation.partition-boundaries:0,5,A,F,K,P,U,a,f,k,p,u}")
+    private String[] partitionBoundaries;
+
+    @Value("${reconciliation.parallelism:4}")
+    private int parallelism;
+
+    private ExecutorService runner;
+    private ExecutorService partitionExecutor;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String lastError;
+    private final AtomicInteger partitionsTotal = new AtomicInteger();
+    private final AtomicInteger partitionsDone = new AtomicInteger();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        for (String boundary : partitionBoundaries) {
+            if (boundary.length() != 1 || boundary.charAt(0) <= ' ' || boundary.charAt(0) > '~') {
+                throw new IllegalArgumentException("Partition boundaries must be single printable ASCII characters: "
+                        + boundary);
+            }
+        }
+
+        runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        partitionExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "reconciliation-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        partitionExecutor.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${reconciliation.interval:21600000}", fixedDelayString = "${reconciliation.interval:21600000}")
+    public void scheduledRun() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    /**
+     * Starts a run in the background; returns false if one is already in progress
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        runner.execute(() -> {
+            try {
+                reconcile();
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public Map<String, Object> getStatus() {
+        Instant start = startedAt;
+        Instant end = finishedAt;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.get());
+        status.put("startedAt", start);
+        status.put("finishedAt", end);
+        status.put("partitionsTotal", partitionsTotal.get());
+        status.put("partitionsDone", partitionsDone.get());
+        status.put("scanned", scanned.get());
+        status.put("added", added.get());
+        status.put("removed", removed.get());
+        status.put("updated", updated.get());
+        status.put("errors", errors.get());
+        status.put("lastError", lastError);
+        if (start != null) {
+            Instant until = end != null && end.isAfter(start) ? end : Instant.now();
+            double seconds = Math.max(0.001, Duration.between(start, until).toMillis() / 1000.0);
+            status.put("objectsPerSecond", Math.round(scanned.get() / seconds));
+        }
+        return status;
+    }
+
+    private void reconcile() {
+        if (!fileCatalog.isListed()) {
+            logger.info("Skipping reconciliation, the file catalog is not listed yet");
+            return;
+        }
+
+        Instant runStart = Instant.now();
+        startedAt = runStart;
+        finishedAt = null;
+        lastError = null;
+        partitionsDone.set(0);
+        scanned.set(0);
+        added.set(0);
+        removed.set(0);
+        updated.set(0);
+        errors.set(0);
+
+        List<Future<?>> partitions = new ArrayList<>();
+        partitionsTotal.set(partitionBoundaries.length + 1);
+        for (int i = 0; i <= partitionBoundaries.length; i++) {
+            String lower = i == 0 ? null : partitionBoundaries[i - 1];
+            String upper = i == partitionBoundaries.length ? null : partitionBoundaries[i];
+            partitions.add(partitionExecutor.submit(() -> S3RequestGate.runWithPriority(S3RequestGate.Priority.BACKGROUND,
+                    () -> reconcilePartition(lower, upper, runStart))));
+        }
+
+        for (Future<?> partition : partitions) {
+            try {
+                partition.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                partitions.forEach(future -> future.cancel(true));
+                return;
+            } catch (ExecutionException e) {
+                errors.incrementAndGet();
+                lastError = e.getCause().getMessage();
+                logger.error("Reconciliation partition failed", e.getCause());
+            }
+        }
+
+        finishedAt = Instant.now();
+        logger.info("Reconciliation finished in {}: {} objects scanned, {} added, {} removed, {} updated, {} errors",
+                Duration.between(runStart, finishedAt), scanned.get(), added.get(), removed.get(), updated.get(),
+                errors.get());
+    }
+
+    /**
+     * Merge-joins the listing of lower <= key < upper with the catalog entries of the same range
+     */
+    private void reconcilePartition(String lower, String upper, Instant runStart) {
+        Iterator<FileEntry> catalogEntries = new CatalogRange(lower, upper);
+        FileEntry[] expected = {next(catalogEntries)};
+
+        // Listing starts just below the boundary; the few keys sharing the previous
+        // character are skipped by the lower bound check
+        String startAfter = lower == null ? null : (char) (lower.charAt(0) - 1) + MAX_CODE_POINT;
+        s3Service.scanFiles(startAfter, object -> {
+            String key = object.key();
+            if (upper != null && FileCatalogService.KEY_ORDER.compare(key, upper) >= 0) {
+                return false;
+            }
+            if (lower != null && FileCatalogService.KEY_ORDER.compare(key, lower) < 0) {
+                return true;
+            }
+            scanned.incrementAndGet();
+
+            while (expected[0] != null && FileCatalogService.KEY_ORDER.compare(expected[0].key(), key) < 0) {
+                repairMissingObject(expected[0], runStart);
+                expected[0] = next(catalogEntries);
+            }
+            if (expected[0] != null && expected[0].key().equals(key)) {
+                repairChangedObject(expected[0], object);
+                expected[0] = next(catalogEntries);
+            } else {
+                repairUnknownObject(object);
+            }
+            return true;
+        });
+
+        while (expected[0] != null) {
+            repairMissingObject(expected[0], runStart);
+            expected[0] = next(catalogEntries);
+        }
+        partitionsDone.incrementAndGet();
+    }
+
+    /**
+     * In the catalog but not in the listing: deleted out of band, unless it changed during the run
+     */
+    private void repairMissingObject(FileEntry entry, Instant runStart) {
+        FileEntry current = fileCatalog.get(entry.key());
+        if (current == null || (current.lastModified() != null && current.lastModified().isAfter(runStart))) {
+            return;
+        }
+        repair(entry.key(), () -> {
+            if (s3Service.describeFile(entry.key()) == null) {
+                logger.info("Reconciliation: {} was deleted outside the application", entry.key());
+                eventPublisher.publishEvent(FileChangeEvent.deleted(entry.key()));
+                removed.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * In the listing but not in the catalog: uploaded out of band, unless the application added it since
+     */
+    private void repairUnknownObject(StoredObject object) {
+        if (fileCatalog.get(object.key()) != null) {
+            return;
+        }
+        repair(object.key(), () -> {
+            FileEntry entry = s3Service.describeFile(object.key());
+            if (entry != null && fileCatalog.get(object.key()) == null) {
+                logger.info("Reconciliation: {} was added outside the application", object.key());
+                publish(FileChangeEvent.Type.ADDED, entry);
+                added.incrementAndGet();
+            }
+        });
+    }
+
+    private void repairChangedObject(FileEntry expected, StoredObject object) {
+        if (expected.eTag() == null) {
+            // Entries created from change events have no ETag yet; adopt the listed one
+            fileCatalog.replace(expected, new FileEntry(expected.key(), expected.originalName(), expected.size(),
+                    expected.lastModified(), expected.contentType(), object.eTag()));
+            return;
+        }
+        if (expected.eTag().equals(object.eTag())) {
+            return;
+        }
+        repair(object.key(), () -> {
+            FileEntry entry = s3Service.describeFile(object.key());
+            FileEntry current = fileCatalog.get(object.key());
+            if (entry != null && current != null && !entry.eTag().equals(current.eTag())) {
+                logger.info("Reconciliation: {} was replaced outside the application", object.key());
+                publish(FileChangeEvent.Type.REPLACED, entry);
+                updated.incrementAndGet();
+            }
+        });
+    }
+
+    private void publish(FileChangeEvent.Type type, FileEntry entry) {
+        eventPublisher.publishEvent(new FileChangeEvent(type, entry.key(), entry.originalName(), entry.size(),
+                entry.contentType(), entry.lastModified()));
+        // The event carries no ETag; store the full entry so the next run can compare it
+        fileCatalog.put(entry);
+    }
+
+    private void repair(String key, Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            lastError = e.getMessage();
+            logger.warn("Reconciliation failed to repair {}", key, e);
+        }
+    }
+
+    private static FileEntry next(Iterator<FileEntry> entries) {
+        return entries.hasNext() ? entries.next() : null;
+    }
+
+    /**
+     * Catalog entries of one range in key order, fetched a page at a time
+     */
+    private class CatalogRange implements Iterator<FileEntry> {
+        private final String lower;
+        private final String upper;
+        private Iterator<FileEntry> page = Collections.emptyIterator();
+        private String lastKey;
+        private boolean exhausted;
+
+        CatalogRange(String lower, String upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!page.hasNext() && !exhausted) {
+                List<FileEntry> entries = fileCatalog.getRange(lower, upper, lastKey, CATALOG_PAGE_SIZE);
+                exhausted = entries.size() < CATALOG_PAGE_SIZE;
+                page = entries.iterator();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public FileEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FileEntry entry = page.next();
+            lastKey = entry.key();
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package org.example.filemanager.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.example.filemanager.S3RequestGate;
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.FileChangeEvent;
+import org.example.filemanager.model.FileEntry;
+import org.example.filemanager.model.FileVersion;
+import org.example.filemanager.model.RetentionPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Expires files according to per-prefix retention policies: maximum age, maximum number of
+ * versions per file and maximum total bytes, where the oldest files go first.
+ * Current files are evaluated against the file catalog rather than by listing the bucket, and
+ * a policy is only re-evaluated once a change event touched its prefix or its oldest file is
+ * due to expire, so quiet prefixes cost nothing between runs. Expirations are deleted with
+ * batched DeleteObjects calls at a bounded rate and background priority; a dry run only
+ * reports what would be deleted.
+ */
+@Service
+public class RetentionService {
+    private static final Logger logger = LoggerFactory.getLogger(RetentionService.class);
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private FileCatalogService fileCatalog;
+
+    @Value("${retention.enabled:true}")
+    private boolean enabled;
+
+    // Policies as "prefix|max-age=30d|max-versions=5|max-bytes=10GB", see RetentionPolicy
+    @Value("${retention.policies:}")
+    private String[] policySpecs;
+
+    // Scheduled runs only report what they would delete unless this is turned off
+    @Value("${retention.dry-run:true}")
+    private boolean dryRunByDefault;
+
+    // Upper bound on objects and versions deleted per second
+    @Value("${retention.deletes-per-second:200}")
+    private int deletesPerSecond;
+
+    // Number of expired keys listed per policy in the report
+    @Value("${retention.report-keys:100}")
+    private int reportKeys;
+
+    private final List<PolicyState> policies = new ArrayList<>();
+    private ExecutorService runner;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile boolean lastRunDryRun;
+    private volatile String lastError;
+    private volatile List<Map<String, Object>> lastReport = List.of();
+
+    private static final class PolicyState {
+        final RetentionPolicy policy;
+        // Set by change events under the prefix; cleared when an evaluation starts
+        volatile boolean dirty = true;
+        // Epoch millis at which the oldest remaining file exceeds the maximum age
+        volatile long nextExpiryMillis = Long.MAX_VALUE;
+
+        PolicyState(RetentionPolicy policy) {
+            this.policy = policy;
+        }
+    }
+
+    private record Candidate(String key, long size, long lastModifiedMillis) {
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String spec : policySpecs) {
+            if (!spec.isBlank()) {
+                policies.add(new PolicyState(RetentionPolicy.parse(spec)));
+            }
+        }
+        runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!policies.isEmpty()) {
+            logger.info("Loaded {} retention policies, dry run by default: {}", policies.size(), dryRunByDefault);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        for (PolicyState state : policies) {
+            if (state.policy.covers(event.key()) || state.policy.covers(event.previousKey())) {
+                state.dirty = true;
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${retention.interval:3600000}", fixedDelayString = "${retention.interval:3600000}")
+    public void scheduledRun() {
+        if (enabled && !policies.isEmpty()) {
+            start(dryRunByDefault);
+        }
+    }
+
+    /**
+     * Starts a run in the background; returns false if one is already in progress
+     */
+    public boolean start(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        runner.execute(() -> {
+            try {
+                S3RequestGate.runWithPriority(S3RequestGate.Priority.BACKGROUND, () -> run(dryRun));
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public boolean isDryRunByDefault() {
+        return dryRunByDefault;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.get());
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        status.put("dryRun", lastRunDryRun);
+        status.put("lastError", lastError);
+        status.put("policies", lastReport);
+        return status;
+    }
+
+    private void run(boolean dryRun) {
+        if (!fileCatalog.isLoaded()) {
+            logger.info("Skipping retention, the file catalog is not loaded yet");
+            return;
+        }
+
+        startedAt = Instant.now();
+        finishedAt = null;
+        lastRunDryRun = dryRun;
+        lastError = null;
+
+        List<Map<String, Object>> report = new ArrayList<>();
+        boolean keepsDeletedVersions;
+        try {
+            keepsDeletedVersions = s3Service.keepsDeletedVersions();
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            logger.error("Skipping retention, cannot tell whether the bucket keeps deleted versions", e);
+            finishedAt = Instant.now();
+            return;
+        }
+        for (PolicyState state : policies) {
+            try {
+                report.add(evaluate(state, dryRun, keepsDeletedVersions));
+            } catch (RuntimeException e) {
+                // Evaluate the policy again next time
+                state.dirty = true;
+                lastError = e.getMessage();
+                logger.error("Retention policy for prefix '{}' failed", state.policy.prefix(), e);
+            }
+        }
+        lastReport = report;
+        finishedAt = Instant.now();
+    }
+
+    private Map<String, Object> evaluate(PolicyState state, boolean dryRun, boolean keepsDeletedVersions) {
+        RetentionPolicy policy = state.policy;
+        long now = System.currentTimeMillis();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("prefix", policy.prefix());
+        // A dry run is a full report, so it never skips and never advances the incremental state
+        if (!dryRun && !state.dirty && now < state.nextExpiryMillis) {
+            result.put("evaluated", false);
+            return result;
+        }
+        if (!dryRun) {
+            state.dirty = false;
+        }
+        result.put("evaluated", true);
+
+        List<Candidate> expiredByAge = new ArrayList<>();
+        List<Candidate> remaining = new ArrayList<>();
+        long cutoff = policy.maxAge() != null ? now - policy.maxAge().toMillis() : Long.MIN_VALUE;
+        long[] oldestRemaining = {Long.MAX_VALUE};
+        long[] remainingBytes = {0};
+        fileCatalog.visit(cursor -> {
+            if (!matches(cursor, policy.prefix())) {
+                return;
+            }
+            long lastModified = cursor.lastModifiedMillis();
+            // Entries without a known modification time never expire by age
+            if (policy.maxAge() != null && lastModified != Long.MIN_VALUE && lastModified <= cutoff) {
+                expiredByAge.add(new Candidate(cursor.key(), cursor.size(), lastModified));
+                return;
+            }
+            if (lastModified != Long.MIN_VALUE) {
+                oldestRemaining[0] = Math.min(oldestRemaining[0], lastModified);
+            }
+            remainingBytes[0] += cursor.size();
+            if (policy.maxBytes() != null) {
+                remaining.add(new Candidate(cursor.key(), cursor.size(), lastModified));
+            }
+        });
+
+        List<Candidate> expiredBySize = new ArrayList<>();
+        if (policy.maxBytes() != null && remainingBytes[0] > policy.maxBytes()) {
+            remaining.sort(Comparator.comparingLong(Candidate::lastModifiedMillis));
+            for (Candidate candidate : remaining) {
+                if (remainingBytes[0] <= policy.maxBytes()) {
+                    break;
+                }
+                expiredBySize.add(candidate);
+                remainingBytes[0] -= candidate.size();
+            }
+        }
+        if (!dryRun) {
+            state.nextExpiryMillis = policy.maxAge() != null && oldestRemaining[0] != Long.MAX_VALUE
+                    ? oldestRemaining[0] + policy.maxAge().toMillis() : Long.MAX_VALUE;
+        }
+
+        List<Candidate> expired = new ArrayList<>(expiredByAge);
+        expired.addAll(expiredBySize);
+        List<FileVersion> expiredVersions = policy.maxVersions() != null
+                ? findExpiredVersions(policy, expired) : List.of();
+
+        // In a versioned bucket deleting a file only adds a delete marker; its bytes stay stored
+        // as a noncurrent version until max-versions or the bucket's lifecycle rule removes it
+        long expiredBytes = expired.stream().mapToLong(Candidate::size).sum();
+        long reclaimed = (keepsDeletedVersions ? 0 : expiredBytes)
+                + expiredVersions.stream().mapToLong(FileVersion::size).sum();
+        result.put("expiredByAge", expiredByAge.size());
+        result.put("expiredBySize", expiredBySize.size());
+        result.put("expiredVersions", expiredVersions.size());
+        result.put("bytesExpired", expiredBytes);
+        result.put("bytesReclaimed", reclaimed);
+        result.put("remainingBytes", remainingBytes[0]);
+        result.put("keys", expired.stream().limit(reportKeys).map(Candidate::key).toList());
+
+        if (!dryRun) {
+            result.put("deleted", deleteFiles(expired));
+            result.put("deletedVersions", deleteVersions(expiredVersions));
+            logger.info("Retention for prefix '{}' expired {} files and {} versions ({} bytes)", policy.prefix(),
+                    expired.size(), expiredVersions.size(), reclaimed);
+        }
+        return result;
+    }
+
+    /**
+     * Noncurrent versions beyond the policy's limit; files about to expire entirely are left to
+     * the current-version deletion, whose delete marker makes all their versions noncurrent
+     */
+    private List<FileVersion> findExpiredVersions(RetentionPolicy policy, List<Candidate> expiredFiles) {
+        Set<String> expiring = new HashSet<>();
+        expiredFiles.forEach(candidate -> expiring.add(candidate.key()));
+
+        List<FileVersion> expired = new ArrayList<>();
+        List<FileVersion> group = new ArrayList<>();
+        s3Service.scanVersions(policy.prefix(), version -> {
+            if (!group.isEmpty() && !group.get(0).key().equals(version.key())) {
+                collectExpiredVersions(group, policy.maxVersions(), expiring, expired);
+                group.clear();
+            }
+            group.add(version);
+        });
+        collectExpiredVersions(group, policy.maxVersions(), expiring, expired);
+        return expired;
+    }
+
+    private static void collectExpiredVersions(List<FileVersion> versions, int maxVersions, Set<String> expiring,
+                                               List<FileVersion> expired) {
+        if (versions.size() <= maxVersions || expiring.contains(versions.get(0).key())) {
+            return;
+        }
+        versions.sort(Comparator.comparing(FileVersion::lastModified, Comparator.nullsLast(Comparator.reverseOrder())));
+        int noncurrentKept = 0;
+        for (FileVersion version : versions) {
+            if (version.latest()) {
+                continue;
+            }
+            if (noncurrentKept < maxVersions - 1) {
+                noncurrentKept++;
+                continue;
+            }
+            expired.add(version);
+        }
+    }
+
+    private int deleteFiles(List<Candidate> expired) {
+        int deleted = 0;
+        for (List<Candidate> batch : batches(expired)) {
+            long batchStart = System.nanoTime();
+            // Skip files replaced since the evaluation; they are no longer the file that expired
+            List<String> keys = new ArrayList<>();
+            for (Candidate candidate : batch) {
+                FileEntry current = fileCatalog.get(candidate.key());
+                if (current != null && lastModifiedMillis(current) == candidate.lastModifiedMillis()) {
+                    keys.add(candidate.key());
+                }
+            }
+            deleted += s3Service.deleteFiles(keys).size();
+            throttle(batch.size(), batchStart);
+        }
+        return deleted;
+    }
+
+    private int deleteVersions(List<FileVersion> expired) {
+        int deleted = 0;
+        for (List<FileVersion> batch : batches(expired)) {
+            long batchStart = System.nanoTime();
+            deleted += s3Service.deleteVersions(batch);
+            batch.forEach(version -> fileCatalog.invalidateVersions(version.key()));
+            throttle(batch.size(), batchStart);
+        }
+        return deleted;
+    }
+
+    private <T> List<List<T>> batches(List<T> items) {
+        int batchSize = Math.max(1, Math.min(S3Service.MAX_DELETE_BATCH, deletesPerSecond));
+        List<List<T>> batches = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += batchSize) {
+            batches.add(items.subList(start, Math.min(start + batchSize, items.size())));
+        }
+        return batches;
+    }
+
+    /**
+     * Sleeps off the rest of the time the batch is allowed to take at the configured rate
+     */
+    private void throttle(int batchSize, long batchStartNanos) {
+        long budgetMillis = batchSize * 1000L / Math.max(1, deletesPerSecond);
+        long elapsedMillis = (System.nanoTime() - batchStartNanos) / 1_000_000;
+        if (elapsedMillis < budgetMillis) {
+            try {
+                Thread.sleep(budgetMillis - elapsedMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Retention run interrupted", e);
+            }
+        }
+    }
+
+    private static long lastModifiedMillis(FileEntry entry) {
+        return entry.lastModified() != null ? entry.lastModified().toEpochMilli() : Long.MIN_VALUE;
+    }
+
+    /**
+     * Prefix check that only builds the full key when the directory alone cannot decide it
+     */
+    private static boolean matches(CompactFileStore.Cursor cursor, String prefix) {
+        if (prefix.isEmpty()) {
+            return true;
+        }
+        String directory = cursor.keyPrefix();
+        if (directory.length() >= prefix.length()) {
+            return directory.startsWith(prefix);
+        }
+        return prefix.startsWith(directory) && cursor.key().startsWith(prefix);
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.filemanager.service;
+
+import java.util.Set;
+
+import org.example.filemanager.model.StoredObject;
+
+/**
+ * Decides which storage class a file should move to in a tiering pass: files that went unread
+ * and unmodified for the cold period move to the cold class, cold files that are read often go
+ * back to STANDARD. The modification time is the one S3 lists, which a storage class change
+ * resets, so a file that was just warmed up stays in STANDARD for at least another cold period.
+ */
+final class StorageClassPolicy {
+
+    static final String STANDARD = "STANDARD";
+    // Classes that are read like STANDARD; archive classes would need a restore before downloads
+    static final Set<String> COLD_STORAGE_CLASSES = Set.of("STANDARD_IA", "ONEZONE_IA", "GLACIER_IR",
+            "INTELLIGENT_TIERING");
+
+    private final long coldAfter;
+    private final String coldStorageClass;
+    private final long coldMinSize;
+    private final double warmThreshold;
+
+    StorageClassPolicy(long coldAfter, String coldStorageClass, long coldMinSize, double warmThreshold) {
+        if (!COLD_STORAGE_CLASSES.contains(coldStorageClass)) {
+            throw new IllegalArgumentException("tiering.cold-storage-class must be one of " + COLD_STORAGE_CLASSES
+                    + ", not " + coldStorageClass);
+        }
+        this.coldAfter = coldAfter;
+        this.coldStorageClass = coldStorageClass;
+        this.coldMinSize = coldMinSize;
+        this.warmThreshold = warmThreshold;
+    }
+
+    /**
+     * Storage class the file should move to, or null to leave it where it is. Until access
+     * tracking covers the whole cold period, "not accessed" only means "not seen", so nothing
+     * is moved to the cold class.
+     */
+    String target(StoredObject file, double score, long lastAccessMillis, long trackedSinceMillis, long now) {
+        long cutoff = now - coldAfter;
+        if (isCold(file.storageClass())) {
+            // Intelligent-Tiering moves objects between its own tiers
+            return !"INTELLIGENT_TIERING".equals(file.storageClass()) && score >= warmThreshold ? STANDARD : null;
+        }
+        boolean unused = trackedSinceMillis <= cutoff && lastAccessMillis <= cutoff
+                && file.lastModified() != null && file.lastModified().toEpochMilli() <= cutoff;
+        return unused && file.size() >= coldMinSize ? coldStorageClass : null;
+    }
+
+    long cutoff(long now) {
+        return now - coldAfter;
+    }
+
+    static boolean isCold(String storageClass) {
+        return storageClass != null && !STANDARD.equals(storageClass);
+    }
+}
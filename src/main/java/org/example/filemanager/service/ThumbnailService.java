@@ -0,0 +1,344 @@
+package org.example.filemanager.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.example.filemanager.S3RequestGate;
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.FileChangeEvent;
+import org.example.filemanager.model.StoredObject;
+import org.example.filemanager.storage.ObjectContent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Generates small derivatives of uploaded files in the background: scaled thumbnails for
+ * images and truncated previews for text files. Derivatives are stored under an internal
+ * prefix next to the originals, so browsing only ever transfers a few kilobytes per file.
+ */
+@Service
+public class ThumbnailService {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+    public static final String THUMBNAIL_PREFIX = S3Service.INTERNAL_PREFIX + "derivatives/thumbnails/";
+    public static final String PREVIEW_PREFIX = S3Service.INTERNAL_PREFIX + "derivatives/previews/";
+
+    private static final Set<String> TEXT_EXTENSIONS = Set.of(
+            "txt", "log", "csv", "tsv", "json", "xml", "yaml", "yml", "md", "html", "css", "js", "java", "sql",
+            "properties", "ini", "conf", "sh");
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private CompressionService compressionService;
+
+    // Longest edge of generated thumbnails, in pixels
+    @Value("${thumbnails.size:256}")
+    private int thumbnailSize;
+
+    // Number of leading bytes of a text file kept as its preview
+    @Value("${thumbnails.preview-bytes:4096}")
+    private int previewBytes;
+
+    // Images larger than this are not decoded, to keep worker memory bounded
+    @Value("${thumbnails.max-source-bytes:52428800}")
+    private long maxSourceBytes;
+
+    @Value("${thumbnails.workers:2}")
+    private int workers;
+
+    @Value("${thumbnails.queue-capacity:200}")
+    private int queueCapacity;
+
+    // Files whose derivative could not be generated are not retried for this long, unless they change
+    @Value("${thumbnails.failure-ttl:3600000}")
+    private long failureTtlMillis;
+
+    private static final int MAX_FAILURES = 10_000;
+
+    private ThreadPoolExecutor executor;
+
+    // Failure time per key, oldest first; keeps an undecodable file from being downloaded on every page render
+    private final Map<String, Long> failures = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_FAILURES;
+        }
+    });
+
+    // Keys with a derivative job queued or running
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        // Decode from memory instead of spilling image streams to temporary files
+        ImageIO.setUseCache(false);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnails-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static String thumbnailKey(String key) {
+        return THUMBNAIL_PREFIX + key;
+    }
+
+    public static String previewKey(String key) {
+        return PREVIEW_PREFIX + key;
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        // New content deserves a new attempt, even if a job for the old content is still queued
+        failures.remove(event.key());
+        inProgress.remove(event.key());
+        if (event.previousKey() != null) {
+            failures.remove(event.previousKey());
+        }
+        switch (event.type()) {
+            case DELETED -> submit(() -> deleteDerivatives(event.key()));
+            case MOVED -> {
+                submit(() -> deleteDerivatives(event.previousKey()));
+                requestDerivatives(event.key(), event.contentType(), event.originalName());
+            }
+            default -> requestDerivatives(event.key(), event.contentType(), event.originalName());
+        }
+    }
+
+    /**
+     * Queues derivative generation for a file unless it is already queued; returns false if the
+     * file has no derivatives, generating them failed recently or the queue is full
+     */
+    public boolean requestDerivatives(String key, String contentType, String originalName) {
+        Runnable job;
+        if (isImage(contentType, originalName)) {
+            job = () -> generateThumbnail(key);
+        } else if (isText(contentType, originalName)) {
+            job = () -> generatePreview(key);
+        } else {
+            return false;
+        }
+        if (hasFailedRecently(key)) {
+            return false;
+        }
+        if (!inProgress.add(key)) {
+            return true;
+        }
+        boolean submitted = submit(() -> {
+            try {
+                job.run();
+            } finally {
+                inProgress.remove(key);
+            }
+        });
+        if (!submitted) {
+            inProgress.remove(key);
+        }
+        return submitted;
+    }
+
+    private boolean hasFailedRecently(String key) {
+        Long failedAt = failures.get(key);
+        if (failedAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - failedAt < failureTtlMillis) {
+            return true;
+        }
+        failures.remove(key);
+        return false;
+    }
+
+    private void recordFailure(String key) {
+        failures.put(key, System.currentTimeMillis());
+    }
+
+    private boolean submit(Runnable task) {
+        try {
+            // Derivative work must never take S3 capacity away from user requests
+            executor.execute(() -> S3RequestGate.runWithPriority(S3RequestGate.Priority.BACKGROUND, task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Derivatives are an optimization; a dropped job is regenerated on the next request
+            logger.warn("Derivative queue is full, skipping job");
+            return false;
+        }
+    }
+
+    private void generateThumbnail(String key) {
+        try (ObjectContent object = s3Service.openFileStream(key)) {
+            StoredObject stored = object.object();
+            if (stored.size() > maxSourceBytes) {
+                object.abort();
+                logger.info("Skipping thumbnail for {}: {} bytes exceeds limit", key, stored.size());
+                recordFailure(key);
+                return;
+            }
+
+            String codec = stored.metadata().get(CompressionService.METADATA_CODEC);
+            BufferedImage image = readSubsampled(compressionService.decode(object, codec));
+            if (image == null) {
+                logger.debug("No image reader for {}, skipping thumbnail", key);
+                recordFailure(key);
+                return;
+            }
+
+            s3Service.putInternalObject(thumbnailKey(key), encodeThumbnail(image), "image/jpeg");
+            logger.debug("Stored thumbnail for {}", key);
+        } catch (Exception e) {
+            logger.warn("Failed to generate thumbnail for {}", key, e);
+            recordFailure(key);
+        }
+    }
+
+    private void generatePreview(String key) {
+        try (ObjectContent object = s3Service.openFileStream(key)) {
+            String codec = object.object().metadata().get(CompressionService.METADATA_CODEC);
+            byte[] head = compressionService.decode(object, codec).readNBytes(previewBytes);
+            // Only the head is needed, so abort instead of draining the rest of the object on close
+            object.abort();
+
+            String text = new String(head, StandardCharsets.UTF_8);
+            // Truncation can split a multi-byte character at the end
+            while (text.endsWith("\uFFFD")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            s3Service.putInternalObject(previewKey(key), text.getBytes(StandardCharsets.UTF_8),
+                    "text/plain; charset=utf-8");
+            logger.debug("Stored preview for {}", key);
+        } catch (Exception e) {
+            logger.warn("Failed to generate preview for {}", key, e);
+            recordFailure(key);
+        }
+    }
+
+    private void deleteDerivatives(String key) {
+        try {
+            s3Service.deleteInternalObject(thumbnailKey(key));
+            s3Service.deleteInternalObject(previewKey(key));
+        } catch (Exception e) {
+            logger.warn("Failed to delete derivatives for {}", key, e);
+        }
+    }
+
+    /**
+     * Decodes the image with source subsampling, so large images never materialize at full resolution
+     */
+    private BufferedImage readSubsampled(InputStream in) throws IOException {
+        try (ImageInputStream imageInput = ImageIO.createImageInputStream(in)) {
+            if (imageInput == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, true, true);
+                int longestEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                // Keep twice the target resolution so the final scaling step still has detail to work with
+                int subsampling = Math.max(1, longestEdge / (thumbnailSize * 2));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private byte[] encodeThumbnail(BufferedImage image) throws IOException {
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        // JPEG has no alpha channel, so transparent areas are flattened onto white
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(thumbnail, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private boolean isImage(String contentType, String originalName) {
+        if (contentType != null && contentType.startsWith("image/")) {
+            return !contentType.startsWith("image/svg");
+        }
+        String extension = extension(originalName);
+        return extension.equals("jpg") || extension.equals("jpeg") || extension.equals("png")
+                || extension.equals("gif") || extension.equals("bmp");
+    }
+
+    /**
+     * Whether the file holds text, by its content type or else its extension
+     */
+    public static boolean isText(String contentType, String originalName) {
+        if (contentType != null && (contentType.startsWith("text/") || contentType.contains("json")
+                || contentType.contains("xml") || contentType.contains("javascript"))) {
+            return true;
+        }
+        return TEXT_EXTENSIONS.contains(extension(originalName));
+    }
+
+    private static String extension(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int lastDotIndex = filename.lastIndexOf('.');
+        return lastDotIndex >= 0 ? filename.substring(lastDotIndex + 1).toLowerCase(Locale.ROOT) : "";
+    }
+}
@@ -0,0 +1,575 @@
+package org.example.filemanager.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.example.filemanager.S3RequestGate;
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.FileChangeEvent;
+import org.example.filemanager.model.FileEntry;
+import org.example.filemanager.model.StoredObject;
+import org.example.filemanager.storage.LocalStorageBackend;
+import org.example.filemanager.storage.ObjectContent;
+import org.example.filemanager.storage.ObjectNotFoundException;
+import org.example.filemanager.storage.StorageOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Places files in hot, warm and cold tiers by how often they are read. Downloads and presigned
+ * URLs count as accesses in an {@link AccessTracker}. A file whose score crosses the hot
+ * threshold is copied into a size-bounded cache on local disk and served from there; the least
+ * accessed cached files make room for hotter ones. A scheduled pass moves files that were not
+ * accessed for a while to a cheaper S3 storage class, and back to STANDARD when they become
+ * popular again, at a bounded rate and background priority.
+ * The cache is per node. Every read of a cached copy first checks the source's ETag with a HEAD
+ * request, so a file replaced through another node is never served stale; while S3 cannot be
+ * reached the check falls back to the catalog, and the copy is served if neither can tell.
+ */
+@Service
+public class TieringService {
+    private static final Logger logger = LoggerFactory.getLogger(TieringService.class);
+
+    public static final String HOT = "hot";
+    public static final String WARM = "warm";
+    public static final String COLD = "cold";
+
+    // Kept with each cached copy: what the source looked like when it was cached
+    private static final String SOURCE_ETAG = "tiering.source-etag";
+    private static final String SOURCE_LAST_MODIFIED = "tiering.source-last-modified";
+    private static final String SOURCE_DIGEST = "tiering.source-digest";
+    private static final String SOURCE_STORAGE_CLASS = "tiering.source-storage-class";
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private FileCatalogService fileCatalog;
+
+    @Value("${tiering.enabled:true}")
+    private boolean enabled;
+
+    // Time for an access to lose half its weight in the score
+    @Value("${tiering.access-half-life:3600000}")
+    private long accessHalfLife;
+
+    @Value("${tiering.state-file:./data/tiering-access.dat}")
+    private String stateFile;
+
+    // Score at which a file is cached locally
+    @Value("${tiering.hot-threshold:8}")
+    private double hotThreshold;
+
+    @Value("${tiering.cache.root:./data/tiering-cache}")
+    private String cacheRoot;
+
+    @Value("${tiering.cache.max-bytes:10737418240}")
+    private long cacheMaxBytes;
+
+    // Larger files are served from storage even when hot
+    @Value("${tiering.cache.max-object-bytes:268435456}")
+    private long cacheMaxObjectBytes;
+
+    @Value("${tiering.cache.queue-capacity:100}")
+    private int promotionQueueCapacity;
+
+    // Files neither modified nor read for this long move to the cold storage class
+    @Value("${tiering.cold-after:2592000000}")
+    private long coldAfter;
+
+    @Value("${tiering.cold-storage-class:STANDARD_IA}")
+    private String coldStorageClass;
+
+    // Smaller files cost more in per-object minimums of the cold classes than they save
+    @Value("${tiering.cold-min-size:131072}")
+    private long coldMinSize;
+
+    // Score at which a cold file moves back to STANDARD
+    @Value("${tiering.warm-threshold:4}")
+    private double warmThreshold;
+
+    @Value("${tiering.transitions-per-second:10}")
+    private int transitionsPerSecond;
+
+    @Value("${tiering.bytes-per-second:52428800}")
+    private long bytesPerSecond;
+
+    @Value("${tiering.max-transitions:10000}")
+    private int maxTransitions;
+
+    private AccessTracker tracker;
+    private StorageClassPolicy storageClassPolicy;
+    private LocalStorageBackend cache;
+    // Cached keys and their sizes; the cache directory is the source of truth at startup
+    private final ConcurrentHashMap<String, Long> cached = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final Set<String> pendingPromotions = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor promoter;
+    private ExecutorService runner;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong promotions = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String lastError;
+    private volatile Map<String, Object> lastReport = Map.of();
+
+    @PostConstruct
+    public void init() {
+        storageClassPolicy = new StorageClassPolicy(coldAfter, coldStorageClass, coldMinSize, warmThreshold);
+        long now = System.currentTimeMillis();
+        try {
+            tracker = enabled ? AccessTracker.load(Path.of(stateFile), accessHalfLife, now)
+                    : new AccessTracker(accessHalfLife, now);
+        } catch (IOException e) {
+            logger.warn("Failed to load access counters from {}, starting afresh", stateFile, e);
+            tracker = new AccessTracker(accessHalfLife, now);
+        }
+
+        runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tiering");
+            thread.setDaemon(true);
+            return thread;
+        });
+        promoter = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(promotionQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "tiering-cache");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        // Local storage is already on this node's disk
+        if (enabled && !"local".equals(s3Service.storageType())) {
+            cache = new LocalStorageBackend(Path.of(cacheRoot), 1024 * 1024);
+            cache.list("", null, object -> {
+                cached.put(object.key(), object.size());
+                cachedBytes.addAndGet(object.size());
+                return true;
+            });
+            logger.info("Tiering cache holds {} files ({} bytes), tracking {} keys", cached.size(),
+                    cachedBytes.get(), tracker.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        promoter.shutdownNow();
+        runner.shutdownNow();
+        saveCounters();
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        switch (event.type()) {
+            case DELETED -> {
+                tracker.remove(event.key());
+                evict(event.key());
+            }
+            case MOVED -> {
+                tracker.move(event.previousKey(), event.key());
+                evict(event.previousKey());
+            }
+            case REPLACED -> evict(event.key());
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Counts a download or handed-out URL, and queues the file for the cache once it is hot
+     */
+    public void recordAccess(String key) {
+        double score = tracker.recordAccess(key, System.currentTimeMillis());
+        if (cache != null && score >= hotThreshold && !cached.containsKey(key) && pendingPromotions.add(key)) {
+            try {
+                promoter.execute(() -> S3RequestGate.runWithPriority(S3RequestGate.Priority.BACKGROUND, () -> {
+                    try {
+                        promote(key, score);
+                    } catch (RuntimeException e) {
+                        logger.warn("Failed to cache {}", key, e);
+                    } finally {
+                        pendingPromotions.remove(key);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                // The scheduled pass picks it up if it stays hot
+                pendingPromotions.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Opens the locally cached copy of a file, described as the stored original, or returns null
+     * if the file is not cached or the copy is outdated
+     */
+    public ObjectContent openCached(String key) {
+        if (cache == null || !cached.containsKey(key)) {
+            return null;
+        }
+        ObjectContent content;
+        try {
+            content = cache.open(key);
+        } catch (ObjectNotFoundException e) {
+            forget(key);
+            return null;
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read cached copy of {}", key, e);
+            return null;
+        }
+
+        Map<String, String> metadata = new HashMap<>(content.object().metadata());
+        String eTag = metadata.remove(SOURCE_ETAG);
+        if (!isCurrent(key, eTag)) {
+            content.abort();
+            closeQuietly(content);
+            evict(key);
+            return null;
+        }
+
+        String lastModified = metadata.remove(SOURCE_LAST_MODIFIED);
+        String digest = metadata.remove(SOURCE_DIGEST);
+        String storageClass = metadata.remove(SOURCE_STORAGE_CLASS);
+        StoredObject source = new StoredObject(key, content.object().size(),
+                lastModified != null ? Instant.parse(lastModified) : null, eTag, content.object().contentType(),
+                content.object().contentEncoding(), metadata, digest, storageClass);
+        cacheHits.incrementAndGet();
+        return new ObjectContent(content, source, content::abort);
+    }
+
+    /**
+     * Whether the cached copy, taken when the source had the given ETag, still matches the source
+     */
+    private boolean isCurrent(String key, String cachedETag) {
+        if (cachedETag == null) {
+            return false;
+        }
+        StoredObject source;
+        try {
+            // Falls back to the catalog while S3 is unhealthy
+            source = s3Service.getFileMetadata(key);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof ObjectNotFoundException) {
+                return false;
+            }
+            logger.debug("Cannot check cached copy of {} against storage, serving it: {}", key, e.getMessage());
+            return true;
+        }
+        return cachedETag.equals(source.eTag());
+    }
+
+    /**
+     * Tier of a listed file: hot when cached on this node, cold when in a cheaper storage class
+     */
+    public String tierOf(StoredObject file) {
+        if (cached.containsKey(file.key())) {
+            return HOT;
+        }
+        return StorageClassPolicy.isCold(file.storageClass()) ? COLD : WARM;
+    }
+
+    @Scheduled(initialDelayString = "${tiering.interval:3600000}", fixedDelayString = "${tiering.interval:3600000}")
+    public void scheduledRun() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    /**
+     * Starts a pass in the background; returns false if one is already in progress
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        runner.execute(() -> {
+            try {
+                S3RequestGate.runWithPriority(S3RequestGate.Priority.BACKGROUND, this::run);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("running", running.get());
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        status.put("lastError", lastError);
+        status.put("trackedKeys", tracker.size());
+        status.put("trackedSince", Instant.ofEpochMilli(tracker.trackedSinceMillis()));
+        status.put("cachedFiles", cached.size());
+        status.put("cachedBytes", cachedBytes.get());
+        status.put("cacheMaxBytes", cacheMaxBytes);
+        status.put("cacheHits", cacheHits.get());
+        status.put("promotions", promotions.get());
+        status.put("evictions", evictions.get());
+        status.put("coldStorageClass", coldStorageClass);
+        status.put("lastRun", lastReport);
+        return status;
+    }
+
+    private void run() {
+        startedAt = Instant.now();
+        finishedAt = null;
+        lastError = null;
+        Map<String, Object> report = new LinkedHashMap<>();
+        try {
+            if (cache != null) {
+                refreshCache(report);
+            }
+            if (s3Service.supportsStorageClasses()) {
+                transitionStorageClasses(report);
+            }
+            // Beyond this horizon a missing counter and an old one lead to the same decisions
+            report.put("prunedCounters", tracker.prune(System.currentTimeMillis() - coldAfter));
+            saveCounters();
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            logger.error("Tiering run failed", e);
+        }
+        lastReport = report;
+        finishedAt = Instant.now();
+    }
+
+    /**
+     * Evicts cached files that cooled down and caches hot files that are not cached yet
+     */
+    private void refreshCache(Map<String, Object> report) {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (String key : List.copyOf(cached.keySet())) {
+            // Hysteresis, so files around the threshold do not go in and out on every run
+            if (tracker.score(key, now) < hotThreshold / 2) {
+                evict(key);
+                evicted++;
+            }
+        }
+
+        int promoted = 0;
+        Map<String, Double> hot = tracker.scoresAtLeast(hotThreshold, now);
+        List<Map.Entry<String, Double>> candidates = new ArrayList<>(hot.entrySet());
+        candidates.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        for (Map.Entry<String, Double> candidate : candidates) {
+            if (!cached.containsKey(candidate.getKey()) && pendingPromotions.add(candidate.getKey())) {
+                try {
+                    if (promote(candidate.getKey(), candidate.getValue())) {
+                        promoted++;
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to cache {}", candidate.getKey(), e);
+                } finally {
+                    pendingPromotions.remove(candidate.getKey());
+                }
+            }
+        }
+        report.put("cacheEvicted", evicted);
+        report.put("cachePromoted", promoted);
+    }
+
+    /**
+     * Copies a file into the cache, evicting colder files if needed; returns false if it does not fit
+     */
+    private boolean promote(String key, double score) {
+        FileEntry entry = fileCatalog.get(key);
+        if (entry == null && fileCatalog.isLoaded()) {
+            return false;
+        }
+
+        long size;
+        try (ObjectContent source = s3Service.openFileStream(key)) {
+            StoredObject object = source.object();
+            size = object.size();
+            if (size > cacheMaxObjectBytes || !makeRoom(size, score)) {
+                source.abort();
+                return false;
+            }
+
+            Map<String, String> metadata = new HashMap<>(object.metadata());
+            putIfNotNull(metadata, SOURCE_ETAG, object.eTag());
+            putIfNotNull(metadata, SOURCE_LAST_MODIFIED,
+                    object.lastModified() != null ? object.lastModified().toString() : null);
+            putIfNotNull(metadata, SOURCE_DIGEST, object.digest());
+            putIfNotNull(metadata, SOURCE_STORAGE_CLASS, object.storageClass());
+
+            StorageOutputStream out = cache.create(key, object.contentType(), object.contentEncoding(), metadata);
+            try {
+                source.transferTo(out);
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                out.abort();
+                cachedBytes.addAndGet(-size);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to cache " + key + ": " + e.getMessage(), e);
+        }
+
+        cached.put(key, size);
+        promotions.incrementAndGet();
+        logger.debug("Cached hot file {} ({} bytes)", key, size);
+        return true;
+    }
+
+    /**
+     * Reserves space for a file of the given size, evicting cached files with lower scores
+     */
+    private synchronized boolean makeRoom(long size, double score) {
+        long now = System.currentTimeMillis();
+        while (cachedBytes.get() + size > cacheMaxBytes) {
+            String coldest = null;
+            double coldestScore = Double.MAX_VALUE;
+            for (String key : cached.keySet()) {
+                double keyScore = tracker.score(key, now);
+                if (keyScore < coldestScore) {
+                    coldest = key;
+                    coldestScore = keyScore;
+                }
+            }
+            if (coldest == null || coldestScore >= score) {
+                return false;
+            }
+            evict(coldest);
+        }
+        cachedBytes.addAndGet(size);
+        return true;
+    }
+
+    private void evict(String key) {
+        if (cache == null || key == null || !cached.containsKey(key)) {
+            return;
+        }
+        try {
+            cache.delete(key);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to evict {} from the tiering cache", key, e);
+        }
+        if (forget(key)) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean forget(String key) {
+        Long size = cached.remove(key);
+        if (size != null) {
+            cachedBytes.addAndGet(-size);
+        }
+        return size != null;
+    }
+
+    /**
+     * Moves files that went unread for the cold period to the cold storage class, and cold files
+     * that are read often back to STANDARD
+     */
+    private void transitionStorageClasses(Map<String, Object> report) {
+        long now = System.currentTimeMillis();
+        long trackedSince = tracker.trackedSinceMillis();
+
+        List<StoredObject> toCold = new ArrayList<>();
+        List<StoredObject> toWarm = new ArrayList<>();
+        s3Service.scanFiles(null, file -> {
+            String target = storageClassPolicy.target(file, tracker.score(file.key(), now),
+                    tracker.lastAccessMillis(file.key()), trackedSince, now);
+            if (StorageClassPolicy.STANDARD.equals(target)) {
+                toWarm.add(file);
+            } else if (target != null) {
+                toCold.add(file);
+            }
+            return toCold.size() + toWarm.size() < maxTransitions;
+        });
+        boolean coldKnown = trackedSince <= storageClassPolicy.cutoff(now);
+
+        // Files that are read now go first
+        report.put("warmed", transition(toWarm, StorageClassPolicy.STANDARD));
+        report.put("cooled", transition(toCold, coldStorageClass));
+        report.put("coldTrackingComplete", coldKnown);
+    }
+
+    private int transition(List<StoredObject> files, String storageClass) {
+        int moved = 0;
+        for (StoredObject file : files) {
+            long start = System.nanoTime();
+            try {
+                if (s3Service.transitionStorageClass(file.key(), file.eTag(), storageClass)) {
+                    moved++;
+                }
+            } catch (RuntimeException e) {
+                lastError = e.getMessage();
+                logger.warn("Failed to move {} to {}", file.key(), storageClass, e);
+            }
+            throttle(file.size(), start);
+        }
+        return moved;
+    }
+
+    /**
+     * Sleeps off the rest of the time a transition is allowed to take at the configured rates
+     */
+    private void throttle(long bytes, long startNanos) {
+        long budgetMillis = Math.max(1000L / Math.max(1, transitionsPerSecond),
+                bytes * 1000 / Math.max(1, bytesPerSecond));
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        if (elapsedMillis < budgetMillis) {
+            try {
+                Thread.sleep(budgetMillis - elapsedMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Tiering run interrupted", e);
+            }
+        }
+    }
+
+    private void saveCounters() {
+        if (!enabled || tracker == null) {
+            return;
+        }
+        try {
+            tracker.save(Path.of(stateFile));
+        } catch (IOException e) {
+            logger.warn("Failed to save access counters to {}", stateFile, e);
+        }
+    }
+
+    private static void putIfNotNull(Map<String, String> metadata, String key, String value) {
+        if (value != null) {
+            metadata.put(key, value);
+        }
+    }
+
+    private static void closeQuietly(ObjectContent content) {
+        try {
+            content.close();
+        } catch (IOException e) {
+            // Already aborted
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.filemanager.service;
+
+/**
+ * Token bucket holding up to capacity tokens, refilled continuously at rate tokens per second.
+ * Callers pass the current time in nanoseconds. Amounts larger than the capacity are taken from
+ * a full bucket, which leaves it in debt until the refill has paid them back, so the long-term
+ * rate holds for any amount.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double capacity, double tokensPerSecond, long nowNanos) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.tokens = capacity;
+        this.refilledAt = nowNanos;
+    }
+
+    /**
+     * Takes the amount if the bucket holds it (or is full, for amounts above the capacity) and
+     * returns 0; otherwise takes nothing and returns the nanoseconds until it would succeed
+     */
+    public synchronized long tryAcquire(double amount, long nowNanos) {
+        refill(nowNanos);
+        double needed = Math.min(amount, capacity);
+        if (tokens >= needed) {
+            tokens -= amount;
+            return 0;
+        }
+        return (long) Math.ceil((needed - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Takes the amount unconditionally and returns how many nanoseconds the caller should pause
+     * for the bucket to be out of debt again; used to pace a transfer that is already running
+     */
+    public synchronized long reserve(double amount, long nowNanos) {
+        refill(nowNanos);
+        tokens -= amount;
+        return tokens < 0 ? (long) Math.ceil(-tokens / tokensPerNano) : 0;
+    }
+
+    public synchronized double available(long nowNanos) {
+        refill(nowNanos);
+        return tokens;
+    }
+
+    public double capacity() {
+        return capacity;
+    }
+
+    private void refill(long nowNanos) {
+        if (nowNanos > refilledAt) {
+            tokens = Math.min(capacity, tokens + (nowNanos - refilledAt) * tokensPerNano);
+            refilledAt = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.example.filemanager.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Per-user limits that keep one user's transfers from taking the whole server. Every API request
+ * takes a token from the user's request bucket, and transferred bytes are taken from their byte
+ * bucket: an upload is charged its declared length before the body is read, so an over-limit
+ * upload is refused without tying up a request thread, while a download is paced as it is
+ * written. Upload and download transfers additionally need a slot from a weighted fair
+ * scheduler, which bounds the request threads and storage connections busy with transfers and
+ * shares them between users by weight.
+ */
+@Service
+public class TransferLimitService {
+    private static final Logger logger = LoggerFactory.getLogger(TransferLimitService.class);
+
+    public enum Direction {
+        UPLOAD, DOWNLOAD
+    }
+
+    /**
+     * A transfer slot held until closed
+     */
+    public interface Slot extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    @Value("${limits.enabled:true}")
+    private boolean enabled;
+
+    @Value("${limits.requests-per-second:20}")
+    private double requestsPerSecond;
+
+    @Value("${limits.request-burst:100}")
+    private double requestBurst;
+
+    @Value("${limits.bytes-per-second:20971520}")
+    private double bytesPerSecond;
+
+    @Value("${limits.byte-burst:104857600}")
+    private double byteBurst;
+
+    @Value("${limits.upload-slots:16}")
+    private int uploadSlots;
+
+    @Value("${limits.download-slots:32}")
+    private int downloadSlots;
+
+    // Transfers one user may run or wait for at once, per direction
+    @Value("${limits.slots-per-user:4}")
+    private int slotsPerUser;
+
+    @Value("${limits.slot-wait:30000}")
+    private long slotWaitMillis;
+
+    // Weights as "user|weight", e.g. "reports@example.com|4"; users not listed have weight 1.
+    // A weight scales the user's rates and their share of transfer slots.
+    @Value("${limits.user-weights:}")
+    private String[] weightSpecs;
+
+    // Users idle this long are forgotten; their buckets are full again by then
+    @Value("${limits.idle-expiry:600000}")
+    private long idleExpiryMillis;
+
+    private final Map<String, Double> weights = new HashMap<>();
+    private final ConcurrentHashMap<String, UserLimits> users = new ConcurrentHashMap<>();
+    private final Map<Direction, FairScheduler> schedulers = new HashMap<>();
+
+    private static final class UserLimits {
+        final double weight;
+        final TokenBucket requests;
+        final TokenBucket bytes;
+        final AtomicLong requestCount = new AtomicLong();
+        final AtomicLong rejectedCount = new AtomicLong();
+        final AtomicLong bytesUploaded = new AtomicLong();
+        final AtomicLong bytesDownloaded = new AtomicLong();
+        volatile long lastSeenMillis = System.currentTimeMillis();
+
+        UserLimits(double weight, TokenBucket requests, TokenBucket bytes) {
+            this.weight = weight;
+            this.requests = requests;
+            this.bytes = bytes;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String spec : weightSpecs) {
+            if (spec.isBlank()) {
+                continue;
+            }
+            String[] parts = spec.split("\\|");
+            double weight = parts.length == 2 ? Double.parseDouble(parts[1].trim()) : 0;
+            if (!(weight > 0)) {
+                throw new IllegalArgumentException("Invalid limits.user-weights entry: " + spec
+                        + " (expected user|weight with a positive weight)");
+            }
+            weights.put(parts[0].trim().toLowerCase(Locale.ROOT), weight);
+        }
+        schedulers.put(Direction.UPLOAD, new FairScheduler(uploadSlots, slotsPerUser));
+        schedulers.put(Direction.DOWNLOAD, new FairScheduler(downloadSlots, slotsPerUser));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Counts one API request against the user's request rate
+     */
+    public void checkRequest(String user) {
+        if (!enabled) {
+            return;
+        }
+        UserLimits limits = limits(user);
+        limits.requestCount.incrementAndGet();
+        long waitNanos = limits.requests.tryAcquire(1, System.nanoTime());
+        if (waitNanos > 0) {
+            limits.rejectedCount.incrementAndGet();
+            throw new RateLimitExceededException("Too many requests", retryAfterSeconds(waitNanos));
+        }
+    }
+
+    /**
+     * Charges an upload's declared length against the user's byte rate before its body is read
+     */
+    public void admitUpload(String user, long contentLength) {
+        if (!enabled || contentLength <= 0) {
+            return;
+        }
+        UserLimits limits = limits(user);
+        long waitNanos = limits.bytes.tryAcquire(contentLength, System.nanoTime());
+        if (waitNanos > 0) {
+            limits.rejectedCount.incrementAndGet();
+            throw new RateLimitExceededException("Upload rate exceeded", retryAfterSeconds(waitNanos));
+        }
+        limits.bytesUploaded.addAndGet(contentLength);
+    }
+
+    /**
+     * Waits for a transfer slot; the returned permit must be closed when the transfer ends.
+     * Fails when the user already runs their share of transfers or no slot frees up in time.
+     * Without a user (limits off for the request) the slot is not limited.
+     */
+    public Slot acquireSlot(String user, Direction direction) {
+        if (!enabled || user == null) {
+            return () -> {
+            };
+        }
+        UserLimits limits = limits(user);
+        FairScheduler.Permit permit;
+        try {
+            permit = schedulers.get(direction).acquire(user, limits.weight, slotWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RateLimitExceededException("Interrupted while waiting for a transfer slot", 1);
+        }
+        if (permit == null) {
+            limits.rejectedCount.incrementAndGet();
+            logger.info("No {} slot for {}", direction.name().toLowerCase(Locale.ROOT), user);
+            throw new RateLimitExceededException("Too many concurrent transfers", 5);
+        }
+        return permit::close;
+    }
+
+    /**
+     * Paces writes to the user's byte rate, pausing the writing thread while the user is in debt
+     */
+    public OutputStream throttle(String user, OutputStream out) {
+        if (!enabled || user == null) {
+            return out;
+        }
+        UserLimits limits = limits(user);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                long pauseNanos = limits.bytes.reserve(len, System.nanoTime());
+                if (pauseNanos > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(pauseNanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while pacing a download");
+                    }
+                }
+                out.write(b, off, len);
+                limits.bytesDownloaded.addAndGet(len);
+            }
+        };
+    }
+
+    /**
+     * Configured limits and current usage of one user
+     */
+    public Map<String, Object> getUsage(String user) {
+        UserLimits limits = users.get(user);
+        double weight = limits != null ? limits.weight : weight(user);
+        long now = System.nanoTime();
+
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("user", user);
+        usage.put("enabled", enabled);
+        usage.put("weight", weight);
+        usage.put("requestsPerSecond", requestsPerSecond * weight);
+        usage.put("requestBurst", requestBurst * weight);
+        usage.put("requestTokens", limits != null ? Math.floor(limits.requests.available(now)) : requestBurst * weight);
+        usage.put("bytesPerSecond", bytesPerSecond * weight);
+        usage.put("byteBurst", byteBurst * weight);
+        usage.put("byteTokens", limits != null ? Math.floor(limits.bytes.available(now)) : byteBurst * weight);
+        usage.put("requests", limits != null ? limits.requestCount.get() : 0);
+        usage.put("rejected", limits != null ? limits.rejectedCount.get() : 0);
+        usage.put("bytesUploaded", limits != null ? limits.bytesUploaded.get() : 0);
+        usage.put("bytesDownloaded", limits != null ? limits.bytesDownloaded.get() : 0);
+        usage.put("uploads", schedulers.get(Direction.UPLOAD).usage(user));
+        usage.put("downloads", schedulers.get(Direction.DOWNLOAD).usage(user));
+        usage.put("lastSeen", limits != null ? Instant.ofEpochMilli(limits.lastSeenMillis) : null);
+        return usage;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("uploads", schedulerStatus(schedulers.get(Direction.UPLOAD)));
+        status.put("downloads", schedulerStatus(schedulers.get(Direction.DOWNLOAD)));
+        List<Map<String, Object>> active = users.keySet().stream().sorted().map(this::getUsage).toList();
+        status.put("users", active);
+        return status;
+    }
+
+    @Scheduled(fixedDelayString = "${limits.idle-expiry:600000}")
+    public void forgetIdleUsers() {
+        long cutoff = System.currentTimeMillis() - idleExpiryMillis;
+        users.entrySet().removeIf(entry -> entry.getValue().lastSeenMillis < cutoff);
+    }
+
+    private UserLimits limits(String user) {
+        UserLimits limits = users.computeIfAbsent(user, key -> {
+            double weight = weight(key);
+            long now = System.nanoTime();
+            return new UserLimits(weight, new TokenBucket(requestBurst * weight, requestsPerSecond * weight, now),
+                    new TokenBucket(byteBurst * weight, bytesPerSecond * weight, now));
+        });
+        limits.lastSeenMillis = System.currentTimeMillis();
+        return limits;
+    }
+
+    private double weight(String user) {
+        return weights.getOrDefault(user.toLowerCase(Locale.ROOT), 1.0);
+    }
+
+    private static Map<String, Object> schedulerStatus(FairScheduler scheduler) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("slots", scheduler.slots());
+        status.put("slotsPerUser", scheduler.maxPerUser());
+        status.put("inUse", scheduler.inUse());
+        status.put("waiting", scheduler.waiting());
+        return status;
+    }
+
+    private static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1);
+    }
+}
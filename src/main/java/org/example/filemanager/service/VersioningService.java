@@ -0,0 +1,136 @@
+package org.example.filemanager.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.FileVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Version history, restore and pruning on top of S3 bucket versioning.
+ * Histories are served from the file catalog once loaded, so paging through them does
+ * not repeat ListObjectVersions calls.
+ */
+@Service
+public class VersioningService {
+    private static final Logger logger = LoggerFactory.getLogger(VersioningService.class);
+
+    @Autowired
+    private S3Service s3Service;
+
+    @Autowired
+    private FileCatalogService fileCatalog;
+
+    // Enable versioning and install the noncurrent-version lifecycle rule at startup
+    @Value("${versioning.manage-bucket:false}")
+    private boolean manageBucket;
+
+    // Noncurrent versions older than this are expired by S3 and by manual pruning
+    @Value("${versioning.noncurrent-expiration-days:30}")
+    private int noncurrentExpirationDays;
+
+    // Number of most recent noncurrent versions that are always kept
+    @Value("${versioning.keep-noncurrent-versions:10}")
+    private int keepNoncurrentVersions;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void configureBucket() {
+        if (!manageBucket) {
+            return;
+        }
+        if (!s3Service.supportsVersioning()) {
+            logger.info("Storage backend keeps no versions, skipping bucket versioning");
+            return;
+        }
+        try {
+            s3Service.enableVersioning();
+            s3Service.applyNoncurrentVersionLifecycle(noncurrentExpirationDays, keepNoncurrentVersions);
+            logger.info("Bucket versioning enabled, noncurrent versions expire after {} days (keeping {})",
+                noncurrentExpirationDays, keepNoncurrentVersions);
+        } catch (RuntimeException e) {
+            logger.error("Failed to configure bucket versioning", e);
+        }
+    }
+
+    /**
+     * One page of a key's history, newest first, starting after the given version id
+     */
+    public Map<String, Object> getHistory(String key, String afterVersionId, int limit) {
+        List<FileVersion> versions = loadVersions(key);
+
+        int start = 0;
+        if (afterVersionId != null) {
+            for (int i = 0; i < versions.size(); i++) {
+                if (versions.get(i).versionId().equals(afterVersionId)) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+        int end = Math.min(start + limit, versions.size());
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("key", key);
+        page.put("versions", versions.subList(start, end));
+        page.put("total", versions.size());
+        page.put("nextMarker", end < versions.size() ? versions.get(end - 1).versionId() : null);
+        return page;
+    }
+
+    public String restore(String key, String versionId) {
+        return s3Service.restoreVersion(key, versionId);
+    }
+
+    /**
+     * Deletes noncurrent versions that fall outside the retention policy: everything beyond the
+     * newest keep versions that has also been noncurrent for longer than the given age. Like the
+     * lifecycle rule, the age counts from when a version was superseded, which is the time the
+     * next newer version or delete marker was written, not from when the version itself was.
+     * Uses the lifecycle rule's settings when no overrides are given.
+     */
+    public List<FileVersion> prune(String key, Integer keep, Integer olderThanDays, boolean dryRun) {
+        int keepVersions = keep != null ? keep : keepNoncurrentVersions;
+        Instant cutoff = Instant.now().minus(Duration.ofDays(olderThanDays != null ? olderThanDays : noncurrentExpirationDays));
+
+        List<FileVersion> expired = new ArrayList<>();
+        int noncurrentSeen = 0;
+        // Versions come newest first, so the previous one is the version that superseded this one
+        FileVersion newer = null;
+        for (FileVersion version : loadVersions(key)) {
+            if (!version.latest() && newer != null) {
+                noncurrentSeen++;
+                if (noncurrentSeen > keepVersions && newer.lastModified().isBefore(cutoff)) {
+                    expired.add(version);
+                }
+            }
+            newer = version;
+        }
+
+        if (!dryRun && !expired.isEmpty()) {
+            int deleted = s3Service.deleteVersions(key, expired.stream().map(FileVersion::versionId).toList());
+            fileCatalog.invalidateVersions(key);
+            logger.info("Pruned {} of {} expired versions of {}", deleted, expired.size(), key);
+        }
+        return expired;
+    }
+
+    private List<FileVersion> loadVersions(String key) {
+        List<FileVersion> versions = fileCatalog.getVersions(key);
+        if (versions == null) {
+            versions = s3Service.listVersions(key);
+            fileCatalog.putVersions(key, versions);
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,622 @@
+package org.example.filemanager.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+import org.example.filemanager.model.StoredObject;
+import org.example.filemanager.service.FileCatalogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Storage backend on a local directory, for edge nodes and on-premises deployments.
+ * Under the root, objects/ holds the content with keys mapped to paths, meta/ a properties file
+ * per object with its content type, encoding, CRC32C and user metadata, and tmp/ the writes in
+ * progress. A write goes to a temporary file that is forced to disk and renamed over the target,
+ * so readers never see partial content and an open read keeps the content it started with.
+ * Metadata is renamed into place just before the content.
+ * Small objects are read through a memory mapping, which the rename protocol makes safe because
+ * a mapped file is never truncated. Larger objects stream from a FileChannel whose transferTo
+ * lets the kernel move the bytes without copying them through the heap when the target is a
+ * file, e.g. on copies inside the backend.
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalStorageBackend.class);
+
+    private static final String CONTENT_TYPE = "content-type";
+    private static final String CONTENT_ENCODING = "content-encoding";
+    private static final String CRC32C_VALUE = "crc32c";
+    private static final String METADATA_PREFIX = "meta.";
+
+    private final Path objects;
+    private final Path meta;
+    private final Path tmp;
+    private final long mmapThreshold;
+
+    // Metadata and content are renamed as a pair; concurrent writes of one key take turns
+    private final Object[] commitLocks = new Object[64];
+
+    public LocalStorageBackend(Path root, long mmapThreshold) {
+        Path base = root.toAbsolutePath().normalize();
+        this.objects = base.resolve("objects");
+        this.meta = base.resolve("meta");
+        this.tmp = base.resolve("tmp");
+        this.mmapThreshold = mmapThreshold;
+        for (int i = 0; i < commitLocks.length; i++) {
+            commitLocks[i] = new Object();
+        }
+
+        try {
+            Files.createDirectories(objects);
+            Files.createDirectories(meta);
+            Files.createDirectories(tmp);
+            // Leftovers of writes interrupted by a crash; they were never visible under a key
+            try (Stream<Path> leftovers = Files.list(tmp)) {
+                long removed = leftovers.filter(LocalStorageBackend::deleteQuietly).count();
+                if (removed > 0) {
+                    logger.info("Removed {} incomplete writes from {}", removed, tmp);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to initialize local storage in " + base, e);
+        }
+        logger.info("Using local storage in {}", base);
+    }
+
+    @Override
+    public String type() {
+        return "local";
+    }
+
+    @Override
+    public StoredObject head(String key) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(resolve(objects, key), BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                throw new ObjectNotFoundException(key);
+            }
+            return toStoredObject(key, attributes.size(), attributes, readMetadata(key));
+        } catch (NoSuchFileException e) {
+            throw new ObjectNotFoundException(key, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + key, e);
+        }
+    }
+
+    @Override
+    public ObjectContent open(String key) {
+        Path file = resolve(objects, key);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new ObjectNotFoundException(key, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open " + key, e);
+        }
+
+        try {
+            // The open channel keeps its content even if the key is replaced, so its size is
+            // the one that is served
+            long size = channel.size();
+            StoredObject object = toStoredObject(key, size,
+                    Files.readAttributes(file, BasicFileAttributes.class), readMetadata(key));
+            if (size <= mmapThreshold) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                channel.close();
+                return new ObjectContent(new BufferInputStream(buffer), object, () -> {
+                });
+            }
+            return new ChannelContent(channel, object);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Failed to open " + key, e);
+        }
+    }
+
+    @Override
+    public String put(String key, InputStream content, long length, String contentType, Map<String, String> metadata)
+            throws IOException {
+        Path temp = newTempFile();
+        try {
+            CRC32C checksum = new CRC32C();
+            long written;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                written = new CheckedInputStream(content, checksum).transferTo(Channels.newOutputStream(channel));
+                channel.force(true);
+            }
+            if (written != length) {
+                throw new IOException("Expected " + length + " bytes for " + key + " but received " + written);
+            }
+            commit(temp, key, toProperties(contentType, null, metadata, checksumValue(checksum.getValue())));
+            return null;
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+
+    @Override
+    public StorageOutputStream create(String key, String contentType, String contentEncoding,
+                                      Map<String, String> metadata) {
+        Path temp = newTempFile();
+        try {
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            return new LocalOutputStream(key, temp, channel, toProperties(contentType, contentEncoding, metadata, null));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create " + key, e);
+        }
+    }
+
+    @Override
+    public byte[] readRange(String key, long offset, int length) {
+        try (FileChannel channel = FileChannel.open(resolve(objects, key), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Range " + offset + "+" + length + " is beyond the end of " + key);
+                }
+            }
+            return buffer.array();
+        } catch (NoSuchFileException e) {
+            throw new ObjectNotFoundException(key, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + key, e);
+        }
+    }
+
+    /**
+     * Copies the content file to file, which the kernel does without passing it through user space
+     */
+    @Override
+    public String copy(String sourceKey, String targetKey, StoredObject source, Map<String, String> metadata) {
+        Path temp = newTempFile();
+        try {
+            try (FileChannel in = FileChannel.open(resolve(objects, sourceKey), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+                out.force(true);
+            }
+            String checksum = readMetadata(sourceKey).getProperty(CRC32C_VALUE);
+            commit(temp, targetKey, toProperties(source.contentType(), source.contentEncoding(), metadata, checksum));
+            logger.info("Copied {} to {}", sourceKey, targetKey);
+            return null;
+        } catch (NoSuchFileException e) {
+            deleteQuietly(temp);
+            throw new ObjectNotFoundException(sourceKey, e);
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw new UncheckedIOException("Failed to copy " + sourceKey + " to " + targetKey, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        Path file = resolve(objects, key);
+        Path metadataFile = resolve(meta, key);
+        try {
+            synchronized (lockFor(key)) {
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(metadataFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete " + key, e);
+        }
+        pruneEmptyParents(file, objects);
+        pruneEmptyParents(metadataFile, meta);
+    }
+
+    @Override
+    public List<String> delete(List<String> keys) {
+        List<String> deleted = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                delete(key);
+                deleted.add(key);
+            } catch (UncheckedIOException | IllegalArgumentException e) {
+                logger.warn("Failed to delete {}: {}", key, e.getMessage());
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Walks the directory the prefix points into; the matches are sorted in memory, so listing
+     * costs one stat per file below that directory and a metadata read per match for its ETag
+     */
+    @Override
+    public void list(String prefix, String startAfter, Predicate<StoredObject> visitor) {
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash < 0 ? objects : objects.resolve(prefix.substring(0, slash)).normalize();
+        if (!start.startsWith(objects) || !Files.isDirectory(start)) {
+            return;
+        }
+
+        List<StoredObject> found = new ArrayList<>();
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (attributes.isRegularFile()) {
+                        String key = objects.relativize(file).toString().replace(File.separatorChar, '/');
+                        if (key.startsWith(prefix)
+                                && (startAfter == null || FileCatalogService.KEY_ORDER.compare(key, startAfter) > 0)) {
+                            String checksum = readMetadata(key).getProperty(CRC32C_VALUE);
+                            found.add(StoredObject.listed(key, attributes.size(),
+                                    attributes.lastModifiedTime().toInstant(),
+                                    eTag(attributes.size(), attributes, checksum), null));
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    // Deleted while the walk was running
+                    if (e instanceof NoSuchFileException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw e;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list '" + prefix + "'", e);
+        }
+
+        found.sort(Comparator.comparing(StoredObject::key, FileCatalogService.KEY_ORDER));
+        for (StoredObject object : found) {
+            if (!visitor.test(object)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Renames the metadata and then the content into place, and makes the renames durable
+     */
+    private void commit(Path temp, String key, Properties properties) throws IOException {
+        Path target = resolve(objects, key);
+        Path metadataTarget = resolve(meta, key);
+        Path metadataTemp = newTempFile();
+        try {
+            try (FileChannel channel = FileChannel.open(metadataTemp, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE_NEW)) {
+                properties.store(Channels.newOutputStream(channel), null);
+                channel.force(true);
+            }
+            Files.createDirectories(target.getParent());
+            Files.createDirectories(metadataTarget.getParent());
+            synchronized (lockFor(key)) {
+                Files.move(metadataTemp, metadataTarget, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            deleteQuietly(metadataTemp);
+        }
+        syncDirectory(metadataTarget.getParent());
+        syncDirectory(target.getParent());
+    }
+
+    private Properties readMetadata(String key) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(resolve(meta, key))) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            // Placed in the directory by hand; served without metadata
+        }
+        return properties;
+    }
+
+    private static Properties toProperties(String contentType, String contentEncoding, Map<String, String> metadata,
+                                           String checksum) {
+        Properties properties = new Properties();
+        if (contentType != null) {
+            properties.setProperty(CONTENT_TYPE, contentType);
+        }
+        if (contentEncoding != null) {
+            properties.setProperty(CONTENT_ENCODING, contentEncoding);
+        }
+        if (checksum != null) {
+            properties.setProperty(CRC32C_VALUE, checksum);
+        }
+        if (metadata != null) {
+            metadata.forEach((name, value) -> properties.setProperty(METADATA_PREFIX + name, value));
+        }
+        return properties;
+    }
+
+    private static StoredObject toStoredObject(String key, long size, BasicFileAttributes attributes,
+                                               Properties properties) {
+        Map<String, String> metadata = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(METADATA_PREFIX)) {
+                metadata.put(name.substring(METADATA_PREFIX.length()), properties.getProperty(name));
+            }
+        }
+        String checksum = properties.getProperty(CRC32C_VALUE);
+        return new StoredObject(key, size, attributes.lastModifiedTime().toInstant(), eTag(size, attributes, checksum),
+                properties.getProperty(CONTENT_TYPE), properties.getProperty(CONTENT_ENCODING), metadata,
+                checksum != null ? "crc32c=" + checksum : null, null);
+    }
+
+    /**
+     * The stored CRC32C and the size, so the tag follows the content like an S3 ETag and does not
+     * change when a file is touched or restored with a different modification time. Files placed
+     * in the directory by hand have no checksum and fall back to modification time and size.
+     */
+    private static String eTag(long size, BasicFileAttributes attributes, String checksum) {
+        if (checksum != null) {
+            try {
+                return "\"" + HexFormat.of().formatHex(Base64.getDecoder().decode(checksum)) + "-"
+                        + Long.toHexString(size) + "\"";
+            } catch (IllegalArgumentException e) {
+                // Not written by this backend; fall through
+            }
+        }
+        return "\"" + Long.toHexString(attributes.lastModifiedTime().to(TimeUnit.MICROSECONDS)) + "-"
+                + Long.toHexString(size) + "\"";
+    }
+
+    /**
+     * Base64 of the big-endian CRC32C, the form S3 uses, so digests look the same on every backend
+     */
+    private static String checksumValue(long value) {
+        byte[] bytes = {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * Maps a key to a path below the base directory; keys that would escape it are rejected
+     */
+    private static Path resolve(Path base, String key) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Key must not be empty");
+        }
+        for (String segment : key.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                throw new IllegalArgumentException("Invalid key: " + key);
+            }
+        }
+        Path path = base.resolve(key).normalize();
+        if (!path.startsWith(base) || path.equals(base)) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+        return path;
+    }
+
+    private Path newTempFile() {
+        return tmp.resolve(UUID.randomUUID().toString());
+    }
+
+    private Object lockFor(String key) {
+        return commitLocks[Math.floorMod(key.hashCode(), commitLocks.length)];
+    }
+
+    /**
+     * Removes directories left empty by a delete, up to the base directory
+     */
+    private static void pruneEmptyParents(Path file, Path base) {
+        Path directory = file.getParent();
+        while (directory != null && !directory.equals(base) && directory.startsWith(base)) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (DirectoryNotEmptyException e) {
+                return;
+            } catch (IOException e) {
+                // A concurrent write may be creating it again
+                return;
+            }
+            directory = directory.getParent();
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the rename itself is atomic either way
+        }
+    }
+
+    private static boolean deleteQuietly(Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing was read or written
+        }
+    }
+
+    /**
+     * Content streamed from an open channel; transferTo hands the remaining bytes to the channel
+     * in one call instead of reading them through a buffer
+     */
+    private static final class ChannelContent extends ObjectContent {
+
+        private final FileChannel channel;
+
+        ChannelContent(FileChannel channel, StoredObject object) {
+            super(Channels.newInputStream(channel), object, () -> closeQuietly(channel));
+            this.channel = channel;
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = channel.position();
+            long size = channel.size();
+            long transferred = 0;
+            while (position < size) {
+                long count = channel.transferTo(position, size - position, target);
+                position += count;
+                transferred += count;
+            }
+            channel.position(position);
+            return transferred;
+        }
+    }
+
+    /**
+     * Reads a memory-mapped object
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            int count = buffer.remaining();
+            WritableByteChannel target = Channels.newChannel(out);
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Write of unknown length into a temporary file, committed on close
+     */
+    private final class LocalOutputStream extends StorageOutputStream {
+
+        private final String key;
+        private final Path temp;
+        private final FileChannel channel;
+        private final OutputStream out;
+        private final Properties properties;
+        private final CRC32C checksum = new CRC32C();
+        private boolean closed;
+
+        LocalOutputStream(String key, Path temp, FileChannel channel, Properties properties) {
+            this.key = key;
+            this.temp = temp;
+            this.channel = channel;
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            this.properties = properties;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            checksum.update(b);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            out.write(data, offset, length);
+            checksum.update(data, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.flush();
+                channel.force(true);
+                channel.close();
+                properties.setProperty(CRC32C_VALUE, checksumValue(checksum.getValue()));
+                commit(temp, key, properties);
+            } catch (IOException | RuntimeException e) {
+                closeQuietly(channel);
+                deleteQuietly(temp);
+                throw e;
+            }
+        }
+
+        @Override
+        public String versionId() {
+            return null;
+        }
+
+        @Override
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeQuietly(channel);
+            deleteQuietly(temp);
+        }
+    }
+}
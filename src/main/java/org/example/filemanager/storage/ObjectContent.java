@@ -0,0 +1,44 @@
+package org.example.filemanager.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.example.filemanager.model.StoredObject;
+
+/**
+ * Streaming read of a stored object together with its description; the caller must close it.
+ * Backends may override transferTo to move the content without copying it through the heap.
+ */
+public class ObjectContent extends FilterInputStream {
+
+    private final StoredObject object;
+    private final Runnable abort;
+
+    public ObjectContent(InputStream in, StoredObject object, Runnable abort) {
+        super(in);
+        this.object = object;
+        this.abort = abort;
+    }
+
+    public StoredObject object() {
+        return object;
+    }
+
+    /**
+     * Hands the transfer to the wrapped stream, so wrapping content keeps its zero-copy path
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        return in.transferTo(out);
+    }
+
+    /**
+     * Releases the read without consuming the rest of the content, e.g. after a conditional
+     * request turned out not to need it
+     */
+    public void abort() {
+        abort.run();
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.filemanager.storage;
+
+/**
+ * Thrown by a storage backend when the requested key does not exist
+ */
+public class ObjectNotFoundException extends RuntimeException {
+
+    public ObjectNotFoundException(String key) {
+        super("Object not found: " + key);
+    }
+
+    public ObjectNotFoundException(String key, Throwable cause) {
+        super("Object not found: " + key, cause);
+    }
+}
@@ -0,0 +1,920 @@
+package org.example.filemanager.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+import org.example.filemanager.model.StoredObject;
+import org.example.filemanager.service.FileCatalogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores small objects inside larger pack objects of the wrapped backend, so a few-KB file does
+ * not cost a PUT, a HEAD and a listing entry of its own. Larger objects pass straight through.
+ * <p>
+ * A pack is immutable: the content of its records back to back, then an index of the records
+ * (key, offset, length, content type and encoding, metadata, CRC32C) and a fixed-size footer
+ * pointing at the index. Deletions are tombstone records. Packs are numbered, and replaying
+ * their indexes in order at startup rebuilds the in-memory index, which answers HEADs and
+ * listings of packed objects without any request; content is read with ranged GETs.
+ * Writes of small objects are group-committed: concurrent writes within the commit delay share
+ * one pack, and each returns once its pack is stored. A single writer thread assigns pack
+ * numbers, so replay order is commit order. A small write that replaces an object stored in the
+ * wrapped backend deletes that object once its pack is stored. {@link #compact} rewrites packs
+ * that are mostly garbage or too small into new ones.
+ * <p>
+ * The index lives in this process: packs written by other nodes are only seen after a restart,
+ * so packing suits deployments with a single writer.
+ */
+public class PackingStorageBackend implements StorageBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackingStorageBackend.class);
+
+    private static final int PACK_MAGIC = 0x5041434B;
+    private static final int FORMAT_VERSION = 1;
+    // Index offset, format version, magic
+    private static final int FOOTER_LENGTH = 16;
+    private static final byte PUT = 0;
+    private static final byte TOMBSTONE = 1;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final StorageBackend delegate;
+    private final String packPrefix;
+    private final int threshold;
+    private final long packSize;
+    private final long commitDelayMillis;
+
+    // Latest live record per key, in listing order; read without locking
+    private final ConcurrentSkipListMap<String, Entry> entries =
+            new ConcurrentSkipListMap<>(FileCatalogService.KEY_ORDER);
+    // Guarded by this: packs by number, and keys whose latest record is a tombstone with its pack
+    private final TreeMap<Long, Pack> packs = new TreeMap<>();
+    private final Map<String, Long> tombstones = new HashMap<>();
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "storage-packer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Guarded by pending: queued commits, and the number of records per key not yet applied to the index
+    private final List<PendingCommit> pending = new ArrayList<>();
+    private final Map<String, Integer> unapplied = new HashMap<>();
+    private long pendingBytes;
+    private boolean flushScheduled;
+    // Guarded by itself: keys being written to the wrapped backend directly, with the number of writes
+    private final Map<String, Integer> directWrites = new HashMap<>();
+    // Only used on the writer thread
+    private long nextPack;
+
+    private record Entry(long pack, long offset, int length, long lastModifiedMillis, String contentType,
+                         String contentEncoding, Map<String, String> metadata, int crc32c) {
+    }
+
+    /**
+     * A record to write; content is null for a tombstone
+     */
+    private record Record(String key, byte[] content, long lastModifiedMillis, String contentType,
+                          String contentEncoding, Map<String, String> metadata, int crc32c) {
+
+        static Record tombstone(String key) {
+            return new Record(key, null, 0, null, null, Map.of(), 0);
+        }
+    }
+
+    private record PendingCommit(List<Record> records, CompletableFuture<Void> done) {
+    }
+
+    private static final class Pack {
+        final long number;
+        final long size;
+        long liveBytes;
+        final Set<String> keys = new HashSet<>();
+
+        Pack(long number, long size) {
+            this.number = number;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Outcome of one compaction: packs read and deleted, packs written, bytes no longer stored
+     */
+    public record CompactionResult(int packsRewritten, int packsWritten, long bytesReclaimed) {
+    }
+
+    public PackingStorageBackend(StorageBackend delegate, String packPrefix, int threshold, long packSize,
+                                 long commitDelayMillis) {
+        if (threshold >= packSize) {
+            throw new IllegalArgumentException("Packing threshold " + threshold + " must be below the pack size "
+                    + packSize);
+        }
+        this.delegate = delegate;
+        this.packPrefix = packPrefix;
+        this.threshold = threshold;
+        this.packSize = packSize;
+        this.commitDelayMillis = commitDelayMillis;
+        load();
+    }
+
+    @Override
+    public String type() {
+        return delegate.type();
+    }
+
+    @Override
+    public <T extends StorageBackend> T unwrap(Class<T> type) {
+        return type.isInstance(this) ? type.cast(this) : delegate.unwrap(type);
+    }
+
+    /**
+     * Whether the key's content is stored in a pack rather than as an object of its own
+     */
+    public boolean isPacked(String key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public StoredObject head(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? toStoredObject(key, entry) : delegate.head(key);
+    }
+
+    @Override
+    public ObjectContent open(String key) {
+        return readFully(key);
+    }
+
+    @Override
+    public ObjectContent readFully(String key) {
+        // A compaction may delete the pack between the lookup and the read; the entry then points elsewhere
+        for (int attempt = 0; ; attempt++) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return delegate.readFully(key);
+            }
+            try {
+                byte[] content = readContent(key, entry);
+                return new ObjectContent(new ByteArrayInputStream(content), toStoredObject(key, entry), () -> {
+                });
+            } catch (ObjectNotFoundException e) {
+                if (attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public byte[] readRange(String key, long offset, int length) {
+        if (!entries.containsKey(key)) {
+            return delegate.readRange(key, offset, length);
+        }
+        byte[] content;
+        try (ObjectContent object = readFully(key)) {
+            content = object.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (offset + length > content.length) {
+            throw new IllegalStateException("Range " + offset + "+" + length + " is beyond the end of " + key);
+        }
+        byte[] range = new byte[length];
+        System.arraycopy(content, (int) offset, range, 0, length);
+        return range;
+    }
+
+    @Override
+    public String put(String key, InputStream content, long length, String contentType, Map<String, String> metadata)
+            throws IOException {
+        if (length > threshold) {
+            beginDirectWrite(key);
+            try {
+                String versionId = delegate.put(key, content, length, contentType, metadata);
+                removePacked(key);
+                return versionId;
+            } finally {
+                endDirectWrite(key);
+            }
+        }
+        byte[] bytes = content.readNBytes((int) length);
+        if (bytes.length != length) {
+            throw new IOException("Expected " + length + " bytes for " + key + " but received " + bytes.length);
+        }
+        commit(List.of(record(key, bytes, contentType, null, metadata)));
+        return null;
+    }
+
+    /**
+     * Buffers up to the threshold in memory; content that outgrows it continues as a regular write
+     */
+    @Override
+    public StorageOutputStream create(String key, String contentType, String contentEncoding,
+                                      Map<String, String> metadata) {
+        return new PackingOutputStream(key, contentType, contentEncoding, metadata);
+    }
+
+    @Override
+    public String copy(String sourceKey, String targetKey, StoredObject source, Map<String, String> metadata) {
+        Entry entry = entries.get(sourceKey);
+        if (entry == null) {
+            beginDirectWrite(targetKey);
+            try {
+                String versionId = delegate.copy(sourceKey, targetKey, source, metadata);
+                removePacked(targetKey);
+                return versionId;
+            } finally {
+                endDirectWrite(targetKey);
+            }
+        }
+        byte[] content;
+        try (ObjectContent object = readFully(sourceKey)) {
+            content = object.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to copy " + sourceKey, e);
+        }
+        commitUnchecked(List.of(record(targetKey, content, entry.contentType(), entry.contentEncoding(), metadata)));
+        return null;
+    }
+
+    /**
+     * A packed key, or one with a small write still waiting for its pack, is deleted with a
+     * tombstone committed after that write; the wrapped backend's object is deleted as well, in
+     * case the key was written there before it was packed
+     */
+    @Override
+    public void delete(String key) {
+        if (packedOrPending(key)) {
+            commitUnchecked(List.of(Record.tombstone(key)));
+        }
+        delegate.delete(key);
+    }
+
+    @Override
+    public List<String> delete(List<String> keys) {
+        List<Record> packed = keys.stream().filter(this::packedOrPending).map(Record::tombstone).toList();
+        if (!packed.isEmpty()) {
+            commitUnchecked(packed);
+        }
+        Set<String> deleted = new HashSet<>(delegate.delete(keys));
+        packed.forEach(record -> deleted.add(record.key()));
+        return keys.stream().filter(deleted::contains).toList();
+    }
+
+    /**
+     * Merges the wrapped backend's listing with the packed keys; a packed key hides an object
+     * of the same name, which can only be a leftover of a write from before it was packed
+     */
+    @Override
+    public void list(String prefix, String startAfter, Predicate<StoredObject> visitor) {
+        PackedCursor packed = new PackedCursor(prefix, startAfter);
+        boolean[] stopped = {false};
+
+        delegate.list(prefix, startAfter, object -> {
+            if (object.key().startsWith(packPrefix)) {
+                return true;
+            }
+            while (packed.next != null && FileCatalogService.KEY_ORDER.compare(packed.next.getKey(), object.key()) <= 0) {
+                boolean shadows = packed.next.getKey().equals(object.key());
+                if (!visitor.test(packed.advance())) {
+                    stopped[0] = true;
+                    return false;
+                }
+                if (shadows) {
+                    return true;
+                }
+            }
+            if (!visitor.test(object)) {
+                stopped[0] = true;
+                return false;
+            }
+            return true;
+        });
+
+        while (!stopped[0] && packed.next != null) {
+            if (!visitor.test(packed.advance())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the packed copy of a key whose content was written to the wrapped backend directly,
+     * e.g. a restored version
+     */
+    public void removePacked(String key) {
+        if (packedOrPending(key)) {
+            commitUnchecked(List.of(Record.tombstone(key)));
+        }
+    }
+
+    /**
+     * Whether the key is packed or has records queued for a pack. A record is applied to the index
+     * before it stops counting as unapplied, so checking in this order cannot miss it.
+     */
+    private boolean packedOrPending(String key) {
+        synchronized (pending) {
+            if (unapplied.containsKey(key)) {
+                return true;
+            }
+        }
+        return entries.containsKey(key);
+    }
+
+    private void beginDirectWrite(String key) {
+        synchronized (directWrites) {
+            directWrites.merge(key, 1, Integer::sum);
+        }
+    }
+
+    private void endDirectWrite(String key) {
+        synchronized (directWrites) {
+            directWrites.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long storedBytes = 0;
+        long liveBytes = 0;
+        for (Pack pack : packs.values()) {
+            storedBytes += pack.size;
+            liveBytes += pack.liveBytes;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("packs", packs.size());
+        stats.put("packedObjects", entries.size());
+        stats.put("tombstones", tombstones.size());
+        synchronized (pending) {
+            stats.put("pendingCommits", pending.size());
+        }
+        stats.put("storedBytes", storedBytes);
+        stats.put("liveBytes", liveBytes);
+        return stats;
+    }
+
+    /**
+     * Rewrites packs whose live share fell below minLiveRatio, together with packs smaller than a
+     * quarter of the pack size, reading at most maxBytes of packs. Live records and the tombstones
+     * still needed to hide older records move to new packs; the old packs are then deleted.
+     */
+    public CompactionResult compact(double minLiveRatio, long maxBytes) {
+        List<Pack> candidates = new ArrayList<>();
+        synchronized (this) {
+            long selected = 0;
+            int small = 0;
+            for (Pack pack : packs.values()) {
+                boolean sparse = pack.liveBytes < pack.size * minLiveRatio;
+                boolean tiny = pack.size < packSize / 4;
+                if ((sparse || tiny) && selected + pack.size <= maxBytes) {
+                    candidates.add(pack);
+                    selected += pack.size;
+                    if (!sparse) {
+                        small++;
+                    }
+                }
+            }
+            // A single small pack with nothing to drop would just be written again
+            if (candidates.size() == 1 && small == 1) {
+                candidates.clear();
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new CompactionResult(0, 0, 0);
+        }
+
+        Map<Long, byte[]> contents = new HashMap<>();
+        for (Pack pack : candidates) {
+            try (ObjectContent object = delegate.readFully(packKey(pack.number))) {
+                contents.put(pack.number, object.readAllBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read pack " + pack.number, e);
+            }
+        }
+
+        try {
+            return writer.submit(() -> rewrite(candidates, contents)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while compacting packs", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime
+                    : new IllegalStateException("Failed to compact packs", e.getCause());
+        }
+    }
+
+    /**
+     * Commits pending writes without waiting for the commit delay and stops the writer
+     */
+    public void close() {
+        if (writer.isShutdown()) {
+            return;
+        }
+        try {
+            writer.submit(this::flush).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Failed to commit pending writes on close: {}", e.toString());
+        }
+        // The scheduled flushes left are dropped, so writes that arrived since then fail
+        writer.shutdownNow();
+        synchronized (pending) {
+            pending.forEach(commit -> commit.done().completeExceptionally(new IOException("Storage is closed")));
+            pending.clear();
+            unapplied.clear();
+            pendingBytes = 0;
+        }
+    }
+
+    /**
+     * Runs on the writer thread, so no commit interleaves with the checks of what is still live
+     */
+    private CompactionResult rewrite(List<Pack> candidates, Map<Long, byte[]> contents) throws IOException {
+        Set<Long> rewritten = new HashSet<>();
+        candidates.forEach(pack -> rewritten.add(pack.number));
+
+        List<Record> records = new ArrayList<>();
+        long reclaimed = 0;
+        synchronized (this) {
+            for (Pack pack : candidates) {
+                reclaimed += pack.size;
+                for (String key : pack.keys) {
+                    Entry entry = entries.get(key);
+                    if (entry != null && entry.pack() == pack.number) {
+                        byte[] content = new byte[entry.length()];
+                        System.arraycopy(contents.get(pack.number), (int) entry.offset(), content, 0, entry.length());
+                        records.add(new Record(key, content, entry.lastModifiedMillis(), entry.contentType(),
+                                entry.contentEncoding(), entry.metadata(), entry.crc32c()));
+                    } else if (Long.valueOf(pack.number).equals(tombstones.get(key)) && inOtherPack(key, rewritten)) {
+                        records.add(Record.tombstone(key));
+                    } else if (Long.valueOf(pack.number).equals(tombstones.get(key))) {
+                        tombstones.remove(key);
+                    }
+                }
+            }
+        }
+
+        int written = 0;
+        List<Record> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (Record record : records) {
+            batch.add(record);
+            batchBytes += record.content() != null ? record.content().length : 0;
+            if (batchBytes >= packSize) {
+                reclaimed -= writePack(batch);
+                written++;
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            reclaimed -= writePack(batch);
+            written++;
+        }
+
+        synchronized (this) {
+            rewritten.forEach(packs::remove);
+        }
+        delegate.delete(rewritten.stream().map(this::packKey).toList());
+        logger.info("Compacted {} packs into {}, reclaiming {} bytes", candidates.size(), written, reclaimed);
+        return new CompactionResult(candidates.size(), written, reclaimed);
+    }
+
+    private boolean inOtherPack(String key, Set<Long> excluded) {
+        for (Pack pack : packs.values()) {
+            if (!excluded.contains(pack.number) && pack.keys.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues records for the next pack and waits until it is stored
+     */
+    private void commit(List<Record> records) throws IOException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (pending) {
+            pending.add(new PendingCommit(records, done));
+            for (Record record : records) {
+                pendingBytes += record.content() != null ? record.content().length : 0;
+                unapplied.merge(record.key(), 1, Integer::sum);
+            }
+            if (pendingBytes >= packSize) {
+                writer.execute(this::flush);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                writer.schedule(this::flush, commitDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the pack commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Failed to commit pack", e.getCause());
+        }
+    }
+
+    private void commitUnchecked(List<Record> records) {
+        try {
+            commit(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to commit pack", e);
+        }
+    }
+
+    private void flush() {
+        List<PendingCommit> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            pendingBytes = 0;
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Record> records = new ArrayList<>();
+        batch.forEach(commit -> records.addAll(commit.records()));
+        // Keys whose last record here is a put and that were not packed so far may have an object of their own
+        Map<String, Boolean> replacing = new HashMap<>();
+        for (Record record : records) {
+            replacing.put(record.key(), record.content() != null && !entries.containsKey(record.key()));
+        }
+        try {
+            writePack(records);
+            batch.forEach(commit -> commit.done().complete(null));
+        } catch (Throwable e) {
+            batch.forEach(commit -> commit.done().completeExceptionally(e));
+            replacing.clear();
+        } finally {
+            synchronized (pending) {
+                for (Record record : records) {
+                    unapplied.computeIfPresent(record.key(), (key, count) -> count > 1 ? count - 1 : null);
+                }
+            }
+        }
+        replacing.values().removeIf(replaces -> !replaces);
+        deleteReplacedObjects(replacing.keySet());
+    }
+
+    /**
+     * Deletes the wrapped backend's objects of keys that were just packed, one request per pack.
+     * A key written to the wrapped backend meanwhile, or with a newer record queued, keeps its
+     * object: that write comes later and removes the packed copy instead. Holding the lock while
+     * deleting keeps a direct write of the key from starting before the delete has finished.
+     */
+    private void deleteReplacedObjects(Set<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        synchronized (directWrites) {
+            List<String> replaced;
+            synchronized (pending) {
+                replaced = keys.stream()
+                        .filter(key -> !directWrites.containsKey(key) && !unapplied.containsKey(key))
+                        .toList();
+            }
+            try {
+                if (!replaced.isEmpty()) {
+                    delegate.delete(replaced);
+                }
+            } catch (RuntimeException e) {
+                // The packed copies hide the objects left behind
+                logger.warn("Failed to delete {} objects replaced by packed writes: {}", replaced.size(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stores the records as the next pack and applies them to the index; returns the pack's size
+     */
+    private long writePack(List<Record> records) throws IOException {
+        long number = nextPack++;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long[] offsets = new long[records.size()];
+        int[] lengths = new int[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            byte[] content = records.get(i).content();
+            if (content != null) {
+                offsets[i] = buffer.size();
+                lengths[i] = content.length;
+                buffer.write(content);
+            }
+        }
+
+        long indexOffset = buffer.size();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            Record record = records.get(i);
+            out.writeUTF(record.key());
+            out.writeByte(record.content() != null ? PUT : TOMBSTONE);
+            out.writeLong(offsets[i]);
+            out.writeInt(lengths[i]);
+            out.writeLong(record.lastModifiedMillis());
+            writeNullable(out, record.contentType());
+            writeNullable(out, record.contentEncoding());
+            out.writeInt(record.crc32c());
+            out.writeInt(record.metadata().size());
+            for (Map.Entry<String, String> metadata : record.metadata().entrySet()) {
+                out.writeUTF(metadata.getKey());
+                out.writeUTF(metadata.getValue());
+            }
+        }
+        out.writeLong(indexOffset);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(PACK_MAGIC);
+        out.flush();
+
+        byte[] pack = buffer.toByteArray();
+        delegate.put(packKey(number), new ByteArrayInputStream(pack), pack.length, "application/octet-stream",
+                Map.of());
+        apply(number, pack.length, records, offsets, lengths);
+        logger.debug("Stored pack {} with {} records ({} bytes)", number, records.size(), pack.length);
+        return pack.length;
+    }
+
+    private synchronized void apply(long number, long size, List<Record> records, long[] offsets, int[] lengths) {
+        Pack pack = new Pack(number, size);
+        packs.put(number, pack);
+        for (int i = 0; i < records.size(); i++) {
+            Record record = records.get(i);
+            pack.keys.add(record.key());
+            Entry previous;
+            if (record.content() != null) {
+                previous = entries.put(record.key(), new Entry(number, offsets[i], lengths[i],
+                        record.lastModifiedMillis(), record.contentType(), record.contentEncoding(),
+                        record.metadata(), record.crc32c()));
+                pack.liveBytes += lengths[i];
+                tombstones.remove(record.key());
+            } else {
+                previous = entries.remove(record.key());
+                tombstones.put(record.key(), number);
+            }
+            if (previous != null) {
+                Pack previousPack = packs.get(previous.pack());
+                if (previousPack != null) {
+                    previousPack.liveBytes -= previous.length();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index by replaying the indexes of all packs in order
+     */
+    private void load() {
+        TreeMap<Long, StoredObject> found = new TreeMap<>();
+        delegate.list(packPrefix, null, object -> {
+            try {
+                found.put(Long.parseLong(object.key().substring(packPrefix.length())), object);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring unexpected object {} among the packs", object.key());
+            }
+            return true;
+        });
+
+        for (Map.Entry<Long, StoredObject> pack : found.entrySet()) {
+            long number = pack.getKey();
+            long size = pack.getValue().size();
+            try {
+                DataInputStream footer = new DataInputStream(new ByteArrayInputStream(
+                        delegate.readRange(packKey(number), size - FOOTER_LENGTH, FOOTER_LENGTH)));
+                long indexOffset = footer.readLong();
+                int version = footer.readInt();
+                if (footer.readInt() != PACK_MAGIC || version != FORMAT_VERSION) {
+                    throw new IOException("Unrecognized pack format");
+                }
+                DataInputStream index = new DataInputStream(new ByteArrayInputStream(delegate.readRange(
+                        packKey(number), indexOffset, (int) (size - FOOTER_LENGTH - indexOffset))));
+                int count = index.readInt();
+                List<Record> records = new ArrayList<>(count);
+                long[] offsets = new long[count];
+                int[] lengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    String key = index.readUTF();
+                    boolean put = index.readByte() == PUT;
+                    offsets[i] = index.readLong();
+                    lengths[i] = index.readInt();
+                    long lastModified = index.readLong();
+                    String contentType = readNullable(index);
+                    String contentEncoding = readNullable(index);
+                    int crc32c = index.readInt();
+                    Map<String, String> metadata = new HashMap<>();
+                    int metadataCount = index.readInt();
+                    for (int m = 0; m < metadataCount; m++) {
+                        metadata.put(index.readUTF(), index.readUTF());
+                    }
+                    // The content stays in the pack; an empty array marks the record as a put
+                    records.add(put ? new Record(key, EMPTY, lastModified, contentType, contentEncoding,
+                            Map.copyOf(metadata), crc32c) : Record.tombstone(key));
+                }
+                apply(number, size, records, offsets, lengths);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the index of pack " + packKey(number), e);
+            }
+        }
+        nextPack = found.isEmpty() ? 0 : found.lastKey() + 1;
+        if (!found.isEmpty()) {
+            logger.info("Loaded {} packs holding {} small objects", found.size(), entries.size());
+        }
+    }
+
+    private byte[] readContent(String key, Entry entry) {
+        byte[] content = delegate.readRange(packKey(entry.pack()), entry.offset(), entry.length());
+        CRC32C checksum = new CRC32C();
+        checksum.update(content);
+        if ((int) checksum.getValue() != entry.crc32c()) {
+            throw new UncheckedIOException(new IOException("Checksum mismatch reading packed object " + key));
+        }
+        return content;
+    }
+
+    private StoredObject toStoredObject(String key, Entry entry) {
+        return new StoredObject(key, entry.length(), Instant.ofEpochMilli(entry.lastModifiedMillis()), eTag(entry),
+                entry.contentType(), entry.contentEncoding(), entry.metadata(),
+                "crc32c=" + Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt(entry.crc32c()).array()),
+                null);
+    }
+
+    /**
+     * Derived from the content checksum and write time, so it survives compaction
+     */
+    private static String eTag(Entry entry) {
+        return "\"" + Integer.toHexString(entry.crc32c()) + "-" + Long.toHexString(entry.lastModifiedMillis()) + "\"";
+    }
+
+    private static Record record(String key, byte[] content, String contentType, String contentEncoding,
+                                 Map<String, String> metadata) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(content);
+        return new Record(key, content, System.currentTimeMillis(), contentType, contentEncoding,
+                Map.copyOf(metadata), (int) checksum.getValue());
+    }
+
+    private String packKey(long number) {
+        return packPrefix + String.format("%020d", number);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Walks the packed keys with a prefix in key order, one ahead of the caller
+     */
+    private final class PackedCursor {
+        private final String prefix;
+        private final Iterator<Map.Entry<String, Entry>> iterator;
+        Map.Entry<String, Entry> next;
+
+        PackedCursor(String prefix, String startAfter) {
+            this.prefix = prefix;
+            this.iterator = (startAfter != null && FileCatalogService.KEY_ORDER.compare(startAfter, prefix) >= 0
+                    ? entries.tailMap(startAfter, false) : entries.tailMap(prefix, true)).entrySet().iterator();
+            move();
+        }
+
+        StoredObject advance() {
+            Entry entry = next.getValue();
+            StoredObject object = StoredObject.listed(next.getKey(), entry.length(),
+                    Instant.ofEpochMilli(entry.lastModifiedMillis()), eTag(entry), null);
+            move();
+            return object;
+        }
+
+        private void move() {
+            next = iterator.hasNext() ? iterator.next() : null;
+            // Keys with the prefix are contiguous in key order
+            if (next != null && !next.getKey().startsWith(prefix)) {
+                next = null;
+            }
+        }
+    }
+
+    private final class PackingOutputStream extends StorageOutputStream {
+        private final String key;
+        private final String contentType;
+        private final String contentEncoding;
+        private final Map<String, String> metadata;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private StorageOutputStream spilled;
+        private String versionId;
+        private boolean closed;
+
+        PackingOutputStream(String key, String contentType, String contentEncoding, Map<String, String> metadata) {
+            this.key = key;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spilled == null && buffer.size() + len > threshold) {
+                beginDirectWrite(key);
+                try {
+                    spilled = delegate.create(key, contentType, contentEncoding, metadata);
+                } catch (RuntimeException e) {
+                    endDirectWrite(key);
+                    throw e;
+                }
+                buffer.writeTo(spilled);
+                buffer = null;
+            }
+            if (spilled != null) {
+                spilled.write(b, off, len);
+            } else {
+                buffer.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (spilled != null) {
+                try {
+                    spilled.close();
+                    versionId = spilled.versionId();
+                    removePacked(key);
+                } finally {
+                    endDirectWrite(key);
+                }
+            } else {
+                commit(List.of(record(key, buffer.toByteArray(), contentType, contentEncoding, metadata)));
+            }
+        }
+
+        @Override
+        public String versionId() {
+            return versionId;
+        }
+
+        @Override
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (spilled != null) {
+                try {
+                    spilled.abort();
+                } finally {
+                    endDirectWrite(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.filemanager.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.example.filemanager.model.StoredObject;
+
+/**
+ * Object store the file service keeps its content in. Keys are flat strings that may contain
+ * '/'; listings return them in UTF-8 byte order. Writes replace the whole object atomically:
+ * readers see either the previous object or the new one, never a partial write.
+ * Missing keys are reported with {@link ObjectNotFoundException}.
+ */
+public interface StorageBackend {
+
+    /**
+     * Short name of the backend type, shown in logs and status endpoints
+     */
+    String type();
+
+    StoredObject head(String key);
+
+    ObjectContent open(String key);
+
+    /**
+     * Reads a small object completely before returning, which lets backends retry or hedge
+     * the read as a whole
+     */
+    default ObjectContent readFully(String key) {
+        return open(key);
+    }
+
+    /**
+     * Reads length bytes of an object starting at offset; fails if the object is shorter
+     */
+    byte[] readRange(String key, long offset, int length);
+
+    /**
+     * Stores content of known length; returns the version id of the new object, or null
+     */
+    String put(String key, InputStream content, long length, String contentType, Map<String, String> metadata)
+            throws IOException;
+
+    /**
+     * Starts a write of content whose length is not known up front
+     */
+    StorageOutputStream create(String key, String contentType, String contentEncoding, Map<String, String> metadata);
+
+    /**
+     * Copies an object inside the backend, replacing its user metadata; content type and encoding
+     * are carried over from the source. Returns the version id of the copy, or null.
+     */
+    String copy(String sourceKey, String targetKey, StoredObject source, Map<String, String> metadata);
+
+    void delete(String key);
+
+    /**
+     * Deletes several keys at once; returns the keys that were deleted
+     */
+    List<String> delete(List<String> keys);
+
+    /**
+     * Visits objects whose key starts with the prefix, in key order and after startAfter
+     * (null for the beginning), until the visitor returns false
+     */
+    void list(String prefix, String startAfter, Predicate<StoredObject> visitor);
+
+    /**
+     * This backend, or a backend it wraps, as the given type; null if there is none
+     */
+    default <T extends StorageBackend> T unwrap(Class<T> type) {
+        return type.isInstance(this) ? type.cast(this) : null;
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.filemanager.storage;
+
+import java.io.OutputStream;
+
+/**
+ * Write of an object whose length is not known up front. Closing the stream commits the
+ * object; nothing becomes visible under the key before that.
+ */
+public abstract class StorageOutputStream extends OutputStream {
+
+    /**
+     * Version created by the write once closed, or null when the backend does not keep versions
+     */
+    public abstract String versionId();
+
+    /**
+     * Abandons the write and discards anything written so far
+     */
+    public abstract void abort();
+}
@@ -0,0 +1,40 @@
+package org.example.filemanager;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3RequestGateTest {
+
+    @Test
+    void testOnlyNetworkFailuresCountAgainstS3() {
+        assertTrue(S3RequestGate.isNetworkFailure(SdkClientException.create("Unable to execute HTTP request",
+                new SocketTimeoutException("Read timed out"))));
+        assertFalse(S3RequestGate.isNetworkFailure(SdkClientException.create("Unable to execute HTTP request",
+                new ConnectionPoolTimeoutException("Timeout waiting for connection from pool"))));
+        assertFalse(S3RequestGate.isNetworkFailure(SdkClientException.create("Unable to load credentials")));
+    }
+
+    @Test
+    void testReleasedTrialLeavesTheNextCallToDecide() {
+        S3CircuitBreaker breaker = new S3CircuitBreaker(4, 2, 0.5, 0);
+        breaker.tryAcquire();
+        breaker.record(true);
+        breaker.tryAcquire();
+        breaker.record(true);
+        assertEquals(S3CircuitBreaker.State.OPEN, breaker.state());
+
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.release();
+        assertEquals(S3CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.tryAcquire());
+        breaker.record(false);
+        assertEquals(S3CircuitBreaker.State.CLOSED, breaker.state());
+    }
+}
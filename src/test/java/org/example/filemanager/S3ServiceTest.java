@@ -0,0 +1,24 @@
+package org.example.filemanager;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3ServiceTest {
+
+    @Test
+    void testTargetKeyIsOneAddressablePathSegment() {
+        assertEquals("report_2.pdf", S3Service.validateTargetKey("report_2.pdf"));
+        assertEquals("r\u00e9sum\u00e9 (final).txt", S3Service.validateTargetKey("r\u00e9sum\u00e9 (final).txt"));
+
+        // The file routes bind a single segment, so these could be created but not addressed
+        for (String key : new String[] {"docs/report.pdf", "/report.pdf", "report.pdf/", "a\\b", ".", ".."}) {
+            assertThrows(IllegalArgumentException.class, () -> S3Service.validateTargetKey(key), key);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> S3Service.validateTargetKey(S3Service.INTERNAL_PREFIX + "x"));
+        assertThrows(IllegalArgumentException.class, () -> S3Service.validateTargetKey(" "));
+        assertThrows(IllegalArgumentException.class, () -> S3Service.validateTargetKey("a\nb"));
+        assertThrows(IllegalArgumentException.class, () -> S3Service.validateTargetKey("x".repeat(1025)));
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.filemanager;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the production layout (build/production) in fresh JVMs and reports the time from
+ * process start until the first request is answered, and the resident set size at that point.
+ * When a CDS archive was generated, the runs are repeated with it for comparison.
+ * Run with {@code ./gradlew cdsArchive startupBenchmark -Pproduction}.
+ */
+public class StartupBenchmark {
+
+    private static final int RUNS = Integer.getInteger("startup.runs", 5);
+    private static final Duration TIMEOUT = Duration.ofSeconds(120);
+
+    private record Result(long firstRequestMillis, long rssKb) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path appDir = Path.of(args[0]);
+        List<String> appArgs = Arrays.asList(args).subList(1, args.length);
+        Path jar = appDir.resolve("file-manager.jar");
+        if (!Files.exists(jar)) {
+            throw new IllegalStateException("No application at " + jar + ", run ./gradlew productionApp first");
+        }
+
+        boolean aot = Boolean.getBoolean("startup.aot");
+        List<String> baseJvmArgs = aot ? List.of("-Dspring.aot.enabled=true") : List.of();
+        measure(aot ? "AOT" : "plain", appDir, baseJvmArgs, appArgs);
+
+        if (Files.exists(appDir.resolve("app.jsa"))) {
+            List<String> cdsJvmArgs = new ArrayList<>(baseJvmArgs);
+            cdsJvmArgs.add("-XX:SharedArchiveFile=app.jsa");
+            measure(aot ? "AOT + CDS" : "CDS", appDir, cdsJvmArgs, appArgs);
+        } else {
+            System.out.println("No CDS archive in " + appDir + ", run ./gradlew cdsArchive to compare");
+        }
+    }
+
+    private static void measure(String name, Path appDir, List<String> jvmArgs, List<String> appArgs)
+            throws Exception {
+        List<Result> results = new ArrayList<>();
+        // The first start warms the OS page cache and is not counted
+        for (int run = 0; run <= RUNS; run++) {
+            Result result = start(appDir, jvmArgs, appArgs);
+            if (run > 0) {
+                results.add(result);
+            }
+        }
+        long[] times = results.stream().mapToLong(Result::firstRequestMillis).sorted().toArray();
+        long[] rss = results.stream().mapToLong(Result::rssKb).sorted().toArray();
+        System.out.printf("%-10s first request: median %5d ms (min %5d, max %5d)   "
+                        + "RSS: median %4d MB (min %4d, max %4d)%n",
+                name, times[times.length / 2], times[0], times[times.length - 1],
+                rss[rss.length / 2] / 1024, rss[0] / 1024, rss[rss.length - 1] / 1024);
+    }
+
+    private static Result start(Path appDir, List<String> jvmArgs, List<String> appArgs) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add("file-manager.jar");
+        command.addAll(appArgs);
+        command.add("--server.port=" + port);
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/login")).build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(appDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            while (true) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Application exited with " + process.exitValue() + ": "
+                            + String.join(" ", command));
+                }
+                if (System.nanoTime() - start > TIMEOUT.toNanos()) {
+                    throw new IllegalStateException("Application did not answer within " + TIMEOUT);
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() < 500) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            long firstRequestMillis = (System.nanoTime() - start) / 1_000_000;
+            return new Result(firstRequestMillis, rssKb(process.pid()));
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Resident set size from /proc, or from ps where there is none
+     */
+    private static long rssKb(long pid) throws IOException, InterruptedException {
+        Path status = Path.of("/proc", String.valueOf(pid), "status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        }
+        Process ps = new ProcessBuilder("ps", "-o", "rss=", "-p", String.valueOf(pid)).start();
+        String output = new String(ps.getInputStream().readAllBytes()).trim();
+        ps.waitFor();
+        return output.isEmpty() ? 0 : Long.parseLong(output);
+    }
+}
@@ -0,0 +1,179 @@
+package org.example.filemanager;
+
+import org.example.filemanager.config.AwsConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StorageRouterTest {
+
+    private final S3Client east = mock(S3Client.class);
+    private final S3Client west = mock(S3Client.class);
+    private final S3Client replica = mock(S3Client.class);
+    private StorageRouter router;
+
+    @BeforeEach
+    void setUp() {
+        AwsConfig awsConfig = mock(AwsConfig.class);
+        when(awsConfig.createClient(Region.of("us-east-1"))).thenReturn(east);
+        when(awsConfig.createClient(Region.of("us-west-2"))).thenReturn(west);
+        when(awsConfig.createClient(Region.of("eu-west-1"))).thenReturn(replica);
+
+        router = new StorageRouter();
+        ReflectionTestUtils.setField(router, "awsConfig", awsConfig);
+        ReflectionTestUtils.setField(router, "logicalBucket", "files");
+        ReflectionTestUtils.setField(router, "defaultRegion", "us-east-1");
+        ReflectionTestUtils.setField(router, "backendSpecs", new String[] {
+            "east|us-east-1|bucket-east",
+            "west|us-west-2|bucket-west",
+            "east-replica|eu-west-1|bucket-replica|replica-of=east"
+        });
+        ReflectionTestUtils.setField(router, "placementSpecs", new String[] {"w/|west"});
+        ReflectionTestUtils.setField(router, "unhealthyAfterFailures", 3);
+        ReflectionTestUtils.setField(router, "unhealthyPeriodMillis", 30_000L);
+        router.init();
+    }
+
+    @Test
+    void testMergedListingStopsAtShortestTruncatedPage() {
+        // east has more keys after "c", so nothing beyond "c" from west can be returned yet
+        when(east.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(page(true, "a", "c"));
+        when(west.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(page(false, "w/b", "w/d"));
+
+        ListObjectsV2Response response = router.client().listObjectsV2(ListObjectsV2Request.builder()
+                .bucket("files")
+                .build());
+
+        assertEquals(List.of("a", "c"), keys(response));
+        assertTrue(response.isTruncated());
+        assertEquals("c", response.nextContinuationToken());
+    }
+
+    @Test
+    void testMergedListingHonoursMaxKeysAndContinuesAfterLastKey() {
+        when(east.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(page(false, "a", "x"));
+        when(west.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(page(false, "w/b", "w/c"));
+
+        ListObjectsV2Response response = router.client().listObjectsV2(ListObjectsV2Request.builder()
+                .bucket("files")
+                .maxKeys(3)
+                .continuationToken("0")
+                .build());
+
+        // Merged in key order across backends, cut at maxKeys
+        assertEquals(List.of("a", "w/b", "w/c"), keys(response));
+        assertTrue(response.isTruncated());
+        assertEquals("w/c", response.nextContinuationToken());
+
+        // The continuation token is passed on to every backend as the key to start after, in its own bucket
+        ArgumentCaptor<ListObjectsV2Request> eastRequest = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(east).listObjectsV2(eastRequest.capture());
+        assertEquals("bucket-east", eastRequest.getValue().bucket());
+        assertEquals("0", eastRequest.getValue().startAfter());
+        assertNull(eastRequest.getValue().continuationToken());
+        ArgumentCaptor<ListObjectsV2Request> westRequest = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(west).listObjectsV2(westRequest.capture());
+        assertEquals("bucket-west", westRequest.getValue().bucket());
+        assertEquals("0", westRequest.getValue().startAfter());
+    }
+
+    @Test
+    void testMergedListingEndsWhenEveryPageIsComplete() {
+        when(east.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(page(false, "a"));
+        when(west.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(page(false, "w/b"));
+
+        ListObjectsV2Response response = router.client().listObjectsV2(ListObjectsV2Request.builder()
+                .bucket("files")
+                .build());
+
+        assertEquals(List.of("a", "w/b"), keys(response));
+        assertFalse(response.isTruncated());
+        assertNull(response.nextContinuationToken());
+    }
+
+    @Test
+    void testReplicaNotFoundFallsBackToHome() {
+        // The replica measured nearer, so it is read first, but it has not received the key yet
+        latency("east", 50);
+        latency("east-replica", 1);
+        when(replica.headObject(any(HeadObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(404).message("Not Found").build());
+        HeadObjectResponse found = HeadObjectResponse.builder().eTag("\"etag\"").build();
+        when(east.headObject(any(HeadObjectRequest.class))).thenReturn(found);
+
+        HeadObjectResponse response = router.client().headObject(HeadObjectRequest.builder()
+                .bucket("files")
+                .key("report.pdf")
+                .build());
+
+        assertEquals("\"etag\"", response.eTag());
+        ArgumentCaptor<HeadObjectRequest> replicaRequest = ArgumentCaptor.forClass(HeadObjectRequest.class);
+        verify(replica).headObject(replicaRequest.capture());
+        assertEquals("bucket-replica", replicaRequest.getValue().bucket());
+        ArgumentCaptor<HeadObjectRequest> homeRequest = ArgumentCaptor.forClass(HeadObjectRequest.class);
+        verify(east).headObject(homeRequest.capture());
+        assertEquals("bucket-east", homeRequest.getValue().bucket());
+        assertEquals("east-replica", router.locate("report.pdf").backend());
+    }
+
+    @Test
+    void testHomeNotFoundIsTheAnswer() {
+        when(east.headObject(any(HeadObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(404).message("Not Found").build());
+
+        S3Exception e = assertThrows(S3Exception.class, () -> router.client().headObject(HeadObjectRequest.builder()
+                .bucket("files")
+                .key("missing.pdf")
+                .build()));
+
+        assertEquals(404, e.statusCode());
+        verify(replica, never()).headObject(any(HeadObjectRequest.class));
+        // A missing key is an answer, not a failure of the backend
+        assertEquals(0, status("east").get("consecutiveFailures"));
+    }
+
+    private void latency(String backend, double millis) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> backends = (Map<String, Object>) ReflectionTestUtils.getField(router, "backends");
+        ReflectionTestUtils.setField(backends.get(backend), "latencyMillis", millis);
+    }
+
+    private Map<String, Object> status(String backend) {
+        return router.getStatus().stream()
+                .filter(entry -> entry.get("name").equals(backend))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static ListObjectsV2Response page(boolean truncated, String... keys) {
+        return ListObjectsV2Response.builder()
+                .contents(Arrays.stream(keys).map(key -> S3Object.builder().key(key).build()).toList())
+                .isTruncated(truncated)
+                .build();
+    }
+
+    private static List<String> keys(ListObjectsV2Response response) {
+        return response.contents().stream().map(S3Object::key).toList();
+    }
+}
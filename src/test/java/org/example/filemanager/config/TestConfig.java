@@ -1,13 +1,12 @@
 package org.example.filemanager.config;
 
 import org.example.filemanager.S3Service;
+import org.example.filemanager.model.StoredObject;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
-import software.amazon.awssdk.services.s3.model.S3Object;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -27,7 +26,7 @@ public class TestConfig {
     public S3Service mockS3Service() {
         return new S3Service() {
             @Override
-            public List<S3Object> listFiles() {
+            public List<StoredObject> listFiles() {
                 // Return empty list for tests
                 return new ArrayList<>();
             }
@@ -69,14 +68,11 @@ public class TestConfig {
             }
 
             @Override
-            public HeadObjectResponse getFileMetadata(String keyName) {
+            public StoredObject getFileMetadata(String keyName) {
                 // Mock metadata response
                 Map<String, String> metadata = new HashMap<>();
                 metadata.put("original-filename", "test-file.txt");
-                return HeadObjectResponse.builder()
-                    .metadata(metadata)
-                    .contentLength(100L)
-                    .build();
+                return new StoredObject(keyName, 100L, null, null, null, null, metadata, null, null);
             }
         };
     }
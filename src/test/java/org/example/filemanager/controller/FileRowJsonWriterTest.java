@@ -0,0 +1,74 @@
+package org.example.filemanager.controller;
+
+import org.example.filemanager.model.FileRow;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileRowJsonWriterTest {
+
+    // Configured like Spring Boot's default ObjectMapper, which serialized the listings before
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void testMatchesDataBindingOutput() throws Exception {
+        List<FileRow> rows = List.of(
+                new FileRow("report_1.pdf", "report.pdf", 1234, Instant.parse("2024-02-29T23:59:59Z"),
+                        "https://bucket.s3.amazonaws.com/report_1.pdf?X-Amz-Signature=abc&x=1", "hot"),
+                new FileRow("caf\u00e9 \"quoted\"\t_2", "caf\u00e9 \"quoted\"\t\uD83D\uDE00", 0,
+                        Instant.ofEpochSecond(-1, 5_000_000), "u", "cold"),
+                new FileRow("n_3", "n", Long.MAX_VALUE, null, null, null));
+
+        List<Map<String, Object>> maps = new ArrayList<>();
+        for (FileRow row : rows) {
+            Map<String, Object> fileInfo = new HashMap<>();
+            fileInfo.put("key", row.key());
+            fileInfo.put("originalName", row.originalName());
+            fileInfo.put("size", row.size());
+            fileInfo.put("lastModified", row.lastModified());
+            fileInfo.put("downloadUrl", row.downloadUrl());
+            fileInfo.put("tier", row.tier());
+            maps.add(fileInfo);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileRowJsonWriter.write(rows, out);
+
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsBytes(maps)), objectMapper.readTree(out.toByteArray()));
+    }
+
+    @Test
+    void testFormatInstantMatchesIsoInstant() {
+        Random random = new Random(42);
+        char[] buffer = new char[30];
+        long max = Instant.parse("9999-12-31T23:59:59Z").getEpochSecond();
+        for (int i = 0; i < 100_000; i++) {
+            long epochSecond = Math.floorMod(random.nextLong(), max + 1);
+            int nano = switch (i % 4) {
+                case 0 -> 0;
+                case 1 -> random.nextInt(1000) * 1_000_000;
+                case 2 -> random.nextInt(1_000_000) * 1000;
+                default -> random.nextInt(1_000_000_000);
+            };
+            Instant instant = Instant.ofEpochSecond(epochSecond, nano);
+            int length = FileRowJsonWriter.formatInstant(epochSecond, nano, buffer);
+            assertEquals(DateTimeFormatter.ISO_INSTANT.format(instant), new String(buffer, 0, length));
+        }
+        assertEquals(-1, FileRowJsonWriter.formatInstant(Instant.parse("+10000-01-01T00:00:00Z").getEpochSecond(), 0, buffer));
+    }
+}
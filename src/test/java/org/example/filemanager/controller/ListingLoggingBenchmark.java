@@ -0,0 +1,127 @@
+package org.example.filemanager.controller;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures what logging costs the request thread per 10k listing rows: the per-row INFO logging
+ * the listing used to do, synchronously and through the async appender, against the per-request
+ * summary with sampled per-row debug messages.
+ * Events are written unbuffered to a temporary file, like a console appender writes to stdout.
+ * Run with {@code ./gradlew benchmark -Pbenchmark=ListingLoggingBenchmark}.
+ */
+public class ListingLoggingBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 20;
+    private static final double SAMPLE_RATE = 0.01;
+    private static final String PATTERN = "%d{yyyy-MM-dd HH:mm:ss} [%thread] %-5level %logger{36} - %msg%n";
+
+    private interface Listing {
+        void run(Logger logger);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path sink = Files.createTempFile("listing-logging", ".log");
+        try {
+            measure("per-row INFO, synchronous", sink, false, Level.DEBUG, ListingLoggingBenchmark::perRowLogging);
+            measure("per-row INFO, async", sink, true, Level.DEBUG, ListingLoggingBenchmark::perRowLogging);
+            measure("summary + 1% DEBUG, async", sink, true, Level.DEBUG, ListingLoggingBenchmark::sampledLogging);
+            measure("summary only (prod), async", sink, true, Level.INFO, ListingLoggingBenchmark::sampledLogging);
+        } finally {
+            Files.deleteIfExists(sink);
+        }
+    }
+
+    private static void perRowLogging(Logger logger) {
+        for (int i = 0; i < ROWS; i++) {
+            String key = "documents/report-" + i + "_1700000000000.pdf";
+            logger.info("Processing file with key: {}", key);
+            logger.info("Retrieved original name from metadata: {}", "report-" + i + ".pdf");
+            Map<String, Object> fileInfo = new HashMap<>();
+            fileInfo.put("key", key);
+            fileInfo.put("size", i);
+            logger.info("File info: {}", fileInfo);
+        }
+        logger.info("Retrieved {} files from S3", ROWS);
+    }
+
+    private static void sampledLogging(Logger logger) {
+        for (int i = 0; i < ROWS; i++) {
+            // Same check as LogSampler
+            if (logger.isDebugEnabled() && ThreadLocalRandom.current().nextDouble() < SAMPLE_RATE) {
+                logger.debug("File info: {}", "documents/report-" + i + "_1700000000000.pdf");
+            }
+        }
+        logger.info("Listed {} files in {} ms", ROWS, 42);
+    }
+
+    private static void measure(String name, Path sink, boolean async, Level level, Listing listing)
+            throws IOException {
+        LoggerContext context = new LoggerContext();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+
+        FileOutputStream out = new FileOutputStream(sink.toFile());
+        OutputStreamAppender<ILoggingEvent> console = new OutputStreamAppender<>();
+        console.setContext(context);
+        console.setEncoder(encoder);
+        console.setOutputStream(out);
+        console.start();
+
+        Appender<ILoggingEvent> appender = console;
+        if (async) {
+            AsyncAppender asyncAppender = new AsyncAppender();
+            asyncAppender.setContext(context);
+            asyncAppender.setQueueSize(8192);
+            asyncAppender.addAppender(console);
+            asyncAppender.start();
+            appender = asyncAppender;
+        }
+
+        Logger logger = context.getLogger(Controller.class);
+        logger.setAdditive(false);
+        logger.setLevel(level);
+        logger.addAppender(appender);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            listing.run(logger);
+        }
+        long wallBefore = System.nanoTime();
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            listing.run(logger);
+        }
+        long wall = (System.nanoTime() - wallBefore) / ITERATIONS;
+        long cpu = (threads.getCurrentThreadCpuTime() - cpuBefore) / ITERATIONS;
+        long bytes = (threads.getCurrentThreadAllocatedBytes() - bytesBefore) / ITERATIONS;
+
+        appender.stop();
+        console.stop();
+        context.stop();
+        out.close();
+
+        System.out.printf("%-30s %8.2f ms wall %8.2f ms CPU %8d KB allocated per %d rows%n",
+                name, wall / 1e6, cpu / 1e6, bytes / 1024, ROWS);
+    }
+}
@@ -0,0 +1,93 @@
+package org.example.filemanager.controller;
+
+import org.example.filemanager.model.FileRow;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares CPU time and allocation per 10k listing rows between the map-based data binding
+ * the listing endpoints used to go through and {@link FileRowJsonWriter}.
+ * Run with {@code ./gradlew benchmark}.
+ */
+public class ListingSerializationBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int ITERATIONS = 200;
+
+    private interface Serializer {
+        void write(List<FileRow> rows, OutputStream out) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<FileRow> rows = new ArrayList<>(ROWS);
+        Instant base = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < ROWS; i++) {
+            String key = "documents/quarterly-report-" + i + ".pdf_" + (1700000000000L + i);
+            rows.add(new FileRow(key, "quarterly-report-" + i + ".pdf", 1024L * i,
+                    base.plusMillis(i * 1234567L),
+                    "https://example-bucket.s3.eu-central-1.amazonaws.com/" + key
+                            + "?X-Amz-Algorithm=AWS4-HMAC-SHA256&X-Amz-Expires=3600&X-Amz-Signature=" + i,
+                    i % 10 == 0 ? "hot" : "warm"));
+        }
+
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+        // Building the rows is part of both paths, as it was in the controller
+        measure("data binding of List<Map>", rows, (input, out) -> {
+            List<Map<String, Object>> fileList = new ArrayList<>();
+            for (FileRow row : input) {
+                Map<String, Object> fileInfo = new HashMap<>();
+                fileInfo.put("key", row.key());
+                fileInfo.put("originalName", row.originalName());
+                fileInfo.put("size", row.size());
+                fileInfo.put("lastModified", row.lastModified());
+                fileInfo.put("downloadUrl", row.downloadUrl());
+                fileInfo.put("tier", row.tier());
+                fileList.add(fileInfo);
+            }
+            objectMapper.writeValue(out, fileList);
+        });
+        measure("FileRowJsonWriter", rows, (input, out) -> {
+            List<FileRow> fileList = new ArrayList<>(input.size());
+            for (FileRow row : input) {
+                fileList.add(new FileRow(row.key(), row.originalName(), row.size(), row.lastModified(),
+                        row.downloadUrl(), row.tier()));
+            }
+            FileRowJsonWriter.write(fileList, out);
+        });
+    }
+
+    private static void measure(String name, List<FileRow> rows, Serializer serializer) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        OutputStream out = OutputStream.nullOutputStream();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            serializer.write(rows, out);
+        }
+
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializer.write(rows, out);
+        }
+        long cpu = (threads.getCurrentThreadCpuTime() - cpuBefore) / ITERATIONS;
+        long bytes = (threads.getCurrentThreadAllocatedBytes() - bytesBefore) / ITERATIONS;
+
+        System.out.printf("%-28s %8.2f ms CPU %10d KB allocated per %d rows%n", name, cpu / 1e6, bytes / 1024, rows.size());
+    }
+}
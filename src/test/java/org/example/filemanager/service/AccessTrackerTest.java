@@ -0,0 +1,59 @@
+package org.example.filemanager.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessTrackerTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testScoresDecayByHalfLife() {
+        AccessTracker tracker = new AccessTracker(HOUR, 0);
+        for (int i = 0; i < 4; i++) {
+            tracker.recordAccess("a", 0);
+        }
+        tracker.recordAccess("b", 2 * HOUR);
+
+        assertEquals(4.0, tracker.score("a", 0), 1e-9);
+        assertEquals(1.0, tracker.score("a", 2 * HOUR), 1e-9);
+        // Decayed to 1, plus the new access
+        assertEquals(2.0, tracker.recordAccess("a", 2 * HOUR), 1e-9);
+        assertEquals(0.0, tracker.score("missing", 0), 1e-9);
+        assertEquals(Map.of("a", 2.0), tracker.scoresAtLeast(1.5, 2 * HOUR));
+        assertEquals(Long.MIN_VALUE, tracker.lastAccessMillis("missing"));
+    }
+
+    @Test
+    void testMovePruneAndReload() throws IOException {
+        AccessTracker tracker = new AccessTracker(HOUR, 123);
+        tracker.recordAccess("old", 0);
+        tracker.recordAccess("before", 10 * HOUR);
+        tracker.recordAccess("caf\u00e9/\u00fcber", 10 * HOUR);
+        tracker.move("before", "after");
+
+        assertEquals(1, tracker.prune(5 * HOUR));
+        assertEquals(10 * HOUR, tracker.lastAccessMillis("after"));
+        assertEquals(Long.MIN_VALUE, tracker.lastAccessMillis("before"));
+
+        Path file = directory.resolve("state/access.dat");
+        tracker.save(file);
+        AccessTracker loaded = AccessTracker.load(file, HOUR, 999);
+        assertEquals(123L, loaded.trackedSinceMillis());
+        assertEquals(2, loaded.size());
+        assertEquals(1.0, loaded.score("caf\u00e9/\u00fcber", 10 * HOUR), 1e-9);
+
+        AccessTracker fresh = AccessTracker.load(directory.resolve("none.dat"), HOUR, 999);
+        assertEquals(999L, fresh.trackedSinceMillis());
+        assertEquals(0, fresh.size());
+    }
+}
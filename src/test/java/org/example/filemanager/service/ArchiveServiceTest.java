@@ -0,0 +1,21 @@
+package org.example.filemanager.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveServiceTest {
+
+    @Test
+    void testEntryNamesKeepOnlyTheFileName() {
+        assertEquals("report.pdf", ArchiveService.safeEntryName("report.pdf"));
+        assertEquals("passwd", ArchiveService.safeEntryName("../../etc/passwd"));
+        assertEquals("passwd", ArchiveService.safeEntryName("/etc/passwd"));
+        assertEquals("evil.exe", ArchiveService.safeEntryName("..\\..\\Windows\\evil.exe"));
+        assertEquals("evil.exe", ArchiveService.safeEntryName("C:evil.exe"));
+        assertEquals("notes 10:30.txt", ArchiveService.safeEntryName("notes 10:30.txt"));
+        assertEquals("", ArchiveService.safeEntryName(".."));
+        assertEquals("", ArchiveService.safeEntryName("dir/"));
+        assertEquals("", ArchiveService.safeEntryName(null));
+    }
+}
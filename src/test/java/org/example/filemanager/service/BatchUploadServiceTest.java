@@ -0,0 +1,135 @@
+package org.example.filemanager.service;
+
+import org.example.filemanager.S3Service;
+import org.example.filemanager.model.UploadResult;
+import org.example.filemanager.service.BatchUploadService.ConflictAction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchUploadServiceTest {
+
+    private final S3Service s3Service = mock(S3Service.class);
+    private BatchUploadService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new BatchUploadService();
+        ReflectionTestUtils.setField(service, "s3Service", s3Service);
+        ReflectionTestUtils.setField(service, "parallelism", 8);
+        ReflectionTestUtils.setField(service, "perRequestParallelism", 2);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testRepeatedNameConflictsWithTheFirstUpload() throws IOException {
+        when(s3Service.findExistingFilesByOriginalNames(anyCollection())).thenReturn(Map.of());
+        when(s3Service.uploadFile(any(MultipartFile.class))).thenReturn("key-a");
+
+        List<UploadResult> results = service.upload(files("a.txt", "a.txt"), ConflictAction.SKIP);
+
+        assertEquals(UploadResult.uploaded("a.txt", "key-a"), results.get(0));
+        assertEquals(UploadResult.conflict("a.txt", "key-a"), results.get(1));
+        verify(s3Service, times(1)).uploadFile(any(MultipartFile.class));
+    }
+
+    @Test
+    void testExistingNameIsSkippedOrReplaced() throws IOException {
+        when(s3Service.findExistingFilesByOriginalNames(anyCollection())).thenReturn(Map.of("a.txt", "old-key"));
+        when(s3Service.uploadFileWithReplace(any(MultipartFile.class), eq("old-key"))).thenReturn("old-key");
+
+        assertEquals(List.of(UploadResult.conflict("a.txt", "old-key")),
+                service.upload(files("a.txt"), ConflictAction.SKIP));
+        verify(s3Service, never()).uploadFile(any(MultipartFile.class));
+
+        // Only the first of the repeated names replaces the file, the repeat conflicts with it
+        List<UploadResult> results = service.upload(files("a.txt", "a.txt"), ConflictAction.REPLACE);
+        assertEquals(UploadResult.replaced("a.txt", "old-key"), results.get(0));
+        assertEquals(UploadResult.conflict("a.txt", "old-key"), results.get(1));
+        verify(s3Service, times(1)).uploadFileWithReplace(any(MultipartFile.class), eq("old-key"));
+    }
+
+    @Test
+    void testKeepBothUploadsEveryFile() throws IOException {
+        when(s3Service.findExistingFilesByOriginalNames(anyCollection())).thenReturn(Map.of("a.txt", "old-key"));
+        AtomicInteger keys = new AtomicInteger();
+        when(s3Service.uploadFile(any(MultipartFile.class))).thenAnswer(call -> "key-" + keys.incrementAndGet());
+
+        List<UploadResult> results = service.upload(files("a.txt", "a.txt"), ConflictAction.KEEP_BOTH);
+
+        assertTrue(results.stream().allMatch(result -> "uploaded".equals(result.status())));
+        assertNotEquals(results.get(0).key(), results.get(1).key());
+        verify(s3Service, never()).uploadFileWithReplace(any(MultipartFile.class), any());
+    }
+
+    @Test
+    void testRepeatOfFailedUploadIsNotStored() throws IOException {
+        when(s3Service.findExistingFilesByOriginalNames(anyCollection())).thenReturn(Map.of("b.txt", "old-key"));
+        when(s3Service.uploadFile(any(MultipartFile.class))).thenThrow(new IOException("Connection reset"));
+        when(s3Service.uploadFileWithReplace(any(MultipartFile.class), eq("old-key")))
+                .thenThrow(new IOException("Connection reset"));
+
+        List<UploadResult> results = service.upload(files("a.txt", "a.txt", "b.txt", "b.txt"),
+                ConflictAction.REPLACE);
+
+        assertEquals(UploadResult.failed("a.txt", "Connection reset"), results.get(0));
+        assertEquals("failed", results.get(1).status());
+        assertEquals(UploadResult.failed("b.txt", "Connection reset"), results.get(2));
+        // The file the failed replacement was meant for is still there
+        assertEquals(UploadResult.conflict("b.txt", "old-key"), results.get(3));
+        verify(s3Service, times(1)).uploadFile(any(MultipartFile.class));
+    }
+
+    @Test
+    void testOneRequestUsesAtMostItsShareOfThreads() throws IOException {
+        when(s3Service.findExistingFilesByOriginalNames(anyCollection())).thenReturn(Map.of());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        when(s3Service.uploadFile(any(MultipartFile.class))).thenAnswer(call -> {
+            mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return ((MultipartFile) call.getArgument(0)).getOriginalFilename();
+        });
+
+        String[] names = new String[10];
+        Arrays.setAll(names, i -> "file" + i);
+        List<UploadResult> results = service.upload(files(names), ConflictAction.SKIP);
+
+        // Results stay in request order whichever lane stored them
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(UploadResult.uploaded(names[i], names[i]), results.get(i));
+        }
+        assertTrue(mostRunning.get() <= 2);
+    }
+
+    private static List<MultipartFile> files(String... names) {
+        return Arrays.stream(names)
+                .<MultipartFile>map(name -> new MockMultipartFile("files", name, "text/plain", name.getBytes()))
+                .toList();
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.filemanager.service;
+
+import org.example.filemanager.model.FileEntry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactFileStoreTest {
+
+    // Multi-byte and supplementary characters exercise the UTF-8 encoding
+    private static final String SUFFIX = "\u00e9\uD83D\uDE00";
+
+    @Test
+    void testPutGetAndReplace() {
+        CompactFileStore store = new CompactFileStore(false);
+        FileEntry entry = new FileEntry("docs/report_1.pdf", "report.pdf", 1234, Instant.ofEpochMilli(1000),
+                "application/pdf", "\"abc\"");
+        store.put(entry);
+
+        assertEquals(entry, store.get("docs/report_1.pdf"));
+        assertNull(store.get("report_1.pdf"));
+
+        FileEntry replacement = new FileEntry("docs/report_1.pdf", "renamed.pdf", 99, null, null, null);
+        store.put(replacement);
+        assertEquals(1, store.size());
+        assertEquals(replacement, store.get("docs/report_1.pdf"));
+        assertTrue(store.findKeysByOriginalName("report.pdf").isEmpty());
+    }
+
+    @Test
+    void testFindKeysByOriginalNameInInsertionOrder() {
+        CompactFileStore store = new CompactFileStore(false);
+        store.put(new FileEntry("a", "same.txt", 1, null, null, null));
+        store.put(new FileEntry("b", "same.txt", 1, null, null, null));
+        store.put(new FileEntry("c", "other.txt", 1, null, null, null));
+        store.put(new FileEntry("d", "same.txt", 1, null, null, null));
+        store.remove("b");
+
+        assertEquals(List.of("a", "d"), store.findKeysByOriginalName("same.txt"));
+    }
+
+    @Test
+    void testRemovalAndCompactionKeepEntries() {
+        CompactFileStore store = new CompactFileStore(true);
+        for (int i = 0; i < 200_000; i++) {
+            store.put(new FileEntry("file-" + i + "-" + SUFFIX, "name-" + (i % 1000), i, null, "text/plain", "\"" + i + "\""));
+        }
+        long arenaBefore = store.arenaBytes();
+        // Removing three quarters leaves the arena mostly garbage, which triggers compaction
+        for (int i = 0; i < 200_000; i++) {
+            if (i % 4 != 3) {
+                assertTrue(store.remove("file-" + i + "-" + SUFFIX));
+            }
+        }
+
+        assertEquals(50_000, store.size());
+        assertTrue(store.arenaBytes() < arenaBefore);
+        assertNull(store.get("file-0-" + SUFFIX));
+        assertEquals(new FileEntry("file-7-" + SUFFIX, "name-7", 7, null, "text/plain", "\"7\""),
+                store.get("file-7-" + SUFFIX));
+        assertEquals(200, store.findKeysByOriginalName("name-7").size());
+    }
+
+    @Test
+    void testCursorCopiesFieldsWithoutMaterializingEntries() {
+        CompactFileStore store = new CompactFileStore(false);
+        store.put(new FileEntry("dir/one", "One", 1, Instant.ofEpochMilli(10), "text/plain", null));
+        store.put(new FileEntry("dir/two", null, 2, null, null, "\"x\""));
+
+        Set<String> keys = new HashSet<>();
+        byte[] buffer = new byte[64];
+        CompactFileStore.Cursor cursor = store.cursor();
+        while (cursor.next()) {
+            int length = cursor.copyKeySuffix(buffer, 0);
+            keys.add(cursor.keyPrefix() + new String(buffer, 0, length, StandardCharsets.UTF_8));
+            if (cursor.size() == 2) {
+                assertEquals(-1, cursor.originalNameLength());
+                assertEquals(Long.MIN_VALUE, cursor.lastModifiedMillis());
+                assertEquals(3, cursor.eTagLength());
+            }
+        }
+        assertEquals(Set.of("dir/one", "dir/two"), keys);
+    }
+
+    @Test
+    void testRangeFollowsListingOrderAcrossPages() {
+        CompactFileStore store = new CompactFileStore(false);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            keys.add((i % 3 == 0 ? "dir/" : i % 3 == 1 ? "dir/sub/" : "") + "k" + (i * 7919 % 1000)
+                    + (i % 5 == 0 ? SUFFIX : "") + (i % 7 == 0 ? "\uFFFD" : ""));
+        }
+        List<String> shuffled = new ArrayList<>(keys);
+        Collections.shuffle(shuffled, new Random(42));
+        shuffled.forEach(key -> store.put(new FileEntry(key, null, 1, null, null, null)));
+        for (int i = 0; i < 100; i++) {
+            store.remove(shuffled.get(i));
+        }
+        List<String> expected = new ArrayList<>(shuffled.subList(100, shuffled.size()));
+        expected.sort(FileCatalogService.KEY_ORDER);
+
+        List<String> paged = new ArrayList<>();
+        String startAfter = null;
+        List<FileEntry> page;
+        do {
+            page = startAfter == null ? store.range(null, true, null, 64) : store.range(startAfter, false, null, 64);
+            page.forEach(entry -> paged.add(entry.key()));
+            startAfter = page.isEmpty() ? null : page.get(page.size() - 1).key();
+        } while (page.size() == 64);
+        assertEquals(expected, paged);
+
+        List<String> bounded = store.range("dir/", true, "dir/sub/", Integer.MAX_VALUE).stream()
+                .map(FileEntry::key).toList();
+        assertEquals(expected.stream().filter(key -> key.startsWith("dir/") && !key.startsWith("dir/sub/")).toList(),
+                bounded);
+    }
+
+    @Test
+    void testManyFilesWithOneNameKeepInsertionOrder() {
+        CompactFileStore store = new CompactFileStore(false);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            keys.add("copy-" + i);
+            store.put(new FileEntry("copy-" + i, "shared.txt", i, null, null, null));
+        }
+        // Removing from the middle and both ends of the chain relinks its neighbours
+        for (int i = 0; i < 100_000; i += 3) {
+            assertTrue(store.remove("copy-" + i));
+        }
+        store.remove("copy-99998");
+        keys.removeIf(key -> Integer.parseInt(key.substring(5)) % 3 == 0 || key.equals("copy-99998"));
+
+        assertEquals(keys, store.findKeysByOriginalName("shared.txt"));
+    }
+}
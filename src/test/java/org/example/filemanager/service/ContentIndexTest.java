@@ -0,0 +1,128 @@
+package org.example.filemanager.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSearchRanksAndSurvivesReopen() throws IOException {
+        ContentIndex index = ContentIndex.open(directory, 10);
+        add(index, "a.txt", 1, "The quarterly report covers revenue and costs.");
+        add(index, "b.txt", 1, "Revenue, revenue, revenue: the report on revenue growth.");
+        add(index, "c.txt", 1, "Meeting notes about the office party.");
+
+        // Buffered documents are searchable before they are flushed
+        assertEquals(List.of("b.txt", "a.txt"), keys(index.search("revenue", 10)));
+        assertEquals(List.of("c.txt"), keys(index.search("PARTY", 10)));
+        assertEquals(List.of(), index.search("x", 10));
+
+        assertTrue(index.flush());
+        assertFalse(index.flush());
+        index.rename("c.txt", "notes/c.txt", 2);
+        index.remove("a.txt");
+        index.flush();
+
+        ContentIndex reopened = ContentIndex.open(directory, 10);
+        assertEquals(2, reopened.size());
+        assertEquals(2L, (long) reopened.version("notes/c.txt"));
+        assertNull(reopened.version("a.txt"));
+        assertEquals(List.of("b.txt"), keys(reopened.search("quarterly report", 10)));
+        assertEquals(List.of("notes/c.txt"), keys(reopened.search("office", 10)));
+    }
+
+    @Test
+    void testMergeDropsRemovedDocuments() throws IOException {
+        ContentIndex index = ContentIndex.open(directory, 2);
+        for (int i = 0; i < 4; i++) {
+            add(index, "file" + i, 1, "common term" + i);
+            index.flush();
+        }
+        index.remove("file1");
+        add(index, "file2", 2, "replaced content");
+        index.flush();
+
+        assertTrue(index.maybeMerge());
+        while (index.maybeMerge()) {
+            // Until at most the merge factor is left
+        }
+        assertTrue((int) index.getStats().get("segments") <= 2);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(index.getStats().get("segments"),
+                    (int) files.filter(file -> file.toString().endsWith(".seg")).count());
+        }
+        assertEquals(List.of("file0", "file3"), keys(index.search("common", 10)).stream().sorted().toList());
+        assertEquals(List.of("file2"), keys(index.search("replaced term2", 10)));
+
+        ContentIndex reopened = ContentIndex.open(directory, 2);
+        assertEquals(List.of("file0", "file3"), keys(reopened.search("common", 10)).stream().sorted().toList());
+    }
+
+    @Test
+    void testPdfTextExtraction() {
+        String pdf = "%PDF-1.4\n1 0 obj\n<< /Length 60 >>\nstream\n"
+                + "BT /F1 12 Tf 72 712 Td (Invoice) Tj 0 -14 Td [(num) -20 (ber) -500 (42)] TJ ET\n"
+                + "endstream\nendobj\n%%EOF\n";
+        String text = PdfTextExtractor.extract(pdf.getBytes(StandardCharsets.ISO_8859_1), 1000);
+        assertEquals(List.of("invoice", "number", "42"), ContentTokenizer.terms(text));
+    }
+
+    @Test
+    void testPdfInflatesOnlyContentStreamsWithinABudget() {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        // Images are not inflated, so however large they are they leave the budget to the text
+        for (int i = 0; i < 4; i++) {
+            stream(pdf, "/Subtype /Image /Filter /FlateDecode", new byte[1 << 20]);
+        }
+        stream(pdf, "/Filter /FlateDecode", "BT (Invoice) Tj ET".getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(List.of("invoice"), ContentTokenizer.terms(PdfTextExtractor.extract(pdf.toByteArray(), 1000)));
+
+        // A content stream that inflates beyond the budget leaves nothing for the streams after it
+        stream(pdf, "/Filter /FlateDecode", " ".repeat(1 << 20).getBytes(StandardCharsets.ISO_8859_1));
+        stream(pdf, "/Filter /FlateDecode", "BT (Total) Tj ET".getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(List.of("invoice"), ContentTokenizer.terms(PdfTextExtractor.extract(pdf.toByteArray(), 1000)));
+    }
+
+    private static void stream(ByteArrayOutputStream pdf, String dictionary, byte[] content) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        pdf.writeBytes(("1 0 obj\n<< " + dictionary + " /Length " + compressed.size() + " >>\nstream\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+        pdf.writeBytes(compressed.toByteArray());
+        pdf.writeBytes("\nendstream\nendobj\n".getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void add(ContentIndex index, String key, long version, String text) throws IOException {
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = ContentTokenizer.tokenize(new StringReader(text), frequencies);
+        index.add(key, version, frequencies, length);
+    }
+
+    private static List<String> keys(List<ContentIndex.Hit> hits) {
+        return hits.stream().map(ContentIndex.Hit::key).toList();
+    }
+}
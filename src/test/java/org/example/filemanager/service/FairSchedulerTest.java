@@ -0,0 +1,74 @@
+package org.example.filemanager.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairSchedulerTest {
+
+    @Test
+    void testFreedSlotsGoToUsersByWeight() throws Exception {
+        FairScheduler scheduler = new FairScheduler(1, 10);
+        FairScheduler.Permit first = scheduler.acquire("heavy", 1, 1000);
+
+        // Queue three waiters for each user behind the held slot
+        List<String> grants = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch queued = new CountDownLatch(6);
+        List<Thread> threads = new ArrayList<>();
+        for (String user : List.of("heavy", "heavy", "heavy", "light", "light", "light")) {
+            Thread thread = new Thread(() -> {
+                try {
+                    queued.countDown();
+                    FairScheduler.Permit permit = scheduler.acquire(user, user.equals("light") ? 2 : 1, 10_000);
+                    grants.add(user);
+                    permit.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        queued.await();
+        while (scheduler.waiting() < 6) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        first.close();
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+
+        // "light" has twice the weight and had no grant yet, so it goes first and twice as often
+        // until it has caught up with "heavy"'s first grant
+        assertEquals(List.of("light", "light"), grants.subList(0, 2));
+        assertEquals(List.of("heavy", "heavy"), grants.subList(4, 6));
+        assertEquals(6, grants.size());
+        assertEquals(0, scheduler.inUse());
+    }
+
+    @Test
+    void testPerUserCapAndTimeout() throws Exception {
+        FairScheduler scheduler = new FairScheduler(3, 2);
+        FairScheduler.Permit a = scheduler.acquire("a", 1, 100);
+        FairScheduler.Permit b = scheduler.acquire("a", 1, 100);
+        // Over the per-user cap: refused at once although a slot is free
+        assertNull(scheduler.acquire("a", 1, 100));
+
+        FairScheduler.Permit c = scheduler.acquire("b", 1, 100);
+        assertNull(scheduler.acquire("b", 1, 50));
+        assertEquals(0, scheduler.waiting());
+
+        a.close();
+        a.close();
+        assertEquals(2, scheduler.inUse());
+        b.close();
+        c.close();
+        assertEquals(0, scheduler.inUse());
+    }
+}
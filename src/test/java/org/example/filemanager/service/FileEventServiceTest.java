@@ -0,0 +1,28 @@
+package org.example.filemanager.service;
+
+import org.example.filemanager.model.FileChangeEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileEventServiceTest {
+
+    @Test
+    void testEventIdsOfAnotherServerRunAreNotResumed() {
+        FileEventService service = new FileEventService();
+        String initial = service.getCurrentEventId();
+        service.onFileChange(new FileChangeEvent(FileChangeEvent.Type.ADDED, "a.txt", "a.txt", 1, "text/plain",
+                Instant.now()));
+        service.shutdown();
+
+        assertEquals(0L, service.versionOf(initial));
+        assertEquals(1L, service.versionOf(service.getCurrentEventId()));
+        // Ids from before a restart, or from before ids carried the run, mean nothing to this run
+        String epoch = initial.substring(0, initial.lastIndexOf('-'));
+        assertEquals(-1L, service.versionOf(epoch + "x-500"));
+        assertEquals(-1L, service.versionOf("500"));
+        assertEquals(-1L, service.versionOf(epoch + "-"));
+    }
+}
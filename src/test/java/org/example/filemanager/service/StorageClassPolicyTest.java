@@ -0,0 +1,54 @@
+package org.example.filemanager.service;
+
+import org.example.filemanager.model.StoredObject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageClassPolicyTest {
+
+    private static final long DAY = 24 * 3600 * 1000L;
+    private static final long NOW = 1_000 * DAY;
+
+    private final StorageClassPolicy policy = new StorageClassPolicy(30 * DAY, "STANDARD_IA", 128 * 1024, 4);
+
+    @Test
+    void testUnusedFilesCoolOnlyOnceTrackingCoversTheColdPeriod() {
+        StoredObject file = file(null, 1024 * 1024, NOW - 40 * DAY);
+
+        assertEquals("STANDARD_IA", policy.target(file, 0, 0, NOW - 40 * DAY, NOW));
+        // Tracking started 10 days ago, so an access 20 days ago would not have been seen
+        assertNull(policy.target(file, 0, 0, NOW - 10 * DAY, NOW));
+        // Read recently
+        assertNull(policy.target(file, 0.5, NOW - DAY, NOW - 40 * DAY, NOW));
+        // Below the minimum size the cold class costs more than it saves
+        assertNull(policy.target(file(null, 1024, NOW - 40 * DAY), 0, 0, NOW - 40 * DAY, NOW));
+        // Modified recently, which includes having just been moved back from the cold class
+        assertNull(policy.target(file("STANDARD", 1024 * 1024, NOW - DAY), 0, 0, NOW - 40 * DAY, NOW));
+        assertNull(policy.target(file(null, 1024 * 1024, null), 0, 0, NOW - 40 * DAY, NOW));
+    }
+
+    @Test
+    void testPopularColdFilesWarmUp() {
+        StoredObject cold = file("STANDARD_IA", 1024 * 1024, NOW - 100 * DAY);
+
+        assertEquals("STANDARD", policy.target(cold, 4, NOW, NOW - 40 * DAY, NOW));
+        assertNull(policy.target(cold, 3.9, NOW, NOW - 40 * DAY, NOW));
+        // Intelligent-Tiering manages its own tiers, and cold files are never cooled again
+        assertNull(policy.target(file("INTELLIGENT_TIERING", 1024 * 1024, NOW - 100 * DAY), 10, NOW,
+                NOW - 40 * DAY, NOW));
+        assertNull(policy.target(cold, 0, 0, NOW - 400 * DAY, NOW));
+    }
+
+    @Test
+    void testRejectsArchiveClasses() {
+        assertThrows(IllegalArgumentException.class, () -> new StorageClassPolicy(30 * DAY, "GLACIER", 0, 4));
+    }
+
+    private static StoredObject file(String storageClass, long size, Long lastModifiedMillis) {
+        Instant lastModified = lastModifiedMillis != null ? Instant.ofEpochMilli(lastModifiedMillis) : null;
+        return StoredObject.listed("key", size, lastModified, "\"etag\"", storageClass);
+    }
+}
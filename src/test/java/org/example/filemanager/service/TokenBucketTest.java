@@ -0,0 +1,25 @@
+package org.example.filemanager.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void testRefillsAndAllowsDebt() {
+        long second = 1_000_000_000L;
+        TokenBucket bucket = new TokenBucket(10, 5, 0);
+        assertEquals(0L, bucket.tryAcquire(10, 0));
+        // Empty: one token is 0.2 s away
+        assertEquals(second / 5, bucket.tryAcquire(1, 0));
+        assertEquals(0L, bucket.tryAcquire(1, second / 5));
+
+        // Beyond the capacity only from a full bucket, which then owes the rest
+        assertTrue(bucket.tryAcquire(25, second) > 0);
+        assertEquals(0L, bucket.tryAcquire(25, 3 * second));
+        assertEquals(-15.0, bucket.available(3 * second), 1e-6);
+        // Pacing takes the amount regardless and reports the time until the debt is paid
+        assertEquals(4 * second, bucket.reserve(5, 3 * second));
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.filemanager.storage;
+
+import org.example.filemanager.model.StoredObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalStorageBackendTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testPutAndReadBackSmallAndLargeObjects() throws IOException {
+        // The threshold sends the first object through a memory mapping and the second through the channel
+        LocalStorageBackend storage = new LocalStorageBackend(root, 1024);
+        byte[] small = "hello".getBytes(StandardCharsets.UTF_8);
+        byte[] large = new byte[256 * 1024];
+        new Random(42).nextBytes(large);
+
+        storage.put("docs/small.txt", new ByteArrayInputStream(small), small.length, "text/plain",
+                Map.of("original-filename", "small \u00e9.txt"));
+        storage.put("docs/large.bin", new ByteArrayInputStream(large), large.length, null, Map.of());
+
+        StoredObject head = storage.head("docs/small.txt");
+        assertEquals(5L, head.size());
+        assertEquals("text/plain", head.contentType());
+        assertEquals("small \u00e9.txt", head.metadata().get("original-filename"));
+        // CRC32C of "hello" in the base64 form S3 reports
+        assertEquals("crc32c=mnG7TA==", head.digest());
+
+        try (ObjectContent content = storage.open("docs/small.txt")) {
+            assertEquals("hello", new String(content.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (ObjectContent content = storage.open("docs/large.bin")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(large.length, content.transferTo(out));
+            assertTrue(Arrays.equals(large, out.toByteArray()));
+        }
+    }
+
+    @Test
+    void testStreamedWriteIsInvisibleUntilClosed() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend(root, 1024);
+
+        StorageOutputStream aborted = storage.create("a.gz", "text/plain", "gzip", Map.of());
+        aborted.write(new byte[100]);
+        aborted.abort();
+        assertMissing(storage, "a.gz");
+
+        StorageOutputStream out = storage.create("a.gz", "text/plain", "gzip", Map.of("codec", "gzip"));
+        out.write(new byte[100]);
+        assertMissing(storage, "a.gz");
+        out.close();
+
+        StoredObject head = storage.head("a.gz");
+        assertEquals(100L, head.size());
+        assertEquals("gzip", head.contentEncoding());
+        assertNull(out.versionId());
+        try (var temporary = Files.list(root.resolve("tmp"))) {
+            assertEquals(0L, temporary.count());
+        }
+    }
+
+    @Test
+    void testReplaceKeepsOpenReadsOnPreviousContent() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend(root, 0);
+        put(storage, "file", "first version");
+
+        try (InputStream open = storage.open("file")) {
+            put(storage, "file", "second");
+            assertEquals("first version", new String(open.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (InputStream open = storage.open("file")) {
+            assertEquals("second", new String(open.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testListInKeyOrderWithPrefixAndStartAfter() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend(root, 1024);
+        for (String key : List.of("b/2", "a", "b/1", "b-c", "c/d/e")) {
+            put(storage, key, key);
+        }
+
+        assertEquals(List.of("a", "b-c", "b/1", "b/2", "c/d/e"), keys(storage, "", null));
+        assertEquals(List.of("b/1", "b/2"), keys(storage, "b/", null));
+        assertEquals(List.of("b-c", "b/1", "b/2"), keys(storage, "b", null));
+        assertEquals(List.of("b/2", "c/d/e"), keys(storage, "", "b/1"));
+
+        storage.copy("c/d/e", "c/x", storage.head("c/d/e"), Map.of("original-filename", "x"));
+        storage.delete("c/d/e");
+        assertEquals(List.of("c/x"), keys(storage, "c/", null));
+        assertEquals("x", storage.head("c/x").metadata().get("original-filename"));
+        assertTrue(!Files.exists(root.resolve("objects/c/d")));
+    }
+
+    @Test
+    void testETagFollowsContent() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend(root, 1024);
+        put(storage, "a", "hello");
+        String eTag = storage.head("a").eTag();
+        // CRC32C of "hello" and the size
+        assertEquals("\"9a71bb4c-5\"", eTag);
+
+        List<StoredObject> listed = new ArrayList<>();
+        storage.list("", null, listed::add);
+        assertEquals(eTag, listed.get(0).eTag());
+
+        // Touching the file or rewriting the same bytes keeps the tag; other content changes it
+        Files.setLastModifiedTime(root.resolve("objects/a"),
+                FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        assertEquals(eTag, storage.head("a").eTag());
+        put(storage, "a", "hello");
+        assertEquals(eTag, storage.head("a").eTag());
+        put(storage, "a", "hellO");
+        assertNotEquals(eTag, storage.head("a").eTag());
+    }
+
+    @Test
+    void testKeysCannotEscapeTheRoot() {
+        LocalStorageBackend storage = new LocalStorageBackend(root, 1024);
+        for (String key : List.of("../outside", "a/../../outside", "/absolute", "a//b", "")) {
+            try {
+                storage.head(key);
+                throw new AssertionError("Accepted " + key);
+            } catch (IllegalArgumentException expected) {
+                // Rejected before touching the filesystem
+            }
+        }
+    }
+
+    private static void put(LocalStorageBackend storage, String key, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        storage.put(key, new ByteArrayInputStream(bytes), bytes.length, "text/plain", Map.of());
+    }
+
+    private static List<String> keys(LocalStorageBackend storage, String prefix, String startAfter) {
+        List<String> keys = new ArrayList<>();
+        storage.list(prefix, startAfter, object -> keys.add(object.key()));
+        return keys;
+    }
+
+    private static void assertMissing(LocalStorageBackend storage, String key) {
+        try {
+            storage.head(key);
+            throw new AssertionError(key + " exists");
+        } catch (ObjectNotFoundException expected) {
+            // Not committed
+        }
+    }
+}
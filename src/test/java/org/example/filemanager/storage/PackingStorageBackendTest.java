@@ -0,0 +1,153 @@
+package org.example.filemanager.storage;
+
+import org.example.filemanager.model.StoredObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackingStorageBackendTest {
+
+    private static final String PACKS = ".internal/packs/";
+
+    @TempDir
+    Path root;
+
+    @Test
+    void testSmallWritesShareAPackAndSurviveRestart() throws Exception {
+        LocalStorageBackend local = new LocalStorageBackend(root, 1024);
+        // The commit delay never expires here: the writes stay queued until close commits them
+        PackingStorageBackend storage = new PackingStorageBackend(local, PACKS, 64, 4096, 600_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> writes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String key = "docs/" + i + ".txt";
+            writes.add(executor.submit(() -> put(storage, key, "small " + key)));
+        }
+        awaitPendingCommits(storage, 4);
+        put(storage, "docs/big.bin", "x".repeat(100));
+        storage.close();
+        for (Future<String> write : writes) {
+            write.get();
+        }
+        executor.shutdown();
+
+        // Group commit: the concurrent writes landed in one pack, the large one went through
+        assertEquals(1, storage.getStats().get("packs"));
+        assertFalse(storage.isPacked("docs/big.bin"));
+        StoredObject head = storage.head("docs/2.txt");
+        assertEquals(16L, head.size());
+        assertEquals("text/plain", head.contentType());
+        assertEquals("small docs/2.txt", read(storage, "docs/2.txt"));
+
+        PackingStorageBackend reopened = new PackingStorageBackend(local, PACKS, 64, 4096, 0);
+        assertEquals(List.of("docs/0.txt", "docs/1.txt", "docs/2.txt", "docs/3.txt", "docs/big.bin"),
+                keys(reopened, "docs/"));
+        assertEquals(head.eTag(), reopened.head("docs/2.txt").eTag());
+        assertEquals("small docs/3.txt", read(reopened, "docs/3.txt"));
+
+        reopened.delete("docs/1.txt");
+        assertThrows(ObjectNotFoundException.class, () -> reopened.head("docs/1.txt"));
+        assertEquals(List.of("docs/0.txt", "docs/2.txt", "docs/3.txt", "docs/big.bin"), keys(reopened, "docs/"));
+        reopened.close();
+
+        PackingStorageBackend restarted = new PackingStorageBackend(local, PACKS, 64, 4096, 0);
+        assertEquals(List.of("docs/0.txt", "docs/2.txt", "docs/3.txt", "docs/big.bin"), keys(restarted, "docs/"));
+        restarted.close();
+    }
+
+    @Test
+    void testSmallWriteReplacesDirectObject() throws Exception {
+        LocalStorageBackend local = new LocalStorageBackend(root, 1024);
+        PackingStorageBackend storage = new PackingStorageBackend(local, PACKS, 64, 4096, 0);
+        put(storage, "report.txt", "x".repeat(100));
+        assertEquals(100L, local.head("report.txt").size());
+
+        put(storage, "report.txt", "short");
+
+        assertTrue(storage.isPacked("report.txt"));
+        assertEquals("short", read(storage, "report.txt"));
+        assertThrows(ObjectNotFoundException.class, () -> local.head("report.txt"));
+        storage.close();
+    }
+
+    @Test
+    void testDeleteAfterQueuedWriteWins() throws Exception {
+        LocalStorageBackend local = new LocalStorageBackend(root, 1024);
+        PackingStorageBackend storage = new PackingStorageBackend(local, PACKS, 64, 4096, 600_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<String> write = executor.submit(() -> put(storage, "notes.txt", "draft"));
+        awaitPendingCommits(storage, 1);
+        // Not packed yet, but the delete still has to be committed after the write
+        Future<?> delete = executor.submit(() -> storage.delete("notes.txt"));
+        awaitPendingCommits(storage, 2);
+        storage.close();
+        write.get();
+        delete.get();
+        executor.shutdown();
+
+        assertThrows(ObjectNotFoundException.class, () -> storage.head("notes.txt"));
+        PackingStorageBackend reopened = new PackingStorageBackend(local, PACKS, 64, 4096, 0);
+        assertEquals(List.of(), keys(reopened, ""));
+        reopened.close();
+    }
+
+    @Test
+    void testCompactionKeepsLiveObjectsAndDeletions() throws Exception {
+        LocalStorageBackend local = new LocalStorageBackend(root, 1024);
+        PackingStorageBackend storage = new PackingStorageBackend(local, PACKS, 64, 4096, 0);
+        put(storage, "a", "first a");
+        put(storage, "b", "first b");
+        put(storage, "a", "second a");
+        storage.delete("b");
+        assertEquals(4, storage.getStats().get("packs"));
+
+        PackingStorageBackend.CompactionResult result = storage.compact(0.5, Long.MAX_VALUE);
+        assertEquals(4, result.packsRewritten());
+        assertEquals(1, result.packsWritten());
+        assertEquals(List.of("a"), keys(storage, ""));
+        assertEquals("second a", read(storage, "a"));
+        storage.close();
+
+        PackingStorageBackend reopened = new PackingStorageBackend(local, PACKS, 64, 4096, 0);
+        assertEquals(List.of("a"), keys(reopened, ""));
+        assertEquals("second a", read(reopened, "a"));
+        reopened.close();
+    }
+
+    private static void awaitPendingCommits(PackingStorageBackend storage, int count) throws InterruptedException {
+        while ((int) storage.getStats().get("pendingCommits") < count) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static String put(StorageBackend storage, String key, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return storage.put(key, new ByteArrayInputStream(bytes), bytes.length, "text/plain", Map.of());
+    }
+
+    private static String read(StorageBackend storage, String key) throws IOException {
+        try (ObjectContent content = storage.open(key)) {
+            return new String(content.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<String> keys(StorageBackend storage, String prefix) {
+        List<String> keys = new ArrayList<>();
+        storage.list(prefix, null, object -> keys.add(object.key()));
+        return keys;
+    }
+}
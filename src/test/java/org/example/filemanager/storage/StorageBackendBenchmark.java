@@ -0,0 +1,99 @@
+package org.example.filemanager.storage;
+
+import org.example.filemanager.S3StorageBackend;
+import org.example.filemanager.config.AwsConfig;
+
+import software.amazon.awssdk.regions.Region;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Write and read throughput of the storage backends for small, medium and large objects.
+ * The local backend writes to a temporary directory, or to -Dstorage.benchmark.root to measure
+ * a particular disk. Passing -Dstorage.benchmark.bucket (and optionally -Dstorage.benchmark.region)
+ * runs the same workload against that S3 bucket with the default AWS profile; the benchmark
+ * writes under "benchmark/" and deletes what it wrote.
+ * Run with {@code ./gradlew benchmark -Pbenchmark=org.example.filemanager.storage.StorageBackendBenchmark}.
+ */
+public class StorageBackendBenchmark {
+
+    private static final int[] SIZES = {4 * 1024, 256 * 1024, 8 * 1024 * 1024};
+    private static final long BYTES_PER_SIZE = 64L * 1024 * 1024;
+    private static final int MAX_OBJECTS = 500;
+
+    public static void main(String[] args) throws IOException {
+        String rootProperty = System.getProperty("storage.benchmark.root");
+        Path root = rootProperty != null ? Path.of(rootProperty) : Files.createTempDirectory("storage-benchmark");
+        List<StorageBackend> backends = new ArrayList<>();
+        backends.add(new LocalStorageBackend(root, 1024 * 1024));
+
+        String bucket = System.getProperty("storage.benchmark.bucket");
+        if (bucket != null) {
+            Region region = Region.of(System.getProperty("storage.benchmark.region", "ap-southeast-1"));
+            backends.add(new S3StorageBackend(new AwsConfig().createClient(region), bucket, 8 * 1024 * 1024));
+        }
+
+        for (StorageBackend backend : backends) {
+            for (int size : SIZES) {
+                run(backend, size);
+            }
+        }
+    }
+
+    private static void run(StorageBackend backend, int size) throws IOException {
+        int count = (int) Math.min(MAX_OBJECTS, BYTES_PER_SIZE / size);
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add("benchmark/" + size + "/object-" + i);
+        }
+
+        long start = System.nanoTime();
+        for (String key : keys) {
+            backend.put(key, new ByteArrayInputStream(content), size, "application/octet-stream", Map.of());
+        }
+        long writeNanos = System.nanoTime() - start;
+
+        // Warm read pass, then the measured one; the OS page cache serves both for local storage
+        readAll(backend, keys);
+        start = System.nanoTime();
+        long read = readAll(backend, keys);
+        long readNanos = System.nanoTime() - start;
+        if (read != (long) size * count) {
+            throw new IllegalStateException("Read " + read + " bytes, expected " + (long) size * count);
+        }
+
+        for (int from = 0; from < keys.size(); from += 1000) {
+            backend.delete(keys.subList(from, Math.min(from + 1000, keys.size())));
+        }
+
+        System.out.printf("%-6s %8d KB x %4d: write %8.1f MB/s %8.0f ops/s, read %8.1f MB/s %8.0f ops/s%n",
+                backend.type(), size / 1024, count,
+                megabytesPerSecond(size, count, writeNanos), count / (writeNanos / 1e9),
+                megabytesPerSecond(size, count, readNanos), count / (readNanos / 1e9));
+    }
+
+    private static long readAll(StorageBackend backend, List<String> keys) throws IOException {
+        long total = 0;
+        OutputStream sink = OutputStream.nullOutputStream();
+        for (String key : keys) {
+            try (ObjectContent content = backend.open(key)) {
+                total += content.transferTo(sink);
+            }
+        }
+        return total;
+    }
+
+    private static double megabytesPerSecond(int size, int count, long nanos) {
+        return (double) size * count / (1024 * 1024) / (nanos / 1e9);
+    }
+}